@@ -0,0 +1,163 @@
+/*
+ * Copyright (C) 2011 Eiichiro Uchiumi. All Rights Reserved.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.eiichiro.acidhouse;
+
+/**
+ * {@code Accumulator} is the mutable container which an {@code Aggregation} 
+ * folds the property values into, one by one, while the entities are 
+ * streamed. The partial results accumulated by the different threads are 
+ * merged with {@link #combine(Accumulator)} and the aggregation result is 
+ * returned from {@link #finish()}. 
+ * {@code Accumulator} is not thread-safe. Each thread must accumulate into 
+ * its own instance supplied by {@link Aggregation#accumulator()}. 
+ * The specialized subclasses {@link OfInt}, {@link OfLong} and 
+ * {@link OfDouble} hold the intermediate result as the primitive value.
+ * 
+ * @see Aggregation#accumulator()
+ * @author <a href="mailto:mail@eiichiro.org">Eiichiro Uchiumi</a>
+ */
+public abstract class Accumulator<T> {
+	
+	/**
+	 * Folds the specified property value into this accumulator.
+	 * 
+	 * @param value The property value of the entity to be aggregated.
+	 */
+	public abstract void accumulate(T value);
+	
+	/**
+	 * Merges the partial result of the specified accumulator (which is 
+	 * supplied by the same {@code Aggregation}) into this accumulator. The 
+	 * specified accumulator has accumulated the values following the ones 
+	 * accumulated by this accumulator.
+	 * 
+	 * @param accumulator The accumulator to be merged into this accumulator.
+	 */
+	public abstract void combine(Accumulator<T> accumulator);
+	
+	/**
+	 * Returns the aggregation result of the accumulated values.
+	 * 
+	 * @return The aggregation result as a scalar value.
+	 */
+	public abstract T finish();
+	
+	/**
+	 * {@code Accumulator} specialized for {@code int} values. {@code null} 
+	 * values are not accumulated.
+	 */
+	public abstract static class OfInt extends Accumulator<Integer> {
+		
+		/**
+		 * Folds the specified {@code int} value into this accumulator.
+		 * 
+		 * @param value The property value of the entity to be aggregated.
+		 */
+		public abstract void accumulate(int value);
+		
+		/**
+		 * Returns the aggregation result of the accumulated values as 
+		 * {@code int}.
+		 * 
+		 * @return The aggregation result.
+		 */
+		public abstract int finishAsInt();
+		
+		@Override
+		public void accumulate(Integer value) {
+			if (value != null) {
+				accumulate(value.intValue());
+			}
+		}
+		
+		@Override
+		public Integer finish() {
+			return finishAsInt();
+		}
+		
+	}
+	
+	/**
+	 * {@code Accumulator} specialized for {@code long} values. {@code null} 
+	 * values are not accumulated.
+	 */
+	public abstract static class OfLong extends Accumulator<Long> {
+		
+		/**
+		 * Folds the specified {@code long} value into this accumulator.
+		 * 
+		 * @param value The property value of the entity to be aggregated.
+		 */
+		public abstract void accumulate(long value);
+		
+		/**
+		 * Returns the aggregation result of the accumulated values as 
+		 * {@code long}.
+		 * 
+		 * @return The aggregation result.
+		 */
+		public abstract long finishAsLong();
+		
+		@Override
+		public void accumulate(Long value) {
+			if (value != null) {
+				accumulate(value.longValue());
+			}
+		}
+		
+		@Override
+		public Long finish() {
+			return finishAsLong();
+		}
+		
+	}
+	
+	/**
+	 * {@code Accumulator} specialized for {@code double} values. 
+	 * {@code null} values are not accumulated.
+	 */
+	public abstract static class OfDouble extends Accumulator<Double> {
+		
+		/**
+		 * Folds the specified {@code double} value into this accumulator.
+		 * 
+		 * @param value The property value of the entity to be aggregated.
+		 */
+		public abstract void accumulate(double value);
+		
+		/**
+		 * Returns the aggregation result of the accumulated values as 
+		 * {@code double}.
+		 * 
+		 * @return The aggregation result.
+		 */
+		public abstract double finishAsDouble();
+		
+		@Override
+		public void accumulate(Double value) {
+			if (value != null) {
+				accumulate(value.doubleValue());
+			}
+		}
+		
+		@Override
+		public Double finish() {
+			return finishAsDouble();
+		}
+		
+	}
+	
+}
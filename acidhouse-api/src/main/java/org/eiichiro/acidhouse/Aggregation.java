@@ -15,8 +15,12 @@
  */
 package org.eiichiro.acidhouse;
 
+import java.util.ArrayList;
 import java.util.List;
 
+import org.eiichiro.acidhouse.metamodel.DoubleProperty;
+import org.eiichiro.acidhouse.metamodel.IntProperty;
+import org.eiichiro.acidhouse.metamodel.LongProperty;
 import org.eiichiro.acidhouse.metamodel.Property;
 
 /**
@@ -24,6 +28,9 @@ import org.eiichiro.acidhouse.metamodel.Property;
  * You can aggregate one property of the <code>GetList</code> command result, 
  * by specifying this classes' concrete instance to 
  * {@link Session#get(Aggregation)} method.
+ * The property values are folded into the {@code Accumulator} supplied by 
+ * {@link #accumulator()} while the entities are streamed, so they are not 
+ * buffered unless the subclass implements only {@link #aggregate(List)}. 
  * Class {@code Aggregations} has some factory methods to provide useful 
  * {@code Aggregation} instances.
  * 
@@ -47,17 +54,74 @@ public abstract class Aggregation<T> {
 		this.property = property;
 	}
 	
+	/**
+	 * Returns a new {@code Accumulator} which this aggregation folds the 
+	 * property values into. This method is called back by the 
+	 * {@code GetScalar} implementation once for each thread which aggregates 
+	 * a part of the {@code GetList} command result, so the returned 
+	 * accumulator must be a fresh instance every time. 
+	 * The default implementation buffers the property values into a list and 
+	 * aggregates them with {@link #aggregate(List)} on 
+	 * {@link Accumulator#finish()}, so the subclass which implements only 
+	 * {@link #aggregate(List)} works as before. Override this method to fold 
+	 * the values without buffering them.
+	 * 
+	 * @return A new {@code Accumulator} for this aggregation.
+	 */
+	public Accumulator<T> accumulator() {
+		return new Buffer();
+	}
+	
+	/**
+	 * Folds the property value of the specified entity into the specified 
+	 * {@code Accumulator}. This method is called back by the 
+	 * {@code GetScalar} implementation for each qualified entity. If the 
+	 * property is primitive-specialized ({@code IntProperty}, 
+	 * {@code LongProperty} or {@code DoubleProperty}) and the accumulator is 
+	 * specialized for the same primitive type, the property value is passed 
+	 * without boxing.
+	 * 
+	 * @param accumulator The {@code Accumulator} supplied by 
+	 * {@link #accumulator()}.
+	 * @param entity The entity which has the property value to be folded.
+	 */
+	public void accumulate(Accumulator<T> accumulator, Object entity) {
+		if (property instanceof IntProperty && accumulator instanceof Accumulator.OfInt) {
+			((Accumulator.OfInt) accumulator).accumulate(((IntProperty<?>) property).getAsInt(entity));
+		} else if (property instanceof LongProperty && accumulator instanceof Accumulator.OfLong) {
+			((Accumulator.OfLong) accumulator).accumulate(((LongProperty<?>) property).getAsLong(entity));
+		} else if (property instanceof DoubleProperty && accumulator instanceof Accumulator.OfDouble) {
+			((Accumulator.OfDouble) accumulator).accumulate(((DoubleProperty<?>) property).getAsDouble(entity));
+		} else {
+			accumulator.accumulate(property.get(entity));
+		}
+	}
+	
 	/**
 	 * Aggregates the specified list and returns the aggregation result.
-	 * This method is called back by the {@code GetScalar} implementation. 
 	 * The specified list's entry is the value of the property which this 
-	 * aggregation instance has.
+	 * aggregation instance has. Every entry is folded into a new 
+	 * {@link #accumulator()}, so the subclass must override either this 
+	 * method or {@link #accumulator()}.
 	 * 
 	 * @param list The value list of the property which this aggregation 
 	 * instance attempt to aggregate.
 	 * @return The aggregation result as a scalar value.
 	 */
-	public abstract T aggregate(List<T> list);
+	public T aggregate(List<T> list) {
+		Accumulator<T> accumulator = accumulator();
+		
+		if (accumulator instanceof Aggregation.Buffer) {
+			throw new UnsupportedOperationException("[" + getClass().getName() 
+					+ "] must override either 'aggregate(List)' or 'accumulator()'");
+		}
+		
+		for (T value : list) {
+			accumulator.accumulate(value);
+		}
+		
+		return accumulator.finish();
+	}
 
 	/**
 	 * Returns the property that this aggregation instance aggregates.
@@ -68,4 +132,27 @@ public abstract class Aggregation<T> {
 		return property;
 	}
 	
+	// The default accumulator which buffers the property values to be 
+	// aggregated with aggregate(List) at last.
+	private class Buffer extends Accumulator<T> {
+		
+		private final List<T> values = new ArrayList<T>();
+		
+		@Override
+		public void accumulate(T value) {
+			values.add(value);
+		}
+		
+		@Override
+		public void combine(Accumulator<T> accumulator) {
+			values.addAll(((Buffer) accumulator).values);
+		}
+		
+		@Override
+		public T finish() {
+			return aggregate(values);
+		}
+		
+	}
+	
 }
@@ -16,9 +16,11 @@
 package org.eiichiro.acidhouse;
 
 import java.lang.reflect.Type;
-import java.util.Iterator;
 import java.util.List;
 
+import org.eiichiro.acidhouse.metamodel.DoubleProperty;
+import org.eiichiro.acidhouse.metamodel.IntProperty;
+import org.eiichiro.acidhouse.metamodel.LongProperty;
 import org.eiichiro.acidhouse.metamodel.Property;
 
 /**
@@ -65,30 +67,50 @@ public abstract class Aggregations {
 		return new Max<T>(property);
 	}
 	
-	private static class Max<T extends Comparable<T>> extends Aggregation<T> {
+	/**
+	 * The max aggregation. The implementation of {@code GetScalar} can 
+	 * compute it with a sorted query on the datastore index instead of 
+	 * aggregating every property value.
+	 */
+	public static class Max<T extends Comparable<T>> extends Aggregation<T> {
 
 		public Max(Property<?, T> property) {
 			super(property);
 		}
 		
+		@SuppressWarnings({ "rawtypes", "unchecked" })
 		@Override
-		public T aggregate(List<T> list) {
-			if (list.size() == 0) {
-				return null;
+		public Accumulator<T> accumulator() {
+			if (property() instanceof IntProperty) {
+				return (Accumulator) new IntExtremum(true);
+			} else if (property() instanceof LongProperty) {
+				return (Accumulator) new LongExtremum(true);
+			} else if (property() instanceof DoubleProperty) {
+				return (Accumulator) new DoubleExtremum(true);
 			}
 			
-			Iterator<T> iterator = list.iterator();
-			T max = iterator.next();
-			
-			while (iterator.hasNext()) {
-				T next = iterator.next();
+			return new Accumulator<T>() {
 				
-				if (next.compareTo(max) > 0) {
-					max = next;
+				private T max;
+				
+				@Override
+				public void accumulate(T value) {
+					if (value != null && (max == null || value.compareTo(max) > 0)) {
+						max = value;
+					}
 				}
-			}
-			
-			return max;
+				
+				@Override
+				public void combine(Accumulator<T> accumulator) {
+					accumulate(accumulator.finish());
+				}
+				
+				@Override
+				public T finish() {
+					return max;
+				}
+				
+			};
 		}
 		
 	}
@@ -105,30 +127,124 @@ public abstract class Aggregations {
 		return new Min<T>(property);
 	}
 	
-	private static class Min<T extends Comparable<T>> extends Aggregation<T> {
+	/**
+	 * The min aggregation. The implementation of {@code GetScalar} can 
+	 * compute it with a sorted query on the datastore index instead of 
+	 * aggregating every property value.
+	 */
+	public static class Min<T extends Comparable<T>> extends Aggregation<T> {
 
 		public Min(Property<?, T> property) {
 			super(property);
 		}
 		
+		@SuppressWarnings({ "rawtypes", "unchecked" })
 		@Override
-		public T aggregate(List<T> list) {
-			if (list.size() == 0) {
-				return null;
+		public Accumulator<T> accumulator() {
+			if (property() instanceof IntProperty) {
+				return (Accumulator) new IntExtremum(false);
+			} else if (property() instanceof LongProperty) {
+				return (Accumulator) new LongExtremum(false);
+			} else if (property() instanceof DoubleProperty) {
+				return (Accumulator) new DoubleExtremum(false);
 			}
 			
-			Iterator<T> iterator = list.iterator();
-			T min = iterator.next();
-			
-			while (iterator.hasNext()) {
-				T next = iterator.next();
+			return new Accumulator<T>() {
+				
+				private T min;
 				
-				if (next.compareTo(min) < 0) {
-					min = next;
+				@Override
+				public void accumulate(T value) {
+					if (value != null && (min == null || value.compareTo(min) < 0)) {
+						min = value;
+					}
 				}
-			}
-			
-			return min;
+				
+				@Override
+				public void combine(Accumulator<T> accumulator) {
+					accumulate(accumulator.finish());
+				}
+				
+				@Override
+				public T finish() {
+					return min;
+				}
+				
+			};
+		}
+		
+	}
+	
+	/**
+	 * Get the count aggregation implementation for the specified property. 
+	 * The count aggregation counts the qualified entities of the entity type 
+	 * which declares the specified property.
+	 * 
+	 * @param property The metamodel property of the entity type that this 
+	 * count aggregation counts.
+	 * @return Count aggregation implementation for the specified property.
+	 */
+	public static Aggregation<Long> count(Property<?, ?> property) {
+		return new Count(property);
+	}
+	
+	/**
+	 * The count aggregation. The implementation of {@code GetScalar} can 
+	 * compute it with a keys-only query instead of getting every entity.
+	 */
+	public static class Count extends Aggregation<Long> {
+		
+		@SuppressWarnings("unchecked")
+		public Count(Property<?, ?> property) {
+			super((Property<?, Long>) property);
+		}
+		
+		@Override
+		public Accumulator<Long> accumulator() {
+			return new Accumulator<Long>() {
+				
+				private long count;
+				
+				@Override
+				public void accumulate(Long value) {
+					count++;
+				}
+				
+				@Override
+				public void combine(Accumulator<Long> accumulator) {
+					count += accumulator.finish();
+				}
+				
+				@Override
+				public Long finish() {
+					return count;
+				}
+				
+			};
+		}
+		
+		/**
+		 * Counts the entries of the specified list. The entries are the values 
+		 * of the counted property, which are not typed as {@code Long}.
+		 * 
+		 * @param list The value list of the counted property.
+		 * @return The number of the entries.
+		 */
+		@Override
+		public Long aggregate(List<Long> list) {
+			return (long) list.size();
+		}
+		
+		/**
+		 * Counts the specified entity without reading the property value.
+		 * 
+		 * @param accumulator The {@code Accumulator} supplied by 
+		 * {@link #accumulator()}.
+		 * @param entity The entity to be counted.
+		 */
+		@Override
+		public void accumulate(Accumulator<Long> accumulator, Object entity) {
+			accumulator.accumulate(null);
 		}
 		
 	}
@@ -154,44 +270,252 @@ public abstract class Aggregations {
 			type = property.type();
 		}
 		
-		@SuppressWarnings("unchecked")
+		@SuppressWarnings({ "rawtypes", "unchecked" })
 		@Override
-		public T aggregate(List<T> list) {
-			int i = 0;
-			long l = 0;
-			double d = 0;
-			short s = 0;
-			float f = 0;
-			
-			for (T number : list) {
-				if (type.equals(Integer.class)) {
-					i += number.intValue();
-				} else if (type.equals(Long.class)) {
-					l += number.longValue();
-				} else if (type.equals(Double.class)) {
-					d += number.doubleValue();
-				} else if (type.equals(Short.class)) {
-					s += number.shortValue();
-				} else {
-					f += number.floatValue();
-				}
-			}
-			
-			Object object;
+		public Accumulator<T> accumulator() {
+			Accumulator<?> accumulator;
 			
 			if (type.equals(Integer.class)) {
-				object = Integer.valueOf(i);
+				accumulator = new Accumulator.OfInt() {
+					
+					private int sum;
+					
+					@Override
+					public void accumulate(int value) {
+						sum += value;
+					}
+					
+					@Override
+					public void combine(Accumulator<Integer> accumulator) {
+						sum += ((Accumulator.OfInt) accumulator).finishAsInt();
+					}
+					
+					@Override
+					public int finishAsInt() {
+						return sum;
+					}
+					
+				};
 			} else if (type.equals(Long.class)) {
-				object = Long.valueOf(l);
+				accumulator = new Accumulator.OfLong() {
+					
+					private long sum;
+					
+					@Override
+					public void accumulate(long value) {
+						sum += value;
+					}
+					
+					@Override
+					public void combine(Accumulator<Long> accumulator) {
+						sum += ((Accumulator.OfLong) accumulator).finishAsLong();
+					}
+					
+					@Override
+					public long finishAsLong() {
+						return sum;
+					}
+					
+				};
 			} else if (type.equals(Double.class)) {
-				object = Double.valueOf(d);
+				accumulator = new Accumulator.OfDouble() {
+					
+					private double sum;
+					
+					@Override
+					public void accumulate(double value) {
+						sum += value;
+					}
+					
+					@Override
+					public void combine(Accumulator<Double> accumulator) {
+						sum += ((Accumulator.OfDouble) accumulator).finishAsDouble();
+					}
+					
+					@Override
+					public double finishAsDouble() {
+						return sum;
+					}
+					
+				};
 			} else if (type.equals(Short.class)) {
-				object = Short.valueOf(s);
+				accumulator = new Accumulator<Short>() {
+					
+					private short sum;
+					
+					@Override
+					public void accumulate(Short value) {
+						if (value != null) {
+							sum += value;
+						}
+					}
+					
+					@Override
+					public void combine(Accumulator<Short> accumulator) {
+						sum += accumulator.finish();
+					}
+					
+					@Override
+					public Short finish() {
+						return sum;
+					}
+					
+				};
 			} else {
-				object = Float.valueOf(f);
+				accumulator = new Accumulator<Float>() {
+					
+					private float sum;
+					
+					@Override
+					public void accumulate(Float value) {
+						if (value != null) {
+							sum += value;
+						}
+					}
+					
+					@Override
+					public void combine(Accumulator<Float> accumulator) {
+						sum += accumulator.finish();
+					}
+					
+					@Override
+					public Float finish() {
+						return sum;
+					}
+					
+				};
 			}
 			
-			return (T) object;
+			return (Accumulator) accumulator;
+		}
+		
+	}
+	
+	private static class IntExtremum extends Accumulator.OfInt {
+		
+		private final boolean max;
+		
+		private boolean present;
+		
+		private int value;
+		
+		private IntExtremum(boolean max) {
+			this.max = max;
+		}
+		
+		@Override
+		public void accumulate(int value) {
+			int compare = Integer.compare(value, this.value);
+			
+			if (!present || (max ? compare > 0 : compare < 0)) {
+				this.value = value;
+				present = true;
+			}
+		}
+		
+		@Override
+		public void combine(Accumulator<Integer> accumulator) {
+			Integer value = accumulator.finish();
+			
+			if (value != null) {
+				accumulate(value.intValue());
+			}
+		}
+		
+		@Override
+		public int finishAsInt() {
+			return value;
+		}
+		
+		@Override
+		public Integer finish() {
+			return (present) ? value : null;
+		}
+		
+	}
+	
+	private static class LongExtremum extends Accumulator.OfLong {
+		
+		private final boolean max;
+		
+		private boolean present;
+		
+		private long value;
+		
+		private LongExtremum(boolean max) {
+			this.max = max;
+		}
+		
+		@Override
+		public void accumulate(long value) {
+			int compare = Long.compare(value, this.value);
+			
+			if (!present || (max ? compare > 0 : compare < 0)) {
+				this.value = value;
+				present = true;
+			}
+		}
+		
+		@Override
+		public void combine(Accumulator<Long> accumulator) {
+			Long value = accumulator.finish();
+			
+			if (value != null) {
+				accumulate(value.longValue());
+			}
+		}
+		
+		@Override
+		public long finishAsLong() {
+			return value;
+		}
+		
+		@Override
+		public Long finish() {
+			return (present) ? value : null;
+		}
+		
+	}
+	
+	private static class DoubleExtremum extends Accumulator.OfDouble {
+		
+		private final boolean max;
+		
+		private boolean present;
+		
+		private double value;
+		
+		private DoubleExtremum(boolean max) {
+			this.max = max;
+		}
+		
+		@Override
+		public void accumulate(double value) {
+			int compare = Double.compare(value, this.value);
+			
+			if (!present || (max ? compare > 0 : compare < 0)) {
+				this.value = value;
+				present = true;
+			}
+		}
+		
+		@Override
+		public void combine(Accumulator<Double> accumulator) {
+			Double value = accumulator.finish();
+			
+			if (value != null) {
+				accumulate(value.doubleValue());
+			}
+		}
+		
+		@Override
+		public double finishAsDouble() {
+			return value;
+		}
+		
+		@Override
+		public Double finish() {
+			return (present) ? value : null;
 		}
 		
 	}
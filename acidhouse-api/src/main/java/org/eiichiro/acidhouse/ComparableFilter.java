@@ -16,7 +16,10 @@
 package org.eiichiro.acidhouse;
 
 import org.eiichiro.acidhouse.metamodel.ComparableProperty;
+import org.eiichiro.acidhouse.metamodel.DoubleProperty;
 import org.eiichiro.acidhouse.metamodel.EmbeddedProperty;
+import org.eiichiro.acidhouse.metamodel.IntProperty;
+import org.eiichiro.acidhouse.metamodel.LongProperty;
 import org.eiichiro.acidhouse.metamodel.Property;
 
 /**
@@ -155,9 +158,23 @@ public class ComparableFilter<T extends Comparable<T>> implements Filter<T> {
 	/**
 	 * Indicates the specified entity instance matches to this 
 	 * {@code ComparableFilter}. 
+	 * If the property is primitive-specialized ({@code IntProperty}, 
+	 * {@code LongProperty} or {@code DoubleProperty}), the property value is 
+	 * compared without boxing.
 	 */
 	@Override
 	public boolean matches(Object entity) {
+		if (property instanceof IntProperty) {
+			return operator().matches(Integer.compare(
+					((IntProperty<?>) property).getAsInt(entity), (Integer) value));
+		} else if (property instanceof LongProperty) {
+			return operator().matches(Long.compare(
+					((LongProperty<?>) property).getAsLong(entity), (Long) value));
+		} else if (property instanceof DoubleProperty) {
+			return operator().matches(Double.compare(
+					((DoubleProperty<?>) property).getAsDouble(entity), (Double) value));
+		}
+		
 		T left = property.get(entity);
 		return operator().matches(left.compareTo(value()));
 	}
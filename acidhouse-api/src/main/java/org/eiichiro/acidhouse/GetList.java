@@ -16,6 +16,9 @@
 package org.eiichiro.acidhouse;
 
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import org.eiichiro.acidhouse.metamodel.Property;
 
 /**
  * {@code GetList} is a command interface to get entities match to the 
@@ -69,6 +72,21 @@ public interface GetList<E> extends Command<List<E>> {
 	 */
 	public GetList<E> filter(Filter<?>... filters);
 	
+	/**
+	 * Qualifies the properties to be populated in the returned entities. The 
+	 * returned entities have only the key property and the specified 
+	 * properties, and their child entities and referred entities are not got 
+	 * from the datastore. The partially populated entities must not be 
+	 * updated with the session. If no property is specified, the whole 
+	 * entities are got.
+	 * 
+	 * @param properties The properties to be populated in the returned 
+	 * entities.
+	 * @return The {@code GetList} which the execution result is populated 
+	 * with the specified properties.
+	 */
+	public GetList<E> select(Property<?, ?>... properties);
+	
 	/**
 	 * Qualifies limit size of returned list.
 	 * 
@@ -89,4 +107,59 @@ public interface GetList<E> extends Command<List<E>> {
 	 */
 	public GetList<E> offset(int offset);
 	
+	/**
+	 * Qualifies the position of execution result to start with the cursor 
+	 * returned by the previous execution ({@link Page#cursor()}). Unlike 
+	 * {@link #offset(int)}, the datastore resumes the scan from the cursor 
+	 * position, so the cost to get a page does not depend on how deep the 
+	 * page is. If the offset is also specified, it is applied after the 
+	 * cursor position. Note that if the sort orders cannot be applied by 
+	 * the datastore and the entities are sorted in memory, the datastore 
+	 * implementation may scan the whole result again for every page, though 
+	 * the entities held in memory are bounded by the page size.
+	 * 
+	 * @param cursor The cursor returned by the previous execution.
+	 * @return The {@code GetList} which the execution result is qualified with 
+	 * the specified cursor.
+	 */
+	public GetList<E> startCursor(String cursor);
+	
+	/**
+	 * Qualifies the number of entities to be fetched from the datastore at 
+	 * once.
+	 * 
+	 * @param chunk The number of entities to be fetched at once.
+	 * @return The {@code GetList} which the execution is qualified with the 
+	 * specified chunk size.
+	 */
+	public GetList<E> chunk(int chunk);
+	
+	/**
+	 * Executes this command in streaming mode. The returned iterator fetches 
+	 * the entities from the datastore chunk by chunk as the iteration 
+	 * proceeds, instead of materializing the whole execution result as 
+	 * {@code List}.
+	 * 
+	 * @return The execution result as {@code ResultIterator}.
+	 */
+	public ResultIterator<E> iterate();
+	
+	/**
+	 * Executes this command.
+	 * 
+	 * @return The entities as {@code Page} which holds the cursor pointing the 
+	 * end of the execution result.
+	 */
+	@Override
+	public Page<E> execute();
+	
+	/**
+	 * Executes this command asynchronously. Under a transaction, this method 
+	 * executes this command on the current thread and returns the completed 
+	 * future.
+	 * 
+	 * @return The future of the execution result.
+	 */
+	public CompletableFuture<Page<E>> executeAsync();
+	
 }
@@ -15,13 +15,15 @@
  */
 package org.eiichiro.acidhouse;
 
+import java.util.concurrent.CompletableFuture;
+
 /**
  * {@code GetScalar} is a command interface to get the scalar value as the 
  * result for aggregating of entity list matches to the specified 
  * {@code Filter}s and sorted by the specified sort orders.
- * This command's execution result is the returned value of the specified 
- * {@code Aggregation} instance's {@code Aggregation#aggregate(java.util.List)} 
- * method.
+ * This command's execution result is the result of the {@code Accumulator} 
+ * supplied by the specified {@code Aggregation} instance's 
+ * {@code Aggregation#accumulator()} method.
  * You can build &amp; execute this command as the following code, in App 
  * Engine: 
  * <pre>
@@ -48,13 +50,13 @@ package org.eiichiro.acidhouse;
 public interface GetScalar<E, R> extends Command<R> {
 
 	/**
-	 * Specifies sort orders by which the list passed to 
-	 * {@code Aggregation#aggregate(java.util.List)} method is sorted.
+	 * Specifies sort orders in which the property values are folded into 
+	 * {@code Aggregation#accumulator()}.
 	 * 
-	 * @param orders The sort orders by which the returned list is sorted.
-	 * @return The {@code GetScalar} which the execution result passed to 
-	 * {@code Aggregation#aggregate(java.util.List)} is sorted 
-	 * by the specified sort orders.
+	 * @param orders The sort orders in which the property values are folded.
+	 * @return The {@code GetScalar} which the property values folded into 
+	 * {@code Aggregation#accumulator()} are sorted by the specified sort 
+	 * orders.
 	 */
 	public GetScalar<E, R> sort(Order<?, ?>... orders);
 
@@ -63,10 +65,19 @@ public interface GetScalar<E, R> extends Command<R> {
 	 * Each of the specified filters is combined with "logical and".
 	 * 
 	 * @param filters {@code Filter}s to qualify the retrieved entities.
-	 * @return The {@code GetScalar} which the execution result passed to 
-	 * {@code Aggregation#aggregate(java.util.List)} is qualified by the 
-	 * specified filters.
+	 * @return The {@code GetScalar} which the property values folded into 
+	 * {@code Aggregation#accumulator()} are qualified by the specified 
+	 * filters.
 	 */
 	public GetScalar<E, R> filter(Filter<?>... filters);
 	
+	/**
+	 * Executes this command asynchronously. Under a transaction, this method 
+	 * executes this command on the current thread and returns the completed 
+	 * future.
+	 * 
+	 * @return The future of the execution result.
+	 */
+	public CompletableFuture<R> executeAsync();
+	
 }
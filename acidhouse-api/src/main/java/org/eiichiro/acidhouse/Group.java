@@ -0,0 +1,98 @@
+/*
+ * Copyright (C) 2011 Eiichiro Uchiumi. All Rights Reserved.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.eiichiro.acidhouse;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+import org.eiichiro.acidhouse.metamodel.ComparableProperty;
+
+/**
+ * {@code Group} is a command interface to group the entities match to the 
+ * specified {@code Filter}s by one or more properties and aggregate each 
+ * group with the specified {@code Aggregation}s. 
+ * This command's execution result is the map from the grouping key (the 
+ * list of the values of the grouping properties, in the specified order) to 
+ * the list of the aggregation results (in the order of the specified 
+ * {@code Aggregation}s). 
+ * You can build &amp; execute this command as the following code, in App 
+ * Engine: 
+ * <pre>
+ * import org.eiichiro.acidhouse.Session;
+ * import org.eiichiro.acidhouse.appengine.AppEngineDatastoreSession;
+ * ...
+ * 
+ * // Create 'Session' instance.
+ * Session session = new AppEngineDatastoreSession();
+ * // Get metamodel instance of 'Entity3' class.
+ * Entity3$ entity3$ = Metamodels.metamodel(Entity3.class);
+ * // Get the count and the summary of 'i' field of the 'Entity3' entities 
+ * // grouped by 'entity1.i' field.
+ * Map&lt;List&lt;Object&gt;, List&lt;Object&gt;&gt; groups = session
+ * 		.group(entity3$)
+ * 		.by(entity3$.entity1.i)
+ * 		.aggregate(Aggregations.count(entity3$.i), Aggregations.sum(entity3$.i))
+ * 		.filter(entity3$.i.lessThan(5))
+ * 		.execute();
+ * </pre>
+ * 
+ * @see Aggregation
+ * @see Aggregations
+ * @author <a href="mailto:mail@eiichiro.org">Eiichiro Uchiumi</a>
+ */
+public interface Group<E> extends Command<Map<List<Object>, List<Object>>> {
+	
+	/**
+	 * Specifies the properties by which the entities are grouped. The entities 
+	 * which have the equal values of all the specified properties belong to 
+	 * the same group.
+	 * 
+	 * @param properties The properties by which the entities are grouped.
+	 * @return The {@code Group} which groups the entities by the specified 
+	 * properties.
+	 */
+	public Group<E> by(ComparableProperty<?, ?>... properties);
+	
+	/**
+	 * Specifies the {@code Aggregation}s applied to each group.
+	 * 
+	 * @param aggregations The {@code Aggregation}s applied to each group.
+	 * @return The {@code Group} which aggregates each group with the 
+	 * specified {@code Aggregation}s.
+	 */
+	public Group<E> aggregate(Aggregation<?>... aggregations);
+	
+	/**
+	 * Qualifies entities to be grouped with the specified {@code Filter}s.
+	 * Each of the specified filters is combined with "logical and".
+	 * 
+	 * @param filters {@code Filter}s to qualify the grouped entities.
+	 * @return The {@code Group} which groups the entities qualified with the 
+	 * specified {@code Filter}s.
+	 */
+	public Group<E> filter(Filter<?>... filters);
+	
+	/**
+	 * Executes this command asynchronously. Under a transaction, this method 
+	 * executes this command on the current thread and returns the completed 
+	 * future.
+	 * 
+	 * @return The future of the execution result.
+	 */
+	public CompletableFuture<Map<List<Object>, List<Object>>> executeAsync();
+	
+}
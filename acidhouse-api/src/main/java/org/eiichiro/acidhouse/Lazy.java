@@ -0,0 +1,95 @@
+/*
+ * Copyright (C) 2011 Eiichiro Uchiumi. All Rights Reserved.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.eiichiro.acidhouse;
+
+/**
+ * {@code Lazy} is a holder of the child entity, the collection of the child 
+ * entities or the referred entity, which is loaded from the datastore on the 
+ * first access. The entity field declared as {@code Lazy} (e.g. 
+ * {@code Lazy<List<Entity1>>} or {@code @Referential Lazy<Entity1>}) is 
+ * populated with the unloaded holder when the entity is got without its 
+ * whole entity group, so getting the entities for a list view does not pull 
+ * their entire aggregates and reference graphs. The holders populated at once 
+ * are loaded in batch where possible. 
+ * {@code Lazy} is thread-safe and the value is loaded only once. 
+ * To set the value to the entity field, use {@link #of(Object)}.
+ * 
+ * @author <a href="mailto:mail@eiichiro.org">Eiichiro Uchiumi</a>
+ */
+public abstract class Lazy<T> {
+	
+	private volatile boolean loaded = false;
+	
+	private T value;
+	
+	/**
+	 * Returns the loaded {@code Lazy} which holds the specified value.
+	 * 
+	 * @param <T> The type of the value.
+	 * @param value The value to be held.
+	 * @return The loaded {@code Lazy} which holds the specified value.
+	 */
+	public static <T> Lazy<T> of(T value) {
+		Lazy<T> lazy = new Lazy<T>() {
+			
+			@Override
+			protected T load() {
+				throw new IllegalStateException("Value has been loaded already");
+			}
+			
+		};
+		lazy.value = value;
+		lazy.loaded = true;
+		return lazy;
+	}
+	
+	/**
+	 * Returns the held value. If the value has not been loaded, this method 
+	 * loads it with {@link #load()} at first.
+	 * 
+	 * @return The held value.
+	 */
+	public T get() {
+		if (!loaded) {
+			synchronized (this) {
+				if (!loaded) {
+					value = load();
+					loaded = true;
+				}
+			}
+		}
+		
+		return value;
+	}
+	
+	/**
+	 * Returns whether the value has been loaded or not.
+	 * 
+	 * @return Whether the value has been loaded or not.
+	 */
+	public boolean isLoaded() {
+		return loaded;
+	}
+	
+	/**
+	 * Loads the value from the datastore. This method is invoked only once on 
+	 * the first access.
+	 * 
+	 * @return The loaded value.
+	 */
+	protected abstract T load();
+	
+}
@@ -18,7 +18,10 @@ package org.eiichiro.acidhouse;
 import java.util.Comparator;
 
 import org.eiichiro.acidhouse.metamodel.ComparableProperty;
+import org.eiichiro.acidhouse.metamodel.DoubleProperty;
 import org.eiichiro.acidhouse.metamodel.EmbeddedProperty;
+import org.eiichiro.acidhouse.metamodel.IntProperty;
+import org.eiichiro.acidhouse.metamodel.LongProperty;
 
 /**
  * {@code Order} represents a sorting order for Acid Houses' typesafe "Command 
@@ -98,7 +101,10 @@ public class Order<E, T extends Comparable<T>> implements Comparator<E> {
 	}
 
 	/**
-	 * Compares the specified two entities.
+	 * Compares the specified two entities. If the property is 
+	 * primitive-specialized ({@code IntProperty}, {@code LongProperty} or 
+	 * {@code DoubleProperty}), the property values are compared without 
+	 * boxing.
 	 * 
 	 * @param entity1 An entity to be compared.
 	 * @param entity2 An entity to be compared.
@@ -106,6 +112,17 @@ public class Order<E, T extends Comparable<T>> implements Comparator<E> {
 	 */
 	@Override
 	public int compare(E entity1, E entity2) {
+		if (property instanceof IntProperty) {
+			IntProperty<?> p = (IntProperty<?>) property;
+			return Integer.compare(p.getAsInt(entity1), p.getAsInt(entity2));
+		} else if (property instanceof LongProperty) {
+			LongProperty<?> p = (LongProperty<?>) property;
+			return Long.compare(p.getAsLong(entity1), p.getAsLong(entity2));
+		} else if (property instanceof DoubleProperty) {
+			DoubleProperty<?> p = (DoubleProperty<?>) property;
+			return Double.compare(p.getAsDouble(entity1), p.getAsDouble(entity2));
+		}
+		
 		T value = property.get(entity1);
 		T value2 = property.get(entity2);
 		return value.compareTo(value2);
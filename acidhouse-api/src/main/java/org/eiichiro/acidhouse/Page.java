@@ -0,0 +1,89 @@
+/*
+ * Copyright (C) 2011 Eiichiro Uchiumi. All Rights Reserved.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.eiichiro.acidhouse;
+
+import java.util.AbstractList;
+import java.util.List;
+
+/**
+ * {@code Page} is a {@code List} view of the {@code GetList} execution result 
+ * with the cursor which points the end of the result. The next page can be 
+ * retrieved by passing the cursor to {@link GetList#startCursor(String)}, 
+ * as the following code: 
+ * <pre>
+ * Page&lt;Entity3&gt; page = session.get(entity3$).limit(20).execute();
+ * ...
+ * Page&lt;Entity3&gt; next = session.get(entity3$).limit(20)
+ * 		.startCursor(page.cursor()).execute();
+ * </pre>
+ * The cursor is an opaque web-safe string. It must be used with the 
+ * {@code GetList} built with the same {@code Filter}s and sort orders.
+ * 
+ * @author <a href="mailto:mail@eiichiro.org">Eiichiro Uchiumi</a>
+ */
+public class Page<E> extends AbstractList<E> {
+	
+	private final List<E> entities;
+	
+	private final String cursor;
+	
+	/**
+	 * Constructs a new {@code Page} with the specified entities and the 
+	 * cursor.
+	 * 
+	 * @param entities The entities contained in this page.
+	 * @param cursor The cursor which points the end of this page.
+	 */
+	public Page(List<E> entities, String cursor) {
+		this.entities = entities;
+		this.cursor = cursor;
+	}
+	
+	/**
+	 * Returns the cursor which points the end of this page.
+	 * 
+	 * @return The cursor which points the end of this page.
+	 */
+	public String cursor() {
+		return cursor;
+	}
+	
+	@Override
+	public E get(int index) {
+		return entities.get(index);
+	}
+	
+	@Override
+	public int size() {
+		return entities.size();
+	}
+	
+	@Override
+	public E set(int index, E element) {
+		return entities.set(index, element);
+	}
+	
+	@Override
+	public void add(int index, E element) {
+		entities.add(index, element);
+	}
+	
+	@Override
+	public E remove(int index) {
+		return entities.remove(index);
+	}
+	
+}
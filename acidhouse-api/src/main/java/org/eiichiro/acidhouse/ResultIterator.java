@@ -0,0 +1,46 @@
+/*
+ * Copyright (C) 2011 Eiichiro Uchiumi. All Rights Reserved.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.eiichiro.acidhouse;
+
+import java.util.Iterator;
+
+/**
+ * {@code ResultIterator} is a streaming view of the command execution result.
+ * The entities are fetched from the datastore chunk by chunk while iterating, 
+ * so the memory consumption does not depend on the size of the result. 
+ * {@code ResultIterator} should be closed when the iteration is finished 
+ * halfway, as the following code: 
+ * <pre>
+ * try (ResultIterator&lt;Entity3&gt; iterator = session.get(entity3$)
+ * 		.filter(entity3$.i.greaterThanOrEqualTo(13))
+ * 		.iterate()) {
+ * 	while (iterator.hasNext()) {
+ * 		Entity3 entity3 = iterator.next();
+ * 		...
+ * 	}
+ * }
+ * </pre>
+ * 
+ * @see GetList#iterate()
+ * @author <a href="mailto:mail@eiichiro.org">Eiichiro Uchiumi</a>
+ */
+public interface ResultIterator<E> extends Iterator<E>, AutoCloseable {
+	
+	/** Finishes the iteration and releases the resources held by this iterator. */
+	@Override
+	public void close();
+	
+}
@@ -15,7 +15,10 @@
  */
 package org.eiichiro.acidhouse;
 
+import java.util.Collection;
 import java.util.ConcurrentModificationException;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 import org.eiichiro.acidhouse.metamodel.Metamodel;
 
@@ -127,6 +130,39 @@ public interface Session {
 	 */
 	public <E> E get(Class<E> clazz, Object key) throws ConcurrentModificationException;
 	
+	/**
+	 * Returns the entity instances corresponding to the specified keys in the 
+	 * same order as the keys. The entity which is not found is returned as 
+	 * {@code null}. The implementation of this interface should get the 
+	 * entities in as few round trips to the datastore as possible.
+	 * 
+	 * @param <E> The entity type.
+	 * @param clazz The entity type that you want to get.
+	 * @param keys The keys corresponding to the entities that you want to get.
+	 * @return The entity instances corresponding to the specified keys.
+	 * @throws ConcurrentModificationException If the entity corresponding to 
+	 * the specified key is being modified by the other transaction.
+	 */
+	public <E> List<E> get(Class<E> clazz, Collection<?> keys) throws ConcurrentModificationException;
+	
+	/**
+	 * Returns the future of the entity instance corresponding to the specified 
+	 * key. The datastore operation is started on the calling thread and 
+	 * completed asynchronously, so the round trips to the datastore can be 
+	 * overlapped. Under a transaction, this method gets the entity on the 
+	 * calling thread (as {@link #get(Class, Object)} does) and returns the 
+	 * completed future.
+	 * 
+	 * @param <E> The entity type.
+	 * @param clazz The entity type that you want to get.
+	 * @param key The key corresponding to the entity that you want to get.
+	 * @return The future of the entity instance corresponding to the specified 
+	 * key. It is completed exceptionally with 
+	 * {@code ConcurrentModificationException} if the entity is being modified 
+	 * by the other transaction.
+	 */
+	public <E> CompletableFuture<E> getAsync(Class<E> clazz, Object key);
+	
 	/**
 	 * Puts the specified entity instance into datastore newly.
 	 * This method must be invoked under a transaction. Depending on the 
@@ -156,6 +192,49 @@ public interface Session {
 	 */
 	public void delete(Object entity);
 	
+	/**
+	 * Deletes the entity corresponding to the specified key from datastore. 
+	 * This method must be invoked under a transaction. Depending on the 
+	 * implementation of this interface, the entity might be deleted without 
+	 * getting it from datastore.
+	 * 
+	 * @param <E> The entity type.
+	 * @param clazz The entity type that you want to delete.
+	 * @param key The key corresponding to the entity that you want to delete.
+	 */
+	public <E> void delete(Class<E> clazz, Object key);
+	
+	/**
+	 * Puts the specified entity instances into datastore newly in bulk.
+	 * This method must be invoked under a transaction. The result is the same 
+	 * as {@link #put(Object)} for each entity, but the implementation of this 
+	 * interface should check the existence of the entities and put them in as 
+	 * few round trips to the datastore as possible.
+	 * 
+	 * @param entities The entity instances to be put into Session.
+	 * @throws EntityExistsException If the entity that has the same key as 
+	 * any of the specified entities has already existed.
+	 */
+	public void putAll(Collection<?> entities) throws EntityExistsException;
+	
+	/**
+	 * Updates entities with the specified entity instances in bulk.
+	 * This method must be invoked under a transaction. The result is the same 
+	 * as {@link #update(Object)} for each entity.
+	 * 
+	 * @param entities The entity instances to be updated.
+	 */
+	public void updateAll(Collection<?> entities);
+	
+	/**
+	 * Deletes the specified entities from datastore in bulk.
+	 * This method must be invoked under a transaction. The result is the same 
+	 * as {@link #delete(Object)} for each entity.
+	 * 
+	 * @param entities The entities to be deleted.
+	 */
+	public void deleteAll(Collection<?> entities);
+	
 	// Command Builder API.
 	
 	/**
@@ -181,6 +260,18 @@ public interface Session {
 	 */
 	public <E, R> GetScalar<E, R> get(Aggregation<R> aggregation);
 	
+	/**
+	 * Returns {@code Group} for the specified entity metamodel.
+	 * This method is the entry point for group-by aggregation Command Builder 
+	 * API.
+	 * 
+	 * @param <E> The entity type to group with this {@code Group}.
+	 * @param metamodel The metamodel of the entity to group with this 
+	 * {@code Group}.
+	 * @return {@code Group} for the specified entity class.
+	 */
+	public <E> Group<E> group(Metamodel<E> metamodel);
+	
 	/**
 	 * Returns {@code Update} for the specified entity metamodel.
 	 * This method is the entry point for updating Command Builder API.
@@ -15,6 +15,8 @@
  */
 package org.eiichiro.acidhouse;
 
+import java.util.concurrent.CompletableFuture;
+
 /**
  * {@code Transaction} represents a Session transaction.
  * 
@@ -37,6 +39,17 @@ public interface Transaction {
 	 */
 	public void commit() throws IndoubtException;
 	
+	/**
+	 * Commits the current transaction asynchronously. The current transaction 
+	 * is ended on the calling thread, so the next transaction can be begun 
+	 * before the returned future is completed.
+	 * 
+	 * @return The future completed when the current transaction is 
+	 * committed. It is completed exceptionally with {@code IndoubtException} 
+	 * when data consistency has broken in current transaction.
+	 */
+	public CompletableFuture<Void> commitAsync();
+	
 	/** Rolls back the current transaction. */
 	public void rollback();
 	
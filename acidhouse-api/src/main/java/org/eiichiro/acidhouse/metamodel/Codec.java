@@ -0,0 +1,178 @@
+/*
+ * Copyright (C) 2011 Eiichiro Uchiumi. All Rights Reserved.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.eiichiro.acidhouse.metamodel;
+
+/**
+ * {@code Codec} provides reflection-free access to the fields of an Acid House
+ * entity.
+ * The implementation is generated by Acid House Metamodel Generator and
+ * provides the {@link Accessor} of each field, which reads and writes the
+ * field with straight-line code. Datastore implementations resolve the
+ * {@code Accessor} once per field, so the field is not looked up by name on
+ * every access. The implementation is declared as the name that
+ * adding '_' prefix and 'Codec' suffix to the entity class name in the same
+ * package as the entity class. Datastore implementations pick it up with
+ * {@link Codecs#codec(Class)} and fall back to reflection if it is not
+ * found.
+ * 
+ * @see Codecs
+ * @author <a href="mailto:mail@eiichiro.org">Eiichiro Uchiumi</a>
+ */
+public interface Codec<E> {
+	
+	/**
+	 * Creates a new entity instance with the default constructor.
+	 * 
+	 * @return The new entity instance.
+	 */
+	public E newInstance();
+	
+	/**
+	 * Returns the {@code Accessor} which reads and writes the specified field 
+	 * of the entity.
+	 * 
+	 * @param name The field name.
+	 * @return The {@code Accessor} of the specified field.
+	 * @throws IllegalArgumentException If the entity does not have the
+	 * specified field.
+	 */
+	public Accessor<E> accessor(String name);
+	
+	/**
+	 * Returns the value of the specified field from the specified entity
+	 * instance.
+	 * 
+	 * @param entity The entity instance.
+	 * @param name The field name.
+	 * @return The field value.
+	 * @throws IllegalArgumentException If the entity does not have the
+	 * specified field.
+	 */
+	public default Object get(E entity, String name) {
+		return accessor(name).get(entity);
+	}
+	
+	/**
+	 * Sets the specified value into the specified field of the specified
+	 * entity instance.
+	 * 
+	 * @param entity The entity instance.
+	 * @param name The field name.
+	 * @param value The field value.
+	 * @throws IllegalArgumentException If the entity does not have the
+	 * specified (non-final) field.
+	 */
+	public default void set(E entity, String name, Object value) {
+		accessor(name).set(entity, value);
+	}
+	
+	/**
+	 * Returns the value of the specified {@code int} field from the specified 
+	 * entity instance.
+	 * 
+	 * @param entity The entity instance.
+	 * @param name The field name.
+	 * @return The field value.
+	 */
+	public default int getInt(E entity, String name) {
+		return accessor(name).getInt(entity);
+	}
+	
+	/**
+	 * Returns the value of the specified {@code long} field from the 
+	 * specified entity instance.
+	 * 
+	 * @param entity The entity instance.
+	 * @param name The field name.
+	 * @return The field value.
+	 */
+	public default long getLong(E entity, String name) {
+		return accessor(name).getLong(entity);
+	}
+	
+	/**
+	 * Returns the value of the specified {@code double} field from the 
+	 * specified entity instance.
+	 * 
+	 * @param entity The entity instance.
+	 * @param name The field name.
+	 * @return The field value.
+	 */
+	public default double getDouble(E entity, String name) {
+		return accessor(name).getDouble(entity);
+	}
+	
+	/**
+	 * {@code Accessor} reads and writes a field of the entity. The generated 
+	 * implementation accesses the field directly and reads the primitive 
+	 * field without boxing.
+	 */
+	public static interface Accessor<E> {
+		
+		/**
+		 * Returns the field value from the specified entity instance.
+		 * 
+		 * @param entity The entity instance.
+		 * @return The field value.
+		 */
+		public Object get(E entity);
+		
+		/**
+		 * Sets the specified value into the field of the specified entity 
+		 * instance.
+		 * 
+		 * @param entity The entity instance.
+		 * @param value The field value.
+		 * @throws IllegalArgumentException If the field is final.
+		 */
+		public void set(E entity, Object value);
+		
+		/**
+		 * Returns the {@code int} field value from the specified entity 
+		 * instance. This default implementation unboxes {@link #get(Object)}.
+		 * 
+		 * @param entity The entity instance.
+		 * @return The field value.
+		 */
+		public default int getInt(E entity) {
+			return (Integer) get(entity);
+		}
+		
+		/**
+		 * Returns the {@code long} field value from the specified entity 
+		 * instance. This default implementation unboxes {@link #get(Object)}.
+		 * 
+		 * @param entity The entity instance.
+		 * @return The field value.
+		 */
+		public default long getLong(E entity) {
+			return (Long) get(entity);
+		}
+		
+		/**
+		 * Returns the {@code double} field value from the specified entity 
+		 * instance. This default implementation unboxes {@link #get(Object)}.
+		 * 
+		 * @param entity The entity instance.
+		 * @return The field value.
+		 */
+		public default double getDouble(E entity) {
+			return (Double) get(entity);
+		}
+		
+	}
+	
+}
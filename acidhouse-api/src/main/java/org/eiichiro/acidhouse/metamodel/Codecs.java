@@ -0,0 +1,78 @@
+/*
+ * Copyright (C) 2011 Eiichiro Uchiumi. All Rights Reserved.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.eiichiro.acidhouse.metamodel;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.eiichiro.reverb.lang.UncheckedException;
+
+/**
+ * {@code Codecs} provides {@code Codec} lookup methods.
+ * 
+ * @see Codec
+ * @author <a href="mailto:mail@eiichiro.org">Eiichiro Uchiumi</a>
+ */
+public abstract class Codecs {
+	
+	// Marks the entity class which does not have the generated codec.
+	private static final Object NONE = new Object();
+	
+	private static Map<Class<?>, Object> codecs
+			= new ConcurrentHashMap<Class<?>, Object>();
+	
+	private Codecs() {}
+	
+	/**
+	 * Returns the generated {@code Codec} instance corresponding to the
+	 * specified entity class.
+	 * {@code Codec} class have to be declared as the name that adding '_'
+	 * prefix and 'Codec' suffix to the entity class name in the same package
+	 * as the entity class. The entity class name is the binary name without 
+	 * the package name, whose '$' separators of the nested class are replaced 
+	 * with '_' (e.g., '_Outer_InnerCodec' for 'Outer.Inner'). This method 
+	 * returns {@code null} if the
+	 * {@code Codec} class is not found (The result is cached either way).
+	 * 
+	 * @param <E> The type of entity class.
+	 * @param entity The entity class.
+	 * @return The {@code Codec} instance corresponding to the specified entity
+	 * class or {@code null}.
+	 */
+	@SuppressWarnings("unchecked")
+	public static <E> Codec<E> codec(Class<E> entity) {
+		Object codec = codecs.get(entity);
+		
+		if (codec == null) {
+			String name = entity.getName();
+			int i = name.lastIndexOf(".");
+			name = name.substring(0, i + 1) + "_" + name.substring(i + 1).replace('$', '_') + "Codec";
+			
+			try {
+				codec = Class.forName(name, true, entity.getClassLoader()).getDeclaredConstructor().newInstance();
+			} catch (ClassNotFoundException e) {
+				codec = NONE;
+			} catch (Exception e) {
+				throw new UncheckedException(e);
+			}
+			
+			codecs.put(entity, codec);
+		}
+		
+		return (codec == NONE) ? null : (Codec<E>) codec;
+	}
+	
+}
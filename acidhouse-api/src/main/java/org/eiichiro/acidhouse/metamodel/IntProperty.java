@@ -0,0 +1,68 @@
+/*
+ * Copyright (C) 2011 Eiichiro Uchiumi. All Rights Reserved.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.eiichiro.acidhouse.metamodel;
+
+/**
+ * {@code IntProperty} is a {@code ComparableProperty} specialized for the 
+ * primitive {@code int} property. 
+ * The property value can be read without boxing with {@link #getAsInt(Object)}, 
+ * and the filters, the sort orders and the aggregations created from this 
+ * property take the unboxed path. {@code IntProperty} can be used wherever 
+ * {@code ComparableProperty} is accepted.
+ * 
+ * @author <a href="mailto:mail@eiichiro.org">Eiichiro Uchiumi</a>
+ */
+public class IntProperty<E> extends ComparableProperty<E, Integer> {
+	
+	/**
+	 * Constructs a new {@code IntProperty} instance with the specified 
+	 * {@code Metamodel} instance which has this metamodel property and 
+	 * property name.
+	 * 
+	 * @param metamodel The {@code Metamodel} instance which has this metamodel 
+	 * property.
+	 * @param name The property name.
+	 */
+	public IntProperty(Metamodel<E> metamodel, String name) {
+		super(metamodel, Integer.class, name);
+	}
+	
+	/**
+	 * Constructs a new {@code IntProperty} instance with the specified 
+	 * {@code Property} instance which has this metamodel property and property 
+	 * name.
+	 * 
+	 * @param parent The parent {@code Property} instance which has this 
+	 * metamodel property.
+	 * @param name The property name.
+	 */
+	public IntProperty(Property<E, ?> parent, String name) {
+		super(parent, Integer.class, name);
+	}
+	
+	/**
+	 * Returns the {@code int} property value which this metamodel property 
+	 * instance represents from the specified entity instance without boxing.
+	 * 
+	 * @param entity The entity instance from which you attempt to get the 
+	 * property value.
+	 * @return The property value of the specified entity instance.
+	 */
+	public int getAsInt(Object entity) {
+		return getInt(entity);
+	}
+	
+}
@@ -20,6 +20,8 @@ import java.lang.reflect.Type;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.eiichiro.reverb.lang.UncheckedException;
 
@@ -43,6 +45,8 @@ public class Property<E, T> {
 	
 	private final List<String> path;
 	
+	private final List<Map<Class<?>, Accessor>> accessors;
+	
 	/**
 	 * Returns the property name which this metamodel property represents.
 	 * 
@@ -67,6 +71,7 @@ public class Property<E, T> {
 		this.type = type;
 		this.name = name;
 		path = path(metamodel, name);
+		accessors = accessors(path.size());
 	}
 	
 	/**
@@ -84,6 +89,7 @@ public class Property<E, T> {
 		this.type = type;
 		this.name = name;
 		path = path(metamodel, name, parent.name());
+		accessors = accessors(path.size());
 	}
 	
 	/**
@@ -109,19 +115,40 @@ public class Property<E, T> {
 	public T get(Object entity) {
 		Object value = entity;
 		
-		for (String name : path()) {
-			try {
-				Field field = value.getClass().getDeclaredField(name);
-				field.setAccessible(true);
-				value = field.get(value);
-			} catch (Exception e) {
-				throw new UncheckedException(e);
-			}
+		for (int i = 0; i < accessors.size(); i++) {
+			value = accessor(i, value.getClass()).get(value);
 		}
 		
 		return (T) value;
 	}
 	
+	// Returns the value of the primitive property without boxing. Used by the 
+	// primitive-specialized properties.
+	int getInt(Object entity) {
+		Object owner = owner(entity);
+		return accessor(accessors.size() - 1, owner.getClass()).getInt(owner);
+	}
+	
+	long getLong(Object entity) {
+		Object owner = owner(entity);
+		return accessor(accessors.size() - 1, owner.getClass()).getLong(owner);
+	}
+	
+	double getDouble(Object entity) {
+		Object owner = owner(entity);
+		return accessor(accessors.size() - 1, owner.getClass()).getDouble(owner);
+	}
+	
+	private Object owner(Object entity) {
+		Object owner = entity;
+		
+		for (int i = 0; i < accessors.size() - 1; i++) {
+			owner = accessor(i, owner.getClass()).get(owner);
+		}
+		
+		return owner;
+	}
+	
 	/**
 	 * Sets the property value which this metamodel property instance 
 	 * represents to the specified entity instance.
@@ -133,24 +160,40 @@ public class Property<E, T> {
 	 */
 	public void set(E entity, Object value) {
 		Object object = entity;
+		int last = accessors.size() - 1;
 		
-		for (int i = 0; i < path().size() - 1; i++) {
-			try {
-				Field field = object.getClass().getDeclaredField(path().get(i));
-				field.setAccessible(true);
-				object = field.get(object);
-			} catch (Exception e) {
-				throw new UncheckedException(e);
-			}
+		for (int i = 0; i < last; i++) {
+			object = accessor(i, object.getClass()).get(object);
+		}
+		
+		accessor(last, object.getClass()).set(object, value);
+	}
+	
+	/*
+	 * Resolves the accessor of the path segment lazily with the concrete class 
+	 * and caches it per class, so the entities of the mixed subclasses are 
+	 * accessed without being resolved again.
+	 */
+	private Accessor accessor(int index, Class<?> owner) {
+		Map<Class<?>, Accessor> accessors = this.accessors.get(index);
+		Accessor accessor = accessors.get(owner);
+		
+		if (accessor == null) {
+			accessor = new Accessor(owner, path.get(index));
+			accessors.put(owner, accessor);
 		}
 		
-		try {
-			Field field = object.getClass().getDeclaredField(name);
-			field.setAccessible(true);
-			field.set(object, value);
-		} catch (Exception e) {
-			throw new UncheckedException(e);
+		return accessor;
+	}
+	
+	private static List<Map<Class<?>, Accessor>> accessors(int size) {
+		List<Map<Class<?>, Accessor>> accessors = new ArrayList<Map<Class<?>, Accessor>>(size);
+		
+		for (int i = 0; i < size; i++) {
+			accessors.add(new ConcurrentHashMap<Class<?>, Accessor>(4));
 		}
+		
+		return accessors;
 	}
 	
 	/**
@@ -204,4 +247,106 @@ public class Property<E, T> {
 		return path;
 	}
 	
+	/*
+	 * Immutable field accessor of a path segment. The field is looked up from 
+	 * the owner class and its superclasses. Uses the generated {@code Codec} 
+	 * of the class declaring the field if it is available and falls back to 
+	 * reflection.
+	 */
+	private static final class Accessor {
+		
+		private final Codec.Accessor<Object> accessor;
+		
+		private final Field field;
+		
+		@SuppressWarnings("unchecked")
+		private Accessor(Class<?> owner, String name) {
+			Field field = null;
+			
+			for (Class<?> c = owner; c != null && field == null; c = c.getSuperclass()) {
+				try {
+					field = c.getDeclaredField(name);
+				} catch (NoSuchFieldException e) {
+					// Looks up the superclass.
+				}
+			}
+			
+			if (field == null) {
+				throw new UncheckedException(new NoSuchFieldException(name));
+			}
+			
+			Codec<Object> codec = (Codec<Object>) Codecs.codec(field.getDeclaringClass());
+			accessor = (codec == null) ? null : codec.accessor(name);
+			
+			if (accessor == null) {
+				field.setAccessible(true);
+				this.field = field;
+			} else {
+				this.field = null;
+			}
+		}
+		
+		private Object get(Object object) {
+			if (accessor != null) {
+				return accessor.get(object);
+			}
+			
+			try {
+				return field.get(object);
+			} catch (Exception e) {
+				throw new UncheckedException(e);
+			}
+		}
+		
+		private int getInt(Object object) {
+			if (accessor != null) {
+				return accessor.getInt(object);
+			}
+			
+			try {
+				return field.getInt(object);
+			} catch (Exception e) {
+				throw new UncheckedException(e);
+			}
+		}
+		
+		private long getLong(Object object) {
+			if (accessor != null) {
+				return accessor.getLong(object);
+			}
+			
+			try {
+				return field.getLong(object);
+			} catch (Exception e) {
+				throw new UncheckedException(e);
+			}
+		}
+		
+		private double getDouble(Object object) {
+			if (accessor != null) {
+				return accessor.getDouble(object);
+			}
+			
+			try {
+				return field.getDouble(object);
+			} catch (Exception e) {
+				throw new UncheckedException(e);
+			}
+		}
+		
+		private void set(Object object, Object value) {
+			if (accessor != null) {
+				accessor.set(object, value);
+				return;
+			}
+			
+			try {
+				field.set(object, value);
+			} catch (Exception e) {
+				throw new UncheckedException(e);
+			}
+		}
+		
+	}
+	
 }
@@ -0,0 +1,339 @@
+/*
+ * Copyright (C) 2011 Eiichiro Uchiumi. All Rights Reserved.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.eiichiro.acidhouse.appengine;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.Key;
+
+/**
+ * {@code AppEngineCache} is a bounded in-JVM near cache of the entity groups 
+ * got outside of a transaction. 
+ * The entity group (the entity and its children) is cached with its root 
+ * entity key and evicted when {@link #ttl()} has been elapsed after it is 
+ * cached or when the cache is full. 
+ * When the number of the cached groups reaches {@link #size()}, a new group 
+ * is admitted with TinyLFU-style admission: The access frequencies of the 
+ * keys are estimated with a small count-min sketch which is halved 
+ * periodically, and the new group replaces the least recently used one 
+ * only if it has been accessed more frequently. Otherwise, the new group is 
+ * not cached. So a scan over many groups read once does not flush the 
+ * frequently read ones. Unlike W-TinyLFU, there is no admission window in 
+ * front of the main region; a new group which is read repeatedly gets in 
+ * once its estimated frequency exceeds the victim's. 
+ * The cached group is invalidated when the transaction which modifies it is 
+ * committed. The entity group which is locked by the other transaction is 
+ * never cached. The cached entities are copied when they are cached and 
+ * every time they are served, so the caller can modify the returned 
+ * entities (and their collection values) freely. 
+ * {@code AppEngineCache} is thread-safe and can be shared among the sessions 
+ * with {@link AppEngineDatastoreSession#cache(AppEngineCache)}.
+ * 
+ * @author <a href="mailto:mail@eiichiro.org">Eiichiro Uchiumi</a>
+ */
+public class AppEngineCache {
+	
+	private static final int[] SEEDS = {0x9e3779b9, 0x85ebca6b, 0xc2b2ae35, 0x27d4eb2f};
+	
+	private static final int MAXIMUM_FREQUENCY = 15;
+	
+	private final int size;
+	
+	private final long ttl;
+	
+	private final Map<Key, Group> groups;
+	
+	// Count-min sketch of the access frequencies.
+	private final int[] sketch;
+	
+	private final int period;
+	
+	private int additions;
+	
+	private long stamp;
+	
+	private long hits;
+	
+	private long misses;
+	
+	private long evictions;
+	
+	/**
+	 * Constructs a new {@code AppEngineCache} which caches 1000 entity groups 
+	 * for 60 seconds at most.
+	 */
+	public AppEngineCache() {
+		this(1000, 60000);
+	}
+	
+	/**
+	 * Constructs a new {@code AppEngineCache} with the specified maximum 
+	 * number of the cached entity groups and time-to-live.
+	 * 
+	 * @param size The maximum number of the cached entity groups.
+	 * @param ttl The time-to-live of the cached entity group as millisecond.
+	 */
+	public AppEngineCache(int size, long ttl) {
+		if (size < 1) {
+			throw new IllegalArgumentException("'size' must be greater than or equal to [" + 1 + "]");
+		}
+		
+		if (ttl < 1) {
+			throw new IllegalArgumentException("'ttl' must be greater than or equal to [" + 1 + "]");
+		}
+		
+		this.size = size;
+		this.ttl = ttl;
+		groups = new LinkedHashMap<Key, Group>(16, 0.75f, true);
+		
+		// Four counters per group (at least 64 groups) and the counters are 
+		// halved every ten times as many accesses as the groups.
+		int width = Math.min(Math.max(size, 64), 1 << 20);
+		sketch = new int[Integer.highestOneBit(width * 4 - 1) << 1];
+		period = 10 * width;
+	}
+	
+	/**
+	 * Returns the copy of the entity group corresponding to the specified root 
+	 * entity key. This method returns {@code null} if the entity group is not 
+	 * cached or has been expired.
+	 * 
+	 * @param key The root entity key of the entity group.
+	 * @return The copy of the cached entity group.
+	 */
+	public synchronized List<Entity> get(Key key) {
+		record(key);
+		Group group = groups.get(key);
+		
+		if (group == null) {
+			misses++;
+			return null;
+		}
+		
+		if (System.currentTimeMillis() > group.expiration) {
+			groups.remove(key);
+			evictions++;
+			misses++;
+			return null;
+		}
+		
+		hits++;
+		return copy(group.entities);
+	}
+	
+	/**
+	 * Returns the stamp to be passed to {@link #put(Key, List, long)} before 
+	 * the entity group is got from the datastore.
+	 * 
+	 * @return The current stamp of this cache.
+	 */
+	public synchronized long stamp() {
+		return stamp;
+	}
+	
+	/**
+	 * Caches the specified entity group with the specified root entity key. 
+	 * If any entity group has been invalidated since the specified stamp was 
+	 * taken, the entity group is not cached, because it might be older than 
+	 * the invalidation. The entity group which contains {@code Lock} entity 
+	 * is not cached either. If this cache is full, the entity group is cached 
+	 * only if it is accessed more frequently than the least recently used 
+	 * one, which is evicted then.
+	 * 
+	 * @param key The root entity key of the entity group.
+	 * @param entities The entity group got from the datastore.
+	 * @param stamp The stamp taken before the entity group is got.
+	 */
+	public synchronized void put(Key key, List<Entity> entities, long stamp) {
+		if (stamp != this.stamp) {
+			return;
+		}
+		
+		for (Entity entity : entities) {
+			if (entity.getKind().equals(Translation.LOCK_KIND)) {
+				return;
+			}
+		}
+		
+		long now = System.currentTimeMillis();
+		
+		if (!groups.containsKey(key) && groups.size() >= size) {
+			Iterator<Map.Entry<Key, Group>> iterator = groups.entrySet().iterator();
+			Map.Entry<Key, Group> victim = iterator.next();
+			
+			// The expired group is evicted unconditionally.
+			if (now <= victim.getValue().expiration 
+					&& frequency(key) <= frequency(victim.getKey())) {
+				return;
+			}
+			
+			iterator.remove();
+			evictions++;
+		}
+		
+		groups.put(key, new Group(Collections.unmodifiableList(copy(entities)), now + ttl));
+	}
+	
+	private List<Entity> copy(List<Entity> entities) {
+		List<Entity> copy = new ArrayList<Entity>(entities.size());
+		
+		// 'Entity#clone()' copies the collection values into new lists.
+		for (Entity entity : entities) {
+			copy.add(entity.clone());
+		}
+		
+		return copy;
+	}
+	
+	private void record(Key key) {
+		int hash = spread(key.hashCode());
+		
+		for (int i = 0; i < SEEDS.length; i++) {
+			int index = index(hash, i);
+			
+			if (sketch[index] < MAXIMUM_FREQUENCY) {
+				sketch[index]++;
+			}
+		}
+		
+		// Halves every counter periodically, so that the old accesses fade 
+		// out.
+		if (++additions >= period) {
+			for (int i = 0; i < sketch.length; i++) {
+				sketch[i] >>>= 1;
+			}
+			
+			additions >>>= 1;
+		}
+	}
+	
+	private int frequency(Key key) {
+		int hash = spread(key.hashCode());
+		int frequency = MAXIMUM_FREQUENCY;
+		
+		for (int i = 0; i < SEEDS.length; i++) {
+			frequency = Math.min(frequency, sketch[index(hash, i)]);
+		}
+		
+		return frequency;
+	}
+	
+	private int spread(int hash) {
+		hash ^= hash >>> 17;
+		hash *= 0xed5ad4bb;
+		return hash ^ (hash >>> 11);
+	}
+	
+	private int index(int hash, int i) {
+		int h = hash * SEEDS[i];
+		return (h ^ (h >>> 16)) & (sketch.length - 1);
+	}
+	
+	/**
+	 * Invalidates the entity groups corresponding to the specified root entity 
+	 * keys.
+	 * 
+	 * @param keys The root entity keys of the entity groups.
+	 */
+	public synchronized void invalidate(Collection<Key> keys) {
+		stamp++;
+		groups.keySet().removeAll(keys);
+	}
+	
+	/** Invalidates all the cached entity groups. */
+	public synchronized void clear() {
+		stamp++;
+		groups.clear();
+	}
+	
+	/**
+	 * Returns the maximum number of the cached entity groups.
+	 * 
+	 * @return The maximum number of the cached entity groups.
+	 */
+	public int size() {
+		return size;
+	}
+	
+	/**
+	 * Returns the time-to-live of the cached entity group as millisecond.
+	 * 
+	 * @return The time-to-live of the cached entity group.
+	 */
+	public long ttl() {
+		return ttl;
+	}
+	
+	/**
+	 * Returns the number of the entity groups served from this cache.
+	 * 
+	 * @return The number of the cache hits.
+	 */
+	public synchronized long hits() {
+		return hits;
+	}
+	
+	/**
+	 * Returns the number of the entity groups not found in this cache.
+	 * 
+	 * @return The number of the cache misses.
+	 */
+	public synchronized long misses() {
+		return misses;
+	}
+	
+	/**
+	 * Returns the number of the entity groups evicted from this cache due to 
+	 * the size limit or expiration. The invalidated entity groups and the 
+	 * entity groups which are not admitted are not counted.
+	 * 
+	 * @return The number of the cache evictions.
+	 */
+	public synchronized long evictions() {
+		Iterator<Group> iterator = groups.values().iterator();
+		long now = System.currentTimeMillis();
+		
+		while (iterator.hasNext()) {
+			if (now > iterator.next().expiration) {
+				iterator.remove();
+				evictions++;
+			}
+		}
+		
+		return evictions;
+	}
+	
+	private static class Group {
+		
+		private final List<Entity> entities;
+		
+		private final long expiration;
+		
+		private Group(List<Entity> entities, long expiration) {
+			this.entities = entities;
+			this.expiration = expiration;
+		}
+		
+	}
+	
+}
@@ -18,9 +18,13 @@ package org.eiichiro.acidhouse.appengine;
 import static org.eiichiro.acidhouse.Entities.*;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.logging.Logger;
 
 import org.eiichiro.acidhouse.Coordinator;
@@ -51,6 +55,10 @@ public class AppEngineCoordinator implements Coordinator {
 	private final Map<Object, ResourceManager<Transaction>> managers 
 			= new HashMap<Object, ResourceManager<Transaction>>();
 	
+	private final Set<Key> groups = new HashSet<Key>();
+	
+	private Transaction shared;
+	
 	/**
 	 * Constructs a new {@code AppEngineCoordinator} instance with the 
 	 * {@code AppEngineGlobalTransaction} and 
@@ -77,10 +85,31 @@ public class AppEngineCoordinator implements Coordinator {
 	 */
 	@Override
 	public <E> E get(Class<E> clazz, Object key) {
-		ResourceManager<Transaction> manager = new AppEngineResourceManager(
-				datastore, datastore.beginTransaction(), transaction);
-		E entity = manager.get(clazz, key);
-		managers.put(key, manager);
+		Key k = Keys.create(Translation.toKind(clazz), key);
+		Object cached = transaction.entities().get(k);
+		E entity = null;
+		
+		// The resource manager is looked up with the key value of the entity 
+		// even if the entity is got with App Engine Datastore Key.
+		if (key instanceof Key) {
+			key = (k.getName() != null) ? k.getName() : (Object) k.getId();
+		}
+		
+		// The entity got repeatedly in the same transaction is returned from 
+		// the identity map.
+		if (clazz.isInstance(cached) && managers.containsKey(key)) {
+			entity = clazz.cast(cached);
+		} else {
+			ResourceManager<Transaction> manager = new AppEngineResourceManager(
+					datastore, transaction(k), transaction);
+			entity = manager.get(clazz, key);
+			managers.put(key, manager);
+			
+			if (entity != null) {
+				transaction.entities().put(k, entity);
+			}
+		}
+		
 		transaction.logs().add(new Log(transaction.logs().size() + 1,
 				Log.Operation.GET, entity));
 		logger.fine("Transaction [" + transaction.id() + "]: Entity [" + entity + "] has been get");
@@ -96,7 +125,7 @@ public class AppEngineCoordinator implements Coordinator {
 	@Override
 	public void put(Object entity) {
 		ResourceManager<Transaction> manager = new AppEngineResourceManager(
-				datastore, datastore.beginTransaction(), transaction);
+				datastore, transaction(group(entity)), transaction);
 		manager.put(entity);
 		Log log = new Log(transaction.logs().size() + 1, Log.Operation.PUT, entity);
 		log.state(State.UNCOMMITTED);
@@ -104,6 +133,38 @@ public class AppEngineCoordinator implements Coordinator {
 		managers.put(keyValue(entity), manager);
 		logger.fine("Transaction [" + transaction.id() + "]: Entity [" + entity + "] has been put");
 	}
+	
+	/**
+	 * Puts the specified entity instances into the datastore newly within the 
+	 * current transaction. The existence of the entities is checked with the 
+	 * batch operations for each local transaction.
+	 * 
+	 * @param entities The entities to be put into the datastore.
+	 */
+	public void putAll(Collection<?> entities) {
+		List<Object> list = new ArrayList<Object>(entities);
+		List<AppEngineResourceManager> puts = new ArrayList<AppEngineResourceManager>(list.size());
+		
+		for (Object entity : list) {
+			if (entity == null) {
+				throw new IllegalArgumentException("'entities' must not contain [" + entity + "]");
+			}
+			
+			puts.add(new AppEngineResourceManager(datastore, 
+					transaction(group(entity)), transaction));
+		}
+		
+		AppEngineResourceManager.put(datastore, puts, list);
+		
+		for (int i = 0; i < list.size(); i++) {
+			Object entity = list.get(i);
+			Log log = new Log(transaction.logs().size() + 1, Log.Operation.PUT, entity);
+			log.state(State.UNCOMMITTED);
+			transaction.logs().add(log);
+			managers.put(keyValue(entity), puts.get(i));
+			logger.fine("Transaction [" + transaction.id() + "]: Entity [" + entity + "] has been put");
+		}
+	}
 
 	/**
 	 * Updates the entity in the datastore with the specified one within the 
@@ -123,6 +184,7 @@ public class AppEngineCoordinator implements Coordinator {
 		}
 		
 		manager.update(entity);
+		transaction.entities().remove(group(entity));
 		Log log = new Log(transaction.logs().size() + 1, Log.Operation.UPDATE, entity);
 		log.state(State.UNCOMMITTED);
 		transaction.logs().add(log);
@@ -147,17 +209,55 @@ public class AppEngineCoordinator implements Coordinator {
 		}
 		
 		manager.delete(entity);
+		transaction.entities().remove(group(entity));
 		Log log = new Log(transaction.logs().size() + 1, Log.Operation.DELETE, entity);
 		log.state(State.UNCOMMITTED);
 		transaction.logs().add(log);
 		logger.fine("Transaction [" + transaction.id() + "]: Entity [" + entity + "] has been deleted");
 	}
 
+	// Up to the maximum number of entity groups which a datastore transaction 
+	// can span, every resource manager shares the same local transaction so 
+	// that the modifications can be committed without two-phase commit.
+	private Transaction transaction(Key key) {
+		Key group = Keys.ancestor(key);
+		
+		if (groups.contains(group) || groups.size() < datastore.groups()) {
+			if (shared == null) {
+				shared = datastore.beginTransaction();
+			}
+			
+			groups.add(group);
+			return shared;
+		}
+		
+		return datastore.beginTransaction();
+	}
+	
+	private Key group(Object entity) {
+		return Keys.ancestor(Keys.create(
+				Translation.toKind(entity.getClass()), keyValue(entity)));
+	}
+	
 	/**
-	 * Commits every operation in the current transaction with "Two-phase commit 
-	 * protocol".
-	 * Optimization: If the current transaction has just one operation, this 
-	 * method commits it by Single-phase commit protocol.<br>
+	 * Commits every operation in the current transaction. This method 
+	 * analyzes the entity groups modified in the current transaction and 
+	 * chooses the commitment protocol as the following.
+	 * <ul>
+	 * <li>
+	 * If the current transaction modifies just one entity group, this method 
+	 * commits it by Single-phase commit protocol (local transaction).
+	 * </li>
+	 * <li>
+	 * If every modified entity group is enlisted in the local transaction 
+	 * shared by the {@code ResourceManager}s (up to 
+	 * {@link AppEngineDatastoreService#groups()} entity groups), this method 
+	 * commits it by the datastore's XG (Cross-Group) transaction.
+	 * </li>
+	 * <li>
+	 * Otherwise, this method commits it by "Two-phase commit protocol".
+	 * </li>
+	 * </ul>
 	 * In the preparation phase, this method invokes every {@code ResourceManager}'s 
 	 * {@code ResourceManager#prepare()} method to lock the managing entity. If 
 	 * this phase failed due to any exceptions, {@code AppEngineCoordinator} 
@@ -178,95 +278,168 @@ public class AppEngineCoordinator implements Coordinator {
 	@Override
 	public void commit() throws IndoubtException {
 		List<Log> logs = transaction.logs();
-		int group = 0;
-		int last = 0;
 		
-		for (int i = 0; i < logs.size(); i++) {
-			if (logs.get(i).operation() != Log.Operation.GET) {
-				group++;
-				last = i;
+		// The last log for each entity group (in the order of the last 
+		// modification). The last one is the owner of the transaction.
+		Map<Key, Log> modifications = new LinkedHashMap<Key, Log>();
+		
+		for (Log log : logs) {
+			if (log.operation() != Log.Operation.GET) {
+				Key group = group(log.entity());
+				modifications.remove(group);
+				modifications.put(group, log);
 			}
 		}
 		
-		if (group == 0) {
+		if (modifications.isEmpty()) {
 			return;
 		}
 		
 		// Optimization: Processes by Single-phase commit (local transaction) if 
 		// this transaction has just one entity group.
-		if (group == 1) {
+		if (modifications.size() == 1) {
 			logger.fine("Transaction [" + transaction.id() + "]: Completion started (Single-phase commitment)");
-			Log log = logs.get(last);
-			Object entity = log.entity();
-			ResourceManager<Transaction> manager = managers.get(keyValue(entity));
-			List<Entity> entities = Translation.toEntities(entity);
+			Log log = modifications.values().iterator().next();
+			commit(managers.get(keyValue(log.entity())).transaction(), modifications.values());
+			return;
+		}
+		
+		// Optimization: Processes by XG transaction if every entity group is 
+		// enlisted in the shared transaction.
+		if (groups.containsAll(modifications.keySet())) {
+			logger.fine("Transaction [" + transaction.id() + "]: Completion started (Cross-group transaction)");
+			commit(shared, modifications.values());
+			return;
+		}
+		
+		// Two-phase commit protocol. Phase 1: Preparation phase.
+		logger.fine("Transaction [" + transaction.id() + "]: Completion started (Two-phase commitment protocol)");
+		List<Log> owners = new ArrayList<Log>(modifications.values());
+		Log owner = owners.remove(owners.size() - 1);
+		AppEngineResourceManager manager = (AppEngineResourceManager) managers.get(keyValue(owner.entity()));
+		List<AppEngineResourceManager> others = new ArrayList<AppEngineResourceManager>();
+		List<AppEngineResourceManager> lasts = new ArrayList<AppEngineResourceManager>();
+		
+		for (Log log : owners) {
+			AppEngineResourceManager m = (AppEngineResourceManager) managers.get(keyValue(log.entity()));
 			
-			if (log.operation() != Log.Operation.DELETE) {
-				datastore.put(manager.transaction(), entities);
+			if (m.transaction() == manager.transaction()) {
+				lasts.add(m);
 			} else {
-				List<Key> deletes = new ArrayList<Key>();
-				
-				for (Entity e : entities) {
-					deletes.add(e.getKey());
-				}
-				
-				datastore.delete(manager.transaction(), deletes);
+				others.add(m);
+			}
+		}
+		
+		lasts.add(manager);
+		
+		try {
+			List<Entity> entities = Translation.toEntities(transaction,
+					Keys.create(Translation.toKind(owner.entity().getClass()), 
+							keyValue(owner.entity())));
+			datastore.putAll(manager.transaction(), entities);
+			
+			// Every other entity group is locked concurrently, and then the 
+			// local transaction which holds the transaction entities is 
+			// committed at last.
+			AppEngineResourceManager.prepare(datastore, others);
+			AppEngineResourceManager.prepare(datastore, lasts);
+		} catch (Exception e) {
+			throw new UncheckedException(e);
+		} finally {
+			// The locked entity groups must not be served from the near cache.
+			datastore.invalidate(modifications.keySet());
+		}
+		
+		for (Log log : logs) {
+			if (log.operation() != Log.Operation.GET) {
+				log.state(State.PREPARED);
+			}
+		}
+		
+		logger.fine("Transaction [" + transaction.id() + "]: Transaction has been prepared");
+		
+		// Phase 2: Commitment phase. Every operation is applied concurrently 
+		// except the owner's, which deletes the transaction entities at last.
+		try {
+			List<AppEngineResourceManager> applies = new ArrayList<AppEngineResourceManager>();
+			
+			for (Log log : owners) {
+				applies.add((AppEngineResourceManager) managers.get(keyValue(log.entity())));
+			}
+			
+			AppEngineResourceManager.commit(datastore, applies);
+			
+			for (Log log : owners) {
+				committed(logs, log.entity());
 			}
 			
-			manager.transaction().commit();
-			log.state(State.COMMITTED);
-			logger.fine("Transaction [" + transaction.id() + "]: Transaction has been committed");
+			manager.commit();
+			committed(logs, owner.entity());
+		} catch (Exception e) {
+			logger.warning("Transaction [" + transaction.id()
+					+ "]: Commitment failed due to [" + e
+					+ "]; Consistency will be ensured in read");
+			e.printStackTrace();
 			return;
+		} finally {
+			datastore.invalidate(modifications.keySet());
 		}
 		
-		// Two-phase commit protocol. Phase 1: Preparation phase.
-		logger.fine("Transaction [" + transaction.id() + "]: Completion started (Two-phase commitment protocol)");
+		logger.fine("Transaction [" + transaction.id() + "]: Transaction has been committed");
+	}
+	
+	private void commit(Transaction local, Collection<Log> modifications) {
+		List<Entity> puts = new ArrayList<Entity>();
+		List<Key> deletes = new ArrayList<Key>();
 		
-		for (int i = 0; i < logs.size(); i++) {
-			Log log = logs.get(i);
+		for (Log log : modifications) {
+			List<Entity> entities = Translation.toEntities(log.entity());
 			
-			if (log.operation() != Log.Operation.GET) {
-				Object entity = log.entity();
-				ResourceManager<Transaction> manager = managers.get(keyValue(entity));
-				
-				try {
-					if (i == last) {
-						List<Entity> entities = Translation.toEntities(transaction,
-								Keys.create(Translation.toKind(entity.getClass()), 
-										keyValue(entity)));
-						datastore.put(manager.transaction(), entities);
-					}
-					
-					manager.prepare();
-					log.state(State.PREPARED);
-				} catch (Exception e) {
-					throw new UncheckedException(e);
+			if (log.operation() != Log.Operation.DELETE) {
+				puts.addAll(entities);
+			} else {
+				for (Entity e : entities) {
+					deletes.add(e.getKey());
 				}
 			}
 		}
 		
-		logger.fine("Transaction [" + transaction.id() + "]: Transaction has been prepared");
+		if (!puts.isEmpty()) {
+			datastore.putAll(local, puts);
+		}
 		
-		// Phase 2: Commitment phase.
-		for (Log log : logs) {
+		if (!deletes.isEmpty()) {
+			datastore.deleteAll(local, deletes);
+		}
+		
+		try {
+			local.commit();
+		} finally {
+			List<Key> keys = new ArrayList<Key>();
+			
+			for (Log log : modifications) {
+				keys.add(group(log.entity()));
+			}
+			
+			datastore.invalidate(keys);
+		}
+		
+		for (Log log : transaction.logs()) {
 			if (log.operation() != Log.Operation.GET) {
-				ResourceManager<Transaction> manager = managers.get(keyValue(log.entity()));
-				
-				try {
-					manager.commit();
-					log.state(State.COMMITTED);
-				} catch (Exception e) {
-					logger.warning("Transaction [" + transaction.id()
-							+ "]: Commitment failed due to [" + e
-							+ "]; Consistency will be ensured in read");
-					e.printStackTrace();
-					return;
-				}
+				log.state(State.COMMITTED);
 			}
 		}
 		
 		logger.fine("Transaction [" + transaction.id() + "]: Transaction has been committed");
 	}
+	
+	private void committed(List<Log> logs, Object entity) {
+		for (Log log : logs) {
+			if (log.operation() != Log.Operation.GET && log.entity() == entity) {
+				log.state(State.COMMITTED);
+			}
+		}
+	}
 
 	/** Rolls back every operation in the current transaction. */
 	@Override
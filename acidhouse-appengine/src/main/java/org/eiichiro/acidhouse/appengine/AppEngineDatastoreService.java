@@ -17,19 +17,43 @@ package org.eiichiro.acidhouse.appengine;
 
 import static org.eiichiro.acidhouse.appengine.Version.*;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.Supplier;
 import java.util.logging.Logger;
 
+import org.eiichiro.reverb.lang.UncheckedException;
+
+import com.google.appengine.api.ThreadManager;
+import com.google.appengine.api.datastore.AsyncDatastoreService;
 import com.google.appengine.api.datastore.DatastoreAttributes.DatastoreType;
 import com.google.appengine.api.datastore.DatastoreService;
+import com.google.appengine.api.datastore.DatastoreServiceFactory;
 import com.google.appengine.api.datastore.Entity;
 import com.google.appengine.api.datastore.EntityNotFoundException;
+import com.google.appengine.api.datastore.EntityTranslator;
 import com.google.appengine.api.datastore.FetchOptions;
 import com.google.appengine.api.datastore.Key;
 import com.google.appengine.api.datastore.Query;
+import com.google.appengine.api.datastore.QueryResultIterator;
 import com.google.appengine.api.datastore.Transaction;
 import com.google.appengine.api.datastore.TransactionOptions;
 import com.google.appengine.api.utils.SystemProperty;
+import com.google.apphosting.api.ApiProxy;
+import com.google.apphosting.api.ApiProxy.Environment;
 
 /**
  * {@code AppEngineDatastoreService} is a convenient wrapper of 
@@ -52,8 +76,25 @@ public class AppEngineDatastoreService {
 	
 	private final DatastoreService datastore;
 	
+	private final AsyncDatastoreService async;
+	
 	private DatastoreType datastoreType;
 	
+	private int concurrency = 10;
+	
+	private int groups = 25;
+	
+	private int batch = 500;
+	
+	/** The maximum encoded size of the entities put in a batch. */
+	static final int BATCH_BYTES = 1024 * 1024;
+	
+	private AppEngineCache cache;
+	
+	private AppEngineMemcache memcache;
+	
+	private Executor executor;
+	
 	/**
 	 * Constructs a new {@code AppEngineDatastoreService} with the specified 
 	 * {@code com.google.appengine.api.datastore.DatastoreService}.
@@ -61,7 +102,21 @@ public class AppEngineDatastoreService {
 	 * @param datastore com.google.appengine.api.datastore.DatastoreService.
 	 */
 	public AppEngineDatastoreService(DatastoreService datastore) {
+		this(datastore, DatastoreServiceFactory.getAsyncDatastoreService());
+	}
+	
+	/**
+	 * Constructs a new {@code AppEngineDatastoreService} with the specified 
+	 * {@code com.google.appengine.api.datastore.DatastoreService} and 
+	 * {@code com.google.appengine.api.datastore.AsyncDatastoreService}.
+	 * 
+	 * @param datastore com.google.appengine.api.datastore.DatastoreService.
+	 * @param async com.google.appengine.api.datastore.AsyncDatastoreService 
+	 * to execute the batch operations concurrently.
+	 */
+	public AppEngineDatastoreService(DatastoreService datastore, AsyncDatastoreService async) {
 		this.datastore = datastore;
+		this.async = async;
 		datastoreType = datastore.getDatastoreAttributes().getDatastoreType();
 		logger.fine("Application [" + SystemProperty.applicationId.get()
 				+ "] is using [" + datastoreType + "] datastore");
@@ -77,12 +132,24 @@ public class AppEngineDatastoreService {
 	 */
 	public Entity get(Key key) {
 		try {
-			return datastore.get(key);
+			return datastore.get(null, key);
 		} catch (EntityNotFoundException e) {
 			return null;
 		}
 	}
 	
+	/**
+	 * Gets App Engine Datastore entities corresponding to the specified 
+	 * {@code Key}s with a single batch operation. The entities which don't 
+	 * exist in the datastore are not contained in the returned {@code Map}.
+	 * 
+	 * @param keys The keys to get the entities.
+	 * @return The entities corresponding to the specified {@code Key}s.
+	 */
+	public Map<Key, Entity> get(Iterable<Key> keys) {
+		return datastore.get(null, keys);
+	}
+	
 	/**
 	 * Gets App Engine Datastore entity corresponding to the specified 
 	 * {@code Key} within the specified {@code Transaction}.
@@ -160,6 +227,389 @@ public class AppEngineDatastoreService {
 		return datastore.beginTransaction();
 	}
 	
+	/**
+	 * Begins transaction asynchronously.
+	 * If the current application is using High Replication Datastore, this 
+	 * method begins XG (Cross-Group) transaction.
+	 * 
+	 * @return {@code Future} of the transaction.
+	 */
+	public Future<Transaction> beginTransactionAsync() {
+		if (datastoreType == DatastoreType.HIGH_REPLICATION) {
+			return async.beginTransaction(TransactionOptions.Builder.withXG(true));
+		}
+		
+		return async.beginTransaction();
+	}
+	
+	/**
+	 * Gets App Engine Datastore entities corresponding to the specified 
+	 * {@code Key}s within the specified {@code Transaction} asynchronously. 
+	 * The entities which don't exist in the datastore are not contained in the 
+	 * result {@code Map}.
+	 * 
+	 * @param transaction The transaction to get the entities.
+	 * @param keys The keys to get the entities.
+	 * @return {@code Future} of the entities corresponding to the specified 
+	 * {@code Key}s.
+	 */
+	public Future<Map<Key, Entity>> getAsync(Transaction transaction, Iterable<Key> keys) {
+		return async.get(transaction, keys);
+	}
+	
+	/**
+	 * Puts the specified App Engine Datastore entities into the datastore 
+	 * within the specified {@code Transaction} asynchronously.
+	 * 
+	 * @param transaction The transaction to put the entities.
+	 * @param entities The entities to be put.
+	 * @return {@code Future} of the keys allocated to the stored entities.
+	 */
+	public Future<List<Key>> putAsync(Transaction transaction, Iterable<Entity> entities) {
+		return async.put(transaction, entities);
+	}
+	
+	/**
+	 * Deletes entities corresponding to the specified {@code Key}s from App 
+	 * Engine Datastore within the specified {@code Transaction} 
+	 * asynchronously.
+	 * 
+	 * @param transaction The transaction to delete entities.
+	 * @param keys The {@code Key}s corresponding to the entities to be deleted.
+	 * @return {@code Future} of the deletion.
+	 */
+	public Future<Void> deleteAsync(Transaction transaction, Iterable<Key> keys) {
+		return async.delete(transaction, keys);
+	}
+	
+	/**
+	 * Gets App Engine Datastore entities corresponding to the specified 
+	 * {@code Key}s within the specified {@code Transaction} in bulk. The keys 
+	 * are split into the batches of {@link #batch()} keys and the batches are 
+	 * got concurrently (up to {@link #concurrency()} batches in flight at the 
+	 * same time). The entities which don't exist in the datastore are not 
+	 * contained in the returned {@code Map}.
+	 * 
+	 * @param transaction The transaction to get the entities.
+	 * @param keys The keys to get the entities.
+	 * @return The entities corresponding to the specified {@code Key}s.
+	 */
+	public Map<Key, Entity> getAll(final Transaction transaction, List<Key> keys) {
+		Map<Key, Entity> entities = new HashMap<Key, Entity>();
+		
+		for (Map<Key, Entity> result : pipeline(partition(keys), concurrency, 
+				new Function<List<Key>, Future<Map<Key, Entity>>>() {
+			
+			@Override
+			public Future<Map<Key, Entity>> apply(List<Key> keys) {
+				return async.get(transaction, keys);
+			}
+			
+		})) {
+			entities.putAll(result);
+		}
+		
+		return entities;
+	}
+	
+	/**
+	 * Puts the specified App Engine Datastore entities into the datastore 
+	 * within the specified {@code Transaction} in bulk. The entities are split 
+	 * into the batches which contain {@link #batch()} entities and 
+	 * {@link #BATCH_BYTES} bytes at most, and the batches are put concurrently 
+	 * (up to {@link #concurrency()} batches in flight at the same time).
+	 * 
+	 * @param transaction The transaction to put the entities.
+	 * @param entities The entities to be put.
+	 * @return The keys allocated to the stored entities.
+	 */
+	public List<Key> putAll(Transaction transaction, List<Entity> entities) {
+		return putAll(transaction, entities, concurrency);
+	}
+	
+	/**
+	 * Puts the specified App Engine Datastore entities into the datastore 
+	 * within the specified {@code Transaction} in bulk with the specified 
+	 * number of the batches in flight at the same time.
+	 * 
+	 * @param transaction The transaction to put the entities.
+	 * @param entities The entities to be put.
+	 * @param concurrency The maximum number of the batches in flight.
+	 * @return The keys allocated to the stored entities.
+	 */
+	List<Key> putAll(final Transaction transaction, List<Entity> entities, int concurrency) {
+		List<Key> keys = new ArrayList<Key>(entities.size());
+		
+		for (List<Key> result : pipeline(batches(entities), concurrency, 
+				new Function<List<Entity>, Future<List<Key>>>() {
+			
+			@Override
+			public Future<List<Key>> apply(List<Entity> entities) {
+				return async.put(transaction, entities);
+			}
+			
+		})) {
+			keys.addAll(result);
+		}
+		
+		return keys;
+	}
+	
+	/**
+	 * Deletes entities corresponding to the specified {@code Key}s from App 
+	 * Engine Datastore within the specified {@code Transaction} in bulk. The 
+	 * keys are split into the batches of {@link #batch()} keys and the batches 
+	 * are deleted concurrently (up to {@link #concurrency()} batches in flight 
+	 * at the same time).
+	 * 
+	 * @param transaction The transaction to delete entities.
+	 * @param keys The {@code Key}s corresponding to the entities to be deleted.
+	 */
+	public void deleteAll(Transaction transaction, List<Key> keys) {
+		deleteAll(transaction, keys, concurrency);
+	}
+	
+	/**
+	 * Deletes entities corresponding to the specified {@code Key}s from App 
+	 * Engine Datastore within the specified {@code Transaction} in bulk with 
+	 * the specified number of the batches in flight at the same time.
+	 * 
+	 * @param transaction The transaction to delete entities.
+	 * @param keys The {@code Key}s corresponding to the entities to be deleted.
+	 * @param concurrency The maximum number of the batches in flight.
+	 */
+	void deleteAll(final Transaction transaction, List<Key> keys, int concurrency) {
+		pipeline(partition(keys), concurrency, new Function<List<Key>, Future<Void>>() {
+			
+			@Override
+			public Future<Void> apply(List<Key> keys) {
+				return async.delete(transaction, keys);
+			}
+			
+		});
+	}
+	
+	/**
+	 * Splits the specified entities into the batches which contain 
+	 * {@link #batch()} entities and {@link #BATCH_BYTES} bytes at most. The 
+	 * entity larger than {@link #BATCH_BYTES} is put into its own batch.
+	 * 
+	 * @param entities The entities to be split.
+	 * @return The batches of the entities.
+	 */
+	List<List<Entity>> batches(List<Entity> entities) {
+		List<List<Entity>> batches = new ArrayList<List<Entity>>();
+		List<Entity> current = new ArrayList<Entity>();
+		int bytes = 0;
+		
+		for (Entity entity : entities) {
+			int size = EntityTranslator.convertToPb(entity).encodingSize();
+			
+			if (!current.isEmpty() 
+					&& (current.size() >= batch || bytes + size > BATCH_BYTES)) {
+				batches.add(current);
+				current = new ArrayList<Entity>();
+				bytes = 0;
+			}
+			
+			current.add(entity);
+			bytes += size;
+		}
+		
+		if (!current.isEmpty()) {
+			batches.add(current);
+		}
+		
+		return batches;
+	}
+	
+	private <T> List<List<T>> partition(List<T> elements) {
+		List<List<T>> batches = new ArrayList<List<T>>();
+		
+		for (int i = 0; i < elements.size(); i += batch) {
+			batches.add(elements.subList(i, Math.min(i + batch, elements.size())));
+		}
+		
+		return batches;
+	}
+	
+	// Starts up to the concurrency operations asynchronously and waits for 
+	// them in lock-step. The results are returned in the order of the batches. 
+	// Every operation in the window is waited for even if any of them fails, 
+	// so that no operation is left in flight when the first failure is 
+	// reported.
+	private <T, R> List<R> pipeline(List<List<T>> batches, int concurrency, 
+			Function<List<T>, Future<R>> operation) {
+		List<R> results = new ArrayList<R>(batches.size());
+		
+		for (int i = 0; i < batches.size(); i += concurrency) {
+			int end = Math.min(i + concurrency, batches.size());
+			List<Future<R>> window = new ArrayList<Future<R>>(end - i);
+			RuntimeException exception = null;
+			
+			for (int j = i; j < end && exception == null; j++) {
+				try {
+					window.add(operation.apply(batches.get(j)));
+				} catch (RuntimeException e) {
+					exception = e;
+				}
+			}
+			
+			for (Future<R> future : window) {
+				try {
+					results.add(future.get());
+				} catch (ExecutionException e) {
+					Throwable cause = e.getCause();
+					
+					if (exception == null) {
+						exception = (cause instanceof RuntimeException) 
+								? (RuntimeException) cause : new UncheckedException(cause);
+					}
+				} catch (InterruptedException e) {
+					if (exception == null) {
+						exception = new UncheckedException(e);
+					}
+				}
+			}
+			
+			if (exception != null) {
+				throw exception;
+			}
+		}
+		
+		return results;
+	}
+	
+	/**
+	 * Gets the entity group (the entity and its children) corresponding to 
+	 * the specified root entity key outside of a transaction. The entity 
+	 * group is got from the near cache ({@link #cache()}), the second-level 
+	 * cache ({@link #memcache()}) and the datastore in this order, and the 
+	 * entity group got from the lower layer is cached into the upper ones.
+	 * 
+	 * @param key The root entity key of the entity group.
+	 * @return The entity group.
+	 */
+	List<Entity> group(Key key) {
+		List<Entity> entities = (cache == null) ? null : cache.get(key);
+		
+		if (entities != null) {
+			return entities;
+		}
+		
+		long stamp = (cache == null) ? 0 : cache.stamp();
+		entities = load(key);
+		
+		if (cache != null) {
+			cache.put(key, entities, stamp);
+		}
+		
+		return entities;
+	}
+	
+	/**
+	 * Gets the entity group corresponding to the specified root entity key 
+	 * outside of a transaction asynchronously, and applies the specified 
+	 * function to it. Unless the entity group is found in the near cache or 
+	 * the second-level cache is enabled, the ancestor query is started on 
+	 * the calling thread with {@code AsyncDatastoreService}.
+	 * 
+	 * @param <T> The type of the function result.
+	 * @param key The root entity key of the entity group.
+	 * @param function The function to be applied to the entity group.
+	 * @return The future of the function result.
+	 */
+	<T> CompletableFuture<T> groupAsync(final Key key, 
+			final Function<List<Entity>, T> function) {
+		final List<Entity> cached = (cache == null) ? null : cache.get(key);
+		final long stamp = (cache == null) ? 0 : cache.stamp();
+		
+		// The version of the second-level cache must be got before the query, 
+		// so the query is started on the completing thread in that case.
+		final List<Entity> pending = (cached == null && memcache == null) 
+				? async.prepare(null, new Query(key)).asList(FetchOptions.Builder.withOffset(0)) : null;
+		return async(new Supplier<T>() {
+			
+			@Override
+			public T get() {
+				List<Entity> entities = cached;
+				
+				if (entities == null) {
+					entities = (pending == null) ? load(key) : new ArrayList<Entity>(pending);
+					
+					if (cache != null) {
+						cache.put(key, entities, stamp);
+					}
+				}
+				
+				return function.apply(entities);
+			}
+			
+		});
+	}
+	
+	private List<Entity> load(Key key) {
+		List<Entity> entities = null;
+		long version = 0;
+		
+		if (memcache != null) {
+			version = memcache.version(key);
+			entities = memcache.get(key, version);
+		}
+		
+		if (entities == null) {
+			entities = query(new Query(key));
+			
+			if (memcache != null) {
+				memcache.put(key, version, entities);
+			}
+		}
+		
+		return entities;
+	}
+	
+	/**
+	 * Executes the specified operation with {@link #executor()} and returns 
+	 * the future of the operation result. The App Engine API environment of 
+	 * the calling thread is installed on the executing thread while the 
+	 * operation runs (and the environment of the executing thread is restored 
+	 * after it), so the operation (and the dependent stages completed by it) 
+	 * makes the datastore operations on behalf of the calling request.
+	 * 
+	 * @param <T> The type of the operation result.
+	 * @param supplier The operation to be executed.
+	 * @return The future of the operation result.
+	 */
+	<T> CompletableFuture<T> async(final Supplier<T> supplier) {
+		final Environment environment = ApiProxy.getCurrentEnvironment();
+		final CompletableFuture<T> future = new CompletableFuture<T>();
+		executor().execute(new Runnable() {
+			
+			@Override
+			public void run() {
+				Environment current = ApiProxy.getCurrentEnvironment();
+				
+				if (environment != null) {
+					ApiProxy.setEnvironmentForCurrentThread(environment);
+				}
+				
+				try {
+					future.complete(supplier.get());
+				} catch (Throwable e) {
+					future.completeExceptionally(e);
+				} finally {
+					if (current != null) {
+						ApiProxy.setEnvironmentForCurrentThread(current);
+					} else if (environment != null) {
+						ApiProxy.clearEnvironmentForCurrentThread();
+					}
+				}
+			}
+			
+		});
+		return future;
+	}
+	
 	/**
 	 * Executes the specified query without an offset qualification.
 	 * 
@@ -192,7 +642,113 @@ public class AppEngineDatastoreService {
 	 * @return The query result as {@code List} view.
 	 */
 	public List<Entity> query(Query query, FetchOptions options) {
-		return datastore.prepare(query).asList(options);
+		return datastore.prepare(null, query).asList(options);
+	}
+	
+	/**
+	 * Executes the specified query with the specified fetch options and 
+	 * returns the query result as {@code QueryResultIterator}. The result is 
+	 * fetched from the datastore lazily in the chunk size of the fetch 
+	 * options as the iteration proceeds.
+	 * 
+	 * @param query The query to be executed.
+	 * @param options The fetch options which the specified query is executed 
+	 * with.
+	 * @return The query result as {@code QueryResultIterator}.
+	 */
+	public QueryResultIterator<Entity> iterate(Query query, FetchOptions options) {
+		return datastore.prepare(null, query).asQueryResultIterator(options);
+	}
+	
+	/**
+	 * Executes the specified queries concurrently and returns the results in 
+	 * the same order as the specified queries. The number of the queries in 
+	 * flight at the same time is bounded by {@link #concurrency()}.
+	 * 
+	 * @param queries The queries to be executed.
+	 * @return The query results as {@code List} view.
+	 */
+	public List<List<Entity>> query(List<Query> queries) {
+		return query(null, queries);
+	}
+	
+	/**
+	 * Executes the specified queries concurrently in the specified transaction 
+	 * and returns the results in the same order as the specified queries. 
+	 * The number of the queries in flight at the same time is bounded by 
+	 * {@link #concurrency()}.
+	 * 
+	 * @param transaction The transaction in which the specified queries are 
+	 * executed.
+	 * @param queries The queries to be executed.
+	 * @return The query results as {@code List} view.
+	 */
+	public List<List<Entity>> query(Transaction transaction, List<Query> queries) {
+		List<List<Entity>> results = new ArrayList<List<Entity>>(queries.size());
+		
+		for (int i = 0; i < queries.size(); i += concurrency) {
+			int end = Math.min(i + concurrency, queries.size());
+			List<List<Entity>> window = new ArrayList<List<Entity>>(end - i);
+			
+			// Every query in the window starts fetching asynchronously here.
+			for (int j = i; j < end; j++) {
+				window.add(async.prepare(transaction, queries.get(j)).asList(FetchOptions.Builder.withOffset(0)));
+			}
+			
+			for (List<Entity> result : window) {
+				// Waits for the completion.
+				result.size();
+				results.add(result);
+			}
+		}
+		
+		return results;
+	}
+	
+	/**
+	 * Counts the entities which match the specified query with the keys-only 
+	 * query on the datastore, without getting the entities.
+	 * 
+	 * @param query The query to be counted.
+	 * @return The number of the entities which match the specified query.
+	 */
+	public int count(Query query) {
+		return datastore.prepare(null, query).countEntities(FetchOptions.Builder.withDefaults());
+	}
+	
+	/**
+	 * Returns the keys of the entities in the entity groups corresponding to 
+	 * the specified root entity keys (the root entities and their children) 
+	 * with the concurrent keys-only ancestor queries in the specified 
+	 * transaction. The keys of Acid House internal entities ({@code Lock}, 
+	 * {@code Transaction} and {@code Log}) are not contained.
+	 * 
+	 * @param transaction The transaction in which the queries are executed.
+	 * @param keys The root entity keys of the entity groups.
+	 * @return The keys of the entities in the entity groups.
+	 */
+	public List<Key> keys(Transaction transaction, List<Key> keys) {
+		List<Query> queries = new ArrayList<Query>(keys.size());
+		
+		for (Key key : keys) {
+			queries.add(new Query(key).setKeysOnly());
+		}
+		
+		List<Key> descendants = new ArrayList<Key>();
+		
+		for (List<Entity> result : query(transaction, queries)) {
+			for (Entity entity : result) {
+				String kind = entity.getKind();
+				
+				if (!kind.equals(Translation.LOCK_KIND) 
+						&& !kind.equals(Translation.TRANSACTION_KIND) 
+						&& !kind.equals(Translation.LOG_KIND)) {
+					descendants.add(entity.getKey());
+				}
+			}
+		}
+		
+		return descendants;
 	}
 	
 	/**
@@ -219,6 +775,215 @@ public class AppEngineDatastoreService {
 		return 60000;
 	}
 
+	/**
+	 * Returns the maximum number of the concurrent datastore operations in 
+	 * the batch operation.
+	 * 
+	 * @return The maximum number of the concurrent datastore operations.
+	 */
+	public int concurrency() {
+		return concurrency;
+	}
+	
+	/**
+	 * Sets the maximum number of the concurrent datastore operations in the 
+	 * batch operation.
+	 * 
+	 * @param concurrency The maximum number of the concurrent datastore 
+	 * operations.
+	 */
+	public void concurrency(int concurrency) {
+		if (concurrency < 1) {
+			throw new IllegalArgumentException("'concurrency' must be greater than or equal to [" + 1 + "]");
+		}
+		
+		this.concurrency = concurrency;
+	}
+	
+	/**
+	 * Returns the maximum number of the entities (or keys) in a batch of the 
+	 * bulk operation.
+	 * 
+	 * @return The maximum number of the entities in a batch.
+	 */
+	public int batch() {
+		return batch;
+	}
+	
+	/**
+	 * Sets the maximum number of the entities (or keys) in a batch of the 
+	 * bulk operation. It must not be greater than the limit of the datastore 
+	 * (500 entities for a batch put or delete).
+	 * 
+	 * @param batch The maximum number of the entities in a batch.
+	 */
+	public void batch(int batch) {
+		if (batch < 1) {
+			throw new IllegalArgumentException("'batch' must be greater than or equal to [" + 1 + "]");
+		}
+		
+		this.batch = batch;
+	}
+	
+	/**
+	 * Returns the maximum number of entity groups which a transaction 
+	 * returned by {@link #beginTransaction()} can span. If the current 
+	 * application is not using High Replication Datastore, this method always 
+	 * returns 1.
+	 * 
+	 * @return The maximum number of entity groups in a transaction.
+	 */
+	public int groups() {
+		return (datastoreType == DatastoreType.HIGH_REPLICATION) ? groups : 1;
+	}
+	
+	/**
+	 * Sets the maximum number of entity groups which a XG (Cross-Group) 
+	 * transaction can span.
+	 * 
+	 * @param groups The maximum number of entity groups in a XG transaction.
+	 */
+	public void groups(int groups) {
+		if (groups < 1) {
+			throw new IllegalArgumentException("'groups' must be greater than or equal to [" + 1 + "]");
+		}
+		
+		this.groups = groups;
+	}
+	
+	/**
+	 * Returns the near cache of the entity groups got outside of a 
+	 * transaction. This method returns {@code null} if the near cache is 
+	 * disabled.
+	 * 
+	 * @return The near cache of the entity groups.
+	 */
+	public AppEngineCache cache() {
+		return cache;
+	}
+	
+	/**
+	 * Sets the near cache of the entity groups got outside of a transaction. 
+	 * The near cache is disabled if {@code null} is specified.
+	 * 
+	 * @param cache The near cache of the entity groups.
+	 */
+	public void cache(AppEngineCache cache) {
+		this.cache = cache;
+	}
+	
+	/**
+	 * Returns the second-level cache of the entity groups got outside of a 
+	 * transaction. This method returns {@code null} if the second-level cache 
+	 * is disabled.
+	 * 
+	 * @return The second-level cache of the entity groups.
+	 */
+	public AppEngineMemcache memcache() {
+		return memcache;
+	}
+	
+	/**
+	 * Sets the second-level cache of the entity groups got outside of a 
+	 * transaction. The second-level cache is disabled if {@code null} is 
+	 * specified.
+	 * 
+	 * @param memcache The second-level cache of the entity groups.
+	 */
+	public void memcache(AppEngineMemcache memcache) {
+		this.memcache = memcache;
+	}
+	
+	/**
+	 * Invalidates the entity groups corresponding to the specified root 
+	 * entity keys in the near cache and the second-level cache.
+	 * 
+	 * @param keys The root entity keys of the modified entity groups.
+	 */
+	void invalidate(Collection<Key> keys) {
+		if (cache != null) {
+			cache.invalidate(keys);
+		}
+		
+		if (memcache != null) {
+			memcache.invalidate(keys);
+		}
+	}
+	
+	/**
+	 * Returns the {@code Executor} which completes the asynchronous 
+	 * operations. If no {@code Executor} has been set, the default executor 
+	 * is created on the first call: it runs each operation on a new thread 
+	 * made by {@code ThreadManager#currentRequestThreadFactory()} of the 
+	 * submitting thread (or a daemon thread if the submitting thread is not 
+	 * an App Engine request thread), up to {@link #concurrency()} threads at the same time, and 
+	 * runs the operation on the submitting thread when all of them are busy, 
+	 * so the operation submitted from the executing thread never waits for a 
+	 * free thread. The threads are not reused across the operations, because 
+	 * the request thread cannot outlive the request which creates it.
+	 * 
+	 * @return The {@code Executor} which completes the asynchronous 
+	 * operations.
+	 */
+	public synchronized Executor executor() {
+		if (executor == null) {
+			ThreadPoolExecutor executor = new ThreadPoolExecutor(0, concurrency, 
+					0, TimeUnit.SECONDS, new SynchronousQueue<Runnable>(), 
+					threadFactory(), new ThreadPoolExecutor.CallerRunsPolicy());
+			this.executor = executor;
+		}
+		
+		return executor;
+	}
+	
+	/**
+	 * Sets the {@code Executor} which completes the asynchronous operations. 
+	 * By default, the asynchronous operations are completed with the bounded 
+	 * executor described in {@link #executor()}.
+	 * 
+	 * @param executor The {@code Executor} which completes the asynchronous 
+	 * operations.
+	 */
+	public synchronized void executor(Executor executor) {
+		if (executor == null) {
+			throw new IllegalArgumentException("'executor' must not be [" + executor + "]");
+		}
+		
+		this.executor = executor;
+	}
+	
+	// The thread is created with the request thread factory of the 
+	// submitting thread, so it belongs to the request which submits the 
+	// operation. The request thread factory is unavailable outside of the App 
+	// Engine request (e.g., on the thread not created by ThreadManager) and 
+	// may fail to be linked with the local development server on the newer 
+	// JVM. In these cases, the daemon thread is created instead.
+	private ThreadFactory threadFactory() {
+		return new ThreadFactory() {
+			
+			@Override
+			public Thread newThread(Runnable runnable) {
+				Thread thread = null;
+				
+				try {
+					thread = ThreadManager.currentRequestThreadFactory().newThread(runnable);
+				} catch (RuntimeException e) {
+					logger.fine("Request thread cannot be created due to [" + e + "]");
+				} catch (LinkageError e) {
+					logger.fine("Request thread cannot be created due to [" + e + "]");
+				}
+				
+				if (thread == null) {
+					thread = Executors.defaultThreadFactory().newThread(runnable);
+					thread.setDaemon(true);
+				}
+				
+				return thread;
+			}
+			
+		};
+	}
+	
 	void datastoreType(DatastoreType datastoreType) {
 		this.datastoreType = datastoreType;
 	}
@@ -18,10 +18,17 @@ package org.eiichiro.acidhouse.appengine;
 import static org.eiichiro.acidhouse.Entities.*;
 
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.ConcurrentModificationException;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+import java.util.function.Supplier;
 import java.util.logging.Logger;
 
 import org.eiichiro.acidhouse.Aggregation;
@@ -123,18 +130,28 @@ public class AppEngineDatastoreSession implements Session {
 		}
 		
 		Key k = Keys.create(Translation.toKind(clazz), key);
-		Map<Key, Object> references = new HashMap<Key, Object>();
 		
 		if (!isTransactional()) {
-			return Translation.toObject(
-					clazz, datastore.query(new Query(k)), references, datastore);
+			return Translation.toObject(clazz, datastore.group(k), 
+					new HashMap<Key, Object>(), datastore);
 		} else {
+			// The entity got repeatedly in the same transaction is returned from 
+			// the identity map.
 			AppEngineTransaction tx = transaction.get();
-			E entity = Translation.toObject(
-					clazz, datastore.query(tx.transaction(), new Query(k)), references, datastore);
+			Object cached = tx.entities().get(k);
+			E entity = null;
 			
-			if (entity == null) {
-				return entity;
+			if (clazz.isInstance(cached)) {
+				entity = clazz.cast(cached);
+			} else {
+				entity = Translation.toObject(clazz, 
+						datastore.query(tx.transaction(), new Query(k)), tx.references(), datastore);
+				
+				if (entity == null) {
+					return entity;
+				}
+				
+				tx.entities().put(k, entity);
 			}
 			
 			List<Log> logs = tx.logs();
@@ -143,6 +160,186 @@ public class AppEngineDatastoreSession implements Session {
 		}
 	}
 
+	/**
+	 * Returns the future of the entity instance corresponding to the specified 
+	 * key. Outside of a transaction, the ancestor query is started on the 
+	 * calling thread with {@code AsyncDatastoreService} and the entity is 
+	 * translated with {@link AppEngineDatastoreService#executor()}. Under a 
+	 * transaction, the entity is got on the calling thread to log the 
+	 * {@code GET} operation.
+	 * 
+	 * @param <E> The entity type.
+	 * @param clazz The entity type that you want to get.
+	 * @param key The key corresponding to the entity that you want to get.
+	 * @return The future of the entity instance corresponding to the specified 
+	 * key.
+	 */
+	@Override
+	public <E> CompletableFuture<E> getAsync(final Class<E> clazz, final Object key) {
+		if (clazz == null) {
+			throw new IllegalArgumentException("'clazz' must not be [" + clazz + "]");
+		}
+		
+		if (key == null) {
+			throw new IllegalArgumentException("'id' must not be [" + key + "]");
+		}
+		
+		if (isTransactional()) {
+			return async(new Supplier<E>() {
+				
+				@Override
+				public E get() {
+					return AppEngineDatastoreSession.this.get(clazz, key);
+				}
+				
+			});
+		}
+		
+		return datastore.groupAsync(Keys.create(Translation.toKind(clazz), key), 
+				new Function<List<Entity>, E>() {
+			
+			@Override
+			public E apply(List<Entity> entities) {
+				return Translation.toObject(clazz, entities, new HashMap<Key, Object>(), datastore);
+			}
+			
+		});
+	}
+	
+	/**
+	 * Executes the specified operation asynchronously with 
+	 * {@link AppEngineDatastoreService#executor()}. Under a transaction, the 
+	 * operation is executed on the calling thread to keep the transaction 
+	 * bound to it, and the completed future is returned.
+	 * 
+	 * @param <T> The type of the operation result.
+	 * @param supplier The operation to be executed.
+	 * @return The future of the operation result.
+	 */
+	<T> CompletableFuture<T> async(Supplier<T> supplier) {
+		if (!isTransactional()) {
+			return datastore.async(supplier);
+		}
+		
+		CompletableFuture<T> future = new CompletableFuture<T>();
+		
+		try {
+			future.complete(supplier.get());
+		} catch (RuntimeException e) {
+			future.completeExceptionally(e);
+		}
+		
+		return future;
+	}
+	
+	/**
+	 * Returns the entity instances corresponding to the specified keys in the 
+	 * same order as the keys. The entity which is not found is returned as 
+	 * {@code null}.
+	 * Outside of a transaction, the entities are hydrated in bulk: The entity 
+	 * which does not have child entities (other than {@code Lazy} ones) is 
+	 * got with a single multi-key get and the other entity groups are got 
+	 * with the concurrent ancestor queries. The entities referred by the 
+	 * referential properties are got at once for the whole batch, and the 
+	 * {@code Lazy} properties of the batch are loaded together on the 
+	 * first access. Under a transaction, this method gets each 
+	 * entity with {@link #get(Class, Object)} to log the {@code GET} 
+	 * operation.
+	 * 
+	 * @param <E> The entity type.
+	 * @param clazz The entity type that you want to get.
+	 * @param keys The keys corresponding to the entities that you want to get.
+	 * @return The entity instances corresponding to the specified keys.
+	 */
+	@Override
+	public <E> List<E> get(Class<E> clazz, Collection<?> keys) {
+		if (clazz == null) {
+			throw new IllegalArgumentException("'clazz' must not be [" + clazz + "]");
+		}
+		
+		if (keys == null) {
+			throw new IllegalArgumentException("'keys' must not be [" + keys + "]");
+		}
+		
+		List<Key> ks = keys(clazz, keys);
+		List<E> entities = new ArrayList<E>(ks.size());
+		
+		if (isTransactional()) {
+			for (Key key : ks) {
+				entities.add(get(clazz, key));
+			}
+			
+			return entities;
+		}
+		
+		List<List<Entity>> groups = null;
+		boolean whole = Mapping.of(clazz).hierarchical();
+		
+		if (!whole) {
+			Map<Key, Entity> map = datastore.get(ks);
+			groups = new ArrayList<List<Entity>>(ks.size());
+			
+			for (Key key : ks) {
+				Entity entity = map.get(key);
+				groups.add((entity == null) ? Collections.<Entity>emptyList() 
+						: Collections.singletonList(entity));
+			}
+			
+		} else {
+			groups = datastore.query(queries(ks));
+		}
+		
+		Map<Key, Object> references = new HashMap<Key, Object>();
+		Translation.prefetch(clazz, groups, references, datastore);
+		LazyLoader loader = new LazyLoader(datastore, references);
+		
+		for (List<Entity> group : groups) {
+			entities.add(Translation.toObject(clazz, group, loader, whole));
+		}
+		
+		return entities;
+	}
+	
+	/**
+	 * Translates the specified keys of the specified entity type to the App 
+	 * Engine Datastore {@code Key}s.
+	 * 
+	 * @param clazz The entity type.
+	 * @param keys The keys of the entities.
+	 * @return The App Engine Datastore {@code Key}s.
+	 */
+	List<Key> keys(Class<?> clazz, Collection<?> keys) {
+		String kind = Translation.toKind(clazz);
+		List<Key> ks = new ArrayList<Key>(keys.size());
+		
+		for (Object key : keys) {
+			if (key == null) {
+				throw new IllegalArgumentException("'keys' must not contain [" + key + "]");
+			}
+			
+			ks.add(Keys.create(kind, key));
+		}
+		
+		return ks;
+	}
+	
+	/**
+	 * Returns the ancestor queries to get the entity groups corresponding to 
+	 * the specified keys.
+	 * 
+	 * @param keys The keys of the entity group roots.
+	 * @return The ancestor queries.
+	 */
+	List<Query> queries(List<Key> keys) {
+		List<Query> queries = new ArrayList<Query>(keys.size());
+		
+		for (Key key : keys) {
+			queries.add(new Query(key));
+		}
+		
+		return queries;
+	}
+	
 	/**
 	 * Puts the specified entity instance into App Engine Datastore newly.
 	 * This method must be invoked under a transaction. This method throws 
@@ -223,11 +420,26 @@ public class AppEngineDatastoreSession implements Session {
 		
 		Transaction tx = transaction.get().transaction();
 		datastore.put(tx, Translation.toEntities(entity));
+		transaction.get().entities().remove(
+				Keys.create(Translation.toKind(entity.getClass()), keyValue(entity)));
 		Log log = new Log(logs.size() + 1, Log.Operation.UPDATE, entity);
 		log.state(State.UNCOMMITTED);
 		logs.add(log);
 	}
 
+	/**
+	 * Returns whether the commands of this session can be computed from the 
+	 * datastore indexes (e.g. count with a keys-only query) instead of 
+	 * getting the entities. The indexes are not consistent with the 
+	 * entities read in a transaction, so this method returns {@code false} 
+	 * under a transaction.
+	 * 
+	 * @return Whether the commands can be computed from the datastore indexes.
+	 */
+	boolean indexed() {
+		return !isTransactional();
+	}
+	
 	/** Ensures the transaction has been started. */
 	protected void assertTransactional() {
 		if (!isTransactional()) {
@@ -282,10 +494,281 @@ public class AppEngineDatastoreSession implements Session {
 		}
 		
 		datastore.delete(tx, keys);
+		transaction.get().entities().remove(
+				Keys.create(Translation.toKind(entity.getClass()), keyValue(entity)));
 		Log log = new Log(logs.size() + 1, Log.Operation.DELETE, entity);
 		log.state(State.UNCOMMITTED);
 		logs.add(log);
 	}
+	
+	/**
+	 * Deletes the entity corresponding to the specified key and its children 
+	 * from the datastore without getting it. The keys of the entity group are 
+	 * got with a keys-only ancestor query and deleted with the batch 
+	 * operation, so no entity instance is built. This method must be invoked 
+	 * under a transaction.
+	 * 
+	 * @param <E> The entity type.
+	 * @param clazz The entity type that you want to delete.
+	 * @param key The key corresponding to the entity that you want to delete.
+	 */
+	@Override
+	public <E> void delete(Class<E> clazz, Object key) {
+		if (clazz == null) {
+			throw new IllegalArgumentException("'clazz' must not be [" + clazz + "]");
+		}
+		
+		if (key == null) {
+			throw new IllegalArgumentException("'key' must not be [" + key + "]");
+		}
+		
+		assertTransactional();
+		deleteAll(clazz, Collections.singletonList(key), true);
+	}
+	
+	/**
+	 * Deletes the entities corresponding to the specified keys and their 
+	 * children from the datastore without getting them. The keys of the 
+	 * entity groups are got with the concurrent keys-only ancestor queries 
+	 * and deleted with the batch operations. If the specified parallel flag 
+	 * is {@code true}, up to {@link AppEngineDatastoreService#concurrency()} 
+	 * batches are deleted concurrently. Otherwise, the batches are deleted 
+	 * one by one.
+	 * 
+	 * @param clazz The entity type to be deleted.
+	 * @param keys The keys of the entities to be deleted.
+	 * @param parallel Whether the batches are deleted concurrently.
+	 * @return The number of the deleted entities.
+	 */
+	int deleteAll(Class<?> clazz, Collection<?> keys, boolean parallel) {
+		assertTransactional();
+		List<Key> roots = keys(clazz, keys);
+		List<Log> logs = transaction.get().logs();
+		Map<Object, Log.Operation> operations = operations(logs);
+		List<Object> entities = new ArrayList<Object>(roots.size());
+		
+		for (Key root : roots) {
+			Object entity = Translation.toObject(clazz, root);
+			Log.Operation previous = operations.put(keyValue(entity), Log.Operation.DELETE);
+			
+			if (previous != null && previous != Log.Operation.GET) {
+				throw new IllegalStateException("Log [" + previous 
+						+ "] -> [" + Log.Operation.DELETE
+						+ "] is not allowed: previous operation must be ["
+						+ Log.Operation.GET + "]");
+			}
+			
+			entities.add(entity);
+		}
+		
+		Transaction tx = transaction.get().transaction();
+		List<Key> deletes = datastore.keys(tx, roots);
+		Set<Key> found = new HashSet<Key>(deletes);
+		List<Object> deleted = new ArrayList<Object>(entities.size());
+		
+		for (int i = 0; i < roots.size(); i++) {
+			if (found.contains(roots.get(i))) {
+				deleted.add(entities.get(i));
+			}
+		}
+		
+		datastore.deleteAll(tx, deletes, (parallel) ? datastore.concurrency() : 1);
+		log(logs, Log.Operation.DELETE, deleted);
+		return deleted.size();
+	}
+	
+	/**
+	 * Puts the specified entity instances into App Engine Datastore newly in 
+	 * bulk. This method must be invoked under a transaction. The existence of 
+	 * the entities is checked and the entities are put with the batch 
+	 * operations ({@link AppEngineDatastoreService#getAll(Transaction, List)} 
+	 * and {@link AppEngineDatastoreService#putAll(Transaction, List)}), 
+	 * instead of the round trips for each entity. This method throws 
+	 * {@code EntityExistsException} if the entity that has the same key as 
+	 * any of the specified entities has been already stored.
+	 * 
+	 * @param entities The entity instances to be put into App Engine 
+	 * Datastore.
+	 * @throws EntityExistsException If the entity that has the same key as 
+	 * any of the specified entities has already existed.
+	 */
+	@Override
+	public void putAll(Collection<?> entities) throws EntityExistsException {
+		if (entities == null) {
+			throw new IllegalArgumentException("'entities' must not be [" + entities + "]");
+		}
+		
+		assertTransactional();
+		List<Log> logs = transaction.get().logs();
+		Map<Object, Log.Operation> operations = operations(logs);
+		List<Key> keys = new ArrayList<Key>(entities.size());
+		
+		for (Object entity : entities) {
+			if (entity == null) {
+				throw new IllegalArgumentException("'entities' must not contain [" + entity + "]");
+			}
+			
+			Log.Operation operation = operations.put(keyValue(entity), Log.Operation.PUT);
+			
+			if (operation != null) {
+				throw new IllegalStateException("Log [" + operation
+						+ "] -> [" + Log.Operation.PUT
+						+ "] is not allowed: This operation must be first");
+			}
+			
+			keys.add(Keys.create(Translation.toKind(entity.getClass()), keyValue(entity)));
+		}
+		
+		Transaction tx = transaction.get().transaction();
+		Map<Key, Entity> existing = datastore.getAll(tx, keys);
+		
+		for (Key key : keys) {
+			if (existing.containsKey(key)) {
+				throw new EntityExistsException(key);
+			}
+		}
+		
+		List<Entity> puts = new ArrayList<Entity>();
+		
+		for (Object entity : entities) {
+			puts.addAll(Translation.toEntities(entity));
+		}
+		
+		datastore.putAll(tx, puts);
+		log(logs, Log.Operation.PUT, entities);
+	}
+	
+	/**
+	 * Updates the entities in the datastore with the specified ones in bulk. 
+	 * This method must be invoked under a transaction. The entities are put 
+	 * with the batch operation 
+	 * ({@link AppEngineDatastoreService#putAll(Transaction, List)}).
+	 * 
+	 * @param entities The entity instances to be updated to.
+	 */
+	@Override
+	public void updateAll(Collection<?> entities) {
+		updateAll(entities, true);
+	}
+	
+	/**
+	 * Updates the entities in the datastore with the specified ones in bulk. 
+	 * If the specified parallel flag is {@code true}, up to 
+	 * {@link AppEngineDatastoreService#concurrency()} batches are put 
+	 * concurrently. Otherwise, the batches are put one by one.
+	 * 
+	 * @param entities The entity instances to be updated to.
+	 * @param parallel Whether the batches are put concurrently.
+	 */
+	void updateAll(Collection<?> entities, boolean parallel) {
+		if (entities == null) {
+			throw new IllegalArgumentException("'entities' must not be [" + entities + "]");
+		}
+		
+		assertTransactional();
+		List<Log> logs = transaction.get().logs();
+		Map<Object, Log.Operation> operations = operations(logs);
+		List<Entity> puts = new ArrayList<Entity>();
+		
+		for (Object entity : entities) {
+			assertGot(logs, operations, entity, Log.Operation.UPDATE);
+			puts.addAll(Translation.toEntities(entity));
+		}
+		
+		datastore.putAll(transaction.get().transaction(), puts, 
+				(parallel) ? datastore.concurrency() : 1);
+		log(logs, Log.Operation.UPDATE, entities);
+	}
+	
+	/**
+	 * Deletes the specified entities from the datastore in bulk. 
+	 * This method must be invoked under a transaction. The entities are 
+	 * deleted with the batch operation 
+	 * ({@link AppEngineDatastoreService#deleteAll(Transaction, List)}).
+	 * 
+	 * @param entities The entities to be deleted.
+	 */
+	@Override
+	public void deleteAll(Collection<?> entities) {
+		deleteAll(entities, true);
+	}
+	
+	/**
+	 * Deletes the specified entities from the datastore in bulk. If the 
+	 * specified parallel flag is {@code true}, up to 
+	 * {@link AppEngineDatastoreService#concurrency()} batches are deleted 
+	 * concurrently. Otherwise, the batches are deleted one by one.
+	 * 
+	 * @param entities The entities to be deleted.
+	 * @param parallel Whether the batches are deleted concurrently.
+	 */
+	void deleteAll(Collection<?> entities, boolean parallel) {
+		if (entities == null) {
+			throw new IllegalArgumentException("'entities' must not be [" + entities + "]");
+		}
+		
+		assertTransactional();
+		List<Log> logs = transaction.get().logs();
+		Map<Object, Log.Operation> operations = operations(logs);
+		List<Key> keys = new ArrayList<Key>();
+		
+		for (Object entity : entities) {
+			assertGot(logs, operations, entity, Log.Operation.DELETE);
+			
+			for (Entity e : Translation.toEntities(entity)) {
+				keys.add(e.getKey());
+			}
+		}
+		
+		datastore.deleteAll(transaction.get().transaction(), keys, 
+				(parallel) ? datastore.concurrency() : 1);
+		log(logs, Log.Operation.DELETE, entities);
+	}
+	
+	// The last operation for each entity key in the specified logs, so the 
+	// bulk operations can be validated without scanning the logs per entity.
+	private Map<Object, Log.Operation> operations(List<Log> logs) {
+		Map<Object, Log.Operation> operations = new HashMap<Object, Log.Operation>();
+		
+		for (Log log : logs) {
+			operations.put(keyValue(log.entity()), log.operation());
+		}
+		
+		return operations;
+	}
+	
+	private void assertGot(List<Log> logs, Map<Object, Log.Operation> operations, 
+			Object entity, Log.Operation operation) {
+		if (entity == null) {
+			throw new IllegalArgumentException("'entities' must not contain [" + entity + "]");
+		}
+		
+		if (logs.isEmpty()) {
+			throw new IllegalStateException("Log ["
+					+ operation
+					+ "] is not allowed: previous operation must be ["
+					+ Log.Operation.GET + "]");
+		}
+		
+		Log.Operation previous = operations.put(keyValue(entity), operation);
+		
+		if (previous != null && previous != Log.Operation.GET) {
+			throw new IllegalStateException("Log [" + previous 
+					+ "] -> [" + operation
+					+ "] is not allowed: previous operation must be ["
+					+ Log.Operation.GET + "]");
+		}
+	}
+	
+	private void log(List<Log> logs, Log.Operation operation, Collection<?> entities) {
+		for (Object entity : entities) {
+			transaction.get().entities().remove(
+					Keys.create(Translation.toKind(entity.getClass()), keyValue(entity)));
+			Log log = new Log(logs.size() + 1, operation, entity);
+			log.state(State.UNCOMMITTED);
+			logs.add(log);
+		}
+	}
 
 	/**
 	 * Returns {@code GetList} command based on App Engine Low-level Datastore 
@@ -327,6 +810,26 @@ public class AppEngineDatastoreSession implements Session {
 		return new AppEngineGetScalar<E, R>(aggregation, this);
 	}
 
+	/**
+	 * Returns {@code Group} command based on App Engine Low-level Datastore 
+	 * API for the specified entity metamodel.
+	 * This method is the entry point for group-by aggregation Command Builder 
+	 * API.
+	 * 
+	 * @param <E> The entity type to group with this {@code Group}.
+	 * @param metamodel The metamodel of the entity to group with this 
+	 * {@code Group}.
+	 * @return {@code Group} for the specified entity class.
+	 */
+	@Override
+	public <E> AppEngineGroup<E> group(Metamodel<E> metamodel) {
+		if (metamodel == null) {
+			throw new IllegalArgumentException("'metamodel' must not be [" + metamodel + "]");
+		}
+		
+		return new AppEngineGroup<E>(metamodel, this);
+	}
+	
 	/**
 	 * Returns {@code Update} command based on App Engine Low-level Datastore 
 	 * API for the specified entity metamodel.
@@ -373,6 +876,50 @@ public class AppEngineDatastoreSession implements Session {
 		return (transaction.get() != null);
 	}
 
+	/**
+	 * Returns the near cache of the entity groups got outside of a 
+	 * transaction. This method returns {@code null} if the near cache is 
+	 * disabled.
+	 * 
+	 * @return The near cache of the entity groups.
+	 */
+	public AppEngineCache cache() {
+		return datastore.cache();
+	}
+	
+	/**
+	 * Sets the near cache of the entity groups got outside of a transaction. 
+	 * The same {@code AppEngineCache} instance can be shared among the 
+	 * sessions. The near cache is disabled if {@code null} is specified.
+	 * 
+	 * @param cache The near cache of the entity groups.
+	 */
+	public void cache(AppEngineCache cache) {
+		datastore.cache(cache);
+	}
+	
+	/**
+	 * Returns the second-level cache of the entity groups got outside of a 
+	 * transaction. This method returns {@code null} if the second-level cache 
+	 * is disabled.
+	 * 
+	 * @return The second-level cache of the entity groups.
+	 */
+	public AppEngineMemcache memcache() {
+		return datastore.memcache();
+	}
+	
+	/**
+	 * Sets the second-level cache of the entity groups got outside of a 
+	 * transaction, which is shared by every application instance. The 
+	 * second-level cache is disabled if {@code null} is specified.
+	 * 
+	 * @param memcache The second-level cache of the entity groups.
+	 */
+	public void memcache(AppEngineMemcache memcache) {
+		datastore.memcache(memcache);
+	}
+	
 	AppEngineDatastoreService datastore() {
 		return datastore;
 	}
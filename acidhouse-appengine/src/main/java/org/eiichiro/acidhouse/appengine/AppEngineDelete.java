@@ -22,9 +22,10 @@ import java.util.logging.Logger;
 
 import org.eiichiro.acidhouse.Delete;
 import org.eiichiro.acidhouse.Filter;
-import org.eiichiro.acidhouse.GetList;
 import org.eiichiro.acidhouse.metamodel.Metamodel;
 
+import com.google.appengine.api.datastore.Key;
+
 /**
  * {@code AppEngineDelete} is a App Engine Low-level Datastore API based 
  * implementation of {@code Delete}.
@@ -41,6 +42,8 @@ public class AppEngineDelete<E> implements Delete<E> {
 	
 	private List<Filter<?>> filters = new ArrayList<Filter<?>>(0);
 	
+	private boolean parallel = false;
+	
 	/**
 	 * Constructs a new {@code AppEngineDelete} with the specified metamodel of 
 	 * entity and {@code AppEngineDatastoreSession}.
@@ -54,27 +57,49 @@ public class AppEngineDelete<E> implements Delete<E> {
 	}
 	
 	/**
-	 * Executes {@code AppEngineDelete} with {@code AppEngineDatastoreSession}.
+	 * Executes {@code AppEngineDelete} with {@code AppEngineDatastoreSession}. 
+	 * If every specified filter is supported by the datastore query, the 
+	 * entities are qualified with a keys-only query and the entity groups are 
+	 * deleted by the keys without getting the entities. Otherwise, the 
+	 * qualified entities are got and deleted in bulk with 
+	 * {@link AppEngineDatastoreSession#deleteAll(java.util.Collection)}. In 
+	 * both cases, the entities are deleted with the size-bounded batches 
+	 * instead of the round trip for each entity.
 	 * 
 	 * @return The number of deleted entity.
 	 */
 	@Override
 	public Integer execute() {
 		logger.fine("Executing [AppEngineDelete] command");
-		GetList<E> command = session.get(metamodel);
+		AppEngineGetList<E> command = session.get(metamodel);
 		
 		if (filters != null) {
 			command.filter(filters.toArray(new Filter<?>[] {}));
 		}
 		
-		int i = 0;
+		List<Key> keys = command.keys();
 		
-		for (E entity : command.execute()) {
-			session.delete(entity);
-			i++;
+		if (keys != null) {
+			return session.deleteAll(metamodel.type(), keys, parallel);
 		}
 		
-		return i;
+		List<E> entities = command.execute();
+		session.deleteAll(entities, parallel);
+		return entities.size();
+	}
+	
+	/**
+	 * Specifies whether the batches of the deleted entities are deleted 
+	 * concurrently (up to {@link AppEngineDatastoreService#concurrency()} 
+	 * batches in flight at the same time). By default, the batches are 
+	 * deleted one by one.
+	 * 
+	 * @param parallel Whether the batches are deleted concurrently.
+	 * @return The {@code Delete} to delete the batches as specified.
+	 */
+	public AppEngineDelete<E> parallel(boolean parallel) {
+		this.parallel = parallel;
+		return this;
 	}
 
 	/**
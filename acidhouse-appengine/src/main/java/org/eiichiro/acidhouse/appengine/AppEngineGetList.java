@@ -16,13 +16,20 @@
 package org.eiichiro.acidhouse.appengine;
 
 import java.util.ArrayList;
+import java.lang.reflect.Type;
 import java.util.Arrays;
+import java.util.Base64;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
 import java.util.logging.Logger;
 
 import org.eiichiro.acidhouse.ComparableFilter;
@@ -31,14 +38,26 @@ import org.eiichiro.acidhouse.Filter;
 import org.eiichiro.acidhouse.GetList;
 import org.eiichiro.acidhouse.InFilter;
 import org.eiichiro.acidhouse.Order;
+import org.eiichiro.acidhouse.Page;
+import org.eiichiro.acidhouse.ResultIterator;
+import org.eiichiro.acidhouse.metamodel.ComparableProperty;
+import org.eiichiro.acidhouse.metamodel.DoubleProperty;
 import org.eiichiro.acidhouse.metamodel.EmbeddedProperty;
+import org.eiichiro.acidhouse.metamodel.IntProperty;
+import org.eiichiro.acidhouse.metamodel.LongProperty;
 import org.eiichiro.acidhouse.metamodel.Metamodel;
 import org.eiichiro.acidhouse.metamodel.Property;
 
+import com.google.appengine.api.datastore.Cursor;
 import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.EntityTranslator;
 import com.google.appengine.api.datastore.FetchOptions;
+import com.google.appengine.api.datastore.Key;
+import com.google.appengine.api.datastore.PropertyProjection;
 import com.google.appengine.api.datastore.Query;
 import com.google.appengine.api.datastore.Query.FilterOperator;
+import com.google.appengine.api.datastore.QueryResultIterator;
+import com.google.storage.onestore.v3.OnestoreEntity.EntityProto;
 
 /**
  * {@code AppEngineGetList} is a App Engine Low-level Datastore API based 
@@ -48,6 +67,9 @@ import com.google.appengine.api.datastore.Query.FilterOperator;
  */
 public class AppEngineGetList<E> implements GetList<E> {
 
+	/** The prefix of the cursor which holds the sort keys of the last entity. */
+	private static final String KEYSET = "~";
+	
 	private Logger logger = Logger.getLogger(getClass().getName());
 	
 	private final Metamodel<E> metamodel;
@@ -62,6 +84,16 @@ public class AppEngineGetList<E> implements GetList<E> {
 	
 	private List<Order<?, ?>> orders = new ArrayList<Order<?, ?>>(0);
 	
+	private List<Property<?, ?>> properties = new ArrayList<Property<?, ?>>(0);
+	
+	private int chunk = 100;
+	
+	private Cursor cursor;
+	
+	private int position = 0;
+	
+	private Entity boundary;
+	
 	/**
 	 * Constructs a new {@code AppEngineGetList} with the specified metamodel of 
 	 * entity and {@code AppEngineDatastoreSession}.
@@ -75,19 +107,193 @@ public class AppEngineGetList<E> implements GetList<E> {
 	}
 	
 	/**
-	 * Executes {@code GetList} with {@code AppEngineDatastoreSession}.
+	 * Executes {@code GetList} with {@code AppEngineDatastoreSession}. 
+	 * If the properties to be populated are specified with 
+	 * {@link #select(Property...)}, the entities are populated partially: If 
+	 * all of them are the indexed properties of the root entity (and the 
+	 * nullable ones are filtered or sorted, so no entity is dropped for the 
+	 * null value), they are got from the datastore indexes with the 
+	 * projection query. Otherwise, only 
+	 * the root entities are got and the specified properties (and the 
+	 * properties to be filtered and sorted in memory) are translated. If any 
+	 * of them is not persisted in the root entity, or under a transaction, 
+	 * the whole entities are got.
+	 * <p>
+	 * If the specified sort orders are not supported by the datastore query 
+	 * (See {@code QueryRestriction}), the entities are sorted in memory after 
+	 * every entity matching to the query has been fetched. In this case, the 
+	 * cursor holds the sort keys and the key of the last entity of the page 
+	 * and the next page keeps only the entities ranked after them, so the 
+	 * memory consumption and the sort cost of a page do not depend on the 
+	 * depth of the page (while every page still fetches all the entities). 
 	 * 
 	 * @return The entities match to the specified {@code Filter}s in the 
-	 * specified range ordered by the specified sort orders as a {@code List} 
+	 * specified range ordered by the specified sort orders as a {@code Page} 
 	 * view.
 	 */
 	@Override
-	public List<E> execute() {
+	public Page<E> execute() {
 		logger.fine("Executing [AppEngineGetList] command");
+		Set<Filter<?>> subfilters = new HashSet<Filter<?>>();
+		List<Order<?, ?>> suborders = new ArrayList<Order<?, ?>>();
+		Query query = query(subfilters, suborders);
+		List<Order<?, ?>> rankings = rankings(suborders);
+		Set<String> selection = selection(subfilters, rankings);
+		List<E> result = new ArrayList<E>();
+		
+		if (suborders.isEmpty()) {
+			Results iterator = new Results(query, subfilters, selection, 
+					project(query, subfilters, selection), cursor, position, offset, limit);
+			
+			while (iterator.hasNext()) {
+				result.add(iterator.next());
+			}
+			
+			return new Page<E>(result, iterator.cursor());
+		}
+		
+		// Restricted sort orders can be applied only after every entity has 
+		// been fetched. The cursor holds the sort keys and the key of the last 
+		// entity of the previous page, so only the top (offset + limit) 
+		// entities after it are kept while fetching however deep the page is.
+		long bound = (long) position + offset + limit;
+		Ranking ranking = new Ranking(rankings, 
+				(bound > Integer.MAX_VALUE) ? Integer.MAX_VALUE : (int) bound, boundary);
+		ResultIterator<E> iterator = new Results(query, subfilters, selection, 
+				false, null, 0, 0, Integer.MAX_VALUE);
+		
+		while (iterator.hasNext()) {
+			ranking.add(iterator.next());
+		}
+		
+		result = ranking.entities();
+		int start = Math.min(position, result.size());
+		int from = (offset > result.size() - start) ? result.size() : start + offset;
+		int to = (limit > result.size() - from) ? result.size() : from + limit;
+		
+		if (to > 0) {
+			return new Page<E>(result.subList(from, to), ranking.cursor(to - 1));
+		} else if (boundary != null) {
+			return new Page<E>(result.subList(from, to), cursor(boundary));
+		}
+		
+		return new Page<E>(result.subList(from, to), cursor(null, to));
+	}
+	
+	/**
+	 * Executes {@code GetList} asynchronously with 
+	 * {@code AppEngineDatastoreSession}. Under a transaction, this method 
+	 * executes {@code GetList} on the calling thread.
+	 * 
+	 * @return The future of the entities as a {@code Page} view.
+	 */
+	@Override
+	public CompletableFuture<Page<E>> executeAsync() {
+		return session.async(new Supplier<Page<E>>() {
+			
+			@Override
+			public Page<E> get() {
+				return execute();
+			}
+			
+		});
+	}
+	
+	/**
+	 * Executes {@code GetList} with {@code AppEngineDatastoreSession} in 
+	 * streaming mode. The keys are pulled from the datastore with the query 
+	 * result iterator and the entities are hydrated and filtered chunk by 
+	 * chunk as the iteration proceeds. If the specified sort orders are not 
+	 * supported by the datastore query (See {@code QueryRestriction}), the 
+	 * execution result is buffered to be sorted before the iteration.
+	 * 
+	 * @return The entities match to the specified {@code Filter}s in the 
+	 * specified range ordered by the specified sort orders as 
+	 * {@code ResultIterator}.
+	 */
+	@Override
+	public ResultIterator<E> iterate() {
+		logger.fine("Executing [AppEngineGetList] command in streaming mode");
+		Set<Filter<?>> subfilters = new HashSet<Filter<?>>();
+		List<Order<?, ?>> suborders = new ArrayList<Order<?, ?>>();
+		Query query = query(subfilters, suborders);
+		
+		if (suborders.isEmpty()) {
+			Set<String> selection = selection(subfilters, suborders);
+			return new Results(query, subfilters, selection, 
+					project(query, subfilters, selection), cursor, position, offset, limit);
+		}
+		
+		final Iterator<E> iterator = execute().iterator();
+		return new ResultIterator<E>() {
+			
+			@Override
+			public boolean hasNext() {
+				return iterator.hasNext();
+			}
+			
+			@Override
+			public E next() {
+				return iterator.next();
+			}
+			
+			@Override
+			public void remove() {
+				throw new UnsupportedOperationException();
+			}
+			
+			@Override
+			public void close() {}
+			
+		};
+	}
+	
+	/**
+	 * Returns the keys of the entities qualified with the specified 
+	 * {@code Filter}s with a keys-only query, without getting the entities. 
+	 * If any of the filters is not supported by the datastore query (See 
+	 * {@code QueryRestriction}), the entities must be got to be qualified, 
+	 * so this method returns {@code null}. The range and the sort orders are 
+	 * not applied.
+	 * 
+	 * @return The keys of the qualified entities or {@code null}.
+	 */
+	List<Key> keys() {
+		Query query = query();
+		
+		if (query == null) {
+			return null;
+		}
+		
+		List<Key> keys = new ArrayList<Key>();
+		QueryResultIterator<Entity> iterator = session.datastore().iterate(
+				query.setKeysOnly(), FetchOptions.Builder.withChunkSize(chunk));
+		
+		while (iterator.hasNext()) {
+			keys.add(iterator.next().getKey());
+		}
+		
+		return keys;
+	}
+	
+	/**
+	 * Returns the datastore query built from the specified {@code Filter}s 
+	 * and sort orders. If any of them is not supported by the datastore query 
+	 * (See {@code QueryRestriction}), this method returns {@code null}.
+	 * 
+	 * @return The datastore query or {@code null}.
+	 */
+	Query query() {
+		Set<Filter<?>> subfilters = new HashSet<Filter<?>>();
+		List<Order<?, ?>> suborders = new ArrayList<Order<?, ?>>();
+		Query query = query(subfilters, suborders);
+		return (subfilters.isEmpty() && suborders.isEmpty()) ? query : null;
+	}
+	
+	private Query query(Set<Filter<?>> subfilters, List<Order<?, ?>> suborders) {
 		Class<E> type = metamodel.type();
 		Query query = new Query(Translation.toKind(type));
 		QueryRestriction restriction = new QueryRestriction();
-		Set<Filter<?>> subfilters = new HashSet<Filter<?>>();
 		
 		for (Filter<?> filter : filters) {
 			if (restriction.restricted(filter)) {
@@ -132,8 +338,6 @@ public class AppEngineGetList<E> implements GetList<E> {
 			}
 		}
 		
-		final List<Order<?, ?>> suborders = new ArrayList<Order<?, ?>>();
-		
 		for (Order<?, ?> order : orders) {
 			if (restriction.restricted(order)) {
 				suborders.add(order);
@@ -145,87 +349,574 @@ public class AppEngineGetList<E> implements GetList<E> {
 			}
 		}
 		
-		FetchOptions options = FetchOptions.Builder.withOffset(0);
+		return query;
+	}
+	
+	/**
+	 * Returns the names of the root entity properties to be translated for 
+	 * the partial hydration: the key property, the properties specified with 
+	 * {@link #select(Property...)} and the properties of the specified 
+	 * {@code Filter}s and sort orders applied in memory. If no property is 
+	 * specified, any of them is not persisted in the root entity or the 
+	 * session is under a transaction (or reads the entity groups with 
+	 * Two-phase commit protocol), this method returns {@code null} to hydrate 
+	 * the whole entities.
+	 * 
+	 * @param subfilters The {@code Filter}s applied in memory.
+	 * @param suborders The sort orders applied in memory.
+	 * @return The names of the properties to be translated or {@code null}.
+	 */
+	private Set<String> selection(Set<Filter<?>> subfilters, List<Order<?, ?>> suborders) {
+		if (properties.isEmpty() || !session.indexed()) {
+			return null;
+		}
+		
+		List<Property<?, ?>> properties = new ArrayList<Property<?, ?>>(this.properties);
+		
+		for (Filter<?> filter : subfilters) {
+			properties.add(filter.property());
+		}
+		
+		for (Order<?, ?> order : suborders) {
+			properties.add(order.property());
+		}
+		
+		Class<E> type = metamodel.type();
+		Set<String> selection = new HashSet<String>();
+		selection.add(Entities.keyField(type).getName());
 		
-		if (subfilters.isEmpty() && suborders.isEmpty()) {
-			// Optimization: If all of the specified filters are not restricted, 
-			// establishes the offset and the limit at the query execution.
-			options = FetchOptions.Builder.withOffset(offset);
+		for (Property<?, ?> property : properties) {
+			if (property.parent() instanceof EmbeddedProperty) {
+				property = property.parent();
+			}
 			
-			if (Integer.MAX_VALUE - limit >= offset) {
-				options.limit(limit);
+			if (!property.metamodel().isRoot() || property.parent() != null) {
+				return null;
 			}
+			
+			Mapping.Property p = mapping(type, property.name());
+			
+			if (p == null || (p.kind() != Mapping.Kind.KEY 
+					&& p.kind() != Mapping.Kind.VALUE && p.kind() != Mapping.Kind.EMBEDDED)) {
+				return null;
+			}
+			
+			selection.add(property.name());
 		}
 		
-		int count = 0;
-		List<E> result = new ArrayList<E>();
+		return selection;
+	}
+	
+	/**
+	 * Qualifies the specified query as the projection query of the specified 
+	 * properties if they can be got from the datastore indexes: All of the 
+	 * specified {@code Filter}s and sort orders are supported by the 
+	 * datastore query and every property is the indexed core value type 
+	 * property of the root entity which is not used in the equality filter. 
+	 * The null property value is not persisted and the datastore indexes 
+	 * have no entry for the entity without the property, so the projection 
+	 * query would drop the entity whose selected property is null. Hence the 
+	 * nullable (non-primitive) property is projected only if the property is 
+	 * filtered or sorted with the datastore query, which drops the entity 
+	 * anyway. The key property is got from the entity key, so the query is 
+	 * qualified as the keys-only query if only the key property is selected.
+	 * 
+	 * @param query The datastore query.
+	 * @param subfilters The {@code Filter}s applied in memory.
+	 * @param selection The names of the properties to be translated.
+	 * @return Whether the specified query has been qualified as the projection 
+	 * query.
+	 */
+	private boolean project(Query query, Set<Filter<?>> subfilters, Set<String> selection) {
+		if (selection == null || !subfilters.isEmpty()) {
+			return false;
+		}
+		
+		Class<E> type = metamodel.type();
+		List<String> names = new ArrayList<String>(selection.size());
 		
-		for (Entity entity : session.datastore().query(query.setKeysOnly(), options)) {
-			E e = session.get(type, entity.getKey());
-			Iterator<Filter<?>> iterator = subfilters.iterator();
-			boolean matches = true;
+		for (String name : selection) {
+			Mapping.Property property = mapping(type, name);
 			
-			while (iterator.hasNext()) {
-				if (!iterator.next().matches(e)) {
-					matches = false;
-					break;
+			if (property.kind() == Mapping.Kind.KEY) {
+				continue;
+			}
+			
+			if (property.kind() != Mapping.Kind.VALUE || property.unindexed()
+					|| (!property.type().isPrimitive() && !restricted(name))) {
+				return false;
+			}
+			
+			names.add(name);
+		}
+		
+		for (Filter<?> filter : filters) {
+			if (filter.property().parent() == null && names.contains(filter.property().name()) 
+					&& (filter instanceof InFilter<?> || (filter instanceof ComparableFilter<?> 
+					&& ((ComparableFilter<?>) filter).operator() == ComparableFilter.Operator.EQUAL_TO))) {
+				return false;
+			}
+		}
+		
+		for (String name : names) {
+			query.addProjection(new PropertyProjection(name, null));
+		}
+		
+		if (names.isEmpty()) {
+			query.setKeysOnly();
+		}
+		
+		return true;
+	}
+	
+	// Whether the specified property of the root entity is filtered or sorted 
+	// with the datastore query.
+	private boolean restricted(String name) {
+		for (Filter<?> filter : filters) {
+			if (filter.property().parent() == null && filter.property().name().equals(name)) {
+				return true;
+			}
+		}
+		
+		for (Order<?, ?> order : orders) {
+			if (order.property().parent() == null && order.property().name().equals(name)) {
+				return true;
+			}
+		}
+		
+		return false;
+	}
+	
+	private static Mapping.Property mapping(Class<?> type, String name) {
+		for (Mapping.Property property : Mapping.of(type).properties()) {
+			if (property.name().equals(name)) {
+				return property;
+			}
+		}
+		
+		return null;
+	}
+	
+	private String cursor(Cursor cursor, int position) {
+		return ((cursor == null) ? "" : cursor.toWebSafeString()) + "." + position;
+	}
+	
+	// The sort keys and the key of the last entity are encoded as the 
+	// datastore entity in Protocol Buffers, so the cursor can be decoded 
+	// without deserializing any object.
+	private String cursor(Entity boundary) {
+		return KEYSET + Base64.getUrlEncoder().withoutPadding().encodeToString(
+				EntityTranslator.convertToPb(boundary).toByteArray());
+	}
+	
+	/*
+	 * Returns the sort orders to rank the entities in memory: the sort orders 
+	 * restricted to the datastore query followed by the ones applied by the 
+	 * datastore query (and then the entity key), which is the order of the 
+	 * entities fetched with the same sort keys.
+	 */
+	private List<Order<?, ?>> rankings(List<Order<?, ?>> suborders) {
+		List<Order<?, ?>> rankings = new ArrayList<Order<?, ?>>(suborders);
+		
+		if (!suborders.isEmpty()) {
+			for (Order<?, ?> order : orders) {
+				if (!suborders.contains(order)) {
+					rankings.add(order);
+				}
+			}
+		}
+		
+		return rankings;
+	}
+	
+	private boolean matches(E entity, Set<Filter<?>> filters) {
+		for (Filter<?> filter : filters) {
+			if (!filter.matches(entity)) {
+				return false;
+			}
+		}
+		
+		return true;
+	}
+	
+	/**
+	 * {@code Ranking} selects the top N entities in the specified sort orders 
+	 * with a bounded heap, so the memory consumption and the sort cost depend 
+	 * on N instead of the number of the fetched entities. The sort keys are 
+	 * extracted once per entity and compared with the comparator chain 
+	 * precompiled from the sort orders. The entities which have the same sort 
+	 * keys are ordered by the entity key, as the datastore does. If the 
+	 * boundary (the sort keys and the key of the last entity of the previous 
+	 * page) is specified, only the entities ranked after it are selected.
+	 */
+	private class Ranking implements Comparator<Ranking.Ranked> {
+		
+		private final ComparableProperty<?, ?>[] properties;
+		
+		private final int[] directions;
+		
+		private final int bound;
+		
+		private final PriorityQueue<Ranked> heap;
+		
+		private final Ranked boundary;
+		
+		private final List<Ranked> ranked = new ArrayList<Ranked>();
+		
+		private Ranking(List<Order<?, ?>> orders, int bound, Entity boundary) {
+			properties = new ComparableProperty<?, ?>[orders.size()];
+			directions = new int[orders.size()];
+			
+			for (int i = 0; i < orders.size(); i++) {
+				Order<?, ?> order = orders.get(i);
+				properties[i] = order.property();
+				directions[i] = (order.direction() == Order.Direction.DESC) ? -1 : 1;
+			}
+			
+			this.bound = bound;
+			heap = new PriorityQueue<Ranked>(Math.min(bound, chunk) + 1, 
+					Collections.reverseOrder(this));
+			
+			try {
+				this.boundary = (boundary == null) ? null : new Ranked(boundary);
+			} catch (RuntimeException e) {
+				throw new IllegalArgumentException("'cursor' must be the cursor returned by the previous execution with the same sort orders");
+			}
+			
+		}
+		
+		private void add(E entity) {
+			Ranked ranked = new Ranked(entity);
+			
+			if (boundary != null && compare(ranked, boundary) <= 0) {
+				return;
+			}
+			
+			if (heap.size() < bound) {
+				heap.add(ranked);
+			} else if (compare(ranked, heap.peek()) < 0) {
+				heap.poll();
+				heap.add(ranked);
+			}
+		}
+		
+		private List<E> entities() {
+			ranked.clear();
+			ranked.addAll(heap);
+			Collections.sort(ranked, this);
+			List<E> entities = new ArrayList<E>(ranked.size());
+			
+			for (Ranked r : ranked) {
+				entities.add(r.entity);
+			}
+			
+			return entities;
+		}
+		
+		/*
+		 * Returns the cursor which holds the sort keys and the key of the 
+		 * entity at the specified index of the sorted result.
+		 */
+		private String cursor(int index) {
+			Ranked last = ranked.get(index);
+			Entity boundary = new Entity(last.key);
+			
+			for (int i = 0; i < properties.length; i++) {
+				if (properties[i] instanceof IntProperty || properties[i] instanceof LongProperty) {
+					boundary.setUnindexedProperty(String.valueOf(i), last.primitives[i]);
+				} else if (properties[i] instanceof DoubleProperty) {
+					boundary.setUnindexedProperty(String.valueOf(i), 
+							Double.longBitsToDouble(last.primitives[i]));
+				} else {
+					boundary.setUnindexedProperty(String.valueOf(i), last.keys[i]);
 				}
 			}
 			
-			if (matches) {
-				result.add(e);
-				count++;
+			return AppEngineGetList.this.cursor(boundary);
+		}
+		
+		@SuppressWarnings({ "unchecked", "rawtypes" })
+		@Override
+		public int compare(Ranked ranked1, Ranked ranked2) {
+			for (int i = 0; i < directions.length; i++) {
+				int compare;
 				
-				if (count >= limit) {
-					break;
+				if (properties[i] instanceof IntProperty || properties[i] instanceof LongProperty) {
+					compare = Long.compare(ranked1.primitives[i], ranked2.primitives[i]);
+				} else if (properties[i] instanceof DoubleProperty) {
+					compare = Double.compare(Double.longBitsToDouble(ranked1.primitives[i]), 
+							Double.longBitsToDouble(ranked2.primitives[i]));
+				} else if (ranked1.keys[i] == null || ranked2.keys[i] == null) {
+					// Null is ordered before any other value, as the datastore 
+					// does.
+					compare = (ranked1.keys[i] == ranked2.keys[i]) ? 0 
+							: ((ranked1.keys[i] == null) ? -1 : 1);
+				} else {
+					compare = ((Comparable) ranked1.keys[i]).compareTo(ranked2.keys[i]);
+				}
+				
+				if (compare != 0) {
+					return (compare < 0) ? -directions[i] : directions[i];
 				}
 			}
+			
+			return ranked1.key.compareTo(ranked2.key);
 		}
 		
-		if (!suborders.isEmpty()) {
-			Collections.sort(result, new Comparator<E>() {
-
-				@SuppressWarnings("unchecked")
-				@Override
-				public int compare(E entity1, E entity2) {
-					int compare = 0;
+		private class Ranked {
+			
+			private final E entity;
+			
+			private final Key key;
+			
+			private final Object[] keys;
+			
+			// The sort keys of the primitive-specialized properties, held 
+			// without boxing (double as its raw bits).
+			private final long[] primitives;
+			
+			private Ranked(E entity) {
+				this.entity = entity;
+				key = Keys.create(Translation.toKind(metamodel.type()), Entities.keyValue(entity));
+				keys = new Object[properties.length];
+				primitives = new long[properties.length];
+				
+				for (int i = 0; i < properties.length; i++) {
+					ComparableProperty<?, ?> property = properties[i];
+					
+					if (property instanceof IntProperty) {
+						primitives[i] = ((IntProperty<?>) property).getAsInt(entity);
+					} else if (property instanceof LongProperty) {
+						primitives[i] = ((LongProperty<?>) property).getAsLong(entity);
+					} else if (property instanceof DoubleProperty) {
+						primitives[i] = Double.doubleToRawLongBits(((DoubleProperty<?>) property).getAsDouble(entity));
+					} else {
+						keys[i] = property.get(entity);
+					}
+				}
+			}
+			
+			// Decodes the boundary from the cursor. The datastore holds the 
+			// integral values as long and the floating point values as 
+			// double, so they are narrowed to the property types.
+			private Ranked(Entity boundary) {
+				if (!boundary.getKey().getKind().equals(Translation.toKind(metamodel.type())) 
+						|| boundary.getProperties().size() != properties.length) {
+					throw new IllegalArgumentException();
+				}
+				
+				entity = null;
+				key = boundary.getKey();
+				keys = new Object[properties.length];
+				primitives = new long[properties.length];
+				
+				for (int i = 0; i < properties.length; i++) {
+					ComparableProperty<?, ?> property = properties[i];
+					Object value = boundary.getProperty(String.valueOf(i));
+					
+					if (property instanceof IntProperty || property instanceof LongProperty) {
+						primitives[i] = (Long) value;
+					} else if (property instanceof DoubleProperty) {
+						primitives[i] = Double.doubleToRawLongBits((Double) value);
+					} else if (value instanceof Long) {
+						Type type = property.type();
+						long l = (Long) value;
+						keys[i] = (type == Integer.class || type == int.class) ? Integer.valueOf((int) l) 
+								: ((type == Short.class || type == short.class) ? Short.valueOf((short) l) : value);
+					} else if (value instanceof Double 
+							&& (property.type() == Float.class || property.type() == float.class)) {
+						keys[i] = Float.valueOf((float) (double) (Double) value);
+					} else {
+						keys[i] = value;
+					}
+				}
+			}
+			
+		}
+		
+	}
+	
+	/**
+	 * {@code Results} is a streaming view of the execution result.
+	 * This iterator pulls the keys with the query result iterator and 
+	 * hydrates the entities in bulk per chunk, so only one chunk of the 
+	 * entities is held in memory at the same time. With the projection query, 
+	 * the entities are translated from the query result directly.
+	 */
+	private class Results implements ResultIterator<E> {
+		
+		private final QueryResultIterator<Entity> entities;
+		
+		private final Set<Filter<?>> filters;
+		
+		private final Set<String> selection;
+		
+		private final boolean projected;
+		
+		private final List<Key> keys = new ArrayList<Key>(chunk);
+		
+		private Iterator<E> hydrated = Collections.<E>emptyList().iterator();
+		
+		private int offset;
+		
+		private int limit;
+		
+		private E next;
+		
+		private boolean ready = false;
+		
+		private boolean closed = false;
+		
+		private boolean started = false;
+		
+		private Cursor cursor;
+		
+		private int position;
+		
+		private Results(Query query, Set<Filter<?>> filters, Set<String> selection, 
+				boolean projected, Cursor cursor, int position, int offset, int limit) {
+			this.filters = filters;
+			this.selection = selection;
+			this.projected = projected;
+			FetchOptions options = FetchOptions.Builder.withOffset(position);
+			
+			if (filters.isEmpty()) {
+				// Optimization: If all of the specified filters are not restricted, 
+				// establishes the offset and the limit at the query execution.
+				options = FetchOptions.Builder.withOffset(position + offset);
+				
+				if (Integer.MAX_VALUE - limit >= position + offset) {
+					options.limit(limit);
+				}
+				
+				offset = 0;
+			}
+			
+			if (cursor != null) {
+				options.startCursor(cursor);
+			}
+			
+			options.chunkSize(chunk).prefetchSize(chunk);
+			entities = session.datastore().iterate((projected) ? query : query.setKeysOnly(), options);
+			this.cursor = cursor;
+			this.position = options.getOffset();
+			this.offset = offset;
+			this.limit = limit;
+		}
+		
+		/**
+		 * Returns the cursor which points the key next to the last one 
+		 * consumed by this iterator. The cursor consists of the datastore 
+		 * cursor at the beginning of the current chunk and the number of the 
+		 * keys consumed in the chunk, so the entities filtered out in memory 
+		 * are not scanned again.
+		 * 
+		 * @return The cursor which points the key next to the last consumed.
+		 */
+		private String cursor() {
+			return AppEngineGetList.this.cursor(cursor, position);
+		}
+		
+		@Override
+		public boolean hasNext() {
+			while (!ready && !closed && limit > 0) {
+				if (hydrated.hasNext()) {
+					E entity = hydrated.next();
+					position++;
+					
+					// The entity deleted after the query execution is skipped.
+					if (entity == null || !matches(entity, filters)) {
+						continue;
+					}
+					
+					if (offset > 0) {
+						offset--;
+						continue;
+					}
+					
+					next = entity;
+					ready = true;
+				} else if (entities.hasNext()) {
+					if (started) {
+						// Cursors are not available for the query with 'IN' or 
+						// 'NOT_EQUAL' filter. In that case, the position is 
+						// counted from the previous cursor.
+						Cursor cursor = entities.getCursor();
+						
+						if (cursor != null) {
+							this.cursor = cursor;
+							position = 0;
+						}
+					}
 					
-					for (Order<?, ?> o : suborders) {
-						Order<E, ?> order = (Order<E, ?>) o;
-						compare = order.compare(entity1, entity2);
+					started = true;
+					
+					if (projected) {
+						List<E> projection = new ArrayList<E>(chunk);
 						
-						if (order.direction() == Order.Direction.DESC) {
-							compare = compare * -1;
+						while (entities.hasNext() && projection.size() < chunk) {
+							projection.add(Translation.toObject(metamodel.type(), entities.next(), selection));
 						}
 						
-						if (compare != 0) {
-							return compare;
+						hydrated = projection.iterator();
+					} else {
+						keys.clear();
+						
+						while (entities.hasNext() && keys.size() < chunk) {
+							keys.add(entities.next().getKey());
 						}
+						
+						hydrated = (selection == null) ? session.get(metamodel.type(), keys).iterator() 
+								: hydrate(keys).iterator();
 					}
 					
-					return compare;
-				};
-				
-			});
+				} else {
+					close();
+				}
+			}
+			
+			return ready;
 		}
 		
-		if (subfilters.isEmpty()) {
-			return result;
-		} else {
-			int offset = this.offset;
+		// Gets only the root entities (without the child entities) in bulk and 
+		// translates the selected properties.
+		private List<E> hydrate(List<Key> keys) {
+			Map<Key, Entity> roots = session.datastore().get(keys);
+			List<E> entities = new ArrayList<E>(keys.size());
 			
-			if (offset > result.size()) {
-				offset = result.size() - 1;
+			for (Key key : keys) {
+				Entity root = roots.get(key);
+				entities.add((root == null) ? null 
+						: Translation.toObject(metamodel.type(), root, selection));
 			}
 			
-			int limit = offset + this.limit;
-			
-			if (limit > result.size()) {
-				limit = result.size();
+			return entities;
+		}
+		
+		@Override
+		public E next() {
+			if (!hasNext()) {
+				throw new NoSuchElementException();
 			}
 			
-			return result.subList(offset, limit);
+			E entity = next;
+			next = null;
+			ready = false;
+			limit--;
+			return entity;
 		}
+		
+		@Override
+		public void remove() {
+			throw new UnsupportedOperationException();
+		}
+		
+		@Override
+		public void close() {
+			closed = true;
+			hydrated = Collections.<E>emptyList().iterator();
+		}
+		
 	}
 
 	/**
@@ -263,6 +954,24 @@ public class AppEngineGetList<E> implements GetList<E> {
 		return this;
 	}
 
+	/**
+	 * Qualifies the properties to be populated in the returned entities.
+	 * 
+	 * @param properties The properties to be populated in the returned 
+	 * entities.
+	 * @return The {@code GetList} which the execution result is populated 
+	 * with the specified properties.
+	 */
+	@Override
+	public AppEngineGetList<E> select(Property<?, ?>... properties) {
+		if (properties == null) {
+			throw new IllegalArgumentException("'properties' must not be [" + properties + "]");
+		}
+		
+		this.properties = Arrays.asList(properties);
+		return this;
+	}
+	
 	/**
 	 * Qualifies limit size of the returned list.
 	 * 
@@ -298,5 +1007,78 @@ public class AppEngineGetList<E> implements GetList<E> {
 		this.offset = offset;
 		return this;
 	}
+	
+	/**
+	 * Qualifies the position of execution result to start with the cursor 
+	 * returned by the previous execution. The cursor of the result sorted in 
+	 * memory holds the sort keys and the key of the last entity of the page 
+	 * instead of the datastore cursor, so it can be used only with the same 
+	 * sort orders.
+	 * 
+	 * @param cursor The cursor returned by the previous execution.
+	 * @return The {@code GetList} which the execution result is qualified with 
+	 * the specified cursor.
+	 */
+	@Override
+	public AppEngineGetList<E> startCursor(String cursor) {
+		if (cursor == null) {
+			throw new IllegalArgumentException("'cursor' must not be [" + cursor + "]");
+		}
+		
+		if (cursor.startsWith(KEYSET)) {
+			try {
+				EntityProto proto = new EntityProto();
+				
+				if (!proto.mergeFrom(Base64.getUrlDecoder().decode(cursor.substring(KEYSET.length())))) {
+					throw new IllegalArgumentException();
+				}
+				
+				boundary = EntityTranslator.createFromPb(proto);
+				this.cursor = null;
+				position = 0;
+			} catch (RuntimeException e) {
+				throw new IllegalArgumentException("'cursor' must be the cursor returned by the previous execution but was [" + cursor + "]");
+			}
+			
+			return this;
+		}
+		
+		int i = cursor.lastIndexOf(".");
+		
+		try {
+			int position = Integer.parseInt(cursor.substring(i + 1));
+			
+			if (i < 0 || position < 0) {
+				throw new IllegalArgumentException();
+			}
+			
+			this.cursor = (i == 0) ? null : Cursor.fromWebSafeString(cursor.substring(0, i));
+			this.position = position;
+			boundary = null;
+		} catch (RuntimeException e) {
+			throw new IllegalArgumentException("'cursor' must be the cursor returned by the previous execution but was [" + cursor + "]");
+		}
+		
+		return this;
+	}
+	
+	/**
+	 * Qualifies the number of entities to be fetched from the datastore at 
+	 * once. The keys are fetched from the datastore with this chunk size and 
+	 * the entities are hydrated in bulk per chunk.
+	 * 
+	 * @param chunk The number of entities to be fetched at once.
+	 * @return The {@code GetList} which the execution is qualified with the 
+	 * specified chunk size.
+	 */
+	@Override
+	public AppEngineGetList<E> chunk(int chunk) {
+		if (chunk < 1) {
+			throw new IllegalArgumentException("'chunk' must be greater than or equal to [" + 1 + "]");
+		}
+		
+		this.chunk = chunk;
+		return this;
+	}
 
 }
@@ -18,16 +18,24 @@ package org.eiichiro.acidhouse.appengine;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
 import java.util.logging.Logger;
 
+import org.eiichiro.acidhouse.Accumulator;
 import org.eiichiro.acidhouse.Aggregation;
+import org.eiichiro.acidhouse.Aggregations;
+import org.eiichiro.acidhouse.Entities;
 import org.eiichiro.acidhouse.Filter;
-import org.eiichiro.acidhouse.GetList;
 import org.eiichiro.acidhouse.GetScalar;
 import org.eiichiro.acidhouse.Order;
+import org.eiichiro.acidhouse.ResultIterator;
+import org.eiichiro.acidhouse.metamodel.ComparableProperty;
 import org.eiichiro.acidhouse.metamodel.Metamodel;
 import org.eiichiro.acidhouse.metamodel.Property;
 
+import com.google.appengine.api.datastore.Query;
+
 /**
  * {@code AppEngineGetScalar} is a App Engine Low-level Datastore API based 
  * implementation of {@code GetScalar}.
@@ -46,6 +54,10 @@ public class AppEngineGetScalar<E, R> implements GetScalar<E, R> {
 	
 	private Order<?, ?>[] orders;
 	
+	private boolean parallel = false;
+	
+	private int chunk = 1000;
+	
 	/**
 	 * Constructs a new {@code AppEngineGetScalar} with the specified 
 	 * {@code Aggregation} and {@code AppEngineDatastoreSession}.
@@ -59,7 +71,26 @@ public class AppEngineGetScalar<E, R> implements GetScalar<E, R> {
 	}
 	
 	/**
-	 * Executes {@code GetScalar} with {@code AppEngineDatastoreSession}.
+	 * Executes {@code GetScalar} with {@code AppEngineDatastoreSession}. 
+	 * The count, min and max aggregations are pushed down to the datastore if 
+	 * the session can be computed from the indexes 
+	 * ({@link AppEngineDatastoreSession#indexed()}) and the query is not 
+	 * restricted (See {@code QueryRestriction}): 
+	 * <ul>
+	 * <li>
+	 * Count is computed with a keys-only query. If the filters are 
+	 * restricted, the qualified entities are counted while streaming without 
+	 * buffering them.
+	 * </li>
+	 * <li>
+	 * Min and max are computed with the query sorted by the indexed property 
+	 * and limited to one entity. The entities which don't have the property 
+	 * value are not aggregated.
+	 * </li>
+	 * </ul>
+	 * Otherwise, the qualified entities are streamed and the property values 
+	 * are folded into {@link Aggregation#accumulator()} without being 
+	 * buffered (See {@link #parallel(boolean)}).
 	 * 
 	 * @return The result of the specified {@code Aggregation}.
 	 */
@@ -67,33 +98,195 @@ public class AppEngineGetScalar<E, R> implements GetScalar<E, R> {
 	@Override
 	public R execute() {
 		logger.fine("Executing [AppEngineGetScalar] command");
-		Property<?, R> property = aggregation.property();
-		GetList<E> command = session.get((Metamodel<E>) property.metamodel().root());
+		final Property<?, R> property = aggregation.property();
+		AppEngineGetList<E> command = session.get((Metamodel<E>) property.metamodel().root());
 		
 		if (filters != null) {
 			command.filter(filters.toArray(new Filter<?>[] {}));
 		}
 		
+		if (aggregation instanceof Aggregations.Count && session.indexed()) {
+			Query query = command.query();
+			
+			if (query != null) {
+				return (R) Long.valueOf(session.datastore().count(query.setKeysOnly()));
+			}
+			
+			long count = 0;
+			ResultIterator<E> iterator = command.iterate();
+			
+			try {
+				while (iterator.hasNext()) {
+					iterator.next();
+					count++;
+				}
+				
+			} finally {
+				iterator.close();
+			}
+			
+			return (R) Long.valueOf(count);
+		}
+		
+		if ((aggregation instanceof Aggregations.Min || aggregation instanceof Aggregations.Max) 
+				&& session.indexed() && indexed(property)) {
+			ComparableProperty<E, ?> comparable = (ComparableProperty<E, ?>) property;
+			command.sort((aggregation instanceof Aggregations.Min) ? comparable.asc : comparable.desc);
+			
+			if (command.query() != null) {
+				List<E> entities = command.limit(1).execute();
+				return (entities.isEmpty()) ? null : property.get(entities.get(0));
+			}
+			
+			command = session.get((Metamodel<E>) property.metamodel().root());
+			
+			if (filters != null) {
+				command.filter(filters.toArray(new Filter<?>[] {}));
+			}
+		}
+		
 		if (orders != null) {
 			command.sort(orders);
 		}
 		
-		List<E> entities = command.execute();
-		List<R> list = new ArrayList<R>();
+		ResultIterator<E> iterator = command.iterate();
+		
+		try {
+			if (!parallel) {
+				Accumulator<R> accumulator = aggregation.accumulator();
+				
+				while (iterator.hasNext()) {
+					aggregation.accumulate(accumulator, iterator.next());
+				}
+				
+				return accumulator.finish();
+			}
+			
+			// Each chunk is accumulated by the worker thread while the next 
+			// chunk is streamed. The partial results are combined in the 
+			// iteration order.
+			List<CompletableFuture<Accumulator<R>>> futures = new ArrayList<CompletableFuture<Accumulator<R>>>();
+			
+			while (iterator.hasNext()) {
+				final List<E> entities = new ArrayList<E>(chunk);
+				
+				while (iterator.hasNext() && entities.size() < chunk) {
+					entities.add(iterator.next());
+				}
+				
+				futures.add(session.datastore().async(new Supplier<Accumulator<R>>() {
+					
+					@Override
+					public Accumulator<R> get() {
+						Accumulator<R> accumulator = aggregation.accumulator();
+						
+						for (E entity : entities) {
+							aggregation.accumulate(accumulator, entity);
+						}
+						
+						return accumulator;
+					}
+					
+				}));
+			}
+			
+			Accumulator<R> accumulator = aggregation.accumulator();
+			
+			for (CompletableFuture<Accumulator<R>> future : futures) {
+				accumulator.combine(future.join());
+			}
+			
+			return accumulator.finish();
+		} finally {
+			iterator.close();
+		}
+	}
+	
+	// The property must be an indexed property of the root entity to be sorted 
+	// with the datastore query.
+	private boolean indexed(Property<?, R> property) {
+		if (!(property instanceof ComparableProperty<?, ?>) 
+				|| !property.metamodel().isRoot() || property.parent() != null) {
+			return false;
+		}
+		
+		Class<?> type = property.metamodel().type();
 		
-		for (Object entity : entities) {
-			list.add(property.get(entity));
+		if (property.name().equals(Entities.keyField(type).getName())) {
+			return false;
 		}
 		
-		return aggregation.aggregate(list);
+		for (Mapping.Property p : Mapping.of(type).properties()) {
+			if (p.name().equals(property.name())) {
+				return p.kind() == Mapping.Kind.VALUE && !p.unindexed();
+			}
+		}
+		
+		return false;
+	}
+	
+	/**
+	 * Executes {@code GetScalar} asynchronously with 
+	 * {@code AppEngineDatastoreSession}. Under a transaction, this method 
+	 * executes {@code GetScalar} on the calling thread.
+	 * 
+	 * @return The future of the result of the specified {@code Aggregation}.
+	 */
+	@Override
+	public CompletableFuture<R> executeAsync() {
+		return session.async(new Supplier<R>() {
+			
+			@Override
+			public R get() {
+				return execute();
+			}
+			
+		});
 	}
 
 	/**
-	 * Specifies sort orders which the list passed to 
-	 * {@code Aggregation#aggregate(java.util.List)} is sorted by.
+	 * Specifies whether the property values are accumulated by the worker 
+	 * threads. If {@code true}, the streamed entities are split into the 
+	 * chunks of {@link #chunk(int)} entities and each chunk is accumulated 
+	 * into its own {@code Accumulator} with 
+	 * {@link AppEngineDatastoreService#executor()}, then the partial results 
+	 * are combined in the iteration order. By default, the property values 
+	 * are accumulated on the calling thread.
+	 * 
+	 * @param parallel Whether the property values are accumulated 
+	 * concurrently.
+	 * @return The {@code GetScalar} to accumulate the property values as 
+	 * specified.
+	 */
+	public AppEngineGetScalar<E, R> parallel(boolean parallel) {
+		this.parallel = parallel;
+		return this;
+	}
+	
+	/**
+	 * Specifies the number of the entities accumulated by a worker thread 
+	 * at a time when {@link #parallel(boolean)} is specified. The default is 
+	 * 1000.
+	 * 
+	 * @param chunk The number of the entities accumulated at a time.
+	 * @return The {@code GetScalar} to accumulate the specified number of 
+	 * entities at a time.
+	 */
+	public AppEngineGetScalar<E, R> chunk(int chunk) {
+		if (chunk < 1) {
+			throw new IllegalArgumentException("'chunk' must be greater than or equal to [" + 1 + "]");
+		}
+		
+		this.chunk = chunk;
+		return this;
+	}
+	
+	/**
+	 * Specifies sort orders in which the property values are folded into 
+	 * {@code Aggregation#accumulator()}.
 	 * 
-	 * @param orders The sort orders which the list passed to 
-	 * {@code Aggregation#aggregate(java.util.List)} is sorted by.
+	 * @param orders The sort orders in which the property values are folded 
+	 * into {@code Aggregation#accumulator()}.
 	 * @return The {@code GetScalar} which the sort orders have been specified.
 	 */
 	@Override
@@ -111,9 +304,9 @@ public class AppEngineGetScalar<E, R> implements GetScalar<E, R> {
 	 * Each of the specified filters is combined with "logical and".
 	 * 
 	 * @param filters {@code Filter}s to qualify the retrieved entities.
-	 * @return The {@code GetScalar} which the execution result passed to 
-	 * {@code Aggregation#aggregate(java.util.List)} is qualified by the 
-	 * specified filters.
+	 * @return The {@code GetScalar} which the property values folded into 
+	 * {@code Aggregation#accumulator()} are qualified by the specified 
+	 * filters.
 	 */
 	@Override
 	public AppEngineGetScalar<E, R> filter(Filter<?>... filters) {
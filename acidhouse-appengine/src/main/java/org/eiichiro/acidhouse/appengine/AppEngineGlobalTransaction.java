@@ -15,6 +15,7 @@
  */
 package org.eiichiro.acidhouse.appengine;
 
+import java.util.concurrent.CompletableFuture;
 import java.util.logging.Logger;
 
 import org.eiichiro.acidhouse.IndoubtException;
@@ -66,14 +67,40 @@ public class AppEngineGlobalTransaction extends AppEngineTransaction {
 	@Override
 	public void commit() throws IndoubtException {
 		session.transaction.remove();
+		clear();
 		coordinator.commit();
 		logger.fine("Transaction [" + id() + "] committed");
 	}
 
+	/**
+	 * Commits this transaction with {@code AppEngineCoordinator} and returns 
+	 * the completed future. The datastore transactions are bound to the 
+	 * thread which has begun them, so the commitment protocol is executed on 
+	 * the calling thread (the preparation and commitment phases of Two-phase 
+	 * commit protocol are executed concurrently with 
+	 * {@code AsyncDatastoreService} as {@link #commit()} does).
+	 * 
+	 * @return The future completed when this transaction is committed.
+	 */
+	@Override
+	public CompletableFuture<Void> commitAsync() {
+		CompletableFuture<Void> future = new CompletableFuture<Void>();
+		
+		try {
+			commit();
+			future.complete(null);
+		} catch (RuntimeException e) {
+			future.completeExceptionally(e);
+		}
+		
+		return future;
+	}
+	
 	/** Rolls back current transaction with {@code AppEngineCoordinator}. */
 	@Override
 	public void rollback() {
 		session.transaction.remove();
+		clear();
 		coordinator.rollback();
 	}
 
@@ -0,0 +1,258 @@
+/*
+ * Copyright (C) 2011 Eiichiro Uchiumi. All Rights Reserved.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.eiichiro.acidhouse.appengine;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+import java.util.logging.Logger;
+
+import org.eiichiro.acidhouse.Accumulator;
+import org.eiichiro.acidhouse.Aggregation;
+import org.eiichiro.acidhouse.Filter;
+import org.eiichiro.acidhouse.Group;
+import org.eiichiro.acidhouse.ResultIterator;
+import org.eiichiro.acidhouse.metamodel.ComparableProperty;
+import org.eiichiro.acidhouse.metamodel.Metamodel;
+
+/**
+ * {@code AppEngineGroup} is a App Engine Low-level Datastore API based 
+ * implementation of {@code Group}.
+ * 
+ * @author <a href="mailto:mail@eiichiro.org">Eiichiro Uchiumi</a>
+ */
+public class AppEngineGroup<E> implements Group<E> {
+	
+	private Logger logger = Logger.getLogger(getClass().getName());
+	
+	private final Metamodel<E> metamodel;
+	
+	private final AppEngineDatastoreSession session;
+	
+	private List<Filter<?>> filters = new ArrayList<Filter<?>>(0);
+	
+	private ComparableProperty<?, ?>[] properties;
+	
+	private Aggregation<?>[] aggregations;
+	
+	/**
+	 * Constructs a new {@code AppEngineGroup} with the specified metamodel of 
+	 * entity and {@code AppEngineDatastoreSession}.
+	 * 
+	 * @param metamodel The metamodel of entity to group with this command.
+	 * @param session {@code AppEngineDatastoreSession} instance for this command.
+	 */
+	public AppEngineGroup(Metamodel<E> metamodel, AppEngineDatastoreSession session) {
+		this.metamodel = metamodel;
+		this.session = session;
+	}
+	
+	/**
+	 * Executes {@code Group} with {@code AppEngineDatastoreSession}. 
+	 * The qualified entities are streamed with {@link AppEngineGetList#iterate()}, 
+	 * so the filters are applied by the datastore query as far as 
+	 * {@code QueryRestriction} allows and the entities are not buffered. 
+	 * Each entity is looked up in the hash table of the groups with the 
+	 * reusable grouping key and its property values are folded into the 
+	 * {@code Accumulator}s of the group. The grouping key is copied only when 
+	 * a new group is found. 
+	 * The groups are returned in the order in which they have been found.
+	 * 
+	 * @return The map from the grouping key to the aggregation results.
+	 */
+	@SuppressWarnings({ "rawtypes", "unchecked" })
+	@Override
+	public Map<List<Object>, List<Object>> execute() {
+		logger.fine("Executing [AppEngineGroup] command");
+		
+		if (properties == null) {
+			throw new IllegalStateException("'properties' must be set");
+		}
+		
+		if (aggregations == null) {
+			throw new IllegalStateException("'aggregations' must be set");
+		}
+		
+		AppEngineGetList<E> command = session.get(metamodel);
+		
+		if (filters != null) {
+			command.filter(filters.toArray(new Filter<?>[] {}));
+		}
+		
+		Map<Key, Accumulator[]> groups = new HashMap<Key, Accumulator[]>();
+		List<Key> keys = new ArrayList<Key>();
+		Key probe = new Key(new Object[properties.length]);
+		ResultIterator<E> iterator = command.iterate();
+		
+		try {
+			while (iterator.hasNext()) {
+				E entity = iterator.next();
+				
+				for (int i = 0; i < properties.length; i++) {
+					probe.values[i] = properties[i].get(entity);
+				}
+				
+				probe.hash();
+				Accumulator[] accumulators = groups.get(probe);
+				
+				if (accumulators == null) {
+					Key key = new Key(probe.values.clone());
+					key.hash();
+					accumulators = new Accumulator[aggregations.length];
+					
+					for (int i = 0; i < aggregations.length; i++) {
+						accumulators[i] = aggregations[i].accumulator();
+					}
+					
+					groups.put(key, accumulators);
+					keys.add(key);
+				}
+				
+				for (int i = 0; i < aggregations.length; i++) {
+					((Aggregation) aggregations[i]).accumulate(accumulators[i], entity);
+				}
+			}
+			
+		} finally {
+			iterator.close();
+		}
+		
+		Map<List<Object>, List<Object>> result = new LinkedHashMap<List<Object>, List<Object>>();
+		
+		for (Key key : keys) {
+			Accumulator[] accumulators = groups.get(key);
+			List<Object> values = new ArrayList<Object>(accumulators.length);
+			
+			for (Accumulator accumulator : accumulators) {
+				values.add(accumulator.finish());
+			}
+			
+			result.put(Collections.unmodifiableList(Arrays.asList(key.values)), values);
+		}
+		
+		return result;
+	}
+	
+	/**
+	 * Executes {@code Group} asynchronously with 
+	 * {@code AppEngineDatastoreSession}. Under a transaction, this method 
+	 * executes {@code Group} on the calling thread.
+	 * 
+	 * @return The future of the map from the grouping key to the aggregation 
+	 * results.
+	 */
+	@Override
+	public CompletableFuture<Map<List<Object>, List<Object>>> executeAsync() {
+		return session.async(new Supplier<Map<List<Object>, List<Object>>>() {
+			
+			@Override
+			public Map<List<Object>, List<Object>> get() {
+				return execute();
+			}
+			
+		});
+	}
+	
+	/**
+	 * Specifies the properties by which the entities are grouped.
+	 * 
+	 * @param properties The properties by which the entities are grouped.
+	 * @return The {@code Group} which groups the entities by the specified 
+	 * properties.
+	 */
+	@Override
+	public AppEngineGroup<E> by(ComparableProperty<?, ?>... properties) {
+		if (properties == null || properties.length == 0) {
+			throw new IllegalArgumentException("'properties' must not be [" + 
+					((properties == null) ? null : Arrays.asList(properties)) + "]");
+		}
+		
+		this.properties = properties;
+		return this;
+	}
+	
+	/**
+	 * Specifies the {@code Aggregation}s applied to each group.
+	 * 
+	 * @param aggregations The {@code Aggregation}s applied to each group.
+	 * @return The {@code Group} which aggregates each group with the 
+	 * specified {@code Aggregation}s.
+	 */
+	@Override
+	public AppEngineGroup<E> aggregate(Aggregation<?>... aggregations) {
+		if (aggregations == null || aggregations.length == 0) {
+			throw new IllegalArgumentException("'aggregations' must not be [" + 
+					((aggregations == null) ? null : Arrays.asList(aggregations)) + "]");
+		}
+		
+		this.aggregations = aggregations;
+		return this;
+	}
+	
+	/**
+	 * Qualifies entities to be grouped with the specified {@code Filter}s.
+	 * Each of the specified filters is combined with "logical and".
+	 * 
+	 * @param filters {@code Filter}s to qualify the grouped entities.
+	 * @return The {@code Group} which groups the entities qualified with the 
+	 * specified {@code Filter}s.
+	 */
+	@Override
+	public AppEngineGroup<E> filter(Filter<?>... filters) {
+		if (filters == null) {
+			throw new IllegalArgumentException("'filters' must not be [" + filters + "]");
+		}
+		
+		this.filters = Arrays.asList(filters);
+		return this;
+	}
+	
+	// The grouping key. The hash code is computed once after the values are 
+	// set, so the same instance can be reused to look up the groups.
+	private static class Key {
+		
+		private final Object[] values;
+		
+		private int hash;
+		
+		private Key(Object[] values) {
+			this.values = values;
+		}
+		
+		private void hash() {
+			hash = Arrays.hashCode(values);
+		}
+		
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+		
+		@Override
+		public boolean equals(Object obj) {
+			return obj instanceof Key && hash == ((Key) obj).hash 
+					&& Arrays.equals(values, ((Key) obj).values);
+		}
+		
+	}
+	
+}
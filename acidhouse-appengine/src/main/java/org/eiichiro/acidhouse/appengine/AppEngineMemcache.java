@@ -0,0 +1,179 @@
+/*
+ * Copyright (C) 2011 Eiichiro Uchiumi. All Rights Reserved.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.eiichiro.acidhouse.appengine;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.EntityTranslator;
+import com.google.appengine.api.datastore.Key;
+import com.google.appengine.api.datastore.KeyFactory;
+import com.google.appengine.api.memcache.Expiration;
+import com.google.appengine.api.memcache.MemcacheService;
+import com.google.appengine.api.memcache.MemcacheServiceFactory;
+import com.google.storage.onestore.v3.OnestoreEntity.EntityProto;
+
+/**
+ * {@code AppEngineMemcache} is an App Engine Memcache based second-level 
+ * cache of the entity groups got outside of a transaction. It is shared by 
+ * every application instance. 
+ * The entity group is stored as the list of the serialized 
+ * {@code EntityProto} bytes under the versioned key (the root entity key and 
+ * the current version of the entity group). Invalidation increments the 
+ * version atomically, so the entity group cached with the previous version 
+ * (even if it is put after the invalidation by the concurrent read) is never 
+ * served again. The entity group which is locked by the other transaction 
+ * is never cached.
+ * 
+ * @author <a href="mailto:mail@eiichiro.org">Eiichiro Uchiumi</a>
+ */
+public class AppEngineMemcache {
+	
+	/** The default namespace of {@code MemcacheService}. */
+	public static final String NAMESPACE = "acidhouse";
+	
+	private final MemcacheService memcache;
+	
+	private final int expiration;
+	
+	/**
+	 * Constructs a new {@code AppEngineMemcache} with {@code MemcacheService} 
+	 * of {@link #NAMESPACE} namespace. The cached entity group expires in an 
+	 * hour.
+	 */
+	public AppEngineMemcache() {
+		this(MemcacheServiceFactory.getMemcacheService(NAMESPACE), 3600);
+	}
+	
+	/**
+	 * Constructs a new {@code AppEngineMemcache} with the specified 
+	 * {@code MemcacheService} and the expiration.
+	 * 
+	 * @param memcache {@code MemcacheService}.
+	 * @param expiration The expiration of the cached entity group as second.
+	 */
+	public AppEngineMemcache(MemcacheService memcache, int expiration) {
+		if (memcache == null) {
+			throw new IllegalArgumentException("'memcache' must not be [" + memcache + "]");
+		}
+		
+		if (expiration < 1) {
+			throw new IllegalArgumentException("'expiration' must be greater than or equal to [" + 1 + "]");
+		}
+		
+		this.memcache = memcache;
+		this.expiration = expiration;
+	}
+	
+	/**
+	 * Returns the current version of the entity group corresponding to the 
+	 * specified root entity key. The version must be got before the entity 
+	 * group is got from the datastore and passed to 
+	 * {@link #put(Key, long, List)}. If the version has not been stored (or 
+	 * has been evicted), it is initialized with the current time so that the 
+	 * entity group cached with the evicted version is never served.
+	 * 
+	 * @param key The root entity key of the entity group.
+	 * @return The current version of the entity group.
+	 */
+	public long version(Key key) {
+		Long version = memcache.increment(versionKey(key), 0L,
+				System.currentTimeMillis());
+		return (version == null) ? 0L : version;
+	}
+	
+	/**
+	 * Returns the entity group cached with the specified root entity key and 
+	 * version. This method returns {@code null} if the entity group is not 
+	 * cached.
+	 * 
+	 * @param key The root entity key of the entity group.
+	 * @param version The version of the entity group.
+	 * @return The cached entity group.
+	 */
+	@SuppressWarnings("unchecked")
+	public List<Entity> get(Key key, long version) {
+		List<byte[]> protos = (List<byte[]>) memcache.get(groupKey(key, version));
+		
+		if (protos == null) {
+			return null;
+		}
+		
+		List<Entity> entities = new ArrayList<Entity>(protos.size());
+		
+		for (byte[] bytes : protos) {
+			EntityProto proto = new EntityProto();
+			proto.mergeFrom(bytes);
+			entities.add(EntityTranslator.createFromPb(proto));
+		}
+		
+		return entities;
+	}
+	
+	/**
+	 * Caches the specified entity group with the specified root entity key 
+	 * and version. The entity group which contains {@code Lock} entity is not 
+	 * cached.
+	 * 
+	 * @param key The root entity key of the entity group.
+	 * @param version The version got before the entity group is got.
+	 * @param entities The entity group got from the datastore.
+	 */
+	public void put(Key key, long version, List<Entity> entities) {
+		ArrayList<byte[]> protos = new ArrayList<byte[]>(entities.size());
+		
+		for (Entity entity : entities) {
+			if (entity.getKind().equals(Translation.LOCK_KIND)) {
+				return;
+			}
+			
+			protos.add(EntityTranslator.convertToPb(entity).toByteArray());
+		}
+		
+		memcache.put(groupKey(key, version), protos, Expiration.byDeltaSeconds(expiration));
+	}
+	
+	/**
+	 * Invalidates the entity groups corresponding to the specified root entity 
+	 * keys by incrementing their versions.
+	 * 
+	 * @param keys The root entity keys of the entity groups.
+	 */
+	public void invalidate(Collection<Key> keys) {
+		if (keys.isEmpty()) {
+			return;
+		}
+		
+		List<String> versions = new ArrayList<String>(keys.size());
+		
+		for (Key key : keys) {
+			versions.add(versionKey(key));
+		}
+		
+		memcache.incrementAll(versions, 1L, System.currentTimeMillis());
+	}
+	
+	private String versionKey(Key key) {
+		return "version:" + KeyFactory.keyToString(key);
+	}
+	
+	private String groupKey(Key key, long version) {
+		return "group:" + KeyFactory.keyToString(key) + ":" + version;
+	}
+	
+}
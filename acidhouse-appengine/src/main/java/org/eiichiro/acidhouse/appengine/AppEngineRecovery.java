@@ -0,0 +1,157 @@
+/*
+ * Copyright (C) 2011 Eiichiro Uchiumi. All Rights Reserved.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.eiichiro.acidhouse.appengine;
+
+import java.util.ConcurrentModificationException;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.logging.Logger;
+
+import org.eiichiro.acidhouse.IndoubtException;
+import org.eiichiro.acidhouse.Lock;
+
+import com.google.appengine.api.datastore.DatastoreServiceFactory;
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.FetchOptions;
+import com.google.appengine.api.datastore.Query;
+import com.google.appengine.api.datastore.QueryResultIterator;
+
+/**
+ * {@code AppEngineRecovery} rolls forward (or cleans up) the transactions 
+ * abandoned in the middle of "Two-phase commit protocol" in background.
+ * {@code AppEngineResourceManager} recovers the abandoned transaction lazily 
+ * when the locked entity is read (Consistent read), so the reader has to pay 
+ * for applying every operation of the abandoned transaction. This class scans 
+ * the lock entities which have exceeded the deadline of datastore operation 
+ * chunk by chunk and recovers their transactions off the request path. 
+ * Because this class implements {@code Runnable}, you can run it on a 
+ * schedule, as the following code, or from a cron job request handler: 
+ * <pre>
+ * ScheduledExecutorService executor = ...;
+ * executor.scheduleWithFixedDelay(new AppEngineRecovery(), 1, 1, TimeUnit.MINUTES);
+ * </pre>
+ * 
+ * @author <a href="mailto:mail@eiichiro.org">Eiichiro Uchiumi</a>
+ */
+public class AppEngineRecovery implements Runnable {
+	
+	private final Logger logger = Logger.getLogger(getClass().getName());
+	
+	private final AppEngineDatastoreService datastore;
+	
+	private int chunk = 100;
+	
+	/** Constructs a new {@code AppEngineRecovery}. */
+	public AppEngineRecovery() {
+		this(new AppEngineDatastoreService(DatastoreServiceFactory.getDatastoreService()));
+	}
+	
+	/**
+	 * Constructs a new {@code AppEngineRecovery} with the specified 
+	 * {@code AppEngineDatastoreService}.
+	 * 
+	 * @param datastore {@code AppEngineDatastoreService}.
+	 */
+	public AppEngineRecovery(AppEngineDatastoreService datastore) {
+		this.datastore = datastore;
+	}
+	
+	/**
+	 * Recovers every abandoned transaction. The transaction is rolled forward 
+	 * if its transaction entities have been committed. Otherwise, the lock 
+	 * is just deleted because the transaction has been failed in the 
+	 * preparation phase.
+	 * 
+	 * @return The number of the transactions recovered.
+	 */
+	public int recover() {
+		logger.fine("Recovery started");
+		long now = System.currentTimeMillis();
+		Set<String> transactions = new HashSet<String>();
+		QueryResultIterator<Entity> locks = datastore.iterate(
+				new Query(Translation.LOCK_KIND), 
+				FetchOptions.Builder.withChunkSize(chunk).prefetchSize(chunk));
+		
+		while (locks.hasNext()) {
+			Entity entity = locks.next();
+			Lock lock = Translation.toLock(entity);
+			
+			// The timestamp is not indexed, so the expiration is determined in 
+			// memory.
+			if (now - lock.timestamp().getTime() <= datastore.deadline()
+					|| transactions.contains(lock.transaction())) {
+				continue;
+			}
+			
+			try {
+				// The locks of the same transaction are recovered at once.
+				new AppEngineResourceManager(datastore).unlock(entity.getParent());
+				transactions.add(lock.transaction());
+			} catch (ConcurrentModificationException e) {
+				logger.info("Transaction [" + lock.id()
+						+ "] is processed by another transaction");
+			} catch (IndoubtException e) {
+				logger.warning("Transaction [" + lock.id()
+						+ "]: Recovery failed due to [" + e + "]");
+			} catch (RuntimeException e) {
+				// The failure of a lock must not stop recovering the others.
+				logger.warning("Lock [" + entity.getKey()
+						+ "]: Recovery failed due to [" + e + "]");
+			}
+		}
+		
+		logger.fine("Recovery finished: [" + transactions.size() 
+				+ "] transactions have been recovered");
+		return transactions.size();
+	}
+	
+	/** Recovers every abandoned transaction. */
+	@Override
+	public void run() {
+		try {
+			recover();
+		} catch (RuntimeException e) {
+			// An exception thrown from here cancels the subsequent scheduled 
+			// executions.
+			logger.warning("Recovery failed due to [" + e + "]");
+		}
+	}
+	
+	/**
+	 * Returns the number of the lock entities to be fetched from the datastore 
+	 * at once.
+	 * 
+	 * @return The number of the lock entities to be fetched at once.
+	 */
+	public int chunk() {
+		return chunk;
+	}
+	
+	/**
+	 * Sets the number of the lock entities to be fetched from the datastore 
+	 * at once.
+	 * 
+	 * @param chunk The number of the lock entities to be fetched at once.
+	 */
+	public void chunk(int chunk) {
+		if (chunk < 1) {
+			throw new IllegalArgumentException("'chunk' must be greater than or equal to [" + 1 + "]");
+		}
+		
+		this.chunk = chunk;
+	}
+	
+}
@@ -16,10 +16,17 @@
 package org.eiichiro.acidhouse.appengine;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.ConcurrentModificationException;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 import java.util.logging.Logger;
 
 import org.eiichiro.acidhouse.Entities;
@@ -29,6 +36,7 @@ import org.eiichiro.acidhouse.Lock;
 import org.eiichiro.acidhouse.Log;
 import org.eiichiro.acidhouse.Log.State;
 import org.eiichiro.acidhouse.ResourceManager;
+import org.eiichiro.reverb.lang.UncheckedException;
 
 import com.google.appengine.api.datastore.Entity;
 import com.google.appengine.api.datastore.Key;
@@ -87,9 +95,11 @@ public class AppEngineResourceManager implements ResourceManager<Transaction> {
 	 * the following procedure.
 	 * <ul>
 	 * <li>
-	 * Determines if the entity is locked ({@code Lock} entity is found). If the 
-	 * entity has been locked, goes to the next step. If the entity has not been 
-	 * locked, jumps to the last step.
+	 * Gets the entity and its children from Google App Engine Datastore with a 
+	 * single ancestor query and determines if the entity is locked 
+	 * ({@code Lock} entity is found in the query result). If the entity has 
+	 * been locked, goes to the next step. If the entity has not been locked, 
+	 * returns the entity.
 	 * </li>
 	 * <li>
 	 * Attempts to get {@code AppEngineGlobalTransaction} from {@code Lock}. If the 
@@ -127,30 +137,62 @@ public class AppEngineResourceManager implements ResourceManager<Transaction> {
 	@Override
 	public <E> E get(Class<E> clazz, Object key)
 			throws ConcurrentModificationException, IndoubtException {
+		return get(clazz, key, query(Keys.create(Translation.toKind(clazz), key)));
+	}
+	
+	/**
+	 * Gets the entity instance of the specified {@code Class} corresponding to 
+	 * the specified key from the specified entity group which has been got 
+	 * from the datastore in advance. If the entity group has been locked, 
+	 * this method rolls it forward and gets it again as 
+	 * {@link #get(Class, Object)} does.
+	 * 
+	 * @param <E> The type of entity.
+	 * @param clazz The {@code Class} of entity.
+	 * @param key The key corresponding to the entity you attempt to get.
+	 * @param entities The entity group got in advance.
+	 * @return The entity instance of the specified {@code Class} corresponding 
+	 * to the specified key.
+	 */
+	<E> E get(Class<E> clazz, Object key, List<Entity> entities) {
 		Key k = Keys.create(Translation.toKind(clazz), key);
-		unlock(k);
-		List<Entity> entities = null;
-		
-		if ((local == null)) {
-			entities = datastore.query(new Query(k));
-		} else {
-			entities = datastore.query(local, new Query(k));
-		}
+		Entity lock = lock(entities);
 		
-		for (Entity entity : entities) {
-			if (entity.getKind().equals(Translation.LOCK_KIND)) {
+		// The entity is rolled forward (or unlocked) and read again only if 
+		// it has been locked. The locked entity is never cached.
+		if (lock != null) {
+			unlock(k, lock);
+			entities = query(k);
+			
+			if (lock(entities) != null) {
 				throw new ConcurrentModificationException(
 						"Entity corresponding to [" + k + "] is processed under a transaction");
 			}
 		}
 		
-		E object = Translation.toObject(clazz, entities, new HashMap<Key, Object>(), datastore);
+		E object = Translation.toObject(clazz, entities, 
+				(global == null) ? new HashMap<Key, Object>() : global.references(), datastore);
 		entity = object;
 		operation = Log.Operation.GET;
 		return object;
 	}
 
-	private void unlock(Key key) {
+	private List<Entity> query(Key key) {
+		return (local == null) ? datastore.group(key) 
+				: datastore.query(local, new Query(key));
+	}
+	
+	private Entity lock(List<Entity> entities) {
+		for (Entity entity : entities) {
+			if (entity.getKind().equals(Translation.LOCK_KIND)) {
+				return entity;
+			}
+		}
+		
+		return null;
+	}
+	
+	void unlock(Key key) {
 		List<Entity> entities = datastore.query(new Query(Translation.LOCK_KIND, key));
 		
 		// If the entity corresponding to the specified key hasn't been locked, 
@@ -159,7 +201,10 @@ public class AppEngineResourceManager implements ResourceManager<Transaction> {
 			return;
 		}
 		
-		Entity lockEntity = entities.get(0);
+		unlock(key, entities.get(0));
+	}
+	
+	private void unlock(Key key, Entity lockEntity) {
 		Lock lock = Translation.toLock(lockEntity);
 		
 		// If transaction entities are not found, this method determines that the 
@@ -271,7 +316,12 @@ public class AppEngineResourceManager implements ResourceManager<Transaction> {
 		}
 		
 		datastore.delete(transaction, deletes);
-		transaction.commit();
+		
+		try {
+			transaction.commit();
+		} finally {
+			datastore.invalidate(Collections.singleton(Keys.ancestor(lock)));
+		}
 	}
 	
 	private void throwIndoubtException(Exception exception,
@@ -313,6 +363,81 @@ public class AppEngineResourceManager implements ResourceManager<Transaction> {
 		operation = Log.Operation.PUT;
 	}
 
+	/**
+	 * Puts the specified entity instances into the Google App Engine Datastore 
+	 * newly with the specified {@code AppEngineResourceManager}s (the 
+	 * manager at the same index manages the entity). The existence of the 
+	 * entities is checked with the batch gets for each local transaction, 
+	 * which are executed asynchronously in lock-step. The number of the batch 
+	 * gets in flight at the same time is bounded by 
+	 * {@link AppEngineDatastoreService#concurrency()}.
+	 * 
+	 * @param datastore {@code AppEngineDatastoreService}.
+	 * @param managers {@code AppEngineResourceManager}s to manage the entities.
+	 * @param entities The entity instances.
+	 */
+	static void put(AppEngineDatastoreService datastore, 
+			List<AppEngineResourceManager> managers, List<?> entities) {
+		Map<Transaction, List<Key>> keys = new LinkedHashMap<Transaction, List<Key>>();
+		
+		for (int i = 0; i < managers.size(); i++) {
+			AppEngineResourceManager manager = managers.get(i);
+			Object entity = entities.get(i);
+			
+			if (manager.operation != null) {
+				throw new IllegalStateException("Log [" + manager.operation + "] -> ["
+						+ Log.Operation.PUT
+						+ "] is not allowed: This operation must be first");
+			}
+			
+			List<Key> list = keys.get(manager.local);
+			
+			if (list == null) {
+				list = new ArrayList<Key>();
+				keys.put(manager.local, list);
+			}
+			
+			list.add(Keys.create(Translation.toKind(entity.getClass()), Entities.keyValue(entity)));
+		}
+		
+		List<Transaction> transactions = new ArrayList<Transaction>();
+		List<List<Key>> batches = new ArrayList<List<Key>>();
+		
+		for (Map.Entry<Transaction, List<Key>> entry : keys.entrySet()) {
+			List<Key> list = entry.getValue();
+			
+			for (int i = 0; i < list.size(); i += datastore.batch()) {
+				transactions.add(entry.getKey());
+				batches.add(list.subList(i, Math.min(i + datastore.batch(), list.size())));
+			}
+		}
+		
+		int concurrency = datastore.concurrency();
+		
+		for (int i = 0; i < batches.size(); i += concurrency) {
+			int end = Math.min(i + concurrency, batches.size());
+			List<Future<Map<Key, Entity>>> gets = new ArrayList<Future<Map<Key, Entity>>>(end - i);
+			
+			for (int j = i; j < end; j++) {
+				gets.add(datastore.getAsync(transactions.get(j), batches.get(j)));
+			}
+			
+			for (Future<Map<Key, Entity>> future : gets) {
+				Map<Key, Entity> existing = get(future);
+				
+				if (!existing.isEmpty()) {
+					throw new EntityExistsException(existing.keySet().iterator().next());
+				}
+			}
+		}
+		
+		for (int i = 0; i < managers.size(); i++) {
+			AppEngineResourceManager manager = managers.get(i);
+			manager.entity = entities.get(i);
+			manager.operation = Log.Operation.PUT;
+		}
+	}
+	
 	/**
 	 * Applies the specified entity's update to the Google App Engine Datastore.
 	 *  
@@ -358,6 +483,79 @@ public class AppEngineResourceManager implements ResourceManager<Transaction> {
 	/** Allocates lock for the managing entity. */
 	@Override
 	public void prepare() {
+		datastore.put(local, lock());
+		local.commit();
+	}
+	
+	/**
+	 * Allocates locks for the entities the specified 
+	 * {@code AppEngineResourceManager}s manage concurrently. The locks are put 
+	 * and the local transactions are committed asynchronously in lock-step, 
+	 * and the {@code AppEngineResourceManager}s which share the same local 
+	 * transaction are locked with a single commit. The number of the local 
+	 * transactions in flight at the same time is bounded by 
+	 * {@link AppEngineDatastoreService#concurrency()}.
+	 * 
+	 * @param datastore {@code AppEngineDatastoreService}.
+	 * @param managers {@code AppEngineResourceManager}s to be prepared.
+	 */
+	static void prepare(AppEngineDatastoreService datastore, 
+			List<AppEngineResourceManager> managers) {
+		Map<Transaction, List<AppEngineResourceManager>> transactions 
+				= new LinkedHashMap<Transaction, List<AppEngineResourceManager>>();
+		
+		for (AppEngineResourceManager manager : managers) {
+			List<AppEngineResourceManager> list = transactions.get(manager.local);
+			
+			if (list == null) {
+				list = new ArrayList<AppEngineResourceManager>();
+				transactions.put(manager.local, list);
+			}
+			
+			list.add(manager);
+		}
+		
+		List<Transaction> locals = new ArrayList<Transaction>(transactions.keySet());
+		int concurrency = datastore.concurrency();
+		
+		for (int i = 0; i < locals.size(); i += concurrency) {
+			List<Transaction> window = locals.subList(i, Math.min(i + concurrency, locals.size()));
+			List<Future<?>> futures = new ArrayList<Future<?>>();
+			
+			try {
+				for (Transaction local : window) {
+					List<Entity> locks = new ArrayList<Entity>();
+					
+					for (AppEngineResourceManager manager : transactions.get(local)) {
+						locks.add(manager.lock());
+					}
+					
+					futures.add(datastore.putAsync(local, locks));
+				}
+				
+			} catch (RuntimeException e) {
+				drain(futures);
+				throw e;
+			}
+			
+			await(futures);
+			futures.clear();
+			
+			try {
+				for (Transaction local : window) {
+					futures.add(local.commitAsync());
+				}
+				
+			} catch (RuntimeException e) {
+				drain(futures);
+				throw e;
+			}
+			
+			await(futures);
+		}
+	}
+	
+	private Entity lock() {
 		List<Log> logs = global.logs();
 		Object parent = null;
 		
@@ -372,10 +570,9 @@ public class AppEngineResourceManager implements ResourceManager<Transaction> {
 				Keys.create(Translation.toKind(parent.getClass()), Entities.keyValue(parent)), 
 				Translation.TRANSACTION_KIND, 
 				global.id()), new Date());
-		datastore.put(local, Translation.toEntity(lock, Keys.create(
-				Translation.toKind(entity.getClass()), Entities.keyValue(entity))));
-		local.commit();
 		this.lock = lock;
+		return Translation.toEntity(lock, Keys.create(
+				Translation.toKind(entity.getClass()), Entities.keyValue(entity)));
 	}
 
 	/**
@@ -403,6 +600,170 @@ public class AppEngineResourceManager implements ResourceManager<Transaction> {
 		Key parent = Keys.create(Translation.toKind(entity.getClass()), Entities.keyValue(entity));
 		apply(operation, entity, Translation.toEntity(lock, parent).getKey(), deletes);
 	}
+	
+	/**
+	 * Applies the transactional operations to the entities the specified 
+	 * {@code AppEngineResourceManager}s manage and unlocks them concurrently. 
+	 * Every step of the application (beginning transaction, getting lock, 
+	 * putting or deleting entities and committing transaction) is executed 
+	 * asynchronously in lock-step. The number of the transactions in flight 
+	 * at the same time is bounded by 
+	 * {@link AppEngineDatastoreService#concurrency()}.
+	 * If any step fails, every call in flight is waited for and every 
+	 * transaction begun but neither committed nor rolled back is rolled back 
+	 * before the failure is reported. 
+	 * The owner entity of the transaction entities must not be contained in 
+	 * the specified {@code AppEngineResourceManager}s, because it must be 
+	 * committed after every other operation has been applied.
+	 * 
+	 * @param datastore {@code AppEngineDatastoreService}.
+	 * @param managers {@code AppEngineResourceManager}s to be committed.
+	 */
+	static void commit(AppEngineDatastoreService datastore, 
+			List<AppEngineResourceManager> managers) {
+		int concurrency = datastore.concurrency();
+		
+		for (int i = 0; i < managers.size(); i += concurrency) {
+			List<AppEngineResourceManager> window = managers.subList(i, Math.min(i + concurrency, managers.size()));
+			List<Future<Transaction>> begins = new ArrayList<Future<Transaction>>(window.size());
+			List<Future<Map<Key, Entity>>> gets = new ArrayList<Future<Map<Key, Entity>>>(window.size());
+			List<Future<?>> futures = new ArrayList<Future<?>>();
+			Set<Transaction> ends = new HashSet<Transaction>();
+			
+			try {
+				for (int j = 0; j < window.size(); j++) {
+					begins.add(datastore.beginTransactionAsync());
+				}
+				
+				List<Transaction> transactions = new ArrayList<Transaction>(window.size());
+				List<Key> locks = new ArrayList<Key>(window.size());
+				
+				for (int j = 0; j < window.size(); j++) {
+					AppEngineResourceManager manager = window.get(j);
+					Transaction transaction = get(begins.get(j));
+					Key lock = Translation.toEntity(manager.lock, Keys.create(
+							Translation.toKind(manager.entity.getClass()), 
+							Entities.keyValue(manager.entity))).getKey();
+					transactions.add(transaction);
+					locks.add(lock);
+					gets.add(datastore.getAsync(transaction, Collections.singletonList(lock)));
+				}
+				
+				List<Transaction> commits = new ArrayList<Transaction>(window.size());
+				
+				for (int j = 0; j < window.size(); j++) {
+					AppEngineResourceManager manager = window.get(j);
+					Transaction transaction = transactions.get(j);
+					Key lock = locks.get(j);
+					
+					if (get(gets.get(j)).isEmpty()) {
+						manager.logger.info("Entity locked by [" + lock
+								+ "] has been applied by another transaction");
+						futures.add(transaction.rollbackAsync());
+						ends.add(transaction);
+						continue;
+					}
+					
+					List<Key> deletes = new ArrayList<Key>();
+					deletes.add(lock);
+					
+					if (manager.operation != Log.Operation.DELETE) {
+						futures.add(datastore.putAsync(transaction, Translation.toEntities(manager.entity)));
+					} else {
+						for (Entity e : Translation.toEntities(manager.entity)) {
+							deletes.add(e.getKey());
+						}
+					}
+					
+					futures.add(datastore.deleteAsync(transaction, deletes));
+					commits.add(transaction);
+				}
+				
+				await(futures);
+				futures.clear();
+				
+				for (Transaction transaction : commits) {
+					futures.add(transaction.commitAsync());
+					ends.add(transaction);
+				}
+				
+				await(futures);
+			} catch (RuntimeException e) {
+				drain(gets);
+				drain(futures);
+				throw e;
+			} finally {
+				rollback(begins, ends);
+			}
+		}
+	}
+	
+	// Waits for every call even if any of them fails, so that no call is left 
+	// in flight when the first failure is reported.
+	private static void await(List<? extends Future<?>> futures) {
+		RuntimeException exception = null;
+		
+		for (Future<?> future : futures) {
+			try {
+				get(future);
+			} catch (RuntimeException e) {
+				if (exception == null) {
+					exception = e;
+				}
+			}
+		}
+		
+		if (exception != null) {
+			throw exception;
+		}
+	}
+	
+	// Waits for the calls which have been issued before the failure, so that 
+	// no call is left in flight when the failure is reported.
+	private static void drain(List<? extends Future<?>> futures) {
+		for (Future<?> future : futures) {
+			try {
+				future.get();
+			} catch (Exception e) {}
+		}
+	}
+	
+	// Rolls back the transactions which have been begun but have been neither 
+	// committed nor rolled back, so that no transaction is left open when the 
+	// commitment fails halfway. The entities are applied in the read or by 
+	// the recovery with the locks left.
+	private static void rollback(List<Future<Transaction>> begins, Set<Transaction> ends) {
+		List<Future<?>> rollbacks = new ArrayList<Future<?>>();
+		
+		for (Future<Transaction> begin : begins) {
+			try {
+				Transaction transaction = begin.get();
+				
+				if (!ends.contains(transaction)) {
+					rollbacks.add(transaction.rollbackAsync());
+				}
+				
+			} catch (Exception e) {}
+		}
+		
+		drain(rollbacks);
+	}
+	
+	private static <T> T get(Future<T> future) {
+		try {
+			return future.get();
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			}
+			
+			throw new UncheckedException(cause);
+		} catch (InterruptedException e) {
+			throw new UncheckedException(e);
+		}
+	}
 
 	private Log.Operation operation;
 	
@@ -15,13 +15,23 @@
  */
 package org.eiichiro.acidhouse.appengine;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.ConcurrentModificationException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
 import java.util.logging.Logger;
 
 import org.eiichiro.acidhouse.Session;
 import org.eiichiro.acidhouse.EntityExistsException;
 import org.eiichiro.acidhouse.ResourceManager;
 
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.Key;
 import com.google.appengine.api.datastore.Transaction;
 
 /**
@@ -87,6 +97,107 @@ public class AppEngineStrongDatastoreSession extends AppEngineDatastoreSession
 		}
 	}
 
+	/**
+	 * Returns the future of the entity instance corresponding to the specified 
+	 * key. Outside of a transaction, the ancestor query is started on the 
+	 * calling thread with {@code AsyncDatastoreService}, and the entity is 
+	 * checked if it is locked (and rolled forward if so) with 
+	 * {@link AppEngineDatastoreService#executor()}. Under a transaction, the 
+	 * entity is got on the calling thread with {@code AppEngineCoordinator}.
+	 * 
+	 * @param <E> The entity type.
+	 * @param clazz The entity type that you want to get.
+	 * @param key The key corresponding to the entity that you want to get.
+	 * @return The future of the entity instance corresponding to the specified 
+	 * key.
+	 * @see AppEngineResourceManager#get(Class, Object)
+	 */
+	@Override
+	public <E> CompletableFuture<E> getAsync(final Class<E> clazz, final Object key) {
+		if (clazz == null) {
+			throw new IllegalArgumentException("'clazz' must not be [" + clazz + "]");
+		}
+		
+		if (key == null) {
+			throw new IllegalArgumentException("'id' must not be [" + key + "]");
+		}
+		
+		if (isTransactional()) {
+			return super.getAsync(clazz, key);
+		}
+		
+		return datastore().groupAsync(Keys.create(Translation.toKind(clazz), key), 
+				new Function<List<Entity>, E>() {
+			
+			@Override
+			public E apply(List<Entity> entities) {
+				return new AppEngineResourceManager(datastore()).get(clazz, key, entities);
+			}
+			
+		});
+	}
+	
+	/**
+	 * Returns the entity instances corresponding to the specified keys in the 
+	 * same order as the keys. The entity which is not found is returned as 
+	 * {@code null}.
+	 * Outside of a transaction, the entity groups are got with the concurrent 
+	 * ancestor queries and the lock check is done in bulk on the results. 
+	 * Only the entity which has been locked is got with 
+	 * {@code AppEngineResourceManager} to roll the transaction forward (or 
+	 * back). The entities referred by the referential properties are got at 
+	 * once for the whole batch. Under a transaction, this method gets each 
+	 * entity with {@link #get(Class, Object)}.
+	 * 
+	 * @param <E> The entity type.
+	 * @param clazz The entity type that you want to get.
+	 * @param keys The keys corresponding to the entities that you want to get.
+	 * @return The entity instances corresponding to the specified keys.
+	 * @throws ConcurrentModificationException If the entity corresponding to 
+	 * the specified key is being modified by the other transaction.
+	 */
+	@Override
+	public <E> List<E> get(Class<E> clazz, Collection<?> keys) throws ConcurrentModificationException {
+		if (clazz == null) {
+			throw new IllegalArgumentException("'clazz' must not be [" + clazz + "]");
+		}
+		
+		if (keys == null) {
+			throw new IllegalArgumentException("'keys' must not be [" + keys + "]");
+		}
+		
+		if (isTransactional()) {
+			return super.get(clazz, keys);
+		}
+		
+		List<Key> ks = keys(clazz, keys);
+		List<E> entities = new ArrayList<E>(ks.size());
+		List<List<Entity>> groups = datastore().query(queries(ks));
+		Map<Key, Object> references = new HashMap<Key, Object>();
+		Translation.prefetch(clazz, groups, references, datastore());
+		
+		for (int i = 0; i < ks.size(); i++) {
+			List<Entity> group = groups.get(i);
+			boolean locked = false;
+			
+			for (Entity entity : group) {
+				if (entity.getKind().equals(Translation.LOCK_KIND)) {
+					locked = true;
+					break;
+				}
+			}
+			
+			if (locked) {
+				ResourceManager<Transaction> manager = new AppEngineResourceManager(datastore());
+				entities.add(manager.get(clazz, ks.get(i)));
+			} else {
+				entities.add(Translation.toObject(clazz, group, references, datastore()));
+			}
+		}
+		
+		return entities;
+	}
+	
 	/**
 	 * Puts the specified entity instance into App Engine Datastore newly.
 	 * This method must be invoked under a transaction. This method throws 
@@ -141,4 +252,170 @@ public class AppEngineStrongDatastoreSession extends AppEngineDatastoreSession
 		((AppEngineGlobalTransaction) transaction.get()).coordinator().delete(entity);
 	}
 	
+	/**
+	 * Returns {@code false}. The entities must be got with "Consistent read" 
+	 * to apply the modifications committed by Two-phase commit protocol, so 
+	 * the commands of this session are never computed from the datastore 
+	 * indexes.
+	 * 
+	 * @return {@code false}.
+	 */
+	@Override
+	boolean indexed() {
+		return false;
+	}
+	
+	/**
+	 * Deletes the entity corresponding to the specified key from App Engine 
+	 * Datastore with {@code AppEngineCoordinator}. The entity is got with 
+	 * "Consistent read" before it is deleted, because Two-phase commit 
+	 * protocol writes the entity to be deleted into the transaction log. If 
+	 * the entity is not found, this method does nothing.
+	 * This method must be invoked under a transaction.
+	 * 
+	 * @param <E> The entity type.
+	 * @param clazz The entity type that you want to delete.
+	 * @param key The key corresponding to the entity that you want to delete.
+	 */
+	@Override
+	public <E> void delete(Class<E> clazz, Object key) {
+		if (clazz == null) {
+			throw new IllegalArgumentException("'clazz' must not be [" + clazz + "]");
+		}
+		
+		if (key == null) {
+			throw new IllegalArgumentException("'key' must not be [" + key + "]");
+		}
+		
+		assertTransactional();
+		deleteAll(clazz, Collections.singletonList(key), true);
+	}
+	
+	/**
+	 * Gets the entities corresponding to the specified keys with 
+	 * "Consistent read" and deletes them with {@code AppEngineCoordinator}. 
+	 * The specified parallel flag is ignored.
+	 * 
+	 * @param clazz The entity type to be deleted.
+	 * @param keys The keys of the entities to be deleted.
+	 * @param parallel Ignored.
+	 * @return The number of the deleted entities.
+	 */
+	@Override
+	int deleteAll(Class<?> clazz, Collection<?> keys, boolean parallel) {
+		assertTransactional();
+		AppEngineCoordinator coordinator = ((AppEngineGlobalTransaction) transaction.get()).coordinator();
+		int i = 0;
+		
+		for (Object key : keys) {
+			Object entity = get(clazz, key);
+			
+			if (entity != null) {
+				coordinator.delete(entity);
+				i++;
+			}
+		}
+		
+		return i;
+	}
+	
+	/**
+	 * Puts the specified entity instances into App Engine Datastore newly in 
+	 * bulk with {@code AppEngineCoordinator}. The existence of the entities 
+	 * is checked with the batch operations.
+	 * This method must be invoked under a transaction.
+	 * 
+	 * @param entities The entity instances to be put into App Engine 
+	 * Datastore.
+	 * @throws EntityExistsException If the entity that has the same key as 
+	 * any of the specified entities has already existed.
+	 */
+	@Override
+	public void putAll(Collection<?> entities) throws EntityExistsException {
+		if (entities == null) {
+			throw new IllegalArgumentException("'entities' must not be [" + entities + "]");
+		}
+		
+		assertTransactional();
+		((AppEngineGlobalTransaction) transaction.get()).coordinator().putAll(entities);
+	}
+	
+	/**
+	 * Updates entities with the specified entity instances in bulk with 
+	 * {@code AppEngineCoordinator}.
+	 * This method must be invoked under a transaction. 
+	 * 
+	 * @param entities The entity instances to be updated.
+	 */
+	@Override
+	public void updateAll(Collection<?> entities) {
+		if (entities == null) {
+			throw new IllegalArgumentException("'entities' must not be [" + entities + "]");
+		}
+		
+		assertTransactional();
+		AppEngineCoordinator coordinator = ((AppEngineGlobalTransaction) transaction.get()).coordinator();
+		
+		for (Object entity : entities) {
+			if (entity == null) {
+				throw new IllegalArgumentException("'entities' must not contain [" + entity + "]");
+			}
+			
+			coordinator.update(entity);
+		}
+	}
+	
+	/**
+	 * Updates entities with the specified entity instances in bulk with 
+	 * {@code AppEngineCoordinator}. The modifications are applied in the 
+	 * commitment, where the entity groups are processed concurrently, so the 
+	 * specified parallel flag is ignored.
+	 * 
+	 * @param entities The entity instances to be updated.
+	 * @param parallel Ignored.
+	 */
+	@Override
+	void updateAll(Collection<?> entities, boolean parallel) {
+		updateAll(entities);
+	}
+	
+	/**
+	 * Deletes the specified entities from App Engine Datastore in bulk with 
+	 * {@code AppEngineCoordinator}.
+	 * This method must be invoked under a transaction.
+	 * 
+	 * @param entities The entities to be deleted.
+	 */
+	@Override
+	public void deleteAll(Collection<?> entities) {
+		if (entities == null) {
+			throw new IllegalArgumentException("'entities' must not be [" + entities + "]");
+		}
+		
+		assertTransactional();
+		AppEngineCoordinator coordinator = ((AppEngineGlobalTransaction) transaction.get()).coordinator();
+		
+		for (Object entity : entities) {
+			if (entity == null) {
+				throw new IllegalArgumentException("'entities' must not contain [" + entity + "]");
+			}
+			
+			coordinator.delete(entity);
+		}
+	}
+	
+	/**
+	 * Deletes the specified entities from App Engine Datastore in bulk with 
+	 * {@code AppEngineCoordinator}. The modifications are applied in the 
+	 * commitment, where the entity groups are processed concurrently, so the 
+	 * specified parallel flag is ignored.
+	 * 
+	 * @param entities The entities to be deleted.
+	 * @param parallel Ignored.
+	 */
+	@Override
+	void deleteAll(Collection<?> entities, boolean parallel) {
+		deleteAll(entities);
+	}
+	
 }
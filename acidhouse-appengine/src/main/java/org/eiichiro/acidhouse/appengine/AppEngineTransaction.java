@@ -16,16 +16,25 @@
 package org.eiichiro.acidhouse.appengine;
 
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Future;
+import java.util.function.Supplier;
 import java.util.logging.Logger;
 
+import org.eiichiro.acidhouse.Entities;
 import org.eiichiro.acidhouse.IndoubtException;
 import org.eiichiro.acidhouse.Log;
 import org.eiichiro.acidhouse.Log.Operation;
 import org.eiichiro.acidhouse.Log.State;
 import org.eiichiro.reverb.lang.UncheckedException;
 
+import com.google.appengine.api.datastore.Key;
 import com.google.appengine.api.datastore.Transaction;
 
 /**
@@ -46,6 +55,10 @@ public class AppEngineTransaction implements org.eiichiro.acidhouse.Transaction
 	
 	private final Transaction transaction;
 	
+	private final Map<Key, Object> entities = new HashMap<Key, Object>();
+	
+	private final Map<Key, Object> references = new HashMap<Key, Object>();
+	
 	/**
 	 * Constructs a new {@code AppEngineTransaction} instance with random UUID 
 	 * based transaction id and the specified {@code AppEngineDatastoreSession} 
@@ -84,6 +97,7 @@ public class AppEngineTransaction implements org.eiichiro.acidhouse.Transaction
 	@Override
 	public void commit() throws IndoubtException {
 		session.transaction.remove();
+		clear();
 		
 		if (logs.size() == 0) {
 			return;
@@ -102,15 +116,68 @@ public class AppEngineTransaction implements org.eiichiro.acidhouse.Transaction
 
 		} catch (Exception e) {
 			throw new UncheckedException(e);
+		} finally {
+			invalidate();
 		}
 		
 		logger.fine("Transaction [" + id + "] committed");
 	}
 
+	/**
+	 * Commits this transaction asynchronously with loose commitment protocol. 
+	 * The datastore transaction commit is started on the calling thread with 
+	 * {@code AsyncDatastoreService}.
+	 * 
+	 * @return The future completed when this transaction is committed.
+	 */
+	@Override
+	public CompletableFuture<Void> commitAsync() {
+		session.transaction.remove();
+		clear();
+		boolean modified = false;
+		
+		for (Log log : logs) {
+			if (log.operation() != Operation.GET) {
+				modified = true;
+			}
+		}
+		
+		if (!modified || !transaction.isActive()) {
+			commit();
+			return CompletableFuture.completedFuture(null);
+		}
+		
+		final Future<Void> future = transaction.commitAsync();
+		return session.datastore().async(new Supplier<Void>() {
+			
+			@Override
+			public Void get() {
+				try {
+					future.get();
+				} catch (Exception e) {
+					throw new UncheckedException(e);
+				} finally {
+					invalidate();
+				}
+				
+				for (Log log : logs) {
+					if (log.operation() != Operation.GET) {
+						log.state(State.COMMITTED);
+					}
+				}
+				
+				logger.fine("Transaction [" + id + "] committed");
+				return null;
+			}
+			
+		});
+	}
+	
 	/** Rolls back this transaction. */
 	@Override
 	public void rollback() {
 		session.transaction.remove();
+		clear();
 		
 		if (transaction.isActive()) {
 			transaction.rollback();
@@ -127,5 +194,48 @@ public class AppEngineTransaction implements org.eiichiro.acidhouse.Transaction
 	Transaction transaction() {
 		return transaction;
 	}
+	
+	/**
+	 * Returns the identity map of the entities got in this transaction. 
+	 * The entity got repeatedly in this transaction is returned from this map 
+	 * as the same instance without the datastore access. The entity is 
+	 * removed from this map when it is updated or deleted.
+	 * 
+	 * @return The identity map of the entities got in this transaction.
+	 */
+	Map<Key, Object> entities() {
+		return entities;
+	}
+	
+	/**
+	 * Returns the referenced entities resolved in this transaction. The 
+	 * entities referenced with {@code Referential} property are shared 
+	 * across every get in this transaction.
+	 * 
+	 * @return The referenced entities resolved in this transaction.
+	 */
+	Map<Key, Object> references() {
+		return references;
+	}
+	
+	/** Invalidates the entity groups modified in this transaction. */
+	private void invalidate() {
+		Set<Key> groups = new HashSet<Key>();
+		
+		for (Log log : logs) {
+			if (log.operation() != Operation.GET) {
+				groups.add(Keys.ancestor(Keys.create(Translation.toKind(
+						log.entity().getClass()), Entities.keyValue(log.entity()))));
+			}
+		}
+		
+		session.datastore().invalidate(groups);
+	}
+	
+	/** Clears the entities cached in this transaction. */
+	void clear() {
+		entities.clear();
+		references.clear();
+	}
 
 }
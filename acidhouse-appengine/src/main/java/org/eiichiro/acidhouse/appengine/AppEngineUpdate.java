@@ -46,6 +46,8 @@ public class AppEngineUpdate<E> implements Update<E> {
 	
 	private Map<Property<?, ?>, Object> properties = new HashMap<Property<?, ?>, Object>(0);
 	
+	private boolean parallel = false;
+	
 	/**
 	 * Constructs a new {@code AppEngineUpdate} with the specified metamodel of 
 	 * entity and {@code AppEngineDatastoreSession}.
@@ -59,7 +61,11 @@ public class AppEngineUpdate<E> implements Update<E> {
 	}
 	
 	/**
-	 * Executes {@code AppEngineUpdate} with {@code AppEngineDatastoreSession}.
+	 * Executes {@code AppEngineUpdate} with {@code AppEngineDatastoreSession}. 
+	 * The qualified entities are modified and then updated in bulk with 
+	 * {@link AppEngineDatastoreSession#updateAll(java.util.Collection)}, so 
+	 * the entities are put with the size-bounded batches instead of the round 
+	 * trip for each entity.
 	 * 
 	 * @return The number of updated entity.
 	 */
@@ -78,7 +84,7 @@ public class AppEngineUpdate<E> implements Update<E> {
 			command.filter(filters.toArray(new Filter<?>[] {}));
 		}
 		
-		int i = 0;
+		List<E> entities = new ArrayList<E>();
 		
 		for (E entity : command.execute()) {
 			for (Property<?, ?> property : properties.keySet()) {
@@ -92,11 +98,25 @@ public class AppEngineUpdate<E> implements Update<E> {
 				}
 			}
 			
-			session.update(entity);
-			i++;
+			entities.add(entity);
 		}
 		
-		return i;
+		session.updateAll(entities, parallel);
+		return entities.size();
+	}
+	
+	/**
+	 * Specifies whether the batches of the updated entities are put 
+	 * concurrently (up to {@link AppEngineDatastoreService#concurrency()} 
+	 * batches in flight at the same time). By default, the batches are put 
+	 * one by one.
+	 * 
+	 * @param parallel Whether the batches are put concurrently.
+	 * @return The {@code Update} to put the batches as specified.
+	 */
+	public AppEngineUpdate<E> parallel(boolean parallel) {
+		this.parallel = parallel;
+		return this;
 	}
 
 	/**
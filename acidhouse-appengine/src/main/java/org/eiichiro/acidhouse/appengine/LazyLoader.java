@@ -0,0 +1,194 @@
+/*
+ * Copyright (C) 2011 Eiichiro Uchiumi. All Rights Reserved.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.eiichiro.acidhouse.appengine;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.eiichiro.acidhouse.Lazy;
+
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.Key;
+import com.google.appengine.api.datastore.Query;
+
+/**
+ * {@code LazyLoader} creates the {@code Lazy} holders of the entities 
+ * translated at once and loads them in batch. When any of the holders is 
+ * accessed at first, the entity groups of every holder created by this 
+ * loader which have not been got yet (the entity groups of the owner 
+ * entities for the child entities and the entity groups of the referred 
+ * entities) are got with the concurrent ancestor queries. 
+ * The lazy holders are loaded outside of a transaction, so they reflect the 
+ * entity groups at the first access.
+ * 
+ * @author <a href="mailto:mail@eiichiro.org">Eiichiro Uchiumi</a>
+ */
+final class LazyLoader {
+	
+	private final AppEngineDatastoreService datastore;
+	
+	private final Map<Key, Object> references;
+	
+	private final Set<Key> pending = new LinkedHashSet<Key>();
+	
+	private final Map<Key, List<Entity>> groups = new HashMap<Key, List<Entity>>();
+	
+	/**
+	 * Constructs a new {@code LazyLoader} with the specified 
+	 * {@code AppEngineDatastoreService} and the referred entities cached.
+	 * 
+	 * @param datastore {@code AppEngineDatastoreService}.
+	 * @param references The referred entities cached.
+	 */
+	LazyLoader(AppEngineDatastoreService datastore, Map<Key, Object> references) {
+		this.datastore = datastore;
+		this.references = references;
+	}
+	
+	/**
+	 * Returns {@code AppEngineDatastoreService} of this loader.
+	 * 
+	 * @return {@code AppEngineDatastoreService} of this loader.
+	 */
+	AppEngineDatastoreService datastore() {
+		return datastore;
+	}
+	
+	/**
+	 * Returns the referred entities cached.
+	 * 
+	 * @return The referred entities cached.
+	 */
+	Map<Key, Object> references() {
+		return references;
+	}
+	
+	/**
+	 * Returns the {@code Lazy} holder of the entity referred with the 
+	 * specified key. If the referred entity has been cached, the returned 
+	 * holder has been loaded.
+	 * 
+	 * @param <T> The type of the referred entity.
+	 * @param clazz The {@code Class} of the referred entity.
+	 * @param key The key of the referred entity.
+	 * @return The {@code Lazy} holder of the referred entity.
+	 */
+	synchronized <T> Lazy<T> reference(final Class<T> clazz, final Key key) {
+		if (references.containsKey(key)) {
+			return Lazy.of(clazz.cast(references.get(key)));
+		}
+		
+		pending.add(key);
+		return new LazyReference<T>(key) {
+			
+			@Override
+			protected T load() {
+				synchronized (LazyLoader.this) {
+					if (!references.containsKey(key)) {
+						references.put(key, Translation.toObject(clazz, group(key), LazyLoader.this, true));
+					}
+					
+					return clazz.cast(references.get(key));
+				}
+			}
+			
+		};
+	}
+	
+	/**
+	 * Returns the {@code Lazy} holder of the child entity (or the collection 
+	 * of the child entities) of the specified property.
+	 * 
+	 * @param property The {@code Lazy} property of the child entity.
+	 * @param key The key of the owner root entity.
+	 * @return The {@code Lazy} holder of the child entity.
+	 */
+	synchronized Lazy<Object> child(final Mapping.Property property, final Key key) {
+		pending.add(key);
+		return new LazyChild<Object>() {
+			
+			@Override
+			protected Object load() {
+				List<Entity> group = group(key);
+				return Translation.toChild(property, 
+						(group.isEmpty()) ? group : group.subList(1, group.size()), LazyLoader.this, 0);
+			}
+			
+		};
+	}
+	
+	private synchronized List<Entity> group(Key key) {
+		List<Entity> group = groups.get(key);
+		
+		if (group == null) {
+			pending.add(key);
+			List<Key> keys = new ArrayList<Key>(pending);
+			List<Query> queries = new ArrayList<Query>(keys.size());
+			
+			for (Key k : keys) {
+				queries.add(new Query(k));
+			}
+			
+			List<List<Entity>> loaded = datastore.query(queries);
+			
+			for (int i = 0; i < keys.size(); i++) {
+				groups.put(keys.get(i), loaded.get(i));
+			}
+			
+			pending.clear();
+			group = groups.get(key);
+		}
+		
+		return group;
+	}
+	
+	/**
+	 * {@code LazyReference} is the {@code Lazy} holder of the referred entity, 
+	 * which holds the key of the referred entity. The key is translated into 
+	 * the referential property without loading the referred entity.
+	 */
+	abstract static class LazyReference<T> extends Lazy<T> {
+		
+		private final Key key;
+		
+		private LazyReference(Key key) {
+			this.key = key;
+		}
+		
+		/**
+		 * Returns the key of the referred entity.
+		 * 
+		 * @return The key of the referred entity.
+		 */
+		Key key() {
+			return key;
+		}
+		
+	}
+	
+	/**
+	 * {@code LazyChild} is the {@code Lazy} holder of the child entity (or the 
+	 * collection of the child entities), which is loaded with the 
+	 * non-transactional ancestor query. The entity must not be written with 
+	 * the unloaded {@code LazyChild} (See {@link Translation#toEntities(Key, Object)}).
+	 */
+	abstract static class LazyChild<T> extends Lazy<T> {}
+	
+}
@@ -0,0 +1,563 @@
+/*
+ * Copyright (C) 2011-2012 Eiichiro Uchiumi. All Rights Reserved.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.eiichiro.acidhouse.appengine;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.eiichiro.acidhouse.Key;
+import org.eiichiro.acidhouse.Lazy;
+import org.eiichiro.acidhouse.Referential;
+import org.eiichiro.acidhouse.Transient;
+import org.eiichiro.acidhouse.metamodel.Codec;
+import org.eiichiro.acidhouse.metamodel.Codecs;
+import org.eiichiro.reverb.lang.UncheckedException;
+
+/**
+ * {@code Mapping} is the immutable translation plan of an Acid House entity
+ * (or embedded) class, which is executed by {@code Translation}.
+ * Each class is inspected only once and the plan is cached per class, so
+ * annotation lookups, type classification and generic type resolution are
+ * not repeated on every translation. Field accesses are done with the
+ * generated {@code Codec} if it is available, otherwise with
+ * {@code MethodHandle}s resolved at the plan construction.
+ * 
+ * @author <a href="mailto:mail@eiichiro.org">Eiichiro Uchiumi</a>
+ */
+final class Mapping {
+	
+	/** Translator kinds of the entity field. */
+	static enum Kind {
+		
+		/** {@code @Key} field. */
+		KEY,
+		
+		/** {@code @Referential} field. */
+		REFERENCE,
+		
+		/** Core value type field. */
+		VALUE,
+		
+		/** Core collection type field. */
+		COLLECTION,
+		
+		/** Array type field (Not supported). */
+		ARRAY,
+		
+		/** Entity type field. */
+		ENTITY,
+		
+		/** Embedded type field. */
+		EMBEDDED,
+		
+		/** User defined type field (Not supported). */
+		UNSUPPORTED
+		
+	}
+	
+	private static Map<Class<?>, Mapping> mappings = new ConcurrentHashMap<Class<?>, Mapping>();
+	
+	private final Class<?> clazz;
+	
+	private final String kind;
+	
+	private final MethodHandle constructor;
+	
+	private final Codec<Object> codec;
+	
+	private final List<Property> properties;
+	
+	private final boolean hierarchical;
+	
+	@SuppressWarnings("unchecked")
+	private Mapping(Class<?> clazz) {
+		this.clazz = clazz;
+		kind = Translation.isEntity(clazz) ? clazz.getSimpleName() : null;
+		codec = (Codec<Object>) Codecs.codec(clazz);
+		MethodHandle constructor = null;
+		
+		try {
+			Constructor<?> c = clazz.getDeclaredConstructor();
+			c.setAccessible(true);
+			constructor = MethodHandles.lookup().unreflectConstructor(c)
+					.asType(MethodType.methodType(Object.class));
+		} catch (NoSuchMethodException e) {
+			// Instantiation is failed in 'newInstance()'.
+		} catch (IllegalAccessException e) {
+			throw new UncheckedException(e);
+		}
+		
+		this.constructor = constructor;
+		List<Property> properties = new ArrayList<Property>();
+		
+		for (Field field : clazz.getDeclaredFields()) {
+			if (field.isSynthetic() || field.isAnnotationPresent(Transient.class)) {
+				continue;
+			}
+			
+			properties.add(new Property(field, field.getName(), codec, true));
+		}
+		
+		this.properties = Collections.unmodifiableList(properties);
+		boolean hierarchical = false;
+		
+		for (Property property : properties) {
+			if (!property.lazy() && (property.kind() == Kind.ENTITY 
+					|| (property.kind() == Kind.COLLECTION && property.elementKind() == Kind.ENTITY))) {
+				hierarchical = true;
+			}
+		}
+		
+		this.hierarchical = hierarchical;
+	}
+	
+	/**
+	 * Returns the {@code Mapping} of the specified class.
+	 * 
+	 * @param clazz The entity or embedded class.
+	 * @return The {@code Mapping} of the specified class.
+	 */
+	static Mapping of(Class<?> clazz) {
+		Mapping mapping = mappings.get(clazz);
+		
+		if (mapping == null) {
+			mapping = new Mapping(clazz);
+			mappings.put(clazz, mapping);
+		}
+		
+		return mapping;
+	}
+	
+	/**
+	 * Returns Google App Engine Datastore kind name of the class.
+	 * 
+	 * @return Google App Engine Datastore kind name of the class.
+	 */
+	String kind() {
+		if (kind == null) {
+			throw new IllegalArgumentException("Entity class [" + clazz
+					+ "] must be annotated by @org.eiichiro.acidhouse.Entity");
+		}
+		
+		return kind;
+	}
+	
+	/**
+	 * Returns the persistent (non-transient) properties of the class in the
+	 * declared order.
+	 * 
+	 * @return The persistent properties of the class.
+	 */
+	List<Property> properties() {
+		return properties;
+	}
+	
+	/**
+	 * Returns whether the class has entity type (or collection of entity type) 
+	 * properties to be loaded eagerly or not. If not, the entity can be got 
+	 * as a single Google App Engine Datastore entity, and its {@code Lazy} 
+	 * child entities (if any) are loaded on demand.
+	 * 
+	 * @return Whether the class has eagerly loaded child entities or not.
+	 */
+	boolean hierarchical() {
+		return hierarchical;
+	}
+	
+	/**
+	 * Creates a new instance of the class.
+	 * 
+	 * @return A new instance of the class.
+	 */
+	Object newInstance() {
+		if (codec != null) {
+			return codec.newInstance();
+		}
+		
+		if (constructor == null) {
+			throw new UncheckedException(new InstantiationException(
+					"Class [" + clazz + "] must have a default constructor"));
+		}
+		
+		try {
+			return constructor.invokeExact();
+		} catch (RuntimeException e) {
+			throw e;
+		} catch (Throwable e) {
+			throw new UncheckedException(e);
+		}
+	}
+	
+	/** {@code Property} is a translation plan of the entity field. */
+	static final class Property {
+		
+		private final Field field;
+		
+		private final String name;
+		
+		private final Kind kind;
+		
+		private final Class<?> type;
+		
+		private final Class<?> element;
+		
+		private final Kind elementKind;
+		
+		private final Class<?> collection;
+		
+		private final boolean integer;
+		
+		private final boolean unindexed;
+		
+		private final boolean writable;
+		
+		private final boolean persistent;
+		
+		private final boolean lazy;
+		
+		private final List<Property> embedded;
+		
+		private final Codec.Accessor<Object> accessor;
+		
+		private final MethodHandle getter;
+		
+		private final MethodHandle setter;
+		
+		// The properties of the embedded type are expanded only for the 
+		// property of the entity: Only the core value type (and the collection 
+		// of it) is persisted in an embedded type, so the embedded type in an 
+		// embedded type (which may refer to itself) is not expanded.
+		private Property(Field field, String name, Codec<Object> codec, boolean expanded) {
+			this.field = field;
+			this.name = name;
+			accessor = (codec == null) ? null : codec.accessor(field.getName());
+			Class<?> type = field.getType();
+			Type genericType = field.getGenericType();
+			boolean lazy = false;
+			
+			// The value type of 'Lazy' field is translated.
+			if (type.equals(Lazy.class) && genericType instanceof ParameterizedType) {
+				genericType = ((ParameterizedType) genericType).getActualTypeArguments()[0];
+				
+				if (genericType instanceof ParameterizedType) {
+					type = (Class<?>) ((ParameterizedType) genericType).getRawType();
+				} else if (genericType instanceof Class) {
+					type = (Class<?>) genericType;
+				}
+				
+				lazy = true;
+			}
+			
+			this.type = type;
+			writable = !Modifier.isFinal(field.getModifiers());
+			persistent = !field.isAnnotationPresent(Transient.class);
+			unindexed = field.isAnnotationPresent(Unindexed.class);
+			integer = type.equals(int.class) || type.equals(Integer.class);
+			
+			Kind kind;
+			
+			if (field.isAnnotationPresent(Key.class)) {
+				kind = Kind.KEY;
+			} else if (field.isAnnotationPresent(Referential.class)) {
+				kind = Kind.REFERENCE;
+			} else if (Translation.isCoreValue(type)) {
+				kind = Kind.VALUE;
+			} else if (Translation.isCollection(type)) {
+				kind = Kind.COLLECTION;
+			} else if (Translation.isArray(type)) {
+				kind = Kind.ARRAY;
+			} else if (Translation.isEntity(type)) {
+				kind = Kind.ENTITY;
+			} else if (Translation.isEmbedded(type)) {
+				kind = Kind.EMBEDDED;
+			} else {
+				kind = Kind.UNSUPPORTED;
+			}
+			
+			Class<?> element = null;
+			Class<?> collection = null;
+			
+			if (kind == Kind.COLLECTION) {
+				if (genericType instanceof ParameterizedType) {
+					Type argument = ((ParameterizedType) genericType).getActualTypeArguments()[0];
+					
+					if (argument instanceof Class) {
+						element = (Class<?>) argument;
+					}
+				}
+				
+				if (type.equals(List.class)) {
+					collection = ArrayList.class;
+				} else if (type.equals(Set.class)) {
+					collection = HashSet.class;
+				} else if (type.equals(SortedSet.class)) {
+					collection = TreeSet.class;
+				} else {
+					collection = type;
+				}
+			}
+			
+			this.element = element;
+			this.collection = collection;
+			
+			if (element != null && Translation.isCoreValue(element)) {
+				elementKind = Kind.VALUE;
+			} else if (element != null && Translation.isEntity(element)) {
+				elementKind = Kind.ENTITY;
+			} else {
+				elementKind = Kind.UNSUPPORTED;
+			}
+			
+			// Only the child entities and the referred entities can be loaded 
+			// lazily.
+			if (lazy && kind != Kind.REFERENCE && kind != Kind.ENTITY 
+					&& (kind != Kind.COLLECTION || elementKind != Kind.ENTITY)) {
+				kind = Kind.UNSUPPORTED;
+			}
+			
+			this.kind = kind;
+			this.lazy = lazy;
+			
+			if (kind == Kind.EMBEDDED && expanded) {
+				List<Property> embedded = new ArrayList<Property>();
+				
+				for (Field f : type.getDeclaredFields()) {
+					if (f.isSynthetic() || Modifier.isStatic(f.getModifiers())) {
+						continue;
+					}
+					
+					embedded.add(new Property(f, name + "." + f.getName(), null, false));
+				}
+				
+				this.embedded = Collections.unmodifiableList(embedded);
+			} else {
+				this.embedded = Collections.emptyList();
+			}
+			
+			if (accessor == null) {
+				try {
+					field.setAccessible(true);
+					MethodHandles.Lookup lookup = MethodHandles.lookup();
+					MethodHandle getter = lookup.unreflectGetter(field);
+					MethodHandle setter = (writable) ? lookup.unreflectSetter(field) : null;
+					
+					if (Modifier.isStatic(field.getModifiers())) {
+						getter = MethodHandles.dropArguments(getter, 0, Object.class);
+						setter = (setter == null) ? null
+								: MethodHandles.dropArguments(setter, 0, Object.class);
+					}
+					
+					this.getter = getter.asType(MethodType.methodType(Object.class, Object.class));
+					this.setter = (setter == null) ? null
+							: setter.asType(MethodType.methodType(void.class, Object.class, Object.class));
+				} catch (IllegalAccessException e) {
+					throw new UncheckedException(e);
+				}
+				
+			} else {
+				getter = null;
+				setter = null;
+			}
+		}
+		
+		/**
+		 * Returns the field of this property.
+		 * 
+		 * @return The field of this property.
+		 */
+		Field field() {
+			return field;
+		}
+		
+		/**
+		 * Returns Google App Engine Datastore entity's property name of this
+		 * property. The name of the embedded type's property is qualified with
+		 * the embedded field name.
+		 * 
+		 * @return Google App Engine Datastore entity's property name.
+		 */
+		String name() {
+			return name;
+		}
+		
+		/**
+		 * Returns the translator kind of this property.
+		 * 
+		 * @return The translator kind of this property.
+		 */
+		Kind kind() {
+			return kind;
+		}
+		
+		/**
+		 * Returns the declared type of this property. The type of the 
+		 * {@code Lazy} property is the type of its value.
+		 * 
+		 * @return The declared type of this property.
+		 */
+		Class<?> type() {
+			return type;
+		}
+		
+		/**
+		 * Returns the element type of the collection property or {@code null}
+		 * if it is not resolved.
+		 * 
+		 * @return The element type of the collection property.
+		 */
+		Class<?> element() {
+			return element;
+		}
+		
+		/**
+		 * Returns the translator kind of the collection property's element;
+		 * {@code Kind#VALUE} for core value type, {@code Kind#ENTITY} for
+		 * entity type and {@code Kind#UNSUPPORTED} for the others.
+		 * 
+		 * @return The translator kind of the collection property's element.
+		 */
+		Kind elementKind() {
+			return elementKind;
+		}
+		
+		/**
+		 * Returns the instantiable collection type of the collection property.
+		 * 
+		 * @return The instantiable collection type of the collection property.
+		 */
+		Class<?> collection() {
+			return collection;
+		}
+		
+		/**
+		 * Returns whether this property is declared as {@code int} or
+		 * {@code java.lang.Integer}. These are stored as {@code long} in
+		 * Google App Engine Datastore.
+		 * 
+		 * @return Whether this property is declared as {@code int} or
+		 * {@code java.lang.Integer}.
+		 */
+		boolean integer() {
+			return integer;
+		}
+		
+		/**
+		 * Returns whether this property is {@code @Unindexed} or not.
+		 * 
+		 * @return Whether this property is {@code @Unindexed} or not.
+		 */
+		boolean unindexed() {
+			return unindexed;
+		}
+		
+		/**
+		 * Returns whether this property is non-final or not.
+		 * 
+		 * @return Whether this property is non-final or not.
+		 */
+		boolean writable() {
+			return writable;
+		}
+		
+		/**
+		 * Returns whether this property is not {@code @Transient}.
+		 * 
+		 * @return Whether this property is not {@code @Transient}.
+		 */
+		boolean persistent() {
+			return persistent;
+		}
+		
+		/**
+		 * Returns whether this property is declared as {@code Lazy} or not. 
+		 * The value of this property is got and set as {@code Lazy}.
+		 * 
+		 * @return Whether this property is declared as {@code Lazy} or not.
+		 */
+		boolean lazy() {
+			return lazy;
+		}
+		
+		/**
+		 * Returns the properties of the embedded type. The properties include 
+		 * {@code @Transient} fields, because the collection fields of the 
+		 * embedded type are initialized even if they are transient.
+		 * 
+		 * @return The properties of the embedded type.
+		 */
+		List<Property> embedded() {
+			return embedded;
+		}
+		
+		/**
+		 * Returns the value of this property from the specified object.
+		 * 
+		 * @param object The object which declares this property.
+		 * @return The value of this property.
+		 */
+		Object get(Object object) {
+			if (accessor != null) {
+				return accessor.get(object);
+			}
+			
+			try {
+				return getter.invokeExact(object);
+			} catch (RuntimeException e) {
+				throw e;
+			} catch (Throwable e) {
+				throw new UncheckedException(e);
+			}
+		}
+		
+		/**
+		 * Sets the specified value into this property of the specified object.
+		 * 
+		 * @param object The object which declares this property.
+		 * @param value The value to be set.
+		 */
+		void set(Object object, Object value) {
+			if (accessor != null) {
+				accessor.set(object, value);
+				return;
+			}
+			
+			try {
+				setter.invokeExact(object, value);
+			} catch (RuntimeException e) {
+				throw e;
+			} catch (Throwable e) {
+				throw new UncheckedException(e);
+			}
+		}
+		
+	}
+	
+}
@@ -15,35 +15,27 @@
  */
 package org.eiichiro.acidhouse.appengine;
 
-import java.lang.reflect.Field;
-import java.lang.reflect.Modifier;
-import java.lang.reflect.ParameterizedType;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
-import java.util.HashSet;
-import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
-import java.util.SortedSet;
 import java.util.TreeMap;
-import java.util.TreeSet;
 import java.util.logging.Logger;
 
 import org.eiichiro.acidhouse.ComparableFilter;
 import org.eiichiro.acidhouse.Embedded;
 import org.eiichiro.acidhouse.Entities;
-import org.eiichiro.acidhouse.Key;
+import org.eiichiro.acidhouse.Lazy;
 import org.eiichiro.acidhouse.Lock;
 import org.eiichiro.acidhouse.Log;
 import org.eiichiro.acidhouse.Log.State;
 import org.eiichiro.acidhouse.Order;
-import org.eiichiro.acidhouse.Referential;
 import org.eiichiro.acidhouse.Transaction;
-import org.eiichiro.acidhouse.Transient;
 import org.eiichiro.reverb.lang.UncheckedException;
 
 import com.google.appengine.api.datastore.Blob;
@@ -52,6 +44,7 @@ import com.google.appengine.api.datastore.EntityTranslator;
 import com.google.appengine.api.datastore.Query;
 import com.google.appengine.api.datastore.Query.FilterOperator;
 import com.google.appengine.api.datastore.Query.SortDirection;
+import com.google.appengine.api.datastore.RawValue;
 import com.google.storage.onestore.v3.OnestoreEntity;
 import com.google.storage.onestore.v3.OnestoreEntity.EntityProto;
 
@@ -89,6 +82,20 @@ public class Translation {
 	/** Google App Engine Datastore entity's property name for {@code Log#entity}'s Protocol Buffers message. */
 	public static final String PROTO_PROPERTY = "proto";
 	
+	/** The wrapper types of the primitive types to get the projected values. */
+	private static final Map<Class<?>, Class<?>> WRAPPERS = new HashMap<Class<?>, Class<?>>();
+	
+	static {
+		WRAPPERS.put(boolean.class, Boolean.class);
+		WRAPPERS.put(byte.class, Byte.class);
+		WRAPPERS.put(char.class, Character.class);
+		WRAPPERS.put(short.class, Short.class);
+		WRAPPERS.put(int.class, Integer.class);
+		WRAPPERS.put(long.class, Long.class);
+		WRAPPERS.put(float.class, Float.class);
+		WRAPPERS.put(double.class, Double.class);
+	}
+	
 	private Translation() {}
 	
 	/**
@@ -105,213 +112,246 @@ public class Translation {
 	public static <E> E toObject(Class<E> clazz, List<Entity> entities, 
 			Map<com.google.appengine.api.datastore.Key, Object> references, 
 			AppEngineDatastoreService datastore) {
-		return toObject(clazz, entities, references, datastore, 0);
+		return toObject(clazz, entities, new LazyLoader(datastore, references), true, 0);
 	}
 	
+	/**
+	 * Translates Google App Engine Datastore entities to Acid House entity with 
+	 * the specified {@code LazyLoader}. The {@code Lazy} properties of the 
+	 * entities translated with the same loader are loaded in batch. If the 
+	 * specified entities are not the whole entity group (only the root entity 
+	 * has been got), the {@code Lazy} child entities are loaded on demand.
+	 * 
+	 * @param <E> The type of Acid House entity.
+	 * @param clazz The {@code Class} of Acid House entity.
+	 * @param entities Google App Engine Datastore entities.
+	 * @param loader {@code LazyLoader}.
+	 * @param whole Whether the specified entities are the whole entity group 
+	 * or not.
+	 * @return Acid House entity translated from Google App Engine Datastore 
+	 * entities.
+	 */
+	static <E> E toObject(Class<E> clazz, List<Entity> entities, LazyLoader loader, boolean whole) {
+		return toObject(clazz, entities, loader, whole, 0);
+	}
+	
+	/**
+	 * Translates the specified Google App Engine Datastore {@code Key} to the 
+	 * Acid House entity which has only the key property. The returned entity 
+	 * is used to identify the entity without getting it from the datastore.
+	 * 
+	 * @param <E> The type of Acid House entity.
+	 * @param clazz The {@code Class} of Acid House entity.
+	 * @param key Google App Engine Datastore {@code Key}.
+	 * @return The Acid House entity which has only the key property.
+	 */
 	@SuppressWarnings("unchecked")
-	private static <E> E toObject(Class<E> clazz, List<Entity> entities, 
+	public static <E> E toObject(Class<E> clazz, com.google.appengine.api.datastore.Key key) {
+		Mapping mapping = Mapping.of(clazz);
+		E object = (E) mapping.newInstance();
+		
+		for (Mapping.Property property : mapping.properties()) {
+			if (property.kind() == Mapping.Kind.KEY) {
+				String name = key.getName();
+				property.set(object, (name == null) ? key.getId() : name);
+			}
+		}
+		
+		return object;
+	}
+	
+	/**
+	 * Translates the specified Google App Engine Datastore root entity to the 
+	 * Acid House entity which has only the key property and the specified 
+	 * properties. The specified properties must be the core value type 
+	 * properties or the embedded properties, which are persisted in the root 
+	 * entity. The specified entity may be the result of the projection query, 
+	 * whose property values are {@code RawValue}. 
+	 * This method is used to hydrate the entity partially without getting 
+	 * the child entities and the referred entities.
+	 * 
+	 * @param <E> The type of Acid House entity.
+	 * @param clazz The {@code Class} of Acid House entity.
+	 * @param entity Google App Engine Datastore root entity.
+	 * @param properties The names of the properties to be translated.
+	 * @return The Acid House entity which has only the key property and the 
+	 * specified properties.
+	 */
+	public static <E> E toObject(Class<E> clazz, Entity entity, Collection<String> properties) {
+		E object = toObject(clazz, entity.getKey());
+		
+		try {
+			for (Mapping.Property property : Mapping.of(clazz).properties()) {
+				if (!property.writable() || !properties.contains(property.name())) {
+					continue;
+				}
+				
+				if (property.kind() == Mapping.Kind.VALUE) {
+					Object value = entity.getProperty(property.name());
+					
+					// The projected value is the raw index value (e.g., long 
+					// for java.util.Date), so it is converted to the field type.
+					if (value instanceof RawValue) {
+						Class<?> type = WRAPPERS.containsKey(property.type()) 
+								? WRAPPERS.get(property.type()) : property.type();
+						value = ((RawValue) value).asType(type);
+					}
+					
+					if (value != null) {
+						property.set(object, toValue(property, value));
+					}
+					
+				} else if (property.kind() == Mapping.Kind.EMBEDDED) {
+					property.set(object, toEmbedded(property, entity));
+				}
+			}
+			
+			return object;
+		} catch (Exception e) {
+			throw new UncheckedException(e);
+		}
+	}
+	
+	/**
+	 * Gets the entities referred by the referential properties of the 
+	 * specified entity groups at once, and caches them into the specified 
+	 * references. The referred entity groups which have not been cached are 
+	 * got with the concurrent ancestor queries, so the entity groups got in 
+	 * bulk can be translated with {@link #toObject(Class, List, Map, AppEngineDatastoreService)} 
+	 * without getting the referred entity one by one.
+	 * 
+	 * @param clazz The {@code Class} of Acid House entity.
+	 * @param groups Google App Engine Datastore entity groups.
+	 * @param references The referred entities cached.
+	 * @param datastore {@code AppEngineDatastoreService}.
+	 */
+	public static void prefetch(Class<?> clazz, List<List<Entity>> groups, 
 			Map<com.google.appengine.api.datastore.Key, Object> references, 
-			AppEngineDatastoreService datastore, int hierarchy) {
+			AppEngineDatastoreService datastore) {
+		Map<com.google.appengine.api.datastore.Key, Class<?>> types 
+				= new LinkedHashMap<com.google.appengine.api.datastore.Key, Class<?>>();
+		
+		for (Mapping.Property property : Mapping.of(clazz).properties()) {
+			if (property.kind() != Mapping.Kind.REFERENCE || property.lazy()) {
+				continue;
+			}
+			
+			for (List<Entity> group : groups) {
+				if (group.isEmpty()) {
+					continue;
+				}
+				
+				Object value = group.get(0).getProperty(property.name());
+				
+				if (value instanceof com.google.appengine.api.datastore.Key 
+						&& !references.containsKey(value)) {
+					types.put((com.google.appengine.api.datastore.Key) value, property.type());
+				}
+			}
+		}
+		
+		if (types.isEmpty()) {
+			return;
+		}
+		
+		List<Query> queries = new ArrayList<Query>(types.size());
+		
+		for (com.google.appengine.api.datastore.Key key : types.keySet()) {
+			queries.add(new Query(key));
+		}
+		
+		List<List<Entity>> referred = datastore.query(queries);
+		int i = 0;
+		
+		for (com.google.appengine.api.datastore.Key key : types.keySet()) {
+			List<Entity> group = referred.get(i++);
+			
+			if (!references.containsKey(key)) {
+				references.put(key, toObject(types.get(key), group, references, datastore));
+			}
+		}
+	}
+	
+	@SuppressWarnings("unchecked")
+	private static <E> E toObject(Class<E> clazz, List<Entity> entities, 
+			LazyLoader loader, boolean whole, int hierarchy) {
 		if (entities.size() == 0) {
 			return null;
 		}
 		
 		try {
-			Iterator<Entity> iterator = entities.iterator();
-			Entity entity = iterator.next();
+			Entity entity = entities.get(0);
 			String kind = entity.getKind();
 			
 			if (kind.equals(LOCK_KIND) || kind.equals(TRANSACTION_KIND)) {
 				return null;
 			}
 			
-			E object = clazz.newInstance();
-			List<Entity> group = new ArrayList<Entity>();
-			
-			while (iterator.hasNext()) {
-				group.add(iterator.next());
-			}
+			Mapping mapping = Mapping.of(clazz);
+			E object = (E) mapping.newInstance();
+			List<Entity> group = entities.subList(1, entities.size());
+			Map<com.google.appengine.api.datastore.Key, Object> references = loader.references();
 			
-			for (Field field : clazz.getDeclaredFields()) {
-				if (Modifier.isFinal(field.getModifiers())) {
-					continue;
-				}
-				
-				if (field.isAnnotationPresent(Transient.class)) {
+			for (Mapping.Property property : mapping.properties()) {
+				if (!property.writable()) {
 					continue;
 				}
 				
-				field.setAccessible(true);
+				Mapping.Kind k = property.kind();
 				
-				if (field.isAnnotationPresent(Key.class)) {
+				if (k == Mapping.Kind.KEY) {
 					String name = entity.getKey().getName();
-					field.set(object, (name == null) ? entity.getKey().getId() : name);
+					property.set(object, (name == null) ? entity.getKey().getId() : name);
 					continue;
 				}
 				
-				Object property = entity.getProperty(field.getName());
-				Class<?> type = field.getType();
+				Object value = entity.getProperty(property.name());
 				
-				if (field.isAnnotationPresent(Referential.class)) {
-					if (property == null) {
+				if (k == Mapping.Kind.REFERENCE) {
+					if (value == null) {
 						continue;
 					}
 					
 					com.google.appengine.api.datastore.Key key 
-							= (com.google.appengine.api.datastore.Key) property;
+							= (com.google.appengine.api.datastore.Key) value;
 					
-					if (!references.containsKey(key)) {
-						// Optimization: Caching referential property.
-						references.put(key, toObject(type, datastore.query(new Query(key)), references, datastore));
+					if (property.lazy()) {
+						property.set(object, loader.reference(property.type(), key));
+						continue;
 					}
 					
-					field.set(object, references.get(key));
-					continue;
-				}
-				
-				if (isCoreValue(type)) {
-					if (property == null) {
-						continue;
+					if (!references.containsKey(key)) {
+						// Optimization: Caching referential property.
+						references.put(key, toObject(property.type(), 
+								loader.datastore().query(new Query(key)), loader, true, 0));
 					}
 					
-					// int and java.lang.Integer fields are translated to 
-					// int64Value (long) property in EntityProto, so I have to 
-					// revert them to int...
-					if ((type.getName().equals(CORE_VALUE_TYPES[16]) 
-							|| type.getName().equals(CORE_VALUE_TYPES[20])) 
-							&& (property.getClass().getName().equals(CORE_VALUE_TYPES[21]) 
-									|| property.getClass().getName().equals(CORE_VALUE_TYPES[25]))) {
-						long l = (Long) property;
-						property = (int) l;
+					property.set(object, references.get(key));
+				} else if (k == Mapping.Kind.VALUE) {
+					if (value != null) {
+						property.set(object, toValue(property, value));
 					}
 					
-					field.set(object, property);
-				} else if (isCollection(type)) {
-					if (property != null) {
+				} else if (k == Mapping.Kind.COLLECTION) {
+					if (value != null) {
 						// Collection of core value type.
-						field.set(object, property);
+						property.set(object, value);
+					} else if (property.elementKind() == Mapping.Kind.ENTITY) {
+						property.set(object, toChild(property, entity.getKey(), group, loader, whole, hierarchy));
 					} else {
-						Class<?> collectionType = null;
-						
-						if (type.equals(List.class)) {
-							collectionType = ArrayList.class;
-						} else if (type.equals(Set.class)) {
-							collectionType = HashSet.class;
-						} else if (type.equals(SortedSet.class)) {
-							collectionType = TreeSet.class;
-						} else {
-							collectionType = type;
-						}
-						
-						Collection<Object> collection = (Collection<Object>) collectionType.newInstance();
-						Class<?> element = (Class<?>) ((ParameterizedType) 
-								field.getGenericType()).getActualTypeArguments()[0];
-						List<List<Entity>> children = new ArrayList<List<Entity>>();
-						List<Entity> child = null;
-						com.google.appengine.api.datastore.Key previous = null;
-						
-						for (Entity e : group) {
-							com.google.appengine.api.datastore.Key key = Keys.hierarchy(e.getKey()).get(hierarchy + 1);
-							
-							if (!key.getKind().equals(toKind(element))) {
-								// Entities are assumed to be sorted by key.
-								break;
-							}
-							
-							if (!key.equals(previous)) {
-								child = new ArrayList<Entity>();
-								children.add(child);
-							}
-							
-							child.add(e);
-						}
-						
-						for (List<Entity> list : children) {
-							collection.add(toObject(element, list, references, datastore, hierarchy + 1));
-						}
-						
-						field.set(object, collection);
+						property.set(object, property.collection().newInstance());
 					}
 					
-				} else if (isArray(type)) {
+				} else if (k == Mapping.Kind.ARRAY) {
 					logger.warning("Array type translation is not supported: field [" 
-							+ field + "]; Use Collection type instead");
-				} else if (isEntity(type)) {
-					List<Entity> child = new ArrayList<Entity>();
-					
-					for (Entity e : group) {
-						com.google.appengine.api.datastore.Key key = Keys.hierarchy(e.getKey()).get(hierarchy + 1);
-						
-						if (!key.getKind().equals(toKind(type))) {
-							// Entities are assumed to be sorted by key.
-							break;
-						}
-						
-						child.add(e);
-					}
-					
-					field.set(object, toObject(type, child, references, datastore, hierarchy + 1));
-				} else if (isEmbedded(type)) {
-					Object embedded = type.newInstance();
-					
-					for (Field f : type.getDeclaredFields()) {
-						if (Modifier.isFinal(f.getModifiers())) {
-							continue;
-						}
-						
-						f.setAccessible(true);
-						Object p = entity.getProperty(field.getName() + "." + f.getName());
-						Class<?> t = f.getType();
-						
-						if (isCoreValue(t)) {
-							if (p == null) {
-								continue;
-							}
-							
-							// int and java.lang.Integer fields are translated to 
-							// int64Value (long) property in EntityProto, so I have to 
-							// revert them to int...
-							if ((t.getName().equals(CORE_VALUE_TYPES[16]) 
-									|| t.getName().equals(CORE_VALUE_TYPES[20])) 
-									&& (p.getClass().getName().equals(CORE_VALUE_TYPES[21]) 
-											|| p.getClass().getName().equals(CORE_VALUE_TYPES[25]))) {
-								long l = (Long) p;
-								p = (int) l;
-							}
-							
-							f.set(embedded, p);
-						} else if (isCollection(t)) {
-							if (p != null) {
-								// Collection of core value type.
-								// Because types other than core value type / collection of core value type 
-								// are not persisted in an embedded type.
-								f.set(embedded, p);
-							} else {
-								Class<?> collectionType = null;
-								
-								if (t.equals(List.class)) {
-									collectionType = ArrayList.class;
-								} else if (t.equals(Set.class)) {
-									collectionType = HashSet.class;
-								} else if (t.equals(SortedSet.class)) {
-									collectionType = TreeSet.class;
-								} else {
-									collectionType = type;
-								}
-								
-								f.set(embedded, collectionType.newInstance());
-							}
-							
-						} else {
-							logger.warning("Type translation other than core value type / collection of core value type "
-									+ "is not supported in an embedded type: field [" + f + "]");
-						}
-					}
-					
-					field.set(object, embedded);
+							+ property.field() + "]; Use Collection type instead");
+				} else if (k == Mapping.Kind.ENTITY) {
+					property.set(object, toChild(property, entity.getKey(), group, loader, whole, hierarchy));
+				} else if (k == Mapping.Kind.EMBEDDED) {
+					property.set(object, toEmbedded(property, entity));
 				} else {
 					logger.warning("User defined type translation is not supported: field [" 
-							+ field + "]");
+							+ property.field() + "]");
 				}
 			}
 			
@@ -321,6 +361,136 @@ public class Translation {
 		}
 	}
 	
+	private static Object toChild(Mapping.Property property, com.google.appengine.api.datastore.Key key, 
+			List<Entity> group, LazyLoader loader, boolean whole, int hierarchy) {
+		if (!property.lazy()) {
+			return toChild(property, group, loader, hierarchy);
+		}
+		
+		// Optimization: The child entities of the lazy property are loaded on 
+		// demand if the entity group has not been got entirely.
+		return (whole) ? Lazy.of(toChild(property, group, loader, hierarchy)) 
+				: loader.child(property, key);
+	}
+	
+	/**
+	 * Translates the child entity (or the collection of the child entities) 
+	 * of the specified property from the specified entities of the entity 
+	 * group.
+	 * 
+	 * @param property The property of the child entity.
+	 * @param group The entities of the entity group except the owner entity.
+	 * @param loader {@code LazyLoader}.
+	 * @param hierarchy The hierarchy of the owner entity.
+	 * @return The child entity or the collection of the child entities.
+	 */
+	@SuppressWarnings("unchecked")
+	static Object toChild(Mapping.Property property, List<Entity> group, 
+			LazyLoader loader, int hierarchy) {
+		try {
+			if (property.kind() == Mapping.Kind.ENTITY) {
+				List<List<Entity>> children = children(group, Mapping.of(property.type()).kind(), hierarchy + 1);
+				return toObject(property.type(), 
+						(children.isEmpty()) ? Collections.<Entity>emptyList() : children.get(0), 
+						loader, true, hierarchy + 1);
+			}
+			
+			Collection<Object> collection = (Collection<Object>) property.collection().newInstance();
+			Class<?> element = property.element();
+			
+			for (List<Entity> child : children(group, Mapping.of(element).kind(), hierarchy + 1)) {
+				collection.add(toObject(element, child, loader, true, hierarchy + 1));
+			}
+			
+			return collection;
+		} catch (Exception e) {
+			throw new UncheckedException(e);
+		}
+	}
+	
+	private static Object toEmbedded(Mapping.Property property, Entity entity) throws Exception {
+		Object embedded = Mapping.of(property.type()).newInstance();
+		
+		for (Mapping.Property p : property.embedded()) {
+			if (!p.writable()) {
+				continue;
+			}
+			
+			Object v = entity.getProperty(p.name());
+			
+			if (p.kind() == Mapping.Kind.VALUE) {
+				if (v != null) {
+					p.set(embedded, toValue(p, v));
+				}
+				
+			} else if (p.kind() == Mapping.Kind.COLLECTION) {
+				// Collection of core value type.
+				// Because types other than core value type / collection of core value type 
+				// are not persisted in an embedded type.
+				p.set(embedded, (v != null) ? v : p.collection().newInstance());
+			} else {
+				logger.warning("Type translation other than core value type / collection of core value type "
+						+ "is not supported in an embedded type: field [" + p.field() + "]");
+			}
+		}
+		
+		return embedded;
+	}
+	
+	private static Object toValue(Mapping.Property property, Object value) {
+		// int and java.lang.Integer fields are translated to int64Value 
+		// (long) property in EntityProto, so I have to revert them to int...
+		if (property.integer() && value instanceof Long) {
+			return (int) (long) (Long) value;
+		}
+		
+		return value;
+	}
+	
+	private static List<List<Entity>> children(List<Entity> group, String kind, int hierarchy) {
+		List<List<Entity>> children = new ArrayList<List<Entity>>();
+		List<Entity> child = null;
+		com.google.appengine.api.datastore.Key previous = null;
+		
+		for (Entity e : group) {
+			com.google.appengine.api.datastore.Key key = ancestor(e.getKey(), hierarchy);
+			
+			if (!key.getKind().equals(kind)) {
+				if (previous == null) {
+					continue;
+				}
+				
+				// Entities are assumed to be sorted by key.
+				break;
+			}
+			
+			if (!key.equals(previous)) {
+				child = new ArrayList<Entity>();
+				children.add(child);
+				previous = key;
+			}
+			
+			child.add(e);
+		}
+		
+		return children;
+	}
+	
+	private static com.google.appengine.api.datastore.Key ancestor(
+			com.google.appengine.api.datastore.Key key, int hierarchy) {
+		int depth = 0;
+		
+		for (com.google.appengine.api.datastore.Key k = key.getParent(); k != null; k = k.getParent()) {
+			depth++;
+		}
+		
+		for (; depth > hierarchy; depth--) {
+			key = key.getParent();
+		}
+		
+		return key;
+	}
+	
 	/**
 	 * Translates Acid House entity to Google App Engine Datastore entities.
 	 * 
@@ -388,6 +558,8 @@ public class Translation {
 	 * @param entity Acid House entity.
 	 * @return Google App Engine Datastore entities translated from Acid House 
 	 * entity.
+	 * @throws IllegalStateException If the lazy child property of the 
+	 * entity got in bulk has not been loaded.
 	 */
 	public static List<Entity> toEntities(com.google.appengine.api.datastore.Key parent, Object entity) {
 		List<Entity> entities = new ArrayList<Entity>();
@@ -398,89 +570,102 @@ public class Translation {
 					+ "] must be annotated with @org.eiichiro.acidhouse.Entity");
 		}
 		
-		Entity e = new Entity(Keys.create(parent, toKind(clazz), Entities.keyValue(entity)));
+		Mapping mapping = Mapping.of(clazz);
+		Entity e = new Entity(Keys.create(parent, mapping.kind(), Entities.keyValue(entity)));
 		entities.add(e);
 		
-		for (Field field : clazz.getDeclaredFields()) {
-			if (field.isAnnotationPresent(Key.class)) {
-				continue;
-			}
+		for (Mapping.Property property : mapping.properties()) {
+			Mapping.Kind kind = property.kind();
 			
-			if (field.isAnnotationPresent(Transient.class)) {
+			if (kind == Mapping.Kind.KEY) {
 				continue;
 			}
 			
 			try {
-				field.setAccessible(true);
-				Object object = field.get(entity);
+				Object object = property.get(entity);
 				
 				if (object == null) {
 					continue;
 				}
 				
-				Class<?> type = field.getType();
-				boolean unindexed = field.isAnnotationPresent(Unindexed.class);
-				
-				if (field.isAnnotationPresent(Referential.class)) {
-					com.google.appengine.api.datastore.Key reference 
-							= Keys.create(toKind(type), Entities.keyValue(object));
-					setProperty(e, field.getName(), reference, unindexed);
-					continue;
+				if (property.lazy()) {
+					// The referred entity is not loaded to get its key.
+					if (object instanceof LazyLoader.LazyReference<?> && !((Lazy<?>) object).isLoaded()) {
+						setProperty(e, property.name(), 
+								((LazyLoader.LazyReference<?>) object).key(), property.unindexed());
+						continue;
+					}
+					
+					// Loading the child entities here would read them with the 
+					// non-transactional query in the middle of the write.
+					if (object instanceof LazyLoader.LazyChild<?> && !((Lazy<?>) object).isLoaded()) {
+						throw new IllegalStateException("Lazy child property [" 
+								+ property.field() + "] of entity [" + e.getKey() 
+								+ "] has not been loaded: Get the entity in the transaction "
+								+ "or load the property before writing it");
+					}
+					
+					object = ((Lazy<?>) object).get();
+					
+					if (object == null) {
+						continue;
+					}
 				}
 				
-				if (isCoreValue(type)) {
-					setProperty(e, field.getName(), object, unindexed);
-				} else if (isCollection(type)) {
+				if (kind == Mapping.Kind.REFERENCE) {
+					com.google.appengine.api.datastore.Key reference 
+							= Keys.create(Mapping.of(property.type()).kind(), Entities.keyValue(object));
+					setProperty(e, property.name(), reference, property.unindexed());
+				} else if (kind == Mapping.Kind.VALUE) {
+					setProperty(e, property.name(), object, property.unindexed());
+				} else if (kind == Mapping.Kind.COLLECTION) {
 					Collection<?> collection = (Collection<?>) object;
-					Class<?> element = (Class<?>) ((ParameterizedType) field.getGenericType()).getActualTypeArguments()[0];
 					
-					if (isCoreValue(element)) {
-						setProperty(e, field.getName(), collection, unindexed);
-					} else if (isEntity(element)) {
+					if (property.elementKind() == Mapping.Kind.VALUE) {
+						setProperty(e, property.name(), collection, property.unindexed());
+					} else if (property.elementKind() == Mapping.Kind.ENTITY) {
 						for (Object o : collection) {
 							entities.addAll(toEntities(e.getKey(), o));
 						}
 						
 					} else {
 						logger.warning("Collection of non-core value type / non-entity type translation "
-								+ "is not supported: field [" + field + "]");
+								+ "is not supported: field [" + property.field() + "]");
 					}
 					
-				} else if (isArray(type)) {
+				} else if (kind == Mapping.Kind.ARRAY) {
 					logger.warning("Array type translation is not supported: field [" 
-							+ field + "]; Use Collection type instead");
-				} else if (isEntity(type)) {
+							+ property.field() + "]; Use Collection type instead");
+				} else if (kind == Mapping.Kind.ENTITY) {
 					entities.addAll(toEntities(e.getKey(), object));
-				} else if (isEmbedded(type)) {
-					for (Field f : type.getDeclaredFields()) {
-						if (f.isAnnotationPresent(Transient.class)) {
+				} else if (kind == Mapping.Kind.EMBEDDED) {
+					for (Mapping.Property p : property.embedded()) {
+						if (!p.persistent()) {
 							continue;
 						}
 						
-						f.setAccessible(true);
-						Object o = f.get(object);
+						Object o = p.get(object);
 						
 						if (o == null) {
 							continue;
 						}
 						
-						Class<?> t = f.getType();
-						
-						if (isCoreValue(t) || (isCollection(t) && isCoreValue(
-								(Class<?>) ((ParameterizedType) f.getGenericType()).getActualTypeArguments()[0]))) {
-							setProperty(e, field.getName() + "." + f.getName(), 
-									o, f.isAnnotationPresent(Unindexed.class));
+						if (p.kind() == Mapping.Kind.VALUE 
+								|| (p.kind() == Mapping.Kind.COLLECTION && p.elementKind() == Mapping.Kind.VALUE)) {
+							setProperty(e, p.name(), o, p.unindexed());
 						} else {
 							logger.warning("Type translation other than core value type / collection of core value type "
-									+ "is not supported in an embedded type: field [" + f + "]");
+									+ "is not supported in an embedded type: field [" + p.field() + "]");
 						}
 					}
 					
 				} else {
 					logger.warning("User defined type translation is not supported: field [" 
-							+ field + "]");
+							+ property.field() + "]");
 				}
-
+				
+			} catch (IllegalStateException exception) {
+				throw exception;
 			} catch (Exception exception) {
 				throw new UncheckedException(exception);
 			}
@@ -616,12 +801,7 @@ public class Translation {
 	 * @return The kind name translated from Acid House entity class.
 	 */
 	public static String toKind(Class<?> clazz) {
-		if (clazz.getAnnotation(org.eiichiro.acidhouse.Entity.class) == null) {
-			throw new IllegalArgumentException("Entity class [" + clazz
-					+ "] must be annotated by @org.eiichiro.acidhouse.Entity");
-		}
-		
-		return clazz.getSimpleName();
+		return Mapping.of(clazz).kind();
 	}
 	
 	/**
@@ -670,23 +850,23 @@ public class Translation {
 		}
 	}
 	
-	private static boolean isEntity(Class<?> type) {
+	static boolean isEntity(Class<?> type) {
 		return type.isAnnotationPresent(org.eiichiro.acidhouse.Entity.class);
 	}
 	
-	private static boolean isEmbedded(Class<?> type) {
+	static boolean isEmbedded(Class<?> type) {
 		return type.isAnnotationPresent(Embedded.class);
 	}
 	
-	private static boolean isCollection(Class<?> type) {
+	static boolean isCollection(Class<?> type) {
 		return Arrays.binarySearch(CORE_COLLECTION_TYPES, type.getName()) >= 0;
 	}
 	
-	private static boolean isArray(Class<?> type) {
+	static boolean isArray(Class<?> type) {
 		return type.getName().startsWith(ARRAY_TYPE);
 	}
 	
-	private static boolean isCoreValue(Class<?> type) {
+	static boolean isCoreValue(Class<?> type) {
 		return Arrays.binarySearch(CORE_VALUE_TYPES, type.getName()) >= 0;
 	}
 	
@@ -0,0 +1,225 @@
+package org.eiichiro.acidhouse.appengine;
+
+import static org.junit.Assert.*;
+import static org.hamcrest.CoreMatchers.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.ConcurrentModificationException;
+import java.util.Date;
+import java.util.List;
+
+import org.eiichiro.acidhouse.Lock;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.appengine.api.datastore.DatastoreService;
+import com.google.appengine.api.datastore.DatastoreServiceFactory;
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.Key;
+import com.google.appengine.api.datastore.KeyFactory;
+import com.google.appengine.tools.development.testing.LocalDatastoreServiceTestConfig;
+import com.google.appengine.tools.development.testing.LocalServiceTestHelper;
+
+public class AppEngineCacheTest {
+	
+	private LocalServiceTestHelper helper = new LocalServiceTestHelper(new LocalDatastoreServiceTestConfig());
+	
+	@Before
+	public void setUp() throws Exception {
+		helper.setUp();
+	}
+	
+	@After
+	public void tearDown() throws Exception {
+		helper.tearDown();
+	}
+	
+	@Test
+	public void testAppEngineCache() throws Exception {
+		AppEngineCache cache = new AppEngineCache(2, 50);
+		Key key1 = KeyFactory.createKey("Kind", "Key1");
+		Key key2 = KeyFactory.createKey("Kind", "Key2");
+		Key key3 = KeyFactory.createKey("Kind", "Key3");
+		assertNull(cache.get(key1));
+		cache.put(key1, Arrays.asList(new Entity(key1)), cache.stamp());
+		cache.put(key2, Arrays.asList(new Entity(key2)), cache.stamp());
+		assertThat(cache.get(key1).get(0).getKey(), is(key1));
+		
+		// Size limit: The least recently used one is evicted.
+		assertNull(cache.get(key3));
+		cache.put(key3, Arrays.asList(new Entity(key3)), cache.stamp());
+		assertNull(cache.get(key2));
+		assertNotNull(cache.get(key3));
+		assertThat(cache.hits(), is(2L));
+		assertThat(cache.misses(), is(3L));
+		assertThat(cache.evictions(), is(1L));
+		
+		// Invalidation: The group got before the invalidation is not cached.
+		long stamp = cache.stamp();
+		cache.invalidate(Collections.singleton(key1));
+		assertNull(cache.get(key1));
+		cache.put(key1, Arrays.asList(new Entity(key1)), stamp);
+		assertNull(cache.get(key1));
+		
+		// Locked entity group is never cached.
+		Entity lock = new Entity(Translation.LOCK_KIND, "Lock1", key1);
+		cache.put(key1, Arrays.asList(new Entity(key1), lock), cache.stamp());
+		assertNull(cache.get(key1));
+		
+		// Time-to-live.
+		Thread.sleep(100);
+		assertThat(cache.evictions(), is(2L));
+		assertNull(cache.get(key3));
+		
+		try {
+			new AppEngineCache(0, 1);
+			fail();
+		} catch (IllegalArgumentException e) {}
+		
+		try {
+			new AppEngineCache(1, 0);
+			fail();
+		} catch (IllegalArgumentException e) {}
+	}
+	
+	@Test
+	public void testAdmission() {
+		AppEngineCache cache = new AppEngineCache(2, 60000);
+		Key key1 = KeyFactory.createKey("Kind", "Key1");
+		Key key2 = KeyFactory.createKey("Kind", "Key2");
+		
+		for (Key key : Arrays.asList(key1, key2)) {
+			assertNull(cache.get(key));
+			cache.put(key, Arrays.asList(new Entity(key)), cache.stamp());
+			assertNotNull(cache.get(key));
+			assertNotNull(cache.get(key));
+		}
+		
+		// Scan: The groups read once do not replace the frequently read ones.
+		for (int i = 3; i <= 10; i++) {
+			Key key = KeyFactory.createKey("Kind", "Key" + i);
+			assertNull(cache.get(key));
+			cache.put(key, Arrays.asList(new Entity(key)), cache.stamp());
+			assertNull(cache.get(key));
+		}
+		
+		assertNotNull(cache.get(key1));
+		assertNotNull(cache.get(key2));
+		assertThat(cache.evictions(), is(0L));
+		
+		// The group read more frequently replaces the least recently used one.
+		Key key11 = KeyFactory.createKey("Kind", "Key11");
+		
+		for (int i = 0; i < 5; i++) {
+			assertNull(cache.get(key11));
+		}
+		
+		cache.put(key11, Arrays.asList(new Entity(key11)), cache.stamp());
+		assertNotNull(cache.get(key11));
+		assertNull(cache.get(key1));
+		assertNotNull(cache.get(key2));
+		assertThat(cache.evictions(), is(1L));
+	}
+	
+	@Test
+	public void testCopy() {
+		AppEngineCache cache = new AppEngineCache();
+		Key key = KeyFactory.createKey("Kind", "Key1");
+		Entity entity = new Entity(key);
+		entity.setProperty("integers", new ArrayList<Long>(Arrays.asList(1L, 2L)));
+		cache.put(key, Arrays.asList(entity), cache.stamp());
+		
+		// The returned entities do not share the state with the cache.
+		List<Entity> entities = cache.get(key);
+		entities.get(0).setProperty("i", 1L);
+		((List<?>) entities.get(0).getProperty("integers")).clear();
+		entities.clear();
+		entities = cache.get(key);
+		assertThat(entities.size(), is(1));
+		assertThat(entities.get(0).hasProperty("i"), is(false));
+		assertThat(((List<?>) entities.get(0).getProperty("integers")).size(), is(2));
+		
+		// Translated object does not share the state with the cache either.
+		cache = new AppEngineCache();
+		AppEngineDatastoreSession session = new AppEngineDatastoreSession();
+		session.cache(cache);
+		Entity2 entity2 = new Entity2();
+		entity2.key = "Key2";
+		entity2.integers = new ArrayList<Integer>(Arrays.asList(1, 2));
+		AppEngineTransaction transaction = session.beginTransaction();
+		session.put(entity2);
+		transaction.commit();
+		entity2 = session.get(Entity2.class, "Key2");
+		entity2.integers.add(3);
+		assertThat(cache.hits(), is(0L));
+		entity2 = session.get(Entity2.class, "Key2");
+		assertThat(cache.hits(), is(1L));
+		assertThat(entity2.integers.size(), is(2));
+		session.close();
+	}
+	
+	@Test
+	public void testGet() {
+		AppEngineCache cache = new AppEngineCache();
+		Entity3 entity3 = new Entity3();
+		entity3.key = "Key1";
+		entity3.i = 1;
+		AppEngineDatastoreSession session = new AppEngineDatastoreSession();
+		session.cache(cache);
+		AppEngineTransaction transaction = session.beginTransaction();
+		session.put(entity3);
+		transaction.commit();
+		assertThat(session.get(Entity3.class, "Key1").i, is(1));
+		assertThat(session.get(Entity3.class, "Key1").i, is(1));
+		assertThat(cache.misses(), is(1L));
+		assertThat(cache.hits(), is(1L));
+		
+		// Commit invalidates the modified entity group.
+		transaction = session.beginTransaction();
+		entity3 = session.get(Entity3.class, "Key1");
+		entity3.i = 2;
+		session.update(entity3);
+		transaction.commit();
+		assertThat(session.get(Entity3.class, "Key1").i, is(2));
+		assertThat(cache.misses(), is(2L));
+		session.close();
+		
+		// Shared by Strong session and invalidated by 2PC.
+		AppEngineStrongDatastoreSession strong = new AppEngineStrongDatastoreSession();
+		strong.cache(cache);
+		assertThat(strong.get(Entity3.class, "Key1").i, is(2));
+		assertThat(cache.hits(), is(2L));
+		transaction = strong.beginTransaction();
+		entity3 = strong.get(Entity3.class, "Key1");
+		entity3.i = 3;
+		strong.update(entity3);
+		Entity3 entity = new Entity3();
+		entity.key = "Key2";
+		entity.i = 2;
+		strong.put(entity);
+		transaction.commit();
+		assertThat(strong.get(Entity3.class, "Key1").i, is(3));
+		assertThat(strong.get(Entity3.class, "Key2").i, is(2));
+		assertThat(cache.misses(), is(4L));
+		
+		// Locked entity is never served from the cache.
+		Key key = KeyFactory.createKey(Translation.toKind(Entity3.class), "Key2");
+		DatastoreService datastore = DatastoreServiceFactory.getDatastoreService();
+		datastore.put(null, Translation.toEntity(new Lock("Lock2", KeyFactory.createKeyString(
+				key, Translation.TRANSACTION_KIND, "Lock2"), new Date()), key));
+		cache.invalidate(Collections.singleton(key));
+		
+		try {
+			strong.get(Entity3.class, "Key2");
+			fail();
+		} catch (ConcurrentModificationException e) {}
+		
+		List<Entity> entities = cache.get(key);
+		assertNull(entities);
+		strong.close();
+	}
+	
+}
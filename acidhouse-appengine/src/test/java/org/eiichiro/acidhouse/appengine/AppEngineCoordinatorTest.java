@@ -0,0 +1,188 @@
+package org.eiichiro.acidhouse.appengine;
+
+import static org.junit.Assert.*;
+import static org.hamcrest.CoreMatchers.*;
+
+import org.eiichiro.acidhouse.Log;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.appengine.api.datastore.DatastoreAttributes.DatastoreType;
+import com.google.appengine.api.datastore.DatastoreService;
+import com.google.appengine.api.datastore.DatastoreServiceFactory;
+import com.google.appengine.api.datastore.FetchOptions;
+import com.google.appengine.api.datastore.Query;
+import com.google.appengine.tools.development.ApiProxyLocal;
+import com.google.appengine.tools.development.testing.LocalDatastoreServiceTestConfig;
+import com.google.appengine.tools.development.testing.LocalServiceTestHelper;
+import com.google.apphosting.api.ApiProxy;
+
+public class AppEngineCoordinatorTest {
+	
+	private LocalServiceTestHelper helper = new LocalServiceTestHelper(
+			new LocalDatastoreServiceTestConfig().setAlternateHighRepJobPolicyClass(NeverFailHighRepJobPolicy.class));
+	
+	@Before
+	public void setUp() throws Exception {
+		helper.setUp();
+	}
+	
+	@After
+	public void tearDown() throws Exception {
+		helper.tearDown();
+		ApiProxy.setDelegate(delegate);
+	}
+	
+	private ApiProxyLocal delegate;
+	
+	@Test
+	public void testCommit() {
+		delegate = (ApiProxyLocal) ApiProxy.getDelegate();
+		
+		// Single-phase commit: Reads two entity groups and updates one of them.
+		Entity3 entity3 = new Entity3();
+		entity3.key = "Key3";
+		entity3.i = 3;
+		Entity3 entity30 = new Entity3();
+		entity30.key = "Key30";
+		entity30.i = 30;
+		AppEngineStrongDatastoreSession session = new AppEngineStrongDatastoreSession();
+		AppEngineTransaction transaction = session.beginTransaction();
+		session.put(entity3);
+		transaction.commit();
+		transaction = session.beginTransaction();
+		session.put(entity30);
+		transaction.commit();
+		session.close();
+		ApiProxy.setDelegate(new FaultDelegate(delegate, 1));
+		session = new AppEngineStrongDatastoreSession();
+		transaction = session.beginTransaction();
+		session.get(Entity3.class, "Key30");
+		entity3 = session.get(Entity3.class, "Key3");
+		entity3.i = 31;
+		session.update(entity3);
+		transaction.commit();
+		session.close();
+		ApiProxy.setDelegate(delegate);
+		
+		for (Log log : transaction.logs()) {
+			if (log.operation() != Log.Operation.GET) {
+				assertThat(log.state(), is(Log.State.COMMITTED));
+			}
+		}
+		
+		session = new AppEngineStrongDatastoreSession();
+		assertThat(session.get(Entity3.class, "Key3").i, is(31));
+		session.close();
+		
+		// Cross-group transaction.
+		Entity3 entity31 = new Entity3();
+		entity31.key = "Key31";
+		entity31.i = 31;
+		Entity3 entity32 = new Entity3();
+		entity32.key = "Key32";
+		entity32.i = 32;
+		ApiProxy.setDelegate(new FaultDelegate(delegate, 1));
+		session = new AppEngineStrongDatastoreSession();
+		session.datastore().datastoreType(DatastoreType.HIGH_REPLICATION);
+		transaction = session.beginTransaction();
+		entity3 = session.get(Entity3.class, "Key3");
+		session.delete(entity3);
+		session.put(entity31);
+		session.put(entity32);
+		transaction.commit();
+		session.close();
+		ApiProxy.setDelegate(delegate);
+		session = new AppEngineStrongDatastoreSession();
+		assertNull(session.get(Entity3.class, "Key3"));
+		assertThat(session.get(Entity3.class, "Key31").i, is(31));
+		assertThat(session.get(Entity3.class, "Key32").i, is(32));
+		session.close();
+		
+		// Two-phase commit: Beyond the entity group limit.
+		Entity3 entity33 = new Entity3();
+		entity33.key = "Key33";
+		entity33.i = 33;
+		Entity3 entity34 = new Entity3();
+		entity34.key = "Key34";
+		entity34.i = 34;
+		session = new AppEngineStrongDatastoreSession();
+		session.datastore().datastoreType(DatastoreType.HIGH_REPLICATION);
+		session.datastore().groups(1);
+		ApiProxy.setDelegate(new FaultDelegate(delegate, 1));
+		transaction = session.beginTransaction();
+		session.put(entity33);
+		session.put(entity34);
+		
+		try {
+			transaction.commit();
+			fail();
+		} catch (Exception e) {
+			e.printStackTrace();
+			transaction.rollback();
+		}
+		
+		ApiProxy.setDelegate(delegate);
+		session.close();
+		Entity3 entity35 = new Entity3();
+		entity35.key = "Key35";
+		entity35.i = 35;
+		Entity3 entity36 = new Entity3();
+		entity36.key = "Key36";
+		entity36.i = 36;
+		session = new AppEngineStrongDatastoreSession();
+		session.datastore().datastoreType(DatastoreType.HIGH_REPLICATION);
+		session.datastore().groups(1);
+		transaction = session.beginTransaction();
+		session.put(entity35);
+		session.put(entity36);
+		transaction.commit();
+		session.close();
+		session = new AppEngineStrongDatastoreSession();
+		assertThat(session.get(Entity3.class, "Key35").i, is(35));
+		assertThat(session.get(Entity3.class, "Key36").i, is(36));
+		session.close();
+		
+		// Two-phase commit: Concurrent preparation and commitment.
+		session = new AppEngineStrongDatastoreSession();
+		session.datastore().datastoreType(DatastoreType.HIGH_REPLICATION);
+		session.datastore().groups(2);
+		session.datastore().concurrency(2);
+		transaction = session.beginTransaction();
+		
+		for (int i = 40; i < 47; i++) {
+			Entity3 entity = new Entity3();
+			entity.key = "Key" + i;
+			entity.i = i;
+			session.put(entity);
+		}
+		
+		transaction.commit();
+		session.close();
+		
+		for (Log log : transaction.logs()) {
+			assertThat(log.state(), is(Log.State.COMMITTED));
+		}
+		
+		session = new AppEngineStrongDatastoreSession();
+		
+		for (int i = 40; i < 47; i++) {
+			assertThat(session.get(Entity3.class, "Key" + i).i, is(i));
+		}
+		
+		DatastoreService datastore = DatastoreServiceFactory.getDatastoreService();
+		// Just the lock left by the failed transaction above remains.
+		assertThat(datastore.prepare(new Query(Translation.LOCK_KIND)).countEntities(
+				FetchOptions.Builder.withDefaults()), is(1));
+		assertThat(datastore.prepare(new Query(Translation.TRANSACTION_KIND)).countEntities(
+				FetchOptions.Builder.withDefaults()), is(0));
+		session.close();
+		
+		try {
+			session.datastore().groups(0);
+			fail();
+		} catch (IllegalArgumentException e) {}
+	}
+	
+}
@@ -3,16 +3,37 @@ package org.eiichiro.acidhouse.appengine;
 import static org.junit.Assert.*;
 import static org.hamcrest.CoreMatchers.*;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
 import org.eiichiro.acidhouse.Aggregation;
 import org.eiichiro.acidhouse.EntityExistsException;
+import org.eiichiro.acidhouse.Lazy;
+import org.eiichiro.acidhouse.Log;
 import org.eiichiro.acidhouse.metamodel.Metamodel;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 
 import com.google.appengine.api.datastore.DatastoreAttributes.DatastoreType;
+import com.google.appengine.api.datastore.DatastoreService;
+import com.google.appengine.api.datastore.DatastoreServiceFactory;
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.FetchOptions;
+import com.google.appengine.api.datastore.Query;
 import com.google.appengine.tools.development.testing.LocalDatastoreServiceTestConfig;
+import com.google.appengine.tools.development.ApiProxyLocal;
 import com.google.appengine.tools.development.testing.LocalServiceTestHelper;
+import com.google.apphosting.api.ApiProxy;
+import com.google.apphosting.api.ApiProxy.ApiConfig;
+import com.google.apphosting.api.ApiProxy.Environment;
 
 public class AppEngineDatastoreSessionTest {
 
@@ -122,8 +143,219 @@ public class AppEngineDatastoreSessionTest {
 		System.out.println("AppEngineDatastoreSession.get #3 [" + (System.currentTimeMillis() - start) + "]");
 		assertNull(entity1);
 		session.close();
+		
+		// Identity map: Repeated get in the same transaction.
+		session = new AppEngineDatastoreSession();
+		transaction = session.beginTransaction();
+		entity1 = session.get(Entity1.class, "Key1");
+		assertSame(session.get(Entity1.class, "Key1"), entity1);
+		entity1.i = 2;
+		session.update(entity1);
+		assertNotSame(session.get(Entity1.class, "Key1"), entity1);
+		transaction.commit();
+		transaction = session.beginTransaction();
+		Entity1 committed = session.get(Entity1.class, "Key1");
+		assertNotSame(committed, entity1);
+		assertThat(committed.i, is(2));
+		transaction.rollback();
+		session.close();
+	}
+
+	@Test
+	public void testGetAsync() throws Exception {
+		AppEngineDatastoreSession session = new AppEngineDatastoreSession();
+		AppEngineTransaction transaction = null;
+		
+		for (int i = 0; i < 5; i++) {
+			Entity1 entity1 = new Entity1();
+			entity1.key = "Key" + i;
+			entity1.i = i;
+			transaction = session.beginTransaction();
+			session.put(entity1);
+			transaction.commitAsync().get();
+			assertThat(transaction.logs().get(0).state(), is(Log.State.COMMITTED));
+		}
+		
+		List<CompletableFuture<Entity1>> futures = new ArrayList<CompletableFuture<Entity1>>();
+		
+		for (int i = 0; i < 6; i++) {
+			futures.add(session.getAsync(Entity1.class, "Key" + i));
+		}
+		
+		for (int i = 0; i < 5; i++) {
+			assertThat(futures.get(i).get().i, is(i));
+		}
+		
+		assertNull(futures.get(5).get());
+		
+		// Under a transaction: Got on the calling thread.
+		transaction = session.beginTransaction();
+		CompletableFuture<Entity1> future = session.getAsync(Entity1.class, "Key1");
+		assertTrue(future.isDone());
+		Entity1 entity1 = future.get();
+		entity1.i = 11;
+		session.update(entity1);
+		CompletableFuture<Void> commit = transaction.commitAsync();
+		assertFalse(session.isTransactional());
+		commit.get();
+		assertThat(session.getAsync(Entity1.class, "Key1").get().i, is(11));
+		session.close();
+		
+		try {
+			session.getAsync(null, "Key1");
+			fail();
+		} catch (IllegalArgumentException e) {}
+	}
+	
+	@Test
+	public void testGetClassOfEList() {
+		DatastoreService datastore = DatastoreServiceFactory.getDatastoreService();
+		Entity1 entity1 = new Entity1();
+		entity1.key = "Key1";
+		entity1.i = 1;
+		Entity4 entity4 = new Entity4();
+		entity4.key = "Key4";
+		entity4.i = 4;
+		entity4.entity1s = new ArrayList<Entity1>();
+		entity4.entity1s.add(entity1);
+		datastore.put(null, Translation.toEntities(entity1));
+		datastore.put(null, Translation.toEntities(entity4));
+		
+		AppEngineDatastoreSession session = new AppEngineDatastoreSession();
+		List<Entity1> entity1s = session.get(Entity1.class, Arrays.asList(
+				Keys.create("Entity1", "Key11"), Keys.create("Entity1", "Key1")));
+		assertThat(entity1s.size(), is(2));
+		assertNull(entity1s.get(0));
+		assertThat(entity1s.get(1).key, is("Key1"));
+		assertThat(entity1s.get(1).i, is(1));
+		List<Entity4> entity4s = session.get(Entity4.class, Arrays.asList(
+				Keys.create("Entity4", "Key4"), Keys.create("Entity4", "Key44")));
+		assertThat(entity4s.size(), is(2));
+		assertThat(entity4s.get(0).key, is("Key4"));
+		assertThat(entity4s.get(0).entity1s.size(), is(1));
+		assertThat(entity4s.get(0).entity1s.get(0).key, is("Key1"));
+		assertNull(entity4s.get(1));
+		
+		// Plain keys and referential properties resolved across the batch.
+		Entity7 entity7 = new Entity7();
+		entity7.key = "Key7";
+		entity7.i = 7;
+		entity7.entity1 = entity1;
+		datastore.put(null, Translation.toEntities(entity7));
+		entity7.key = "Key77";
+		datastore.put(null, Translation.toEntities(entity7));
+		List<Entity7> entity7s = session.get(Entity7.class, Arrays.asList("Key7", "Key77", "Key777"));
+		assertThat(entity7s.size(), is(3));
+		assertThat(entity7s.get(0).entity1.key, is("Key1"));
+		assertThat(entity7s.get(1).entity1.key, is("Key1"));
+		assertThat(entity7s.get(0).entity1 == entity7s.get(1).entity1, is(true));
+		assertNull(entity7s.get(2));
+		
+		AppEngineTransaction transaction = session.beginTransaction();
+		entity1s = session.get(Entity1.class, Arrays.asList(Keys.create("Entity1", "Key1")));
+		assertThat(entity1s.get(0).key, is("Key1"));
+		assertThat(transaction.logs().size(), is(1));
+		session.close();
 	}
 
+	@Test
+	public void testGetLazy() {
+		DatastoreService datastore = DatastoreServiceFactory.getDatastoreService();
+		Entity3 entity3 = new Entity3();
+		entity3.key = "Key3";
+		entity3.i = 3;
+		datastore.put(null, Translation.toEntities(entity3));
+		Entity11 entity11 = new Entity11();
+		entity11.key = "Key11";
+		entity11.i = 11;
+		Entity2 entity2 = new Entity2();
+		entity2.key = "Key2";
+		entity2.integers = Arrays.asList(1, 2);
+		entity11.entity2 = Lazy.of(entity2);
+		List<Entity1> entity1s = new ArrayList<Entity1>();
+		
+		for (int i = 2; i < 4; i++) {
+			Entity1 e = new Entity1();
+			e.key = "Key1" + i;
+			e.i = i;
+			entity1s.add(e);
+		}
+		
+		entity11.entity1s = Lazy.of(entity1s);
+		entity11.entity3 = Lazy.of(entity3);
+		datastore.put(null, Translation.toEntities(entity11));
+		entity11 = new Entity11();
+		entity11.key = "Key111";
+		entity11.i = 111;
+		entity11.entity3 = Lazy.of(entity3);
+		datastore.put(null, Translation.toEntities(entity11));
+		
+		// Only the root entities are got and the lazy properties are loaded on 
+		// the first access in batch.
+		AppEngineDatastoreSession session = new AppEngineDatastoreSession();
+		List<Entity11> entity11s = session.get(Entity11.class, Arrays.asList("Key11", "Key111"));
+		assertThat(entity11s.get(0).i, is(11));
+		assertThat(entity11s.get(0).entity2.isLoaded(), is(false));
+		assertThat(entity11s.get(0).entity1s.isLoaded(), is(false));
+		assertThat(entity11s.get(0).entity3.isLoaded(), is(false));
+		assertThat(entity11s.get(0).entity2.get().key, is("Key2"));
+		entity3.i = 33;
+		datastore.put(null, Translation.toEntities(entity3));
+		assertThat(entity11s.get(1).entity3.get().i, is(3));
+		assertThat(entity11s.get(0).entity3.get() == entity11s.get(1).entity3.get(), is(true));
+		assertThat(entity11s.get(0).entity1s.get().size(), is(2));
+		assertThat(entity11s.get(0).entity1s.get().get(1).key, is("Key13"));
+		assertNull(entity11s.get(1).entity2.get());
+		assertThat(entity11s.get(1).entity1s.get().isEmpty(), is(true));
+		
+		// The unloaded reference is translated without loading.
+		entity11 = session.get(Entity11.class, Arrays.asList("Key111")).get(0);
+		entity11.entity2.get();
+		entity11.entity1s.get();
+		assertThat(Translation.toEntities(entity11).get(0).getProperty("entity3"), 
+				is((Object) Keys.create("Entity3", "Key3")));
+		assertThat(entity11.entity3.isLoaded(), is(false));
+		
+		// The whole entity group got in a transaction.
+		AppEngineTransaction transaction = session.beginTransaction();
+		entity11 = session.get(Entity11.class, "Key11");
+		assertThat(entity11.entity1s.isLoaded(), is(true));
+		assertThat(entity11.entity3.isLoaded(), is(false));
+		entity11.i = 12;
+		session.update(entity11);
+		transaction.commit();
+		entity11 = session.get(Entity11.class, "Key11");
+		assertThat(entity11.i, is(12));
+		assertThat(entity11.entity1s.get().size(), is(2));
+		assertThat(entity11.entity3.get().i, is(33));
+		
+		// The entity got in bulk cannot be written with the unloaded children.
+		entity11 = session.get(Entity11.class, Arrays.asList("Key11")).get(0);
+		transaction = session.beginTransaction();
+		session.get(Entity11.class, "Key11");
+		entity11.i = 13;
+		
+		try {
+			session.update(entity11);
+			fail();
+		} catch (IllegalStateException e) {}
+		
+		try {
+			session.delete(entity11);
+			fail();
+		} catch (IllegalStateException e) {}
+		
+		assertThat(entity11.entity1s.isLoaded(), is(false));
+		entity11.entity2.get();
+		entity11.entity1s.get();
+		session.update(entity11);
+		transaction.commit();
+		entity11 = session.get(Entity11.class, "Key11");
+		assertThat(entity11.i, is(13));
+		assertThat(entity11.entity1s.get().size(), is(2));
+		session.close();
+	}
+	
 	@Test
 	public void testPut() {
 		Entity1 entity1 = new Entity1();
@@ -212,6 +444,183 @@ public class AppEngineDatastoreSessionTest {
 		session.close();
 	}
 
+	@Test
+	public void testPutAll() {
+		List<Entity1> entity1s = new ArrayList<Entity1>();
+		
+		for (int i = 1; i < 6; i++) {
+			Entity1 entity1 = new Entity1();
+			entity1.key = "Key" + i;
+			entity1.i = i;
+			entity1s.add(entity1);
+		}
+		
+		AppEngineDatastoreSession session = new AppEngineDatastoreSession();
+		session.datastore().datastoreType(DatastoreType.HIGH_REPLICATION);
+		session.datastore().batch(2);
+		
+		try {
+			session.putAll(entity1s);
+			fail();
+		} catch (IllegalStateException e) {}
+		
+		AppEngineTransaction transaction = session.beginTransaction();
+		
+		try {
+			session.putAll(null);
+			fail();
+		} catch (IllegalArgumentException e) {}
+		
+		try {
+			session.putAll(Arrays.asList(entity1s.get(0), entity1s.get(0)));
+			fail();
+		} catch (IllegalStateException e) {}
+		
+		transaction.rollback();
+		transaction = session.beginTransaction();
+		session.putAll(entity1s);
+		assertThat(transaction.logs().size(), is(5));
+		transaction.commit();
+		List<Entity1> results = session.get(Entity1.class, Arrays.asList("Key1", "Key3", "Key5"));
+		assertThat(results.get(0).i, is(1));
+		assertThat(results.get(1).i, is(3));
+		assertThat(results.get(2).i, is(5));
+		
+		transaction = session.beginTransaction();
+		
+		try {
+			session.putAll(entity1s.subList(4, 5));
+			fail();
+		} catch (EntityExistsException e) {}
+		
+		transaction.rollback();
+		
+		// Every batch in flight is waited for even if any of them fails.
+		session.datastore().batch(1);
+		ApiProxyLocal delegate = (ApiProxyLocal) ApiProxy.getDelegate();
+		final AtomicBoolean waited = new AtomicBoolean();
+		ApiProxy.setDelegate(new FaultDelegate(delegate, Integer.MAX_VALUE) {
+			
+			private int puts = 0;
+			
+			@Override
+			public Future<byte[]> makeAsyncCall(Environment environment,
+					String pkg, String method, byte[] request, ApiConfig config) {
+				if (!method.equals("Put")) {
+					return super.makeAsyncCall(environment, pkg, method, request, config);
+				}
+				
+				if (++puts == 1) {
+					CompletableFuture<byte[]> future = new CompletableFuture<byte[]>();
+					future.completeExceptionally(new RuntimeException("Put [" + puts + "] failed"));
+					return future;
+				}
+				
+				final Future<byte[]> future = super.makeAsyncCall(environment, pkg, method, request, config);
+				return new Future<byte[]>() {
+					
+					@Override
+					public boolean cancel(boolean mayInterruptIfRunning) {
+						return future.cancel(mayInterruptIfRunning);
+					}
+					
+					@Override
+					public boolean isCancelled() {
+						return future.isCancelled();
+					}
+					
+					@Override
+					public boolean isDone() {
+						return future.isDone();
+					}
+					
+					@Override
+					public byte[] get() throws InterruptedException, ExecutionException {
+						waited.set(true);
+						return future.get();
+					}
+					
+					@Override
+					public byte[] get(long timeout, TimeUnit unit) 
+							throws InterruptedException, ExecutionException, TimeoutException {
+						waited.set(true);
+						return future.get(timeout, unit);
+					}
+					
+				};
+			}
+			
+		});
+		
+		try {
+			session.datastore().putAll(null, Arrays.asList(
+					new Entity("Entity", "Key1"), new Entity("Entity", "Key2")), 2);
+			fail();
+		} catch (RuntimeException e) {
+		} finally {
+			ApiProxy.setDelegate(delegate);
+		}
+		
+		assertThat(waited.get(), is(true));
+		session.close();
+	}
+	
+	@Test
+	public void testUpdateAll() {
+		AppEngineDatastoreSession session = new AppEngineDatastoreSession();
+		session.datastore().datastoreType(DatastoreType.HIGH_REPLICATION);
+		session.datastore().batch(2);
+		List<Entity1> entity1s = new ArrayList<Entity1>();
+		
+		for (int i = 1; i < 4; i++) {
+			Entity1 entity1 = new Entity1();
+			entity1.key = "Key" + i;
+			entity1.i = i;
+			entity1s.add(entity1);
+		}
+		
+		AppEngineTransaction transaction = session.beginTransaction();
+		session.putAll(entity1s);
+		transaction.commit();
+		
+		transaction = session.beginTransaction();
+		
+		try {
+			session.updateAll(entity1s);
+			fail();
+		} catch (IllegalStateException e) {}
+		
+		entity1s = session.get(Entity1.class, Arrays.asList("Key1", "Key2", "Key3"));
+		
+		for (Entity1 entity1 : entity1s) {
+			entity1.i *= 10;
+		}
+		
+		session.updateAll(entity1s);
+		
+		try {
+			session.updateAll(entity1s.subList(0, 1));
+			fail();
+		} catch (IllegalStateException e) {}
+		
+		transaction.commit();
+		entity1s = session.get(Entity1.class, Arrays.asList("Key1", "Key2", "Key3"));
+		assertThat(entity1s.get(0).i, is(10));
+		assertThat(entity1s.get(1).i, is(20));
+		assertThat(entity1s.get(2).i, is(30));
+		
+		transaction = session.beginTransaction();
+		entity1s = session.get(Entity1.class, Arrays.asList("Key1", "Key2"));
+		session.deleteAll(entity1s);
+		assertThat(transaction.logs().size(), is(4));
+		transaction.commit();
+		entity1s = session.get(Entity1.class, Arrays.asList("Key1", "Key2", "Key3"));
+		assertNull(entity1s.get(0));
+		assertNull(entity1s.get(1));
+		assertThat(entity1s.get(2).i, is(30));
+		session.close();
+	}
+	
 	@Test
 	public void testUpdateObject() {
 		Entity3 entity3 = new Entity3();
@@ -368,6 +777,56 @@ public class AppEngineDatastoreSessionTest {
 		}
 	}
 
+	@Test
+	public void testDeleteClassOfEObject() {
+		Entity4 entity4 = new Entity4();
+		entity4.key = "Key4";
+		entity4.i = 4;
+		entity4.entity1s = new ArrayList<Entity1>();
+		
+		for (int i = 1; i < 4; i++) {
+			Entity1 entity1 = new Entity1();
+			entity1.key = "Key" + i;
+			entity1.i = i;
+			entity4.entity1s.add(entity1);
+		}
+		
+		DatastoreService datastore = DatastoreServiceFactory.getDatastoreService();
+		datastore.put(null, Translation.toEntities(entity4));
+		AppEngineDatastoreSession session = new AppEngineDatastoreSession();
+		
+		try {
+			session.delete(Entity4.class, "Key4");
+			fail();
+		} catch (IllegalStateException e) {}
+		
+		AppEngineTransaction transaction = session.beginTransaction();
+		
+		try {
+			session.delete(null, "Key4");
+			fail();
+		} catch (IllegalArgumentException e) {}
+		
+		try {
+			session.delete(Entity4.class, null);
+			fail();
+		} catch (IllegalArgumentException e) {}
+		
+		session.delete(Entity4.class, "Key4");
+		assertThat(transaction.logs().size(), is(1));
+		transaction.commit();
+		assertNull(session.get(Entity4.class, "Key4"));
+		assertThat(datastore.prepare(new Query(Translation.toKind(Entity1.class))).countEntities(
+				FetchOptions.Builder.withDefaults()), is(0));
+		
+		// Not found.
+		transaction = session.beginTransaction();
+		session.delete(Entity4.class, "Key44");
+		assertThat(transaction.logs().size(), is(0));
+		transaction.commit();
+		session.close();
+	}
+	
 	@Test
 	public void testDeleteObject() {
 		Entity3 entity3 = new Entity3();
@@ -510,6 +969,15 @@ public class AppEngineDatastoreSessionTest {
 		}
 	}
 
+	@Test
+	public void testGroupMetamodelOfE() {
+		try {
+			Metamodel<?> metamodel = null;
+			new AppEngineDatastoreSession().group(metamodel);
+			fail();
+		} catch (IllegalArgumentException e) {}
+	}
+	
 	@Test
 	public void testUpdateMetamodelOfE() {
 		try {
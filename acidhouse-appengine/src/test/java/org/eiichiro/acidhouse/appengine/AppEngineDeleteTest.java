@@ -82,5 +82,35 @@ public class AppEngineDeleteTest {
 			e.printStackTrace();
 		}
 	}
+	
+	@Test
+	public void testParallel() {
+		AppEngineDatastoreSession session = new AppEngineDatastoreSession();
+		session.datastore().datastoreType(DatastoreType.HIGH_REPLICATION);
+		session.datastore().batch(2);
+		Transaction transaction = session.beginTransaction();
+		
+		for (int i = 0; i < 5; i++) {
+			Entity1 entity1 = new Entity1();
+			entity1.key = "Key" + i;
+			entity1.i = i;
+			session.put(entity1);
+		}
+		
+		transaction.commit();
+		_Entity1 _Entity1 = Metamodels.metamodel(Entity1.class);
+		transaction = session.beginTransaction();
+		int i = session.delete(_Entity1).filter(_Entity1.i.lessThan(3)).parallel(true).execute();
+		transaction.commit();
+		assertThat(i, is(3));
+		assertThat(session.get(_Entity1).execute().size(), is(2));
+		
+		transaction = session.beginTransaction();
+		i = session.delete(_Entity1).execute();
+		transaction.commit();
+		assertThat(i, is(2));
+		assertThat(session.get(_Entity1).execute().size(), is(0));
+		session.close();
+	}
 
 }
@@ -4,13 +4,21 @@ import static org.junit.Assert.*;
 import static org.hamcrest.CoreMatchers.*;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
 import java.util.HashSet;
 import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
 
 import org.eiichiro.acidhouse.Filter;
 import org.eiichiro.acidhouse.Order;
+import org.eiichiro.acidhouse.Page;
+import org.eiichiro.acidhouse.ResultIterator;
 import org.eiichiro.acidhouse.Transaction;
 import org.eiichiro.acidhouse.metamodel.Metamodels;
+import org.eiichiro.acidhouse.metamodel.Property;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
@@ -38,6 +46,35 @@ public class AppEngineGetListTest {
 	@Test
 	public void testExecute() {}
 
+	@Test
+	public void testExecuteAsync() throws Exception {
+		AppEngineDatastoreSession session = new AppEngineDatastoreSession();
+		
+		for (int i = 0; i < 5; i++) {
+			Entity3 entity3 = new Entity3();
+			entity3.key = "Key" + i;
+			entity3.i = i;
+			Transaction transaction = session.beginTransaction();
+			session.put(entity3);
+			transaction.commit();
+		}
+		
+		_Entity3 _Entity3 = Metamodels.metamodel(Entity3.class);
+		CompletableFuture<Page<Entity3>> lessThan = session.get(_Entity3).filter(_Entity3.i.lessThan(2)).executeAsync();
+		CompletableFuture<Page<Entity3>> greaterThan = session.get(_Entity3).filter(_Entity3.i.greaterThan(2)).executeAsync();
+		assertThat(lessThan.get().size(), is(2));
+		assertThat(greaterThan.get().size(), is(2));
+		assertThat(greaterThan.thenApply(new Function<Page<Entity3>, Integer>() {
+			
+			@Override
+			public Integer apply(Page<Entity3> entities) {
+				return entities.get(0).i + entities.get(1).i;
+			}
+			
+		}).get(), is(7));
+		session.close();
+	}
+	
 	@Test
 	public void testSort() {
 		AppEngineDatastoreSession session = new AppEngineDatastoreSession();
@@ -86,6 +123,46 @@ public class AppEngineGetListTest {
 		System.out.println("AppEngineGetList.sort #4 [" + (System.currentTimeMillis() - start) + "]");
 		assertThat(entity3s.get(0).key, is("Key0"));
 		assertThat(entity3s.get(4).key, is("Key4"));
+		start = System.currentTimeMillis();
+		entity3s = session.get(_Entity3)
+				.sort(_Entity3.entity1.i.asc)
+				.offset(1)
+				.limit(2)
+				.execute();
+		System.out.println("AppEngineGetList.sort #5 [" + (System.currentTimeMillis() - start) + "]");
+		assertThat(entity3s.size(), is(2));
+		assertThat(entity3s.get(0).key, is("Key3"));
+		assertThat(entity3s.get(1).key, is("Key2"));
+		entity3s = session.get(_Entity3)
+				.sort(_Entity3.entity1.i.asc)
+				.offset(4)
+				.limit(2)
+				.execute();
+		assertThat(entity3s.size(), is(1));
+		assertThat(entity3s.get(0).key, is("Key0"));
+		
+		for (int i = 5; i < 10; i++) {
+			Entity3 entity3 = new Entity3();
+			entity3.key = "Key" + i;
+			entity3.i = i;
+			Entity1 entity1 = new Entity1();
+			entity1.key = "Key" + (i + 10);
+			entity1.i = 10;
+			entity3.entity1 = entity1;
+			Transaction transaction = session.beginTransaction();
+			session.put(entity3);
+			transaction.commit();
+		}
+		
+		// The entities which have the same sort key are kept in fetched order.
+		entity3s = session.get(_Entity3)
+				.sort(_Entity3.entity1.i.desc)
+				.limit(3)
+				.execute();
+		assertThat(entity3s.size(), is(3));
+		assertThat(entity3s.get(0).key, is("Key0"));
+		assertThat(entity3s.get(1).key, is("Key5"));
+		assertThat(entity3s.get(2).key, is("Key6"));
 		
 		try {
 			Order<?, ?> order = null;
@@ -131,6 +208,189 @@ public class AppEngineGetListTest {
 		assertThat(entity10s.get(1).key, is("Key2"));
 	}
 
+	@Test
+	public void testSortNull() {
+		AppEngineDatastoreSession session = new AppEngineDatastoreSession();
+		Integer[] integers = {2, null, 1, null};
+		
+		for (int i = 0; i < integers.length; i++) {
+			Entity10 entity10 = new Entity10();
+			entity10.key = "Key" + i;
+			entity10.embedded1 = new Embedded1();
+			entity10.embedded1.integer = integers[i];
+			Transaction transaction = session.beginTransaction();
+			session.put(entity10);
+			transaction.commit();
+		}
+		
+		// Sorted in memory. Null is ordered before any other value.
+		_Entity10 _Entity10 = Metamodels.metamodel(Entity10.class);
+		List<Entity10> entity10s = session.get(_Entity10)
+				.filter(_Entity10.i.greaterThanOrEqualTo(0))
+				.sort(_Entity10.embedded1.integer.asc)
+				.execute();
+		assertThat(entity10s.size(), is(4));
+		assertThat(entity10s.get(0).key, is("Key1"));
+		assertThat(entity10s.get(1).key, is("Key3"));
+		assertThat(entity10s.get(2).key, is("Key2"));
+		assertThat(entity10s.get(3).key, is("Key0"));
+		entity10s = session.get(_Entity10)
+				.filter(_Entity10.i.greaterThanOrEqualTo(0))
+				.sort(_Entity10.embedded1.integer.desc)
+				.limit(3)
+				.execute();
+		assertThat(entity10s.size(), is(3));
+		assertThat(entity10s.get(0).key, is("Key0"));
+		assertThat(entity10s.get(1).key, is("Key2"));
+		assertThat(entity10s.get(2).key, is("Key1"));
+	}
+	
+	@Test
+	public void testPrimitiveProperty() {
+		_Entity3 _Entity3 = Metamodels.metamodel(Entity3.class);
+		AppEngineDatastoreSession session = new AppEngineDatastoreSession();
+		
+		for (int i = 0; i < 5; i++) {
+			Entity3 entity3 = new Entity3();
+			entity3.key = "Key" + i;
+			entity3.i = i;
+			Entity1 entity1 = new Entity1();
+			entity1.key = "Key" + (i + 10);
+			entity1.i = (i % 2 == 0) ? i + 10 : 20 - i;
+			entity3.entity1 = entity1;
+			Transaction transaction = session.beginTransaction();
+			session.put(entity3);
+			transaction.commit();
+		}
+		
+		// Unboxed access with reflection (Entity3) and codec (Entity1).
+		Entity3 entity3 = session.get(Entity3.class, "Key1");
+		assertThat(_Entity3.i.getAsInt(entity3), is(1));
+		assertThat(_Entity3.entity1.i.getAsInt(entity3), is(19));
+		assertTrue(_Entity3.entity1.i.greaterThan(18).matches(entity3));
+		assertFalse(_Entity3.i.notEqualTo(1).matches(entity3));
+		Entity3 entity = session.get(Entity3.class, "Key2");
+		assertThat(_Entity3.i.asc.compare(entity3, entity), is(-1));
+		assertThat(_Entity3.i.asc.compare(entity, entity3), is(1));
+		
+		// Restricted sort order and filter with the primitive-specialized 
+		// properties.
+		List<Entity3> entity3s = session.get(_Entity3)
+				.filter(_Entity3.entity1.i.lessThan(19))
+				.sort(_Entity3.entity1.i.desc, _Entity3.i.asc).execute();
+		assertThat(entity3s.size(), is(4));
+		assertThat(entity3s.get(0).entity1.i, is(17));
+		assertThat(entity3s.get(1).entity1.i, is(14));
+		assertThat(entity3s.get(2).entity1.i, is(12));
+		assertThat(entity3s.get(3).entity1.i, is(10));
+		session.close();
+	}
+	
+	@Test
+	public void testSelect() {
+		_Entity3 _Entity3 = Metamodels.metamodel(Entity3.class);
+		AppEngineDatastoreSession session = new AppEngineDatastoreSession();
+		
+		for (int i = 0; i < 5; i++) {
+			Entity3 entity3 = new Entity3();
+			entity3.key = "Key" + i;
+			entity3.i = i;
+			Entity1 entity1 = new Entity1();
+			entity1.key = "Key" + (i + 10);
+			entity1.i = i + 10;
+			entity3.entity1 = entity1;
+			Transaction transaction = session.beginTransaction();
+			session.put(entity3);
+			transaction.commit();
+		}
+		
+		// Projection query.
+		List<Entity3> entity3s = session.get(_Entity3).select(_Entity3.i)
+				.filter(_Entity3.i.greaterThanOrEqualTo(1))
+				.sort(_Entity3.i.desc).limit(3).execute();
+		assertThat(entity3s.size(), is(3));
+		assertThat(entity3s.get(0).key, is("Key4"));
+		assertThat(entity3s.get(0).i, is(4));
+		assertNull(entity3s.get(0).entity1);
+		assertThat(entity3s.get(2).key, is("Key2"));
+		assertThat(entity3s.get(2).i, is(2));
+		
+		// Keys-only query.
+		entity3s = session.get(_Entity3).select(_Entity3.key)
+				.filter(_Entity3.i.lessThan(2)).execute();
+		assertThat(entity3s.size(), is(2));
+		assertThat(entity3s.get(0).key, is("Key0"));
+		assertThat(entity3s.get(1).key, is("Key1"));
+		assertThat(entity3s.get(1).i, is(0));
+		assertNull(entity3s.get(1).entity1);
+		
+		// Partial hydration: The property used in the equality filter cannot 
+		// be projected.
+		ResultIterator<Entity3> iterator = session.get(_Entity3).select(_Entity3.i)
+				.filter(_Entity3.i.equalTo(3)).iterate();
+		Entity3 entity3 = iterator.next();
+		assertThat(entity3.key, is("Key3"));
+		assertThat(entity3.i, is(3));
+		assertNull(entity3.entity1);
+		assertFalse(iterator.hasNext());
+		
+		// Full hydration: The property of the child entity is not persisted 
+		// in the root entity.
+		entity3s = session.get(_Entity3).select(_Entity3.i)
+				.filter(_Entity3.entity1.i.greaterThan(12)).execute();
+		assertThat(entity3s.size(), is(2));
+		assertThat(entity3s.get(0).i, is(3));
+		assertThat(entity3s.get(0).entity1.i, is(13));
+		
+		// Full hydration under a transaction.
+		Transaction transaction = session.beginTransaction();
+		entity3s = session.get(_Entity3).select(_Entity3.i)
+				.filter(_Entity3.key.equalTo("Key1")).execute();
+		assertThat(entity3s.get(0).entity1.i, is(11));
+		transaction.rollback();
+		
+		try {
+			session.get(_Entity3).select((Property<?, ?>[]) null);
+			fail();
+		} catch (IllegalArgumentException e) {}
+		
+		session.close();
+	}
+	
+	@Test
+	public void testSelectProjection() {
+		_Entity12 _Entity12 = Metamodels.metamodel(Entity12.class);
+		AppEngineDatastoreSession session = new AppEngineDatastoreSession();
+		
+		for (int i = 0; i < 3; i++) {
+			Entity12 entity12 = new Entity12();
+			entity12.key = "Key" + i;
+			entity12.i = i;
+			entity12.date = (i == 0) ? null : new Date(i * 1000L);
+			Transaction transaction = session.beginTransaction();
+			session.put(entity12);
+			transaction.commit();
+		}
+		
+		// The projected values are converted to the field types.
+		List<Entity12> entity12s = session.get(_Entity12).select(_Entity12.date, _Entity12.i)
+				.filter(_Entity12.date.greaterThan(new Date(0))).sort(_Entity12.date.asc).execute();
+		assertThat(entity12s.size(), is(2));
+		assertThat(entity12s.get(0).key, is("Key1"));
+		assertThat(entity12s.get(0).date, is(new Date(1000L)));
+		assertThat(entity12s.get(0).i, is(1));
+		assertThat(entity12s.get(1).date, is(new Date(2000L)));
+		
+		// The entity with the null property value is not dropped.
+		entity12s = session.get(_Entity12).select(_Entity12.date).execute();
+		assertThat(entity12s.size(), is(3));
+		assertThat(entity12s.get(0).key, is("Key0"));
+		assertNull(entity12s.get(0).date);
+		assertThat(entity12s.get(2).date, is(new Date(2000L)));
+		
+		session.close();
+	}
+	
 	@Test
 	public void testFilter() {
 		AppEngineDatastoreSession session = new AppEngineDatastoreSession();
@@ -392,6 +652,176 @@ public class AppEngineGetListTest {
 		assertThat(entity10s.get(1).key, is("Key3"));
 	}
 
+	@Test
+	public void testIterate() {
+		AppEngineDatastoreSession session = new AppEngineDatastoreSession();
+		
+		for (int i = 0; i < 10; i++) {
+			Entity3 entity3 = new Entity3();
+			entity3.key = "Key" + i;
+			entity3.i = i;
+			Entity1 entity1 = new Entity1();
+			entity1.key = "Key" + (i + 10);
+			entity1.i = i % 2;
+			entity3.entity1 = entity1;
+			Transaction transaction = session.beginTransaction();
+			session.put(entity3);
+			transaction.commit();
+		}
+		
+		_Entity3 _Entity3 = Metamodels.metamodel(Entity3.class);
+		ResultIterator<Entity3> iterator = session.get(_Entity3).chunk(3).iterate();
+		int i = 0;
+		
+		while (iterator.hasNext()) {
+			assertThat(iterator.next().key, is("Key" + i++));
+		}
+		
+		assertThat(i, is(10));
+		iterator.close();
+		
+		try {
+			iterator.next();
+			fail();
+		} catch (NoSuchElementException e) {}
+		
+		// In-memory filter with offset and limit.
+		iterator = session.get(_Entity3)
+				.filter(_Entity3.entity1.i.equalTo(1))
+				.offset(1)
+				.limit(3)
+				.chunk(2)
+				.iterate();
+		List<String> keys = new ArrayList<String>();
+		
+		while (iterator.hasNext()) {
+			keys.add(iterator.next().key);
+		}
+		
+		assertThat(keys.size(), is(3));
+		assertThat(keys.get(0), is("Key3"));
+		assertThat(keys.get(1), is("Key5"));
+		assertThat(keys.get(2), is("Key7"));
+		List<Entity3> entity3s = session.get(_Entity3)
+				.filter(_Entity3.entity1.i.equalTo(1))
+				.offset(1)
+				.limit(3)
+				.execute();
+		assertThat(entity3s.size(), is(3));
+		assertThat(entity3s.get(0).key, is("Key3"));
+		
+		// In-memory sort is buffered.
+		iterator = session.get(_Entity3).sort(_Entity3.entity1.i.desc, _Entity3.i.asc).limit(2).iterate();
+		assertThat(iterator.next().key, is("Key1"));
+		assertThat(iterator.next().key, is("Key3"));
+		assertThat(iterator.hasNext(), is(false));
+		iterator.close();
+		
+		iterator = session.get(_Entity3).chunk(4).iterate();
+		assertThat(iterator.next().key, is("Key0"));
+		iterator.close();
+		assertThat(iterator.hasNext(), is(false));
+		
+		try {
+			session.get(_Entity3).chunk(0);
+			fail();
+		} catch (IllegalArgumentException e) {}
+	}
+	
+	@Test
+	public void testStartCursor() {
+		AppEngineDatastoreSession session = new AppEngineDatastoreSession();
+		
+		for (int i = 0; i < 10; i++) {
+			Entity3 entity3 = new Entity3();
+			entity3.key = "Key" + i;
+			entity3.i = i;
+			Entity1 entity1 = new Entity1();
+			entity1.key = "Key" + (i + 10);
+			entity1.i = i % 2;
+			entity3.entity1 = entity1;
+			Transaction transaction = session.beginTransaction();
+			session.put(entity3);
+			transaction.commit();
+		}
+		
+		_Entity3 _Entity3 = Metamodels.metamodel(Entity3.class);
+		Page<Entity3> page = session.get(_Entity3).limit(3).execute();
+		assertThat(keys(page), is(Arrays.asList("Key0", "Key1", "Key2")));
+		page = session.get(_Entity3).limit(3).startCursor(page.cursor()).execute();
+		assertThat(keys(page), is(Arrays.asList("Key3", "Key4", "Key5")));
+		page = session.get(_Entity3).limit(3).offset(1).startCursor(page.cursor()).execute();
+		assertThat(keys(page), is(Arrays.asList("Key7", "Key8", "Key9")));
+		page = session.get(_Entity3).limit(3).startCursor(page.cursor()).execute();
+		assertThat(page.size(), is(0));
+		
+		// In-memory filter.
+		page = session.get(_Entity3).filter(_Entity3.entity1.i.equalTo(1)).limit(2).chunk(3).execute();
+		assertThat(keys(page), is(Arrays.asList("Key1", "Key3")));
+		page = session.get(_Entity3).filter(_Entity3.entity1.i.equalTo(1)).limit(2).chunk(3).startCursor(page.cursor()).execute();
+		assertThat(keys(page), is(Arrays.asList("Key5", "Key7")));
+		page = session.get(_Entity3).filter(_Entity3.entity1.i.equalTo(1)).limit(2).chunk(3).startCursor(page.cursor()).execute();
+		assertThat(keys(page), is(Arrays.asList("Key9")));
+		page = session.get(_Entity3).filter(_Entity3.entity1.i.equalTo(1)).limit(2).chunk(3).startCursor(page.cursor()).execute();
+		assertThat(page.size(), is(0));
+		
+		// 'IN' filter.
+		page = session.get(_Entity3).filter(_Entity3.i.in(2, 4, 6, 8)).limit(3).chunk(2).execute();
+		assertThat(keys(page), is(Arrays.asList("Key2", "Key4", "Key6")));
+		page = session.get(_Entity3).filter(_Entity3.i.in(2, 4, 6, 8)).limit(3).chunk(2).startCursor(page.cursor()).execute();
+		assertThat(keys(page), is(Arrays.asList("Key8")));
+		
+		// In-memory sort.
+		page = session.get(_Entity3).sort(_Entity3.entity1.i.desc, _Entity3.i.asc).limit(4).execute();
+		assertThat(keys(page), is(Arrays.asList("Key1", "Key3", "Key5", "Key7")));
+		page = session.get(_Entity3).sort(_Entity3.entity1.i.desc, _Entity3.i.asc).limit(4).startCursor(page.cursor()).execute();
+		assertThat(keys(page), is(Arrays.asList("Key9", "Key0", "Key2", "Key4")));
+		page = session.get(_Entity3).sort(_Entity3.entity1.i.desc, _Entity3.i.asc).limit(4).startCursor(page.cursor()).execute();
+		assertThat(keys(page), is(Arrays.asList("Key6", "Key8")));
+		String cursor = page.cursor();
+		page = session.get(_Entity3).sort(_Entity3.entity1.i.desc, _Entity3.i.asc).limit(4).startCursor(cursor).execute();
+		assertThat(page.size(), is(0));
+		assertThat(page.cursor(), is(cursor));
+		
+		// In-memory sort with the same sort keys (ordered by the entity key).
+		page = session.get(_Entity3).sort(_Entity3.entity1.i.desc).limit(3).execute();
+		assertThat(keys(page), is(Arrays.asList("Key1", "Key3", "Key5")));
+		page = session.get(_Entity3).sort(_Entity3.entity1.i.desc).limit(3).startCursor(page.cursor()).execute();
+		assertThat(keys(page), is(Arrays.asList("Key7", "Key9", "Key0")));
+		page = session.get(_Entity3).sort(_Entity3.entity1.i.desc).limit(3).offset(1).startCursor(page.cursor()).execute();
+		assertThat(keys(page), is(Arrays.asList("Key4", "Key6", "Key8")));
+		
+		try {
+			session.get(_Entity3).sort(_Entity3.entity1.i.desc, _Entity3.i.asc).startCursor(cursor).sort(_Entity3.entity1.i.desc).execute();
+			fail();
+		} catch (IllegalArgumentException e) {}
+		
+		try {
+			session.get(_Entity3).startCursor("~cursor");
+			fail();
+		} catch (IllegalArgumentException e) {}
+		
+		try {
+			session.get(_Entity3).startCursor(null);
+			fail();
+		} catch (IllegalArgumentException e) {}
+		
+		try {
+			session.get(_Entity3).startCursor("cursor");
+			fail();
+		} catch (IllegalArgumentException e) {}
+	}
+	
+	private List<String> keys(List<Entity3> entity3s) {
+		List<String> keys = new ArrayList<String>();
+		
+		for (Entity3 entity3 : entity3s) {
+			keys.add(entity3.key);
+		}
+		
+		return keys;
+	}
+	
 	@Test
 	public void testLimit() {
 		AppEngineDatastoreSession session = new AppEngineDatastoreSession();
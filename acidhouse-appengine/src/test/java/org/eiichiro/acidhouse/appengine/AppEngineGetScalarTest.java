@@ -3,6 +3,22 @@ package org.eiichiro.acidhouse.appengine;
 import static org.junit.Assert.*;
 import static org.hamcrest.CoreMatchers.*;
 
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import org.eiichiro.acidhouse.Accumulator;
+import org.eiichiro.acidhouse.Aggregation;
 import org.eiichiro.acidhouse.Aggregations;
 import org.eiichiro.acidhouse.Filter;
 import org.eiichiro.acidhouse.Order;
@@ -14,6 +30,8 @@ import org.junit.Test;
 
 import com.google.appengine.tools.development.testing.LocalDatastoreServiceTestConfig;
 import com.google.appengine.tools.development.testing.LocalServiceTestHelper;
+import com.google.apphosting.api.ApiProxy;
+import com.google.apphosting.api.ApiProxy.Environment;
 
 public class AppEngineGetScalarTest {
 
@@ -80,6 +98,251 @@ public class AppEngineGetScalarTest {
 		assertThat(sum, is(60));
 	}
 
+	@Test
+	public void testExecutePushdown() {
+		AppEngineDatastoreSession session = new AppEngineDatastoreSession();
+		
+		for (int i = 0; i < 5; i++) {
+			Entity3 entity3 = new Entity3();
+			entity3.key = "Key" + i;
+			entity3.i = i;
+			Entity1 entity1 = new Entity1();
+			entity1.key = "Key" + (i + 10);
+			entity1.i = i + 10;
+			entity3.entity1 = entity1;
+			Transaction transaction = session.beginTransaction();
+			session.put(entity3);
+			transaction.commit();
+		}
+		
+		_Entity3 _Entity3 = Metamodels.metamodel(Entity3.class);
+		
+		// Count with a keys-only query.
+		long count = session.get(Aggregations.count(_Entity3.i)).execute();
+		assertThat(count, is(5L));
+		count = session.get(Aggregations.count(_Entity3.i))
+				.filter(_Entity3.i.greaterThanOrEqualTo(2)).execute();
+		assertThat(count, is(3L));
+		
+		// Count while streaming (restricted filter).
+		count = session.get(Aggregations.count(_Entity3.i))
+				.filter(_Entity3.entity1.i.lessThan(13)).execute();
+		assertThat(count, is(3L));
+		
+		// Min and max with a sorted query.
+		int max = session.get(Aggregations.max(_Entity3.i))
+				.filter(_Entity3.i.lessThan(3)).execute();
+		assertThat(max, is(2));
+		int min = session.get(Aggregations.min(_Entity3.i))
+				.filter(_Entity3.i.greaterThan(0)).execute();
+		assertThat(min, is(1));
+		assertNull(session.get(Aggregations.max(_Entity3.i))
+				.filter(_Entity3.i.greaterThan(10)).execute());
+		
+		// Inequality filter on the other property (restricted sort order).
+		min = session.get(Aggregations.min(_Entity3.i))
+				.filter(_Entity3.key.greaterThan("Key2")).execute();
+		assertThat(min, is(3));
+		
+		// Under a transaction, every entity is got.
+		Transaction transaction = session.beginTransaction();
+		count = session.get(Aggregations.count(_Entity3.i))
+				.filter(_Entity3.key.equalTo("Key1")).execute();
+		assertThat(count, is(1L));
+		transaction.rollback();
+		session.close();
+	}
+	
+	@Test
+	public void testExecuteAsync() throws Exception {
+		AppEngineDatastoreSession session = new AppEngineDatastoreSession();
+		
+		for (int i = 0; i < 5; i++) {
+			Entity3 entity3 = new Entity3();
+			entity3.key = "Key" + i;
+			entity3.i = i;
+			Transaction transaction = session.beginTransaction();
+			session.put(entity3);
+			transaction.commit();
+		}
+		
+		_Entity3 _Entity3 = Metamodels.metamodel(Entity3.class);
+		CompletableFuture<Integer> max = session.get(Aggregations.max(_Entity3.i)).executeAsync();
+		CompletableFuture<Integer> sum = session.get(Aggregations.sum(_Entity3.i)).executeAsync();
+		assertThat(max.get(), is(4));
+		assertThat(sum.get(), is(10));
+		session.close();
+	}
+	
+	@Test
+	public void testParallel() {
+		AppEngineDatastoreSession session = new AppEngineDatastoreSession();
+		
+		for (int i = 0; i < 5; i++) {
+			Entity3 entity3 = new Entity3();
+			entity3.key = "Key" + i;
+			entity3.i = i;
+			Entity1 entity1 = new Entity1();
+			entity1.key = "Key" + (i + 10);
+			entity1.i = i + 10;
+			entity3.entity1 = entity1;
+			Transaction transaction = session.beginTransaction();
+			session.put(entity3);
+			transaction.commit();
+		}
+		
+		_Entity3 _Entity3 = Metamodels.metamodel(Entity3.class);
+		int sum = session.get(Aggregations.sum(_Entity3.entity1.i))
+				.parallel(true).chunk(2).execute();
+		assertThat(sum, is(60));
+		int max = session.get(Aggregations.max(_Entity3.entity1.i))
+				.filter(_Entity3.entity1.i.lessThan(13)).parallel(true).chunk(2).execute();
+		assertThat(max, is(12));
+		int min = session.get(Aggregations.min(_Entity3.i))
+				.filter(_Entity3.entity1.i.greaterThan(10)).parallel(true).chunk(2).execute();
+		assertThat(min, is(1));
+		long count = session.get(Aggregations.count(_Entity3.i))
+				.sort(_Entity3.i.desc).parallel(true).chunk(2).execute();
+		assertThat(count, is(5L));
+		assertNull(session.get(Aggregations.max(_Entity3.i))
+				.filter(_Entity3.entity1.i.greaterThan(20)).parallel(true).execute());
+		
+		// Aggregation of the value list.
+		assertThat(Aggregations.sum(_Entity3.i).aggregate(Arrays.asList(1, null, 2)), is(3));
+		assertThat(Aggregations.max(_Entity3.i).aggregate(Arrays.asList(1, null, 2)), is(2));
+		
+		// Combination with the empty partial result.
+		Accumulator<Integer> accumulator = Aggregations.max(_Entity3.i).accumulator();
+		accumulator.accumulate(1);
+		accumulator.combine(Aggregations.max(_Entity3.i).accumulator());
+		assertThat(accumulator.finish(), is(1));
+		accumulator = Aggregations.min(_Entity3.i).accumulator();
+		accumulator.combine(Aggregations.min(_Entity3.i).accumulator());
+		assertNull(accumulator.finish());
+		
+		// Aggregation which implements only aggregate(List).
+		Aggregation<Integer> median = new Aggregation<Integer>(_Entity3.entity1.i) {
+			
+			@Override
+			public Integer aggregate(List<Integer> list) {
+				List<Integer> values = new ArrayList<Integer>(list);
+				Collections.sort(values);
+				return values.get(values.size() / 2);
+			}
+			
+		};
+		assertThat(session.get(median).parallel(true).chunk(2).execute(), is(12));
+		assertThat(session.get(median).execute(), is(12));
+		
+		try {
+			new Aggregation<Integer>(_Entity3.i) {}.aggregate(Arrays.asList(1));
+			fail();
+		} catch (UnsupportedOperationException e) {}
+		
+		try {
+			session.get(Aggregations.sum(_Entity3.i)).chunk(0);
+			fail();
+		} catch (IllegalArgumentException e) {}
+		
+		session.close();
+	}
+	
+	@Test
+	public void testExecutor() throws Exception {
+		AppEngineDatastoreSession session = new AppEngineDatastoreSession();
+		
+		for (int i = 0; i < 5; i++) {
+			Entity3 entity3 = new Entity3();
+			entity3.key = "Key" + i;
+			entity3.i = i;
+			Transaction transaction = session.beginTransaction();
+			session.put(entity3);
+			transaction.commit();
+		}
+		
+		// The default executor is bounded by the concurrency and runs the 
+		// chunks submitted from its own (busy) thread on the submitting thread.
+		session.datastore().concurrency(1);
+		ThreadPoolExecutor executor = (ThreadPoolExecutor) session.datastore().executor();
+		assertThat(executor.getMaximumPoolSize(), is(1));
+		_Entity3 _Entity3 = Metamodels.metamodel(Entity3.class);
+		CompletableFuture<Integer> future = session.get(Aggregations.sum(_Entity3.i))
+				.parallel(true).chunk(2).executeAsync();
+		assertThat(future.get(10, TimeUnit.SECONDS), is(10));
+		
+		// The chunks are accumulated with the specified executor.
+		final AtomicInteger executed = new AtomicInteger();
+		session.datastore().executor(new Executor() {
+			
+			@Override
+			public void execute(Runnable command) {
+				executed.incrementAndGet();
+				command.run();
+			}
+			
+		});
+		int sum = session.get(Aggregations.sum(_Entity3.i)).parallel(true).chunk(2).execute();
+		assertThat(sum, is(10));
+		assertThat(executed.get(), is(3));
+		
+		// The environment of the calling thread is installed on the executing 
+		// thread while the operation runs, and the one of the executing thread 
+		// is restored after it.
+		Environment environment = ApiProxy.getCurrentEnvironment();
+		final Environment other = (Environment) Proxy.newProxyInstance(
+				Environment.class.getClassLoader(), new Class<?>[] {Environment.class}, 
+				new InvocationHandler() {
+					
+					@Override
+					public Object invoke(Object proxy, Method method, Object[] args) {
+						return null;
+					}
+					
+				});
+		final List<Environment> restored = new ArrayList<Environment>();
+		session.datastore().executor(new Executor() {
+			
+			@Override
+			public void execute(final Runnable command) {
+				Thread thread = new Thread(new Runnable() {
+					
+					@Override
+					public void run() {
+						ApiProxy.setEnvironmentForCurrentThread(other);
+						command.run();
+						restored.add(ApiProxy.getCurrentEnvironment());
+					}
+					
+				});
+				thread.start();
+				
+				try {
+					thread.join();
+				} catch (InterruptedException e) {
+					throw new IllegalStateException(e);
+				}
+			}
+			
+		});
+		CompletableFuture<Environment> current = session.datastore().async(new Supplier<Environment>() {
+			
+			@Override
+			public Environment get() {
+				return ApiProxy.getCurrentEnvironment();
+			}
+			
+		});
+		assertThat(current.get(10, TimeUnit.SECONDS), is(sameInstance(environment)));
+		assertThat(restored.get(0), is(sameInstance(other)));
+		
+		try {
+			session.datastore().executor(null);
+			fail();
+		} catch (IllegalArgumentException e) {}
+		
+		session.close();
+	}
+	
 	@Test
 	public void testSort() {
 		try {
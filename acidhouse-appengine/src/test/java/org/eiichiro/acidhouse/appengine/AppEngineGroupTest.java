@@ -0,0 +1,124 @@
+package org.eiichiro.acidhouse.appengine;
+
+import static org.junit.Assert.*;
+import static org.hamcrest.CoreMatchers.*;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import org.eiichiro.acidhouse.Aggregation;
+import org.eiichiro.acidhouse.Aggregations;
+import org.eiichiro.acidhouse.Filter;
+import org.eiichiro.acidhouse.Transaction;
+import org.eiichiro.acidhouse.metamodel.ComparableProperty;
+import org.eiichiro.acidhouse.metamodel.Metamodels;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.appengine.tools.development.testing.LocalDatastoreServiceTestConfig;
+import com.google.appengine.tools.development.testing.LocalServiceTestHelper;
+
+public class AppEngineGroupTest {
+	
+	private LocalServiceTestHelper helper = new LocalServiceTestHelper(new LocalDatastoreServiceTestConfig());
+	
+	@Before
+	public void setUp() throws Exception {
+		helper.setUp();
+	}
+	
+	@After
+	public void tearDown() throws Exception {
+		helper.tearDown();
+	}
+	
+	@Test
+	public void testExecute() throws Exception {
+		AppEngineDatastoreSession session = new AppEngineDatastoreSession();
+		
+		for (int i = 0; i < 6; i++) {
+			Entity3 entity3 = new Entity3();
+			entity3.key = "Key" + i;
+			entity3.i = i;
+			Entity1 entity1 = new Entity1();
+			entity1.key = "Key" + (i + 10);
+			entity1.i = i % 3;
+			entity3.entity1 = entity1;
+			Transaction transaction = session.beginTransaction();
+			session.put(entity3);
+			transaction.commit();
+		}
+		
+		_Entity3 _Entity3 = Metamodels.metamodel(Entity3.class);
+		Map<List<Object>, List<Object>> groups = session.group(_Entity3)
+				.by(_Entity3.entity1.i)
+				.aggregate(Aggregations.count(_Entity3.i), Aggregations.sum(_Entity3.i), 
+						Aggregations.max(_Entity3.i))
+				.execute();
+		assertThat(groups.size(), is(3));
+		assertThat(groups.get(Arrays.<Object>asList(0)), is(Arrays.<Object>asList(2L, 3, 3)));
+		assertThat(groups.get(Arrays.<Object>asList(1)), is(Arrays.<Object>asList(2L, 5, 4)));
+		assertThat(groups.get(Arrays.<Object>asList(2)), is(Arrays.<Object>asList(2L, 7, 5)));
+		
+		// Grouping by multiple properties with the filter.
+		groups = session.group(_Entity3)
+				.by(_Entity3.entity1.i, _Entity3.key)
+				.aggregate(Aggregations.count(_Entity3.i))
+				.filter(_Entity3.i.greaterThanOrEqualTo(4))
+				.execute();
+		assertThat(groups.size(), is(2));
+		assertThat(groups.get(Arrays.<Object>asList(1, "Key4")), is(Arrays.<Object>asList(1L)));
+		assertThat(groups.get(Arrays.<Object>asList(2, "Key5")), is(Arrays.<Object>asList(1L)));
+		
+		// Restricted filter is applied in memory.
+		groups = session.group(_Entity3)
+				.by(_Entity3.entity1.i)
+				.aggregate(Aggregations.sum(_Entity3.i))
+				.filter(_Entity3.entity1.i.lessThan(1))
+				.executeAsync().get();
+		assertThat(groups.size(), is(1));
+		assertThat(groups.get(Arrays.<Object>asList(0)), is(Arrays.<Object>asList(3)));
+		
+		try {
+			session.group(_Entity3).aggregate(Aggregations.count(_Entity3.i)).execute();
+			fail();
+		} catch (IllegalStateException e) {}
+		
+		try {
+			session.group(_Entity3).by(_Entity3.i).execute();
+			fail();
+		} catch (IllegalStateException e) {}
+		
+		session.close();
+	}
+	
+	@Test
+	public void testBy() {
+		try {
+			ComparableProperty<?, ?>[] properties = null;
+			new AppEngineDatastoreSession().group(Metamodels.metamodel(Entity3.class)).by(properties);
+			fail();
+		} catch (IllegalArgumentException e) {}
+	}
+	
+	@Test
+	public void testAggregate() {
+		try {
+			Aggregation<?>[] aggregations = null;
+			new AppEngineDatastoreSession().group(Metamodels.metamodel(Entity3.class)).aggregate(aggregations);
+			fail();
+		} catch (IllegalArgumentException e) {}
+	}
+	
+	@Test
+	public void testFilter() {
+		try {
+			Filter<?>[] filters = null;
+			new AppEngineDatastoreSession().group(Metamodels.metamodel(Entity3.class)).filter(filters);
+			fail();
+		} catch (IllegalArgumentException e) {}
+	}
+	
+}
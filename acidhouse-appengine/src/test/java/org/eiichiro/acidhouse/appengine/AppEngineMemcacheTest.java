@@ -0,0 +1,119 @@
+package org.eiichiro.acidhouse.appengine;
+
+import static org.junit.Assert.*;
+import static org.hamcrest.CoreMatchers.*;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.appengine.api.datastore.DatastoreService;
+import com.google.appengine.api.datastore.DatastoreServiceFactory;
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.Key;
+import com.google.appengine.api.datastore.KeyFactory;
+import com.google.appengine.api.memcache.MemcacheServiceFactory;
+import com.google.appengine.tools.development.testing.LocalDatastoreServiceTestConfig;
+import com.google.appengine.tools.development.testing.LocalMemcacheServiceTestConfig;
+import com.google.appengine.tools.development.testing.LocalServiceTestHelper;
+
+public class AppEngineMemcacheTest {
+	
+	private LocalServiceTestHelper helper = new LocalServiceTestHelper(
+			new LocalDatastoreServiceTestConfig(), new LocalMemcacheServiceTestConfig());
+	
+	@Before
+	public void setUp() throws Exception {
+		helper.setUp();
+	}
+	
+	@After
+	public void tearDown() throws Exception {
+		helper.tearDown();
+	}
+	
+	@Test
+	public void testAppEngineMemcache() {
+		AppEngineMemcache memcache = new AppEngineMemcache();
+		Key key = KeyFactory.createKey("Kind", "Key1");
+		Entity entity = new Entity(key);
+		entity.setProperty("i", 1L);
+		long version = memcache.version(key);
+		assertThat(memcache.version(key), is(version));
+		assertNull(memcache.get(key, version));
+		memcache.put(key, version, Arrays.asList(entity));
+		List<Entity> entities = memcache.get(key, version);
+		assertThat(entities.size(), is(1));
+		assertThat(entities.get(0).getKey(), is(key));
+		assertThat((Long) entities.get(0).getProperty("i"), is(1L));
+		
+		// Invalidation: The group put with the previous version is not served.
+		memcache.invalidate(Collections.singleton(key));
+		assertThat(memcache.version(key), is(version + 1));
+		memcache.put(key, version, Arrays.asList(entity));
+		assertNull(memcache.get(key, memcache.version(key)));
+		
+		// Locked entity group is never cached.
+		version = memcache.version(key);
+		Entity lock = new Entity(Translation.LOCK_KIND, "Lock1", key);
+		memcache.put(key, version, Arrays.asList(entity, lock));
+		assertNull(memcache.get(key, version));
+		
+		try {
+			new AppEngineMemcache(null, 1);
+			fail();
+		} catch (IllegalArgumentException e) {}
+		
+		try {
+			new AppEngineMemcache(MemcacheServiceFactory.getMemcacheService(), 0);
+			fail();
+		} catch (IllegalArgumentException e) {}
+	}
+	
+	@Test
+	public void testGet() {
+		AppEngineMemcache memcache = new AppEngineMemcache();
+		Entity3 entity3 = new Entity3();
+		entity3.key = "Key1";
+		entity3.i = 1;
+		AppEngineStrongDatastoreSession session = new AppEngineStrongDatastoreSession();
+		session.memcache(memcache);
+		AppEngineTransaction transaction = session.beginTransaction();
+		session.put(entity3);
+		transaction.commit();
+		assertThat(session.get(Entity3.class, "Key1").i, is(1));
+		session.close();
+		
+		// Another instance is served from memcache even if the datastore is
+		// modified behind Acid House.
+		Key key = KeyFactory.createKey(Translation.toKind(Entity3.class), "Key1");
+		DatastoreService datastore = DatastoreServiceFactory.getDatastoreService();
+		datastore.delete(key);
+		session = new AppEngineStrongDatastoreSession();
+		session.memcache(new AppEngineMemcache());
+		assertThat(session.get(Entity3.class, "Key1").i, is(1));
+		
+		// Commit (2PC) invalidates the modified entity groups.
+		datastore.put(Translation.toEntities(entity3));
+		transaction = session.beginTransaction();
+		entity3 = session.get(Entity3.class, "Key1");
+		entity3.i = 2;
+		session.update(entity3);
+		Entity3 entity = new Entity3();
+		entity.key = "Key2";
+		entity.i = 2;
+		session.put(entity);
+		transaction.commit();
+		session.close();
+		session = new AppEngineStrongDatastoreSession();
+		session.memcache(new AppEngineMemcache());
+		assertThat(session.get(Entity3.class, "Key1").i, is(2));
+		assertThat(session.get(Entity3.class, "Key2").i, is(2));
+		session.close();
+	}
+	
+}
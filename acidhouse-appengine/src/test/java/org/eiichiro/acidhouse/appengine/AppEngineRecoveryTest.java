@@ -0,0 +1,109 @@
+package org.eiichiro.acidhouse.appengine;
+
+import static org.junit.Assert.*;
+import static org.hamcrest.CoreMatchers.*;
+
+import java.util.Date;
+
+import org.eiichiro.acidhouse.Lock;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.appengine.api.datastore.DatastoreService;
+import com.google.appengine.api.datastore.DatastoreServiceFactory;
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.FetchOptions;
+import com.google.appengine.api.datastore.Key;
+import com.google.appengine.api.datastore.KeyFactory;
+import com.google.appengine.api.datastore.Query;
+import com.google.appengine.tools.development.ApiProxyLocal;
+import com.google.appengine.tools.development.testing.LocalDatastoreServiceTestConfig;
+import com.google.appengine.tools.development.testing.LocalServiceTestHelper;
+import com.google.apphosting.api.ApiProxy;
+
+public class AppEngineRecoveryTest {
+	
+	private LocalServiceTestHelper helper = new LocalServiceTestHelper(new LocalDatastoreServiceTestConfig());
+	
+	@Before
+	public void setUp() throws Exception {
+		helper.setUp();
+	}
+	
+	@After
+	public void tearDown() throws Exception {
+		helper.tearDown();
+	}
+	
+	@Test
+	public void testRecover() {
+		// Transaction failed in the commitment phase.
+		ApiProxyLocal delegate = (ApiProxyLocal) ApiProxy.getDelegate();
+		ApiProxy.setDelegate(new FaultDelegate(delegate, 4));
+		AppEngineStrongDatastoreSession session = new AppEngineStrongDatastoreSession();
+		AppEngineTransaction transaction = session.beginTransaction();
+		
+		for (int i = 1; i < 4; i++) {
+			Entity3 entity3 = new Entity3();
+			entity3.key = "Key" + i;
+			entity3.i = i;
+			session.put(entity3);
+		}
+		
+		transaction.commit();
+		session.close();
+		ApiProxy.setDelegate(delegate);
+		DatastoreService datastore = DatastoreServiceFactory.getDatastoreService();
+		
+		for (Entity entity : datastore.prepare(new Query(Translation.LOCK_KIND)).asIterable()) {
+			Lock lock = Translation.toLock(entity);
+			datastore.put(null, Translation.toEntity(
+					new Lock(lock.id(), lock.transaction(), new Date(0)), entity.getParent()));
+		}
+		
+		assertThat(count(datastore, Translation.LOCK_KIND), is(2));
+		
+		// Lock by the transaction which has been failed in the preparation
+		// phase.
+		Key key = KeyFactory.createKey(Translation.toKind(Entity3.class), "Key4");
+		datastore.put(null, Translation.toEntity(new Lock("Lock4", KeyFactory.createKeyString(
+				key, Translation.TRANSACTION_KIND, "Lock4"), new Date(0)), key));
+		
+		// Lock by the transaction in progress.
+		key = KeyFactory.createKey(Translation.toKind(Entity3.class), "Key5");
+		datastore.put(null, Translation.toEntity(new Lock("Lock5", KeyFactory.createKeyString(
+				key, Translation.TRANSACTION_KIND, "Lock5"), new Date()), key));
+		
+		// Broken lock, which fails to be recovered.
+		key = KeyFactory.createKey(Translation.toKind(Entity3.class), "Key0");
+		datastore.put(null, Translation.toEntity(new Lock("Lock0", "Lock0", new Date(0)), key));
+		
+		AppEngineRecovery recovery = new AppEngineRecovery();
+		recovery.chunk(1);
+		assertThat(recovery.recover(), is(2));
+		assertThat(count(datastore, Translation.LOCK_KIND), is(2));
+		assertThat(count(datastore, Translation.TRANSACTION_KIND), is(0));
+		assertThat(count(datastore, Translation.LOG_KIND), is(0));
+		session = new AppEngineStrongDatastoreSession();
+		
+		for (int i = 1; i < 4; i++) {
+			assertThat(session.get(Entity3.class, "Key" + i).i, is(i));
+		}
+		
+		session.close();
+		assertThat(recovery.recover(), is(0));
+		recovery.run();
+		assertThat(count(datastore, Translation.LOCK_KIND), is(2));
+		
+		try {
+			recovery.chunk(0);
+			fail();
+		} catch (IllegalArgumentException e) {}
+	}
+	
+	private int count(DatastoreService datastore, String kind) {
+		return datastore.prepare(new Query(kind)).countEntities(FetchOptions.Builder.withDefaults());
+	}
+	
+}
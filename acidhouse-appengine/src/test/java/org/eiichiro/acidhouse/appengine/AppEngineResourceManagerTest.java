@@ -4,20 +4,35 @@ import static org.junit.Assert.*;
 import static org.hamcrest.CoreMatchers.*;
 
 import java.util.ConcurrentModificationException;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Future;
 
 import org.eiichiro.acidhouse.EntityExistsException;
 import org.eiichiro.acidhouse.IndoubtException;
+import org.eiichiro.acidhouse.Lock;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 
 import com.google.appengine.api.datastore.DatastoreService;
 import com.google.appengine.api.datastore.DatastoreServiceFactory;
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.FetchOptions;
+import com.google.appengine.api.datastore.Key;
+import com.google.appengine.api.datastore.KeyFactory;
+import com.google.appengine.api.datastore.Query;
 import com.google.appengine.api.datastore.Transaction;
 import com.google.appengine.tools.development.ApiProxyLocal;
 import com.google.appengine.tools.development.testing.LocalDatastoreServiceTestConfig;
 import com.google.appengine.tools.development.testing.LocalServiceTestHelper;
 import com.google.apphosting.api.ApiProxy;
+import com.google.apphosting.api.ApiProxy.ApiConfig;
+import com.google.apphosting.api.ApiProxy.ApiProxyException;
+import com.google.apphosting.api.ApiProxy.Environment;
+import com.google.apphosting.api.DatastorePb;
+import com.google.storage.onestore.v3.OnestoreEntity.Path;
 
 public class AppEngineResourceManagerTest {
 
@@ -263,6 +278,124 @@ public class AppEngineResourceManagerTest {
 		session.close();
 	}
 
+	@Test
+	public void testGetUnlocked() {
+		Entity3 entity3 = new Entity3();
+		entity3.key = "Key3";
+		entity3.i = 3;
+		Entity1 entity1 = new Entity1();
+		entity1.key = "Key1";
+		entity1.i = 1;
+		entity3.entity1 = entity1;
+		AppEngineStrongDatastoreSession session = new AppEngineStrongDatastoreSession();
+		AppEngineTransaction transaction = session.beginTransaction();
+		session.put(entity3);
+		transaction.commit();
+		session.close();
+		
+		// The unlocked entity is read with a single ancestor query.
+		ApiProxyLocal delegate = (ApiProxyLocal) ApiProxy.getDelegate();
+		final int[] queries = new int[1];
+		ApiProxy.setDelegate(new FaultDelegate(delegate, Integer.MAX_VALUE) {
+			
+			@Override
+			public Future<byte[]> makeAsyncCall(Environment environment,
+					String pkg, String method, byte[] request, ApiConfig config) {
+				if (method.equals("RunQuery")) {
+					queries[0]++;
+				}
+				
+				return super.makeAsyncCall(environment, pkg, method, request, config);
+			}
+			
+			@Override
+			public byte[] makeSyncCall(Environment environment, String pkg,
+					String method, byte[] request) throws ApiProxyException {
+				if (method.equals("RunQuery")) {
+					queries[0]++;
+				}
+				
+				return super.makeSyncCall(environment, pkg, method, request);
+			}
+			
+		});
+		
+		AppEngineResourceManager manager = new AppEngineResourceManager(
+				new AppEngineDatastoreService(DatastoreServiceFactory.getDatastoreService()));
+		entity3 = manager.get(Entity3.class, "Key3");
+		ApiProxy.setDelegate(delegate);
+		assertThat(queries[0], is(1));
+		assertThat(entity3.i, is(3));
+		assertThat(entity3.entity1.i, is(1));
+	}
+	
+	@Test
+	public void testGetLocked() {
+		// Transaction failed in the commitment phase.
+		ApiProxyLocal delegate = (ApiProxyLocal) ApiProxy.getDelegate();
+		ApiProxy.setDelegate(new FaultDelegate(delegate, 4));
+		AppEngineStrongDatastoreSession session = new AppEngineStrongDatastoreSession();
+		AppEngineTransaction transaction = session.beginTransaction();
+		
+		for (int i = 1; i < 4; i++) {
+			Entity3 entity3 = new Entity3();
+			entity3.key = "Key" + i;
+			entity3.i = i;
+			session.put(entity3);
+		}
+		
+		transaction.commit();
+		session.close();
+		ApiProxy.setDelegate(delegate);
+		DatastoreService datastore = DatastoreServiceFactory.getDatastoreService();
+		List<Entity> locks = datastore.prepare(new Query(Translation.LOCK_KIND))
+				.asList(FetchOptions.Builder.withDefaults());
+		assertThat(locks.isEmpty(), is(false));
+		
+		// The locked entity is rolled forward and read again.
+		Key key = locks.get(0).getParent();
+		AppEngineResourceManager manager = new AppEngineResourceManager(
+				new AppEngineDatastoreService(datastore));
+		Entity3 entity3 = manager.get(Entity3.class, key.getName());
+		assertThat(entity3.key, is(key.getName()));
+		assertThat(entity3.i, is(Integer.parseInt(key.getName().substring(3))));
+		assertThat(datastore.prepare(new Query(Translation.LOCK_KIND, key))
+				.countEntities(FetchOptions.Builder.withDefaults()), is(0));
+	}
+	
+	@Test
+	public void testGetOrphanLock() {
+		Entity1 entity1 = new Entity1();
+		entity1.key = "Key1";
+		entity1.i = 1;
+		AppEngineStrongDatastoreSession session = new AppEngineStrongDatastoreSession();
+		AppEngineTransaction transaction = session.beginTransaction();
+		session.put(entity1);
+		transaction.commit();
+		session.close();
+		
+		// Lock without the transaction entities, in progress.
+		DatastoreService datastore = DatastoreServiceFactory.getDatastoreService();
+		Key key = KeyFactory.createKey(Translation.toKind(Entity1.class), "Key1");
+		datastore.put(null, Translation.toEntity(new Lock("Lock1", KeyFactory.createKeyString(
+				key, Translation.TRANSACTION_KIND, "Lock1"), new Date()), key));
+		AppEngineResourceManager manager = new AppEngineResourceManager(
+				new AppEngineDatastoreService(datastore));
+		
+		try {
+			manager.get(Entity1.class, "Key1");
+			fail();
+		} catch (ConcurrentModificationException e) {}
+		
+		// Lock without the transaction entities, timed out.
+		datastore.put(null, Translation.toEntity(new Lock("Lock1", KeyFactory.createKeyString(
+				key, Translation.TRANSACTION_KIND, "Lock1"), new Date(0)), key));
+		entity1 = manager.get(Entity1.class, "Key1");
+		assertThat(entity1.i, is(1));
+		assertThat(datastore.prepare(new Query(Translation.LOCK_KIND, key))
+				.countEntities(FetchOptions.Builder.withDefaults()), is(0));
+	}
+	
 	@Test
 	public void testPut() {
 		DatastoreService datastore = DatastoreServiceFactory.getDatastoreService();
@@ -356,6 +489,65 @@ public class AppEngineResourceManagerTest {
 	@Test
 	public void testCommit() {
 		// AppEngineStrongDatastoreSessionTest
+		
+		// Fault in the middle of the concurrent commitment.
+		ApiProxyLocal delegate = (ApiProxyLocal) ApiProxy.getDelegate();
+		
+		// Fails the second lock get in the commitment phase.
+		ApiProxy.setDelegate(new FaultDelegate(delegate, Integer.MAX_VALUE) {
+			
+			private int gets = 0;
+			
+			@Override
+			public Future<byte[]> makeAsyncCall(Environment environment,
+					String pkg, String method, byte[] request, ApiConfig config) {
+				if (method.equals("Get")) {
+					DatastorePb.GetRequest getRequest = new DatastorePb.GetRequest();
+					getRequest.mergeFrom(request);
+					Path path = getRequest.getKey(0).getPath();
+					
+					if (getRequest.hasTransaction() && path.getElement(
+							path.elementSize() - 1).getType().equals(Translation.LOCK_KIND)
+							&& ++gets == 2) {
+						CompletableFuture<byte[]> future = new CompletableFuture<byte[]>();
+						future.completeExceptionally(new RuntimeException("Lock get [" + gets + "] failed"));
+						return future;
+					}
+				}
+				
+				return super.makeAsyncCall(environment, pkg, method, request, config);
+			}
+			
+		});
+		
+		DatastoreService datastore = DatastoreServiceFactory.getDatastoreService();
+		AppEngineStrongDatastoreSession session = new AppEngineStrongDatastoreSession();
+		AppEngineTransaction transaction = session.beginTransaction();
+		int actives = datastore.getActiveTransactions().size();
+		
+		for (int i = 1; i <= 3; i++) {
+			Entity1 entity1 = new Entity1();
+			entity1.key = "Key" + i;
+			entity1.i = i;
+			session.put(entity1);
+		}
+		
+		// The commitment failure is recovered in read.
+		transaction.commit();
+		session.close();
+		ApiProxy.setDelegate(delegate);
+		
+		// Every transaction begun in the commitment phase has been ended.
+		assertThat(datastore.getActiveTransactions().size(), is(actives));
+		
+		session = new AppEngineStrongDatastoreSession();
+		
+		for (int i = 1; i <= 3; i++) {
+			Entity1 entity1 = session.get(Entity1.class, "Key" + i);
+			assertThat(entity1.i, is(i));
+		}
+		
+		session.close();
 	}
 
 	@Test
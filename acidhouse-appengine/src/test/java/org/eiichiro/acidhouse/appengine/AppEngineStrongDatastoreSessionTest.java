@@ -4,11 +4,25 @@ import static org.hamcrest.CoreMatchers.is;
 import static org.hamcrest.CoreMatchers.not;
 import static org.junit.Assert.*;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
 import org.eiichiro.acidhouse.EntityExistsException;
+import org.eiichiro.acidhouse.Log;
+import org.eiichiro.acidhouse.Lock;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 
+import com.google.appengine.api.datastore.DatastoreService;
+import com.google.appengine.api.datastore.DatastoreServiceFactory;
+import com.google.appengine.api.datastore.FetchOptions;
+import com.google.appengine.api.datastore.Key;
+import com.google.appengine.api.datastore.KeyFactory;
+import com.google.appengine.api.datastore.Query;
 import com.google.appengine.tools.development.testing.LocalDatastoreServiceTestConfig;
 import com.google.appengine.tools.development.testing.LocalServiceTestHelper;
 
@@ -96,6 +110,113 @@ public class AppEngineStrongDatastoreSessionTest {
 		System.out.println("AppEngineStrongDatastoreSession.get #3 [" + (System.currentTimeMillis() - start) + "]");
 		assertNull(entity1);
 		session.close();
+		
+		// Identity map: Repeated get in the same transaction.
+		session = new AppEngineStrongDatastoreSession();
+		transaction = session.beginTransaction();
+		entity1 = session.get(Entity1.class, "Key1");
+		assertSame(session.get(Entity1.class, "Key1"), entity1);
+		entity1.i = 2;
+		session.update(entity1);
+		assertNotSame(session.get(Entity1.class, "Key1"), entity1);
+		transaction.commit();
+		transaction = session.beginTransaction();
+		Entity1 committed = session.get(Entity1.class, "Key1");
+		assertNotSame(committed, entity1);
+		assertThat(committed.i, is(2));
+		transaction.rollback();
+		session.close();
+	}
+
+	@Test
+	public void testGetAsync() throws Exception {
+		AppEngineStrongDatastoreSession session = new AppEngineStrongDatastoreSession();
+		AppEngineTransaction transaction = null;
+		
+		for (int i = 0; i < 5; i++) {
+			Entity1 entity1 = new Entity1();
+			entity1.key = "Key" + i;
+			entity1.i = i;
+			transaction = session.beginTransaction();
+			session.put(entity1);
+			transaction.commitAsync().get();
+			assertThat(transaction.logs().get(0).state(), is(Log.State.COMMITTED));
+		}
+		
+		List<CompletableFuture<Entity1>> futures = new ArrayList<CompletableFuture<Entity1>>();
+		
+		for (int i = 0; i < 6; i++) {
+			futures.add(session.getAsync(Entity1.class, "Key" + i));
+		}
+		
+		for (int i = 0; i < 5; i++) {
+			assertThat(futures.get(i).get().i, is(i));
+		}
+		
+		assertNull(futures.get(5).get());
+		
+		// Under a transaction: Got on the calling thread.
+		transaction = session.beginTransaction();
+		CompletableFuture<Entity1> future = session.getAsync(Entity1.class, "Key1");
+		assertTrue(future.isDone());
+		Entity1 entity1 = future.get();
+		entity1.i = 11;
+		session.update(entity1);
+		CompletableFuture<Void> commit = transaction.commitAsync();
+		assertFalse(session.isTransactional());
+		commit.get();
+		assertThat(session.getAsync(Entity1.class, "Key1").get().i, is(11));
+		session.close();
+		
+		try {
+			session.getAsync(null, "Key1");
+			fail();
+		} catch (IllegalArgumentException e) {}
+	}
+	
+	@Test
+	public void testGetClassOfEList() {
+		DatastoreService datastore = DatastoreServiceFactory.getDatastoreService();
+		Entity1 entity1 = new Entity1();
+		entity1.key = "Key1";
+		entity1.i = 1;
+		datastore.put(null, Translation.toEntities(entity1));
+		entity1 = new Entity1();
+		entity1.key = "Key2";
+		entity1.i = 2;
+		datastore.put(null, Translation.toEntities(entity1));
+		// Lock by the transaction which has been failed.
+		Key key = Keys.create("Entity1", "Key2");
+		datastore.put(null, Translation.toEntity(new Lock("Lock1", KeyFactory.createKeyString(
+				key, Translation.TRANSACTION_KIND, "Lock1"), new Date(0)), key));
+		
+		AppEngineStrongDatastoreSession session = new AppEngineStrongDatastoreSession();
+		List<Entity1> entity1s = session.get(Entity1.class, Arrays.asList(
+				Keys.create("Entity1", "Key1"), Keys.create("Entity1", "Key3"), key));
+		assertThat(entity1s.size(), is(3));
+		assertThat(entity1s.get(0).key, is("Key1"));
+		assertThat(entity1s.get(0).i, is(1));
+		assertNull(entity1s.get(1));
+		assertThat(entity1s.get(2).key, is("Key2"));
+		assertThat(entity1s.get(2).i, is(2));
+		assertThat(datastore.prepare(new Query(Translation.LOCK_KIND, key)).countEntities(
+				FetchOptions.Builder.withDefaults()), is(0));
+		
+		// Plain keys and referential properties resolved across the batch.
+		Entity7 entity7 = new Entity7();
+		entity7.key = "Key7";
+		entity7.i = 7;
+		entity7.entity1 = entity1s.get(0);
+		datastore.put(null, Translation.toEntities(entity7));
+		entity7.key = "Key77";
+		datastore.put(null, Translation.toEntities(entity7));
+		List<Entity7> entity7s = session.get(Entity7.class, Arrays.asList("Key7", "Key77", "Key777"));
+		assertThat(entity7s.size(), is(3));
+		assertThat(entity7s.get(0).entity1.key, is("Key1"));
+		assertThat(entity7s.get(1).entity1.key, is("Key1"));
+		assertThat(entity7s.get(0).entity1 == entity7s.get(1).entity1, is(true));
+		assertNull(entity7s.get(2));
+		session.close();
 	}
 
 	@Test
@@ -184,6 +305,106 @@ public class AppEngineStrongDatastoreSessionTest {
 		session.close();
 	}
 
+	@Test
+	public void testPutAll() {
+		List<Entity1> entity1s = new ArrayList<Entity1>();
+		
+		for (int i = 1; i < 6; i++) {
+			Entity1 entity1 = new Entity1();
+			entity1.key = "Key" + i;
+			entity1.i = i;
+			entity1s.add(entity1);
+		}
+		
+		AppEngineStrongDatastoreSession session = new AppEngineStrongDatastoreSession();
+		session.datastore().batch(2);
+		
+		try {
+			session.putAll(entity1s);
+			fail();
+		} catch (IllegalStateException e) {}
+		
+		AppEngineTransaction transaction = session.beginTransaction();
+		
+		try {
+			session.putAll(null);
+			fail();
+		} catch (IllegalArgumentException e) {}
+		
+		session.putAll(entity1s);
+		assertThat(transaction.logs().size(), is(5));
+		transaction.commit();
+		List<Entity1> results = session.get(Entity1.class, Arrays.asList("Key1", "Key3", "Key5"));
+		assertThat(results.get(0).i, is(1));
+		assertThat(results.get(1).i, is(3));
+		assertThat(results.get(2).i, is(5));
+		
+		transaction = session.beginTransaction();
+		
+		try {
+			session.putAll(entity1s.subList(4, 5));
+			fail();
+		} catch (EntityExistsException e) {}
+		
+		transaction.rollback();
+		session.close();
+	}
+	
+	@Test
+	public void testUpdateAll() {
+		AppEngineStrongDatastoreSession session = new AppEngineStrongDatastoreSession();
+		session.datastore().batch(2);
+		List<Entity1> entity1s = new ArrayList<Entity1>();
+		
+		for (int i = 1; i < 4; i++) {
+			Entity1 entity1 = new Entity1();
+			entity1.key = "Key" + i;
+			entity1.i = i;
+			entity1s.add(entity1);
+		}
+		
+		AppEngineTransaction transaction = session.beginTransaction();
+		session.putAll(entity1s);
+		transaction.commit();
+		
+		transaction = session.beginTransaction();
+		
+		try {
+			session.updateAll(entity1s);
+			fail();
+		} catch (IllegalStateException e) {}
+		
+		entity1s = session.get(Entity1.class, Arrays.asList("Key1", "Key2", "Key3"));
+		
+		for (Entity1 entity1 : entity1s) {
+			entity1.i *= 10;
+		}
+		
+		session.updateAll(entity1s);
+		
+		try {
+			session.updateAll(entity1s.subList(0, 1));
+			fail();
+		} catch (IllegalStateException e) {}
+		
+		transaction.commit();
+		entity1s = session.get(Entity1.class, Arrays.asList("Key1", "Key2", "Key3"));
+		assertThat(entity1s.get(0).i, is(10));
+		assertThat(entity1s.get(1).i, is(20));
+		assertThat(entity1s.get(2).i, is(30));
+		
+		transaction = session.beginTransaction();
+		entity1s = session.get(Entity1.class, Arrays.asList("Key1", "Key2"));
+		session.deleteAll(entity1s);
+		assertThat(transaction.logs().size(), is(4));
+		transaction.commit();
+		entity1s = session.get(Entity1.class, Arrays.asList("Key1", "Key2", "Key3"));
+		assertNull(entity1s.get(0));
+		assertNull(entity1s.get(1));
+		assertThat(entity1s.get(2).i, is(30));
+		session.close();
+	}
+	
 	@Test
 	public void testUpdateObject() {
 		Entity3 entity3 = new Entity3();
@@ -314,6 +535,56 @@ public class AppEngineStrongDatastoreSessionTest {
 		session.close();
 	}
 
+	@Test
+	public void testDeleteClassOfEObject() {
+		Entity4 entity4 = new Entity4();
+		entity4.key = "Key4";
+		entity4.i = 4;
+		entity4.entity1s = new ArrayList<Entity1>();
+		
+		for (int i = 1; i < 4; i++) {
+			Entity1 entity1 = new Entity1();
+			entity1.key = "Key" + i;
+			entity1.i = i;
+			entity4.entity1s.add(entity1);
+		}
+		
+		DatastoreService datastore = DatastoreServiceFactory.getDatastoreService();
+		datastore.put(null, Translation.toEntities(entity4));
+		AppEngineStrongDatastoreSession session = new AppEngineStrongDatastoreSession();
+		
+		try {
+			session.delete(Entity4.class, "Key4");
+			fail();
+		} catch (IllegalStateException e) {}
+		
+		AppEngineTransaction transaction = session.beginTransaction();
+		
+		try {
+			session.delete(null, "Key4");
+			fail();
+		} catch (IllegalArgumentException e) {}
+		
+		try {
+			session.delete(Entity4.class, null);
+			fail();
+		} catch (IllegalArgumentException e) {}
+		
+		session.delete(Entity4.class, "Key4");
+		assertThat(transaction.logs().size(), is(2));
+		transaction.commit();
+		assertNull(session.get(Entity4.class, "Key4"));
+		assertThat(datastore.prepare(new Query(Translation.toKind(Entity1.class))).countEntities(
+				FetchOptions.Builder.withDefaults()), is(0));
+		
+		// Not found.
+		transaction = session.beginTransaction();
+		session.delete(Entity4.class, "Key44");
+		assertThat(transaction.logs().size(), is(1));
+		transaction.commit();
+		session.close();
+	}
+	
 	@Test
 	public void testDeleteObject() {
 		Entity3 entity3 = new Entity3();
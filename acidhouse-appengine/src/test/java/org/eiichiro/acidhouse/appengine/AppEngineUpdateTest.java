@@ -192,5 +192,39 @@ public class AppEngineUpdateTest {
 			e.printStackTrace();
 		}
 	}
+	
+	@Test
+	public void testParallel() {
+		AppEngineDatastoreSession session = new AppEngineDatastoreSession();
+		session.datastore().datastoreType(DatastoreType.HIGH_REPLICATION);
+		session.datastore().batch(2);
+		Transaction transaction = session.beginTransaction();
+		
+		for (int i = 0; i < 5; i++) {
+			Entity1 entity1 = new Entity1();
+			entity1.key = "Key" + i;
+			entity1.i = i;
+			session.put(entity1);
+		}
+		
+		transaction.commit();
+		_Entity1 _Entity1 = Metamodels.metamodel(Entity1.class);
+		transaction = session.beginTransaction();
+		int i = session.update(_Entity1).set(_Entity1.i, 100).parallel(true).execute();
+		transaction.commit();
+		assertThat(i, is(5));
+		
+		for (Entity1 entity1 : session.get(_Entity1).execute()) {
+			assertThat(entity1.i, is(100));
+		}
+		
+		transaction = session.beginTransaction();
+		i = session.update(_Entity1).set(_Entity1.i, 200)
+				.filter(_Entity1.key.equalTo("Key1")).parallel(false).execute();
+		transaction.commit();
+		assertThat(i, is(1));
+		assertThat(session.get(Entity1.class, "Key1").i, is(200));
+		session.close();
+	}
 
 }
@@ -0,0 +1,14 @@
+package org.eiichiro.acidhouse.appengine;
+
+import org.eiichiro.acidhouse.Embedded;
+
+@Embedded
+public class Embedded3 {
+
+	static final long serialVersionUID = 1L;
+	
+	int i;
+	
+	Embedded3 embedded3;
+	
+}
@@ -0,0 +1,23 @@
+package org.eiichiro.acidhouse.appengine;
+
+import java.util.List;
+
+import org.eiichiro.acidhouse.Entity;
+import org.eiichiro.acidhouse.Key;
+import org.eiichiro.acidhouse.Lazy;
+import org.eiichiro.acidhouse.Referential;
+
+@Entity
+public class Entity11 {
+	
+	@Key String key;
+	
+	int i;
+	
+	Lazy<Entity2> entity2;
+	
+	Lazy<List<Entity1>> entity1s;
+	
+	@Referential Lazy<Entity3> entity3;
+	
+}
@@ -0,0 +1,17 @@
+package org.eiichiro.acidhouse.appengine;
+
+import java.util.Date;
+
+import org.eiichiro.acidhouse.Entity;
+import org.eiichiro.acidhouse.Key;
+
+@Entity
+public class Entity12 {
+
+	@Key String key;
+	
+	int i;
+	
+	Date date;
+
+}
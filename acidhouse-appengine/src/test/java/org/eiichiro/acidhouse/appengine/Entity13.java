@@ -0,0 +1,13 @@
+package org.eiichiro.acidhouse.appengine;
+
+import org.eiichiro.acidhouse.Entity;
+import org.eiichiro.acidhouse.Key;
+
+@Entity
+public class Entity13 {
+
+	@Key String key;
+	
+	Embedded3 embedded3;
+	
+}
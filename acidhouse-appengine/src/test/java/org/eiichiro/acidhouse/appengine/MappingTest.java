@@ -0,0 +1,84 @@
+package org.eiichiro.acidhouse.appengine;
+
+import static org.junit.Assert.*;
+import static org.hamcrest.CoreMatchers.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+public class MappingTest {
+	
+	@Test
+	public void testOf() {
+		Mapping mapping = Mapping.of(Entity4.class);
+		assertThat(Mapping.of(Entity4.class), is(sameInstance(mapping)));
+		assertThat(mapping.kind(), is("Entity4"));
+		List<Mapping.Property> properties = mapping.properties();
+		assertThat(properties.size(), is(3));
+		assertThat(properties.get(0).name(), is("key"));
+		assertThat(properties.get(0).kind(), is(Mapping.Kind.KEY));
+		assertThat(properties.get(1).name(), is("i"));
+		assertThat(properties.get(1).kind(), is(Mapping.Kind.VALUE));
+		assertThat(properties.get(1).integer(), is(true));
+		assertThat(properties.get(2).name(), is("entity1s"));
+		assertThat(properties.get(2).kind(), is(Mapping.Kind.COLLECTION));
+		assertThat(properties.get(2).elementKind(), is(Mapping.Kind.ENTITY));
+		assertThat(properties.get(2).element().equals(Entity1.class), is(true));
+		assertThat(properties.get(2).collection().equals(ArrayList.class), is(true));
+		
+		try {
+			Mapping.of(Embedded1.class).kind();
+			fail();
+		} catch (IllegalArgumentException e) {}
+	}
+	
+	@Test
+	public void testEmbedded() {
+		// The embedded type in an embedded type is not expanded, so the 
+		// self-referential embedded type does not recurse.
+		List<Mapping.Property> properties = Mapping.of(Entity13.class).properties();
+		assertThat(properties.get(1).kind(), is(Mapping.Kind.EMBEDDED));
+		List<Mapping.Property> embedded = properties.get(1).embedded();
+		assertThat(embedded.size(), is(2));
+		assertThat(embedded.get(0).name(), is("embedded3.i"));
+		assertThat(embedded.get(1).name(), is("embedded3.embedded3"));
+		assertThat(embedded.get(1).kind(), is(Mapping.Kind.EMBEDDED));
+		assertThat(embedded.get(1).embedded().isEmpty(), is(true));
+	}
+	
+	@Test
+	public void testLazy() {
+		Mapping mapping = Mapping.of(Entity11.class);
+		assertThat(mapping.hierarchical(), is(false));
+		List<Mapping.Property> properties = mapping.properties();
+		assertThat(properties.get(1).lazy(), is(false));
+		assertThat(properties.get(2).kind(), is(Mapping.Kind.ENTITY));
+		assertThat(properties.get(2).type().equals(Entity2.class), is(true));
+		assertThat(properties.get(2).lazy(), is(true));
+		assertThat(properties.get(3).kind(), is(Mapping.Kind.COLLECTION));
+		assertThat(properties.get(3).elementKind(), is(Mapping.Kind.ENTITY));
+		assertThat(properties.get(3).collection().equals(ArrayList.class), is(true));
+		assertThat(properties.get(3).lazy(), is(true));
+		assertThat(properties.get(4).kind(), is(Mapping.Kind.REFERENCE));
+		assertThat(properties.get(4).type().equals(Entity3.class), is(true));
+		assertThat(properties.get(4).lazy(), is(true));
+	}
+	
+	@Test
+	public void testNewInstance() {
+		assertThat(Mapping.of(Entity1.class).newInstance(), instanceOf(Entity1.class));
+		assertThat(Mapping.of(Entity3.class).newInstance(), instanceOf(Entity3.class));
+	}
+	
+	@Test
+	public void testGetSet() {
+		Entity3 entity3 = new Entity3();
+		Mapping.Property property = Mapping.of(Entity3.class).properties().get(1);
+		property.set(entity3, 1);
+		assertThat(entity3.i, is(1));
+		assertThat((Integer) property.get(entity3), is(1));
+	}
+	
+}
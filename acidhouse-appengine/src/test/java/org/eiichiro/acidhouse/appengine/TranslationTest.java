@@ -561,6 +561,17 @@ public class TranslationTest {
 		assertTrue(!entities0.hasProperty("embedded12.embedded2"));
 		assertTrue(!entities0.hasProperty("embedded12.embedded2s"));
 		assertTrue(!entities0.hasProperty("embedded2.i"));
+		
+		// The self-referential embedded type.
+		Entity13 entity13 = new Entity13();
+		entity13.key = "Key13";
+		entity13.embedded3 = new Embedded3();
+		entity13.embedded3.i = 13;
+		entity13.embedded3.embedded3 = new Embedded3();
+		entities0 = Translation.toEntities(entity13).get(0);
+		assertThat((Integer) entities0.getProperty("embedded3.i"), is(13));
+		assertTrue(!entities0.hasProperty("embedded3.embedded3"));
+		assertTrue(!entities0.hasProperty("embedded3.serialVersionUID"));
 	}
 
 	@Test
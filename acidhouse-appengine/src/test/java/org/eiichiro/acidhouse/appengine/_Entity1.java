@@ -1,6 +1,7 @@
 package org.eiichiro.acidhouse.appengine;
 
 import org.eiichiro.acidhouse.metamodel.ComparableProperty;
+import org.eiichiro.acidhouse.metamodel.IntProperty;
 import org.eiichiro.acidhouse.metamodel.Metamodel;
 
 public class _Entity1 extends Metamodel<Entity1> {
@@ -13,7 +14,7 @@ public class _Entity1 extends Metamodel<Entity1> {
 		super(parent, Entity1.class, name);
 	}
 	
-	public ComparableProperty<Entity1, Integer> i = new ComparableProperty<Entity1, Integer>(this, Integer.class, "i");
+	public IntProperty<Entity1> i = new IntProperty<Entity1>(this, "i");
 
 	public ComparableProperty<Entity1, String> key = new ComparableProperty<Entity1, String>(this, String.class, "key");
 	
@@ -14,7 +14,7 @@ public class _Entity10 extends Metamodel<Entity10> {
 	
 	public org.eiichiro.acidhouse.metamodel.ComparableProperty<Entity10, java.lang.Long> key = new org.eiichiro.acidhouse.metamodel.ComparableProperty<Entity10, java.lang.Long>(this, java.lang.Long.class, "key");
 
-	public org.eiichiro.acidhouse.metamodel.ComparableProperty<Entity10, java.lang.Integer> i = new org.eiichiro.acidhouse.metamodel.ComparableProperty<Entity10, java.lang.Integer>(this, java.lang.Integer.class, "i");
+	public org.eiichiro.acidhouse.metamodel.IntProperty<Entity10> i = new org.eiichiro.acidhouse.metamodel.IntProperty<Entity10>(this, "i");
 
 	public _Entity10.Embedded1$ embedded1 = new _Entity10.Embedded1$(this, "embedded1");
 
@@ -32,7 +32,7 @@ public class _Entity10 extends Metamodel<Entity10> {
 
 		public org.eiichiro.acidhouse.metamodel.Property<Entity10, java.util.List<java.lang.Integer>> integers = new org.eiichiro.acidhouse.metamodel.Property<Entity10, java.util.List<java.lang.Integer>>(this, java.util.List.class, "integers");
 
-		public org.eiichiro.acidhouse.metamodel.ComparableProperty<Entity10, java.lang.Integer> i = new org.eiichiro.acidhouse.metamodel.ComparableProperty<Entity10, java.lang.Integer>(this, java.lang.Integer.class, "i");
+		public org.eiichiro.acidhouse.metamodel.IntProperty<Entity10> i = new org.eiichiro.acidhouse.metamodel.IntProperty<Entity10>(this, "i");
 		
 		public org.eiichiro.acidhouse.metamodel.ComparableProperty<Entity10, java.lang.Integer> integer = new org.eiichiro.acidhouse.metamodel.ComparableProperty<Entity10, java.lang.Integer>(this, java.lang.Integer.class, "integer");
 
@@ -58,7 +58,7 @@ public class _Entity10 extends Metamodel<Entity10> {
 			super(parent, Embedded2.class, name);
 		}
 
-		public org.eiichiro.acidhouse.metamodel.ComparableProperty<Entity10, java.lang.Integer> i = new org.eiichiro.acidhouse.metamodel.ComparableProperty<Entity10, java.lang.Integer>(this, java.lang.Integer.class, "i");
+		public org.eiichiro.acidhouse.metamodel.IntProperty<Entity10> i = new org.eiichiro.acidhouse.metamodel.IntProperty<Entity10>(this, "i");
 
 	}
 
@@ -0,0 +1,25 @@
+package org.eiichiro.acidhouse.appengine;
+
+import java.util.Date;
+
+import org.eiichiro.acidhouse.metamodel.ComparableProperty;
+import org.eiichiro.acidhouse.metamodel.IntProperty;
+import org.eiichiro.acidhouse.metamodel.Metamodel;
+
+public class _Entity12 extends Metamodel<Entity12> {
+
+	public _Entity12() {
+		super(Entity12.class);
+	}
+
+	public _Entity12(Metamodel<?> parent, String name) {
+		super(parent, Entity12.class, name);
+	}
+
+	public IntProperty<Entity12> i = new IntProperty<Entity12>(this, "i");
+
+	public ComparableProperty<Entity12, Date> date = new ComparableProperty<Entity12, Date>(this, Date.class, "date");
+
+	public ComparableProperty<Entity12, String> key = new ComparableProperty<Entity12, String>(this, String.class, "key");
+	
+}
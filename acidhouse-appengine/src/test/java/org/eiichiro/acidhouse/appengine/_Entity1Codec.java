@@ -0,0 +1,53 @@
+package org.eiichiro.acidhouse.appengine;
+
+import org.eiichiro.acidhouse.metamodel.Codec;
+
+public class _Entity1Codec implements Codec<Entity1> {
+
+	@Override
+	public Entity1 newInstance() {
+		return new Entity1();
+	}
+
+	@Override
+	public Codec.Accessor<Entity1> accessor(String name) {
+		switch (name) {
+		case "key":
+			return new Codec.Accessor<Entity1>() {
+
+				@Override
+				public Object get(Entity1 entity) {
+					return entity.key;
+				}
+				
+				@Override
+				public void set(Entity1 entity, Object value) {
+					entity.key = (String) value;
+				}
+				
+			};
+		case "i":
+			return new Codec.Accessor<Entity1>() {
+				
+				@Override
+				public Object get(Entity1 entity) {
+					return entity.i;
+				}
+				
+				@Override
+				public void set(Entity1 entity, Object value) {
+					entity.i = (Integer) value;
+				}
+				
+				@Override
+				public int getInt(Entity1 entity) {
+					return entity.i;
+				}
+				
+			};
+		default:
+			throw new IllegalArgumentException("Entity [Entity1] does not have field [" + name + "]");
+		}
+	}
+	
+}
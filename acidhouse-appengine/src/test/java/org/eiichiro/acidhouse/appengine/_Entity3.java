@@ -1,6 +1,7 @@
 package org.eiichiro.acidhouse.appengine;
 
 import org.eiichiro.acidhouse.metamodel.ComparableProperty;
+import org.eiichiro.acidhouse.metamodel.IntProperty;
 import org.eiichiro.acidhouse.metamodel.Metamodel;
 
 public class _Entity3 extends Metamodel<Entity3> {
@@ -15,7 +16,7 @@ public class _Entity3 extends Metamodel<Entity3> {
 
 	public _Entity1 entity1 = new _Entity1(this, "entity1");
 
-	public ComparableProperty<Entity3, Integer> i = new ComparableProperty<Entity3, Integer>(this, Integer.class, "i");
+	public IntProperty<Entity3> i = new IntProperty<Entity3>(this, "i");
 
 	public ComparableProperty<Entity3, String> key = new ComparableProperty<Entity3, String>(this, String.class, "key");
 	
@@ -0,0 +1,239 @@
+/*
+ * Copyright (C) 2011 Eiichiro Uchiumi. All Rights Reserved.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.eiichiro.acidhouse.metamodel.processing;
+
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.annotation.Generated;
+import javax.annotation.processing.Filer;
+import javax.annotation.processing.ProcessingEnvironment;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.NestingKind;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.PrimitiveType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.lang.model.util.Elements;
+
+/**
+ * {@code CodecSource} represents an Acid House entity codec Java source file.
+ * The generated codec provides an accessor per entity field which reads and
+ * writes the field directly, so that datastore implementations can translate
+ * entities without reflection and without looking the field up by name.
+ * 
+ * @author <a href="mailto:mail@eiichiro.org">Eiichiro Uchiumi</a>
+ */
+public class CodecSource {
+	
+	private static final String PACKAGE_TEMPLATE = "package %s;\n\n";
+	
+	private static final String IMPORT_TEMPLATE = "import "
+			+ Generated.class.getName() + ";\n"
+			+ "import org.eiichiro.acidhouse.metamodel.Codec;\n\n";
+	
+	private static final String CLASS_TEMPLATE = "@Generated(\""
+			+ MetamodelGenerator.class.getName() + "\")\n"
+			+ "public class %s implements Codec<%s> {\n\n" + "%s" + "}\n";
+	
+	private static final String NEW_INSTANCE_TEMPLATE = "\t@Override\n"
+			+ "\tpublic %s newInstance() {\n"
+			+ "\t\treturn new %s();\n" + "\t}\n\n";
+	
+	private static final String ACCESSOR_TEMPLATE = "\t@SuppressWarnings(\"unchecked\")\n"
+			+ "\t@Override\n"
+			+ "\tpublic Codec.Accessor<%s> accessor(String name) {\n"
+			+ "\t\tswitch (name) {\n" + "%s"
+			+ "\t\tdefault:\n"
+			+ "\t\t\tthrow new IllegalArgumentException(\"Entity [%s] does not have field [\" + name + \"]\");\n"
+			+ "\t\t}\n" + "\t}\n\n";
+	
+	private static final String ACCESSOR_CASE_TEMPLATE = "\t\tcase \"%s\":\n"
+			+ "\t\t\treturn new Codec.Accessor<%s>() {\n\n"
+			+ "\t\t\t\t@Override\n"
+			+ "\t\t\t\tpublic Object get(%s entity) {\n"
+			+ "\t\t\t\t\treturn %s;\n" + "\t\t\t\t}\n\n"
+			+ "\t\t\t\t@Override\n"
+			+ "\t\t\t\tpublic void set(%s entity, Object value) {\n"
+			+ "%s" + "\t\t\t\t}\n\n" + "%s"
+			+ "\t\t\t};\n";
+	
+	private static final String SET_TEMPLATE = "\t\t\t\t\t%s = (%s) value;\n";
+	
+	private static final String SET_FINAL_TEMPLATE = "\t\t\t\t\tthrow new IllegalArgumentException(\"Entity [%s] does not have non-final field [%s]\");\n";
+	
+	private static final String GET_PRIMITIVE_TEMPLATE = "\t\t\t\t@Override\n"
+			+ "\t\t\t\tpublic %s get%s(%s entity) {\n"
+			+ "\t\t\t\t\treturn %s;\n" + "\t\t\t\t}\n\n";
+	
+	private final TypeElement element;
+	
+	private final ProcessingEnvironment environment;
+	
+	private final String packageName;
+	
+	private final String entityName;
+	
+	private final String codecName;
+	
+	/**
+	 * Constructs a new {@code CodecSource} instance with the specified entity
+	 * class representation and processing environment.
+	 * 
+	 * @param element Acid House entity class representation.
+	 * @param environment Processing environment.
+	 */
+	public CodecSource(TypeElement element, ProcessingEnvironment environment) {
+		this.element = element;
+		this.environment = environment;
+		Elements elementUtils = environment.getElementUtils();
+		packageName = elementUtils.getPackageOf(element).getQualifiedName().toString();
+		entityName = element.getSimpleName().toString();
+		String binaryName = elementUtils.getBinaryName(element).toString();
+		codecName = toCodecName(binaryName.substring(binaryName.lastIndexOf(".") + 1));
+	}
+	
+	/**
+	 * Returns whether the codec can be generated for the entity or not.
+	 * The codec reads and writes the entity fields directly, so every
+	 * persistent field declared in the entity class must not be private. 
+	 * The nested entity class must be static and neither it nor its 
+	 * enclosing classes may be private. If the codec is not generated, 
+	 * datastore implementations fall back to reflection.
+	 * 
+	 * @return Whether the codec can be generated for the entity or not.
+	 */
+	public boolean generatable() {
+		if (element.getNestingKind() == NestingKind.MEMBER 
+				&& !element.getModifiers().contains(Modifier.STATIC)) {
+			return false;
+		}
+		
+		for (Element e = element; e instanceof TypeElement; e = e.getEnclosingElement()) {
+			if (e.getModifiers().contains(Modifier.PRIVATE)) {
+				return false;
+			}
+		}
+		
+		for (VariableElement field : ElementFilter.fieldsIn(element.getEnclosedElements())) {
+			if (!isTransient(field) && field.getModifiers().contains(Modifier.PRIVATE)) {
+				return false;
+			}
+		}
+		
+		return true;
+	}
+	
+	/**
+	 * Save this instance representation as a Java source file. The Java source
+	 * file is saved as the name adding '_' prefix and 'Codec' suffix to the
+	 * entity class name and into the same package as the entity class.
+	 * 
+	 * @throws Exception If source file saving is failed due to any exception.
+	 */
+	public void save() throws Exception {
+		Filer filer = environment.getFiler();
+		String entity = element.getQualifiedName().toString();
+		StringBuilder source = new StringBuilder();
+		source.append(String.format(PACKAGE_TEMPLATE, packageName));
+		source.append(IMPORT_TEMPLATE);
+		StringBuilder cases = new StringBuilder();
+		
+		for (VariableElement field : fields()) {
+			String name = field.getSimpleName().toString();
+			String reference = (field.getModifiers().contains(Modifier.STATIC))
+					? entity + "." + name : "entity." + name;
+			String set = (field.getModifiers().contains(Modifier.FINAL))
+					? String.format(SET_FINAL_TEMPLATE, entityName, name)
+					: String.format(SET_TEMPLATE, reference, box(field.asType()));
+			TypeKind kind = field.asType().getKind();
+			String primitive = "";
+			
+			// Reads the primitive field without boxing for the 
+			// primitive-specialized metamodel properties.
+			if (kind == TypeKind.INT || kind == TypeKind.LONG || kind == TypeKind.DOUBLE) {
+				String type = kind.name().toLowerCase();
+				String suffix = Character.toUpperCase(type.charAt(0)) + type.substring(1);
+				primitive = String.format(GET_PRIMITIVE_TEMPLATE, type, suffix, entity, reference);
+			}
+			
+			cases.append(String.format(ACCESSOR_CASE_TEMPLATE, name, entity, 
+					entity, reference, entity, set, primitive));
+		}
+		
+		StringBuilder buffer = new StringBuilder();
+		buffer.append(String.format(NEW_INSTANCE_TEMPLATE, entity, entity));
+		buffer.append(String.format(ACCESSOR_TEMPLATE, entity, cases, entityName));
+		source.append(String.format(CLASS_TEMPLATE, codecName, entity, buffer));
+		PrintWriter writer = new PrintWriter(filer.createSourceFile(
+				packageName + "." + codecName, element).openWriter());
+		writer.write(source.toString());
+		writer.close();
+	}
+	
+	/**
+	 * Returns the name of the codec class. The name is the binary name of the 
+	 * entity class without the package name, whose '$' separators of the 
+	 * nested class are replaced with '_', with '_' prefix and 'Codec' suffix 
+	 * (See {@code Codecs#codec(Class)}).
+	 * 
+	 * @return The name of the codec class.
+	 */
+	public String codecName() {
+		return codecName;
+	}
+	
+	String toCodecName(String type) {
+		return "_" + type.replace('$', '_') + "Codec";
+	}
+	
+	private List<VariableElement> fields() {
+		List<VariableElement> fields = new ArrayList<VariableElement>();
+		
+		for (VariableElement field : ElementFilter.fieldsIn(element.getEnclosedElements())) {
+			if (!isTransient(field)) {
+				fields.add(field);
+			}
+		}
+		
+		return fields;
+	}
+	
+	private boolean isTransient(VariableElement field) {
+		for (AnnotationMirror annotationMirror : field.getAnnotationMirrors()) {
+			if (annotationMirror.getAnnotationType().toString().equals(
+					"org.eiichiro.acidhouse.Transient")) {
+				return true;
+			}
+		}
+		
+		return false;
+	}
+	
+	private TypeMirror box(TypeMirror type) {
+		if (type.getKind().isPrimitive()) {
+			return environment.getTypeUtils().boxedClass((PrimitiveType) type).asType();
+		}
+		
+		return type;
+	}
+	
+}
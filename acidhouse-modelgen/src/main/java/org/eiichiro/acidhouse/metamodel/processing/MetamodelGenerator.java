@@ -30,7 +30,7 @@ import javax.tools.Diagnostic.Kind;
 
 /**
  * {@code MetamodelGenerator} is a "JSR 269 annotation processor" based Java 
- * source code generator of Acid House entity metamodel.
+ * source code generator of Acid House entity metamodel and entity codec.
  * 
  * @author <a href="mailto:mail@eiichiro.org">Eiichiro Uchiumi</a>
  */
@@ -84,6 +84,20 @@ public class MetamodelGenerator extends AbstractProcessor {
 								typeElement);
 						e.printStackTrace();
 					}
+					
+					CodecSource codec = new CodecSource(typeElement, processingEnv);
+					
+					if (codec.generatable()) {
+						try {
+							codec.save();
+						} catch (Exception e) {
+							messager.printMessage(Kind.ERROR, "Codec ["
+									+ codec.codecName()
+									+ "] cannot be saved due to [" + e + "]",
+									typeElement);
+							e.printStackTrace();
+						}
+					}
 				}
 			}
 		}
@@ -63,6 +63,10 @@ public class MetamodelSource {
 			= "\tpublic org.eiichiro.acidhouse.metamodel.ComparableProperty<%s, %s> %s"
 			+ " = new org.eiichiro.acidhouse.metamodel.ComparableProperty<%s, %s>(this, %s.class, \"%s\");\n\n";
 	
+	private static final String PRIMITIVE_PROPERTY_TEMPLATE 
+			= "\tpublic org.eiichiro.acidhouse.metamodel.%s<%s> %s"
+			+ " = new org.eiichiro.acidhouse.metamodel.%s<%s>(this, \"%s\");\n\n";
+	
 	private static final String NON_COMPARABLE_PROPERTY_TEMPLATE 
 			= "\tpublic org.eiichiro.acidhouse.metamodel.Property<%s, %s> %s"
 			+ " = new org.eiichiro.acidhouse.metamodel.Property<%s, %s>(" 
@@ -105,8 +109,11 @@ public class MetamodelSource {
 		this.environment = environment;
 		Elements elementUtils = environment.getElementUtils();
 		packageName = elementUtils.getPackageOf(element).getQualifiedName().toString();
-		entityName = element.getSimpleName().toString();
-		metamodelName = toMetamodelName(entityName);
+		// The nested entity class is referred with the enclosing class name.
+		String qualifiedName = element.getQualifiedName().toString();
+		entityName = (packageName.isEmpty()) ? qualifiedName 
+				: qualifiedName.substring(packageName.length() + 1);
+		metamodelName = toMetamodelName(element.getSimpleName().toString());
 	}
 
 	/**
@@ -158,6 +165,10 @@ public class MetamodelSource {
 							.toString());
 					buffer.append(String.format(METAMODEL_TEMPLATE,
 							metamodel, name, metamodel, name));
+				} else if (toPrimitiveProperty(type) != null) {
+					String property = toPrimitiveProperty(type);
+					buffer.append(String.format(PRIMITIVE_PROPERTY_TEMPLATE, 
+							property, entityName, name, property, entityName, name));
 				} else if (isComparable(type)) {
 					buffer.append(new Formatter().format(
 							COMPARABLE_PROPERTY_TEMPLATE, entityName,
@@ -207,7 +218,11 @@ public class MetamodelSource {
 				String name = field.getSimpleName().toString();
 				TypeMirror t = field.asType();
 				
-				if (isComparable(t)) {
+				if (toPrimitiveProperty(t) != null) {
+					String property = toPrimitiveProperty(t);
+					builder.append(String.format("\t" + PRIMITIVE_PROPERTY_TEMPLATE, 
+							property, entityName, name, property, entityName, name));
+				} else if (isComparable(t)) {
 					builder.append(String.format("\t" + COMPARABLE_PROPERTY_TEMPLATE, 
 							entityName, box(t), name, entityName, box(t), toRawType(box(t)), name).toString());
 				} else {
@@ -291,6 +306,21 @@ public class MetamodelSource {
 		return false;
 	}
 	
+	// The primitive-specialized metamodel property class for the primitive 
+	// type, or null if the type is not specialized.
+	private String toPrimitiveProperty(TypeMirror type) {
+		switch (type.getKind()) {
+		case INT:
+			return "IntProperty";
+		case LONG:
+			return "LongProperty";
+		case DOUBLE:
+			return "DoubleProperty";
+		default:
+			return null;
+		}
+	}
+	
 	private TypeMirror box(TypeMirror type) {
 		if (type.getKind().isPrimitive()) {
 			return environment.getTypeUtils().boxedClass((PrimitiveType) type).asType();
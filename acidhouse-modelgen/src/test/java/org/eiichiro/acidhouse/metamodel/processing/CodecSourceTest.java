@@ -0,0 +1,74 @@
+package org.eiichiro.acidhouse.metamodel.processing;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.eiichiro.acidhouse.metamodel.Codec;
+import org.eiichiro.acidhouse.metamodel.Codecs;
+import org.junit.Test;
+
+public class CodecSourceTest {
+	
+	@Test
+	public void testSave() {
+		Codec<Entity1> codec = Codecs.codec(Entity1.class);
+		assertThat(codec, instanceOf(_Entity1Codec.class));
+		Entity1 entity1 = codec.newInstance();
+		assertThat(entity1, is(notNullValue()));
+		
+		Codec.Accessor<Entity1> key = codec.accessor("key");
+		key.set(entity1, 1L);
+		assertThat(entity1.key, is(1L));
+		assertThat(key.get(entity1), is((Object) 1L));
+		assertThat(key.getLong(entity1), is(1L));
+		
+		Codec.Accessor<Entity1> i = codec.accessor("i");
+		i.set(entity1, 2);
+		assertThat(entity1.i, is(2));
+		assertThat(i.getInt(entity1), is(2));
+		assertThat(codec.getInt(entity1, "i"), is(2));
+		
+		Codec.Accessor<Entity1> integer = codec.accessor("integer");
+		integer.set(entity1, 3);
+		assertThat(entity1.integer, is(3));
+		assertThat(integer.getInt(entity1), is(3));
+		
+		List<String> strings = Arrays.asList("a", "b");
+		codec.set(entity1, "strings", strings);
+		assertThat(entity1.strings, is(strings));
+		assertThat(codec.get(entity1, "strings"), is((Object) strings));
+		
+		try {
+			codec.accessor("longs");
+			fail();
+		} catch (IllegalArgumentException e) {
+			assertThat(e.getMessage(), is("Entity [Entity1] does not have field [longs]"));
+		}
+		
+		assertThat(Codecs.codec(Entity2.class), instanceOf(_Entity2Codec.class));
+		Codec<Entity7> codec7 = Codecs.codec(Entity7.class);
+		Entity7 entity7 = codec7.newInstance();
+		assertThat(codec7.get(entity7, "s"), is((Object) "s"));
+		
+		try {
+			codec7.set(entity7, "s", "t");
+			fail();
+		} catch (IllegalArgumentException e) {
+			assertThat(e.getMessage(), is("Entity [Entity7] does not have non-final field [s]"));
+		}
+		
+		// The codec of the nested entity class is named after the binary name.
+		Codec<Object3.Entity9> codec9 = Codecs.codec(Object3.Entity9.class);
+		assertThat(codec9, instanceOf(_Object3_Entity9Codec.class));
+		Object3.Entity9 entity9 = codec9.newInstance();
+		codec9.set(entity9, "i", 9);
+		assertThat(entity9.i, is(9));
+		
+		assertThat(Codecs.codec(Entity8.class), is(nullValue()));
+		assertThat(Codecs.codec(Entity3.class), is(nullValue()));
+	}
+	
+}
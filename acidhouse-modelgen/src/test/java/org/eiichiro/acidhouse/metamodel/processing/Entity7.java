@@ -0,0 +1,13 @@
+package org.eiichiro.acidhouse.metamodel.processing;
+
+import org.eiichiro.acidhouse.Entity;
+import org.eiichiro.acidhouse.Key;
+
+@Entity
+public class Entity7 {
+
+	@Key String key;
+	
+	final String s = "s";
+	
+}
@@ -0,0 +1,17 @@
+package org.eiichiro.acidhouse.metamodel.processing;
+
+import org.eiichiro.acidhouse.Entity;
+import org.eiichiro.acidhouse.Key;
+
+@Entity
+public class Entity8 {
+
+	@Key String key;
+	
+	private int i;
+	
+	public int i() {
+		return i;
+	}
+	
+}
@@ -0,0 +1,7 @@
+package org.eiichiro.acidhouse.metamodel.processing;
+
+public class Object2 extends Entity1 {
+	
+	String s;
+	
+}
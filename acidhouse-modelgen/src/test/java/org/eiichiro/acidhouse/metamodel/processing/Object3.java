@@ -0,0 +1,17 @@
+package org.eiichiro.acidhouse.metamodel.processing;
+
+import org.eiichiro.acidhouse.Entity;
+import org.eiichiro.acidhouse.Key;
+
+public class Object3 {
+
+	@Entity
+	public static class Entity9 {
+		
+		@Key String key;
+		
+		int i;
+		
+	}
+
+}
@@ -0,0 +1,83 @@
+package org.eiichiro.acidhouse.metamodel.processing;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.*;
+
+import java.lang.reflect.Field;
+import java.util.List;
+import java.util.Map;
+
+import org.eiichiro.acidhouse.metamodel.Property;
+import org.junit.Test;
+
+public class PropertyTest {
+	
+	@Test
+	public void testGet() throws Exception {
+		_Entity1 metamodel = new _Entity1();
+		Entity1 entity1 = new Entity1();
+		entity1.i = 1;
+		entity1.embedded1 = new Embedded1();
+		entity1.embedded1.i = 2;
+		entity1.embedded1.integer = 3;
+		assertThat(metamodel.i.get(entity1), is(1));
+		assertThat(metamodel.embedded1.i.get(entity1), is(2));
+		assertThat(metamodel.embedded1.integer.get(entity1), is(3));
+		
+		// The accessors are resolved once and cached per path segment and 
+		// owner class.
+		List<Map<Class<?>, ?>> accessors = accessors(metamodel.embedded1.i);
+		assertThat(accessors.size(), is(2));
+		Object accessor0 = accessors.get(0).get(Entity1.class);
+		Object accessor1 = accessors.get(1).get(Embedded1.class);
+		assertThat(accessor0, is(notNullValue()));
+		assertThat(accessor1, is(notNullValue()));
+		entity1.embedded1.i = 4;
+		assertThat(metamodel.embedded1.i.get(entity1), is(4));
+		assertThat(accessors.get(0).get(Entity1.class), is(sameInstance(accessor0)));
+		assertThat(accessors.get(1).get(Embedded1.class), is(sameInstance(accessor1)));
+		
+		// The accessor is resolved for the subclass owner and both of them 
+		// are kept for the mixed owners.
+		Object2 object2 = new Object2();
+		object2.i = 5;
+		object2.embedded1 = new Embedded1();
+		object2.embedded1.i = 6;
+		assertThat(metamodel.i.get(object2), is(5));
+		assertThat(metamodel.embedded1.i.get(object2), is(6));
+		assertThat(metamodel.embedded1.i.get(entity1), is(4));
+		assertThat(metamodel.i.get(entity1), is(1));
+		assertThat(accessors.get(0).size(), is(2));
+		assertThat(accessors.get(0).get(Entity1.class), is(sameInstance(accessor0)));
+		assertThat(accessors.get(0).get(Object2.class), is(notNullValue()));
+		assertThat(accessors.get(1).size(), is(1));
+	}
+	
+	@Test
+	public void testSet() {
+		_Entity1 metamodel = new _Entity1();
+		Entity1 entity1 = new Entity1();
+		entity1.embedded1 = new Embedded1();
+		metamodel.i.set(entity1, 1);
+		metamodel.embedded1.i.set(entity1, 2);
+		metamodel.embedded1.integer.set(entity1, 3);
+		assertThat(entity1.i, is(1));
+		assertThat(entity1.embedded1.i, is(2));
+		assertThat(entity1.embedded1.integer, is(3));
+		
+		Object2 object2 = new Object2();
+		object2.embedded1 = new Embedded1();
+		metamodel.i.set(object2, 4);
+		metamodel.embedded1.i.set(object2, 5);
+		assertThat(object2.i, is(4));
+		assertThat(object2.embedded1.i, is(5));
+	}
+	
+	@SuppressWarnings("unchecked")
+	private List<Map<Class<?>, ?>> accessors(Property<?, ?> property) throws Exception {
+		Field field = Property.class.getDeclaredField("accessors");
+		field.setAccessible(true);
+		return (List<Map<Class<?>, ?>>) field.get(property);
+	}
+	
+}